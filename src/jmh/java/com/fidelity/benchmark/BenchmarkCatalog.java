@@ -0,0 +1,95 @@
+package com.fidelity.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.fidelity.business.Gadget;
+import com.fidelity.business.Widget;
+import com.fidelity.integration.WarehouseDao;
+import com.fidelity.warehouseservice.WarehouseServiceApplication;
+
+/**
+ * Builds the catalogs used by the benchmarks: lists of Widgets and Gadgets
+ * in memory, or a running application whose in-memory HSQLDB database 
+ * holds a catalog of a given size.
+ */
+final class BenchmarkCatalog {
+	private static final int LOAD_BATCH_SIZE = 10_000;
+
+	private BenchmarkCatalog() {}
+
+	static List<Widget> widgets(int count) {
+		List<Widget> widgets = new ArrayList<>(count);
+		for (int i = 1; i <= count; i++) {
+			widgets.add(new Widget(i, "Benchmark Widget " + i, price(i), i % 20, i % 30));
+		}
+		return widgets;
+	}
+
+	static List<Gadget> gadgets(int count) {
+		List<Gadget> gadgets = new ArrayList<>(count);
+		for (int i = 1; i <= count; i++) {
+			gadgets.add(new Gadget(i, "Benchmark Gadget " + i, price(i + 7), 2 + i % 7));
+		}
+		return gadgets;
+	}
+
+	// prices fit in the numeric(6,2) price column
+	private static double price(int i) {
+		return (i % 99_999 + 1) / 100.0;
+	}
+
+	/**
+	 * Starts the application without a web server and loads {@code size}
+	 * Widgets and {@code size} Gadgets into its database, in addition to
+	 * the rows inserted by data.sql. The ids of the loaded products are 
+	 * set on the products.
+	 */
+	static ConfigurableApplicationContext startApplication(int size, List<Widget> widgets, List<Gadget> gadgets) {
+		ConfigurableApplicationContext context = startApplication();
+		WarehouseDao dao = context.getBean(WarehouseDao.class);
+		widgets.addAll(widgets(size));
+		gadgets.addAll(gadgets(size));
+		for (int start = 0; start < size; start += LOAD_BATCH_SIZE) {
+			int end = Math.min(start + LOAD_BATCH_SIZE, size);
+			dao.insertWidgets(widgets.subList(start, end));
+			dao.insertGadgets(gadgets.subList(start, end));
+		}
+		return context;
+	}
+
+	/**
+	 * Starts the application like startApplication(size, widgets, gadgets),
+	 * but without keeping the products in memory, for catalogs whose lists
+	 * would not fit in the heap next to the database.
+	 */
+	static ConfigurableApplicationContext startApplication(int size) {
+		ConfigurableApplicationContext context = startApplication();
+		WarehouseDao dao = context.getBean(WarehouseDao.class);
+		for (int start = 0; start < size; start += LOAD_BATCH_SIZE) {
+			int count = Math.min(LOAD_BATCH_SIZE, size - start);
+			List<Widget> widgets = new ArrayList<>(count);
+			List<Gadget> gadgets = new ArrayList<>(count);
+			for (int i = start + 1; i <= start + count; i++) {
+				widgets.add(new Widget("Benchmark Widget " + i, price(i), i % 20, i % 30));
+				gadgets.add(new Gadget("Benchmark Gadget " + i, price(i + 7), 2 + i % 7));
+			}
+			dao.insertWidgets(widgets);
+			dao.insertGadgets(gadgets);
+		}
+		return context;
+	}
+
+	private static ConfigurableApplicationContext startApplication() {
+		return new SpringApplicationBuilder(WarehouseServiceApplication.class)
+					.web(WebApplicationType.NONE)
+					.logStartupInfo(false)
+					.run("--spring.main.banner-mode=off",
+						 "--logging.level.com.fidelity=warn",
+						 "--logging.level.com.roifmr=warn");
+	}
+}
@@ -0,0 +1,164 @@
+package com.fidelity.benchmark;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A closed-loop HTTP load test: a fixed number of clients each send a GET
+ * request, wait for the response, and send the next one, until the test
+ * duration is over. Prints the throughput and the latency percentiles.
+ * 
+ *    LoadTest <url> <concurrent clients> <seconds> [<warm-up seconds>]
+ * 
+ * The clients share one HttpClient, which speaks HTTP/1.1 and keeps a pool
+ * of connections. A connection carries one request at a time, so the pool
+ * grows to about one connection per client, and the number of clients is
+ * also the number of concurrent connections to the server. To compare the 
+ * request execution modes, start the service once with the default
+ * Tomcat thread pool and once with warehouse.threads.virtual=true, and run
+ * the test against each with 1000 and 5000 clients. On Linux, raise the
+ * open file limit (ulimit -n) of both processes above the client count.
+ * The difference shows when requests block, so run against a database
+ * with realistic latency rather than the in-memory HSQLDB database.
+ */
+public class LoadTest {
+	private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(60);
+
+	private final HttpClient client = HttpClient.newBuilder()
+												.version(HttpClient.Version.HTTP_1_1)
+												.connectTimeout(Duration.ofSeconds(30))
+												.build();
+	private final HttpRequest request;
+	private volatile long measureFrom;
+	private volatile long stopAt;
+
+	LoadTest(URI uri) {
+		request = HttpRequest.newBuilder(uri).timeout(REQUEST_TIMEOUT).GET().build();
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 3) {
+			System.err.println("Usage: LoadTest <url> <concurrent clients> <seconds> [<warm-up seconds>]");
+			System.exit(1);
+		}
+		URI uri = URI.create(args[0]);
+		int clients = Integer.parseInt(args[1]);
+		int seconds = Integer.parseInt(args[2]);
+		int warmUpSeconds = (args.length > 3) ? Integer.parseInt(args[3]) : 5;
+
+		Result result = new LoadTest(uri).run(clients, seconds, warmUpSeconds);
+		System.out.println(result.report(uri, clients, seconds));
+	}
+
+	Result run(int clients, int seconds, int warmUpSeconds) {
+		long start = System.nanoTime();
+		measureFrom = start + TimeUnit.SECONDS.toNanos(warmUpSeconds);
+		stopAt = measureFrom + TimeUnit.SECONDS.toNanos(seconds);
+
+		List<Client> allClients = new ArrayList<>(clients);
+		List<CompletableFuture<Void>> done = new ArrayList<>(clients);
+		for (int i = 0; i < clients; i++) {
+			Client c = new Client();
+			allClients.add(c);
+			done.add(c.start());
+		}
+		CompletableFuture.allOf(done.toArray(new CompletableFuture<?>[0])).join();
+		return Result.of(allClients, seconds);
+	}
+
+	/**
+	 * One client's request loop. Its requests never overlap, so it records
+	 * latencies without synchronization.
+	 */
+	private class Client {
+		private long[] latencies = new long[1024];
+		private int count;
+		private int errors;
+
+		private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+		CompletableFuture<Void> start() {
+			sendNext();
+			return done;
+		}
+
+		private void sendNext() {
+			long sent = System.nanoTime();
+			if (sent >= stopAt) {
+				done.complete(null);
+				return;
+			}
+			client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+				  .whenComplete((response, failure) -> {
+					  long received = System.nanoTime();
+					  if (sent >= measureFrom && received < stopAt) {
+						  record(received - sent, failure == null && response.statusCode() < 400);
+					  }
+					  sendNext();
+				  });
+		}
+
+		private void record(long latency, boolean ok) {
+			if (!ok) {
+				errors++;
+				return;
+			}
+			if (count == latencies.length) {
+				latencies = Arrays.copyOf(latencies, count * 2);
+			}
+			latencies[count++] = latency;
+		}
+	}
+
+	static class Result {
+		private final long[] latencies;
+		private final long errors;
+		private final int seconds;
+
+		private Result(long[] latencies, long errors, int seconds) {
+			this.latencies = latencies;
+			this.errors = errors;
+			this.seconds = seconds;
+		}
+
+		static Result of(List<Client> clients, int seconds) {
+			int total = clients.stream().mapToInt(c -> c.count).sum();
+			long[] all = new long[total];
+			int pos = 0;
+			long errors = 0;
+			for (Client c : clients) {
+				System.arraycopy(c.latencies, 0, all, pos, c.count);
+				pos += c.count;
+				errors += c.errors;
+			}
+			Arrays.sort(all);
+			return new Result(all, errors, seconds);
+		}
+
+		double percentileMillis(double percentile) {
+			if (latencies.length == 0) {
+				return Double.NaN;
+			}
+			int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+			return latencies[Math.max(index, 0)] / 1_000_000.0;
+		}
+
+		String report(URI uri, int clients, int seconds) {
+			return String.format("%s with %d clients for %d s%n"
+							   + "  requests: %d ok, %d failed, %.1f requests/s%n"
+							   + "  latency ms: p50 %.2f  p90 %.2f  p99 %.2f  p99.9 %.2f  max %.2f",
+							   uri, clients, seconds,
+							   latencies.length, errors, (double) latencies.length / this.seconds,
+							   percentileMillis(50), percentileMillis(90), percentileMillis(99),
+							   percentileMillis(99.9), percentileMillis(100));
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package com.fidelity.benchmark;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.fidelity.business.transfer.ProductExporter;
+import com.fidelity.business.transfer.TransferFormat;
+
+/**
+ * Measures the throughput of a full export of the catalog by 
+ * ProductExporter, from the HSQLDB cursors to a stream that discards the
+ * bytes, so that the network is not included. The catalog holds 
+ * {@code rows} products, half Widgets and half Gadgets. The rows and
+ * bytes written are reported as secondary results.
+ * 
+ * The database is in memory, so the 10M row catalog needs a heap of 
+ * about 4 GB; run only the smaller catalog with -Djmh.args="ProductExport -p rows=1000000"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ProductExportBenchmark {
+	@Param({ "1000000", "10000000" })
+	private int rows;
+
+	@Param({ "CSV", "NDJSON" })
+	private TransferFormat format;
+
+	@Param({ "false", "true" })
+	private boolean gzip;
+
+	private ConfigurableApplicationContext context;
+	private ProductExporter exporter;
+
+	@Setup
+	public void setUp() {
+		context = BenchmarkCatalog.startApplication(rows / 2);
+		exporter = context.getBean(ProductExporter.class);
+	}
+
+	@TearDown
+	public void tearDown() {
+		context.close();
+	}
+
+	/**
+	 * The rows and bytes written by the exports of an iteration.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Throughput {
+		public long rowsWritten;
+		public long bytesWritten;
+	}
+
+	@Benchmark
+	public long export(Throughput throughput) throws Exception {
+		CountingOutputStream out = new CountingOutputStream();
+		long count = gzip ? exporter.exportGzipped(format, null, out)
+						  : exporter.export(format, null, out);
+		throughput.rowsWritten += count;
+		throughput.bytesWritten += out.count;
+		return count;
+	}
+
+	private static class CountingOutputStream extends OutputStream {
+		long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package com.fidelity.benchmark;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.GenericHttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.mock.http.MockHttpInputMessage;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import com.fidelity.business.Gadget;
+import com.fidelity.business.Product;
+import com.fidelity.business.Widget;
+import com.fidelity.restservices.ProtobufProductHttpMessageConverter;
+
+/**
+ * Compares the body formats offered by WarehouseController: encoding a
+ * list of Widgets and Gadgets and decoding a list of Widgets with the
+ * HttpMessageConverter that Spring MVC uses for each format. The size of
+ * the encoded lists is printed when each trial starts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductFormatBenchmark {
+	@Param({ "10", "1000", "100000" })
+	private int catalogSize;
+
+	@Param({ "json", "cbor", "smile", "protobuf" })
+	private String format;
+
+	private static final Type WIDGET_LIST = new ParameterizedTypeReference<List<Widget>>() {}.getType();
+	private static final Type PRODUCT_LIST = new ParameterizedTypeReference<List<Product>>() {}.getType();
+
+	private GenericHttpMessageConverter<Object> converter;
+	private MediaType mediaType;
+	private List<Product> products;
+	private byte[] encodedWidgets;
+
+	@Setup
+	public void setUp() throws Exception {
+		switch (format) {
+		case "json":
+			converter = new MappingJackson2HttpMessageConverter();
+			break;
+		case "cbor":
+			converter = new MappingJackson2CborHttpMessageConverter();
+			break;
+		case "smile":
+			converter = new MappingJackson2SmileHttpMessageConverter();
+			break;
+		default:
+			converter = new ProtobufProductHttpMessageConverter();
+		}
+		mediaType = converter.getSupportedMediaTypes().get(0);
+		List<Widget> widgets = BenchmarkCatalog.widgets(catalogSize);
+		products = new ArrayList<>(widgets);
+		products.addAll(BenchmarkCatalog.gadgets(catalogSize));
+		encodedWidgets = encode(widgets, WIDGET_LIST);
+		System.out.printf("%n%s: %d bytes for %d products, %d bytes for %d widgets%n",
+				mediaType, encodeProducts().length, products.size(), encodedWidgets.length, widgets.size());
+	}
+
+	private byte[] encode(Object body, Type type) throws Exception {
+		MockHttpOutputMessage message = new MockHttpOutputMessage();
+		converter.write(body, type, mediaType, message);
+		return message.getBodyAsBytes();
+	}
+
+	@Benchmark
+	public byte[] encodeProducts() throws Exception {
+		return encode(products, PRODUCT_LIST);
+	}
+
+	@Benchmark
+	public Object decodeWidgets() throws Exception {
+		return converter.read(WIDGET_LIST, null, new MockHttpInputMessage(encodedWidgets));
+	}
+}
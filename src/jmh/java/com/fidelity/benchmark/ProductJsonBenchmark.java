@@ -0,0 +1,80 @@
+package com.fidelity.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fidelity.business.Gadget;
+import com.fidelity.business.Product;
+import com.fidelity.business.Widget;
+
+/**
+ * Measures JSON serialization and deserialization of Widget and Gadget
+ * lists, using an ObjectMapper configured the way Spring MVC configures it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductJsonBenchmark {
+	@Param({ "10", "1000", "100000" })
+	private int catalogSize;
+
+	private ObjectMapper mapper;
+	private List<Widget> widgets;
+	private List<Product> products;
+	private byte[] widgetsJson;
+	private byte[] gadgetsJson;
+	private JavaType widgetListType;
+	private JavaType gadgetListType;
+
+	@Setup
+	public void setUp() throws Exception {
+		mapper = Jackson2ObjectMapperBuilder.json().build();
+		widgets = BenchmarkCatalog.widgets(catalogSize);
+		List<Gadget> gadgets = BenchmarkCatalog.gadgets(catalogSize);
+		products = new ArrayList<>(widgets);
+		products.addAll(gadgets);
+		widgetsJson = mapper.writeValueAsBytes(widgets);
+		gadgetsJson = mapper.writeValueAsBytes(gadgets);
+		widgetListType = mapper.getTypeFactory().constructCollectionType(List.class, Widget.class);
+		gadgetListType = mapper.getTypeFactory().constructCollectionType(List.class, Gadget.class);
+	}
+
+	@Benchmark
+	public byte[] serializeWidgets() throws Exception {
+		return mapper.writeValueAsBytes(widgets);
+	}
+
+	@Benchmark
+	public byte[] serializeProducts() throws Exception {
+		return mapper.writeValueAsBytes(products);
+	}
+
+	@Benchmark
+	public List<Widget> deserializeWidgets() throws Exception {
+		return mapper.readValue(widgetsJson, widgetListType);
+	}
+
+	@Benchmark
+	public List<Gadget> deserializeGadgets() throws Exception {
+		return mapper.readValue(gadgetsJson, gadgetListType);
+	}
+}
@@ -0,0 +1,81 @@
+package com.fidelity.benchmark;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import com.fidelity.business.Gadget;
+import com.fidelity.business.Widget;
+import com.fidelity.restservices.WarehouseController;
+
+/**
+ * Measures a request through the Spring MVC dispatch path: handler mapping,
+ * argument resolution, the WarehouseController method, the business service
+ * and DAO, and JSON serialization of the response. The request is dispatched
+ * with MockMvc, so Tomcat and the network are not included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WarehouseControllerBenchmark {
+	@Param({ "1000", "100000" })
+	private int catalogSize;
+
+	private ConfigurableApplicationContext context;
+	private MockMvc mockMvc;
+	private List<Widget> widgets = new ArrayList<>();
+	private List<Gadget> gadgets = new ArrayList<>();
+
+	@Setup
+	public void setUp() {
+		context = BenchmarkCatalog.startApplication(catalogSize, widgets, gadgets);
+		mockMvc = MockMvcBuilders.standaloneSetup(context.getBean(WarehouseController.class)).build();
+	}
+
+	@TearDown
+	public void tearDown() {
+		context.close();
+	}
+
+	private byte[] perform(String uri) throws Exception {
+		return mockMvc.perform(get(uri)).andReturn().getResponse().getContentAsByteArray();
+	}
+
+	@Benchmark
+	public byte[] queryForWidgetById() throws Exception {
+		int id = widgets.get(ThreadLocalRandom.current().nextInt(widgets.size())).getId();
+		return perform("/warehouse/widgets/" + id);
+	}
+
+	@Benchmark
+	public byte[] queryForWidgetsPage() throws Exception {
+		return perform("/warehouse/widgets?limit=100");
+	}
+
+	@Benchmark
+	public byte[] queryForProductsPage() throws Exception {
+		return perform("/warehouse/products?sort=price&limit=100");
+	}
+}
@@ -0,0 +1,89 @@
+package com.fidelity.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.fidelity.business.Gadget;
+import com.fidelity.business.Product;
+import com.fidelity.business.ProductSortOrder;
+import com.fidelity.business.Widget;
+import com.fidelity.integration.WarehouseDao;
+
+/**
+ * Measures the WarehouseDaoMyBatisImpl queries against the embedded HSQLDB
+ * database, including MyBatis statement handling and result mapping.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WarehouseDaoBenchmark {
+	private static final int PAGE_SIZE = 100;
+
+	@Param({ "1000", "100000" })
+	private int catalogSize;
+
+	private ConfigurableApplicationContext context;
+	private WarehouseDao dao;
+	private List<Widget> widgets = new ArrayList<>();
+	private List<Gadget> gadgets = new ArrayList<>();
+
+	@Setup
+	public void setUp() {
+		context = BenchmarkCatalog.startApplication(catalogSize, widgets, gadgets);
+		dao = context.getBean(WarehouseDao.class);
+	}
+
+	@TearDown
+	public void tearDown() {
+		context.close();
+	}
+
+	private int randomWidgetId() {
+		return widgets.get(ThreadLocalRandom.current().nextInt(widgets.size())).getId();
+	}
+
+	@Benchmark
+	public Widget getWidget() {
+		return dao.getWidget(randomWidgetId());
+	}
+
+	@Benchmark
+	public List<Widget> getWidgetsAfter() {
+		return dao.getWidgetsAfter(randomWidgetId(), PAGE_SIZE);
+	}
+
+	@Benchmark
+	public List<Product> getProductsPageByPrice() {
+		return dao.getProductsPage(ProductSortOrder.PRICE, null, PAGE_SIZE);
+	}
+
+	@Benchmark
+	public List<Widget> getAllWidgets() {
+		return dao.getAllWidgets();
+	}
+
+	@Benchmark
+	public void streamAllWidgets(Blackhole blackhole) {
+		dao.streamAllWidgets(blackhole::consume);
+	}
+}
@@ -0,0 +1,67 @@
+package com.fidelity.business.catalog;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fidelity.business.Gadget;
+import com.fidelity.business.Widget;
+
+/**
+ * Measures scans of the columnar CatalogSnapshot behind ProductCatalog. 
+ * The benchmark is in the catalog package so that it can fill and scan
+ * the snapshot directly, without a database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CatalogScanBenchmark {
+	private static final int WIDGET_MASK = 1 << CatalogSnapshot.WIDGET;
+	private static final int ALL_TYPES = WIDGET_MASK | 1 << CatalogSnapshot.GADGET;
+
+	@Param({ "1000000" })
+	private int catalogSize;
+
+	private CatalogSnapshot snapshot;
+	private final int[] hits = new int[100];
+
+	@Setup
+	public void setUp() {
+		snapshot = new CatalogSnapshot();
+		for (int i = 1; i <= catalogSize / 2; i++) {
+			snapshot.putWidget(new Widget(i, "Widget " + i % 1000, price(i), i % 12, i % 9));
+			snapshot.putGadget(new Gadget(i, "Gadget " + i % 1000, price(i), 2 + i % 7));
+		}
+	}
+
+	private static double price(int i) {
+		return 1 + (i * 7919L % 100_000) / 100.0;
+	}
+
+	@Benchmark
+	public int scanPriceBand() {
+		return snapshot.scan(ALL_TYPES, 10_000, 20_000,
+							 Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE,
+							 Integer.MIN_VALUE, Integer.MAX_VALUE, hits);
+	}
+
+	@Benchmark
+	public int scanWidgetsByPriceAndGears() {
+		return snapshot.scan(WIDGET_MASK, 10_000, 50_000, 
+							 4, 8, Integer.MIN_VALUE, Integer.MAX_VALUE,
+							 Integer.MIN_VALUE, Integer.MAX_VALUE, hits);
+	}
+}
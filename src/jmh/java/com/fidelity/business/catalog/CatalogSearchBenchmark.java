@@ -0,0 +1,72 @@
+package com.fidelity.business.catalog;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fidelity.business.Gadget;
+import com.fidelity.business.Widget;
+
+/**
+ * Measures description searches over the DescriptionIndex of a 
+ * CatalogSnapshot, for a common term, two common terms, and a rare
+ * term combined with a common one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CatalogSearchBenchmark {
+	private static final String[] IMPACTS = { "Low", "Medium", "High", "Extreme" };
+	private static final String[] MATERIALS = { "Steel", "Brass", "Copper", "Aluminum", "Titanium", 
+												"Carbon", "Nylon", "Ceramic", "Oak", "Glass" };
+
+	@Param({ "1000000" })
+	private int catalogSize;
+
+	private CatalogSnapshot snapshot;
+	private final int[] hitRows = new int[20];
+	private final float[] hitScores = new float[20];
+
+	@Setup
+	public void setUp() {
+		snapshot = new CatalogSnapshot();
+		for (int i = 1; i <= catalogSize / 2; i++) {
+			snapshot.putWidget(new Widget(i, description(i, "Impact Widget"), 10, i % 12, i % 9));
+			snapshot.putGadget(new Gadget(i, description(i, "Cylinder Gadget"), 10, 2 + i % 7));
+		}
+	}
+
+	private static String description(int i, String kind) {
+		return MATERIALS[i % MATERIALS.length] + " " + IMPACTS[i / 7 % IMPACTS.length] 
+			   + " " + kind + " M" + i % 10_000;
+	}
+
+	@Benchmark
+	public int searchCommonTerm() {
+		return snapshot.search(List.of("widget"), hitRows, hitScores);
+	}
+
+	@Benchmark
+	public int searchTwoCommonTerms() {
+		return snapshot.search(List.of("steel", "widget"), hitRows, hitScores);
+	}
+
+	@Benchmark
+	public int searchRareAndCommonTerm() {
+		return snapshot.search(List.of("m42", "gadget"), hitRows, hitScores);
+	}
+}
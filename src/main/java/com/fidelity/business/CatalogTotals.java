@@ -0,0 +1,118 @@
+package com.fidelity.business;
+
+import java.util.Objects;
+
+/**
+ * CatalogTotals holds the counts and sums over all Widgets and Gadgets.
+ * Prices are in cents, so that totals computed in memory and by the 
+ * database can be compared exactly. A missing price counts as zero.
+ * 
+ */
+public class CatalogTotals {
+	private long widgetCount;
+	private long gadgetCount;
+	private Long minPriceCents;
+	private Long maxPriceCents;
+	private long totalPriceCents;
+	private long totalGears;
+	private long totalSprockets;
+	private long totalCylinders;
+
+	public CatalogTotals() {}
+
+	public long getWidgetCount() {
+		return widgetCount;
+	}
+
+	public void setWidgetCount(long widgetCount) {
+		this.widgetCount = widgetCount;
+	}
+
+	public long getGadgetCount() {
+		return gadgetCount;
+	}
+
+	public void setGadgetCount(long gadgetCount) {
+		this.gadgetCount = gadgetCount;
+	}
+
+	/** The lowest price, or null if there are no products */
+	public Long getMinPriceCents() {
+		return minPriceCents;
+	}
+
+	public void setMinPriceCents(Long minPriceCents) {
+		this.minPriceCents = minPriceCents;
+	}
+
+	/** The highest price, or null if there are no products */
+	public Long getMaxPriceCents() {
+		return maxPriceCents;
+	}
+
+	public void setMaxPriceCents(Long maxPriceCents) {
+		this.maxPriceCents = maxPriceCents;
+	}
+
+	public long getTotalPriceCents() {
+		return totalPriceCents;
+	}
+
+	public void setTotalPriceCents(long totalPriceCents) {
+		this.totalPriceCents = totalPriceCents;
+	}
+
+	public long getTotalGears() {
+		return totalGears;
+	}
+
+	public void setTotalGears(long totalGears) {
+		this.totalGears = totalGears;
+	}
+
+	public long getTotalSprockets() {
+		return totalSprockets;
+	}
+
+	public void setTotalSprockets(long totalSprockets) {
+		this.totalSprockets = totalSprockets;
+	}
+
+	public long getTotalCylinders() {
+		return totalCylinders;
+	}
+
+	public void setTotalCylinders(long totalCylinders) {
+		this.totalCylinders = totalCylinders;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(widgetCount, gadgetCount, minPriceCents, maxPriceCents, totalPriceCents, 
+							totalGears, totalSprockets, totalCylinders);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		CatalogTotals other = (CatalogTotals) obj;
+		return widgetCount == other.widgetCount && gadgetCount == other.gadgetCount
+				&& Objects.equals(minPriceCents, other.minPriceCents)
+				&& Objects.equals(maxPriceCents, other.maxPriceCents)
+				&& totalPriceCents == other.totalPriceCents && totalGears == other.totalGears
+				&& totalSprockets == other.totalSprockets && totalCylinders == other.totalCylinders;
+	}
+
+	@Override
+	public String toString() {
+		return "CatalogTotals [widgetCount=" + widgetCount + ", gadgetCount=" + gadgetCount 
+				+ ", minPriceCents=" + minPriceCents + ", maxPriceCents=" + maxPriceCents 
+				+ ", totalPriceCents=" + totalPriceCents + ", totalGears=" + totalGears 
+				+ ", totalSprockets=" + totalSprockets + ", totalCylinders=" + totalCylinders + "]";
+	}
+}
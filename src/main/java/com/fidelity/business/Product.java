@@ -1,8 +1,15 @@
 package com.fidelity.business;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 /**
  * Product is the base class for all products stored in the warehouse.
  * 
+ * The version is the row version of the product in the database, which is
+ * incremented by every update. It is read by the single product lookups
+ * only, and is not part of the JSON form or of equals(): clients see it
+ * as the ETag of the product (see WarehouseController).
+ * 
  * @author ROI Instructor
  *
  */
@@ -10,6 +17,7 @@ public abstract class Product {
 	private String description;
 	private int id;
 	private double price;
+	private int version;
 
 	// ***** Eclipse-generated from here *****
 	public Product(String description, int id, double unitPrice) {
@@ -45,6 +53,16 @@ public abstract class Product {
 		this.price = price;
 	}
 
+	@JsonIgnore
+	public int getVersion() {
+		return version;
+	}
+
+	@JsonIgnore
+	public void setVersion(int version) {
+		this.version = version;
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
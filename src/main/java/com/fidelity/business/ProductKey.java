@@ -0,0 +1,50 @@
+package com.fidelity.business;
+
+/**
+ * ProductKey identifies a product across the Widget and Gadget tables
+ * by its type and id. It also carries the product's price, so it holds
+ * the complete sort key of a product in either ProductSortOrder.
+ * 
+ */
+public class ProductKey {
+	public static final String WIDGET = "widget";
+	public static final String GADGET = "gadget";
+
+	private String type;
+	private int id;
+	private double price;
+
+	public ProductKey(String type, int id, double price) {
+		if (!WIDGET.equals(type) && !GADGET.equals(type)) {
+			throw new IllegalArgumentException("Unknown product type: " + type);
+		}
+		this.type = type;
+		this.id = id;
+		this.price = price;
+	}
+
+	public static ProductKey of(Product p) {
+		return new ProductKey(typeOf(p), p.getId(), p.getPrice());
+	}
+
+	public static String typeOf(Product p) {
+		return (p instanceof Gadget) ? GADGET : WIDGET;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public double getPrice() {
+		return price;
+	}
+
+	@Override
+	public String toString() {
+		return "ProductKey [type=" + type + ", id=" + id + ", price=" + price + "]";
+	}
+}
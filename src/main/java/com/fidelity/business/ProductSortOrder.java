@@ -0,0 +1,13 @@
+package com.fidelity.business;
+
+/**
+ * The orders in which a page of mixed Widgets and Gadgets can be listed.
+ * Both orders are total, so they can be used for keyset pagination.
+ * 
+ */
+public enum ProductSortOrder {
+	/** By product type, then by id */
+	TYPE,
+	/** By price, then by product type and id */
+	PRICE
+}
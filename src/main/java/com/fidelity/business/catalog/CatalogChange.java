@@ -0,0 +1,81 @@
+package com.fidelity.business.catalog;
+
+import com.fidelity.business.Product;
+
+/**
+ * CatalogChange is one insert, update or delete of a Widget or Gadget, as
+ * recorded by CatalogChangeFeed. The sequence numbers of the changes start
+ * at 1 and follow the order in which the writes were reported.
+ */
+public class CatalogChange {
+	public static final String INSERT = "insert";
+	public static final String UPDATE = "update";
+	public static final String DELETE = "delete";
+
+	private long sequence;
+	private String operation;
+	private String type;
+	private int id;
+	private Product product;
+
+	public CatalogChange() {}
+
+	/**
+	 * @param operation insert, update or delete
+	 * @param type widget or gadget
+	 * @param product the values written, or null for a delete
+	 */
+	public CatalogChange(long sequence, String operation, String type, int id, Product product) {
+		this.sequence = sequence;
+		this.operation = operation;
+		this.type = type;
+		this.id = id;
+		this.product = product;
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	public void setSequence(long sequence) {
+		this.sequence = sequence;
+	}
+
+	public String getOperation() {
+		return operation;
+	}
+
+	public void setOperation(String operation) {
+		this.operation = operation;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public void setType(String type) {
+		this.type = type;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public void setId(int id) {
+		this.id = id;
+	}
+
+	public Product getProduct() {
+		return product;
+	}
+
+	public void setProduct(Product product) {
+		this.product = product;
+	}
+
+	@Override
+	public String toString() {
+		return "CatalogChange [sequence=" + sequence + ", operation=" + operation + ", type=" + type 
+				+ ", id=" + id + "]";
+	}
+}
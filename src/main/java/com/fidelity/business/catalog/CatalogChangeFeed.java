@@ -0,0 +1,130 @@
+package com.fidelity.business.catalog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import com.fidelity.business.Gadget;
+import com.fidelity.business.Product;
+import com.fidelity.business.Widget;
+import com.fidelity.business.service.CatalogChangeListener;
+
+/**
+ * CatalogChangeFeed records the inserts, updates and deletes that
+ * WarehouseBusinessService reports, in a ring buffer of the latest
+ * warehouse.changes.buffer-size changes. Readers keep their own cursor,
+ * the sequence number of the last change they have read, and read the
+ * changes after it; a reader whose cursor has been overwritten has missed
+ * changes and must reload what it derived from them.
+ *
+ * Like every CatalogChangeListener, the feed only sees the writes made
+ * through the business service of this instance.
+ */
+@Service
+@Profile("!reactive")
+public class CatalogChangeFeed implements CatalogChangeListener {
+	private static final String WIDGET = "widget";
+	private static final String GADGET = "gadget";
+
+	// Guarded by this; the change with sequence s is at ring[s % ring.length]
+	private final CatalogChange[] ring;
+	private long lastSequence;
+
+	private final List<Runnable> appendCallbacks = new CopyOnWriteArrayList<>();
+
+	public CatalogChangeFeed(@Value("${warehouse.changes.buffer-size:10000}") int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("warehouse.changes.buffer-size must be positive");
+		}
+		ring = new CatalogChange[capacity];
+	}
+
+	/**
+	 * Registers a callback that is run after every change is recorded, on
+	 * the thread that made the change, so it must be quick and not throw.
+	 */
+	public void addAppendCallback(Runnable callback) {
+		appendCallbacks.add(callback);
+	}
+
+	/**
+	 * Returns the sequence number of the latest change, or 0 if there has
+	 * been none.
+	 */
+	public synchronized long getLastSequence() {
+		return lastSequence;
+	}
+
+	/**
+	 * Returns the sequence number of the oldest change still in the buffer;
+	 * a reader can only resume from a cursor one before it or later.
+	 */
+	public synchronized long getOldestSequence() {
+		return Math.max(1, lastSequence - ring.length + 1);
+	}
+
+	/**
+	 * Returns at most {@code max} changes after the cursor, oldest first,
+	 * or null if some of the changes after the cursor have already been
+	 * overwritten.
+	 */
+	public synchronized List<CatalogChange> readAfter(long cursor, int max) {
+		if (cursor + 1 < getOldestSequence()) {
+			return null;
+		}
+		if (cursor >= lastSequence) {
+			return Collections.emptyList();
+		}
+		long end = Math.min(lastSequence, cursor + max);
+		List<CatalogChange> changes = new ArrayList<>((int) (end - cursor));
+		for (long sequence = cursor + 1; sequence <= end; sequence++) {
+			changes.add(ring[(int) (sequence % ring.length)]);
+		}
+		return changes;
+	}
+
+	private void append(String operation, String type, int id, Product product) {
+		synchronized (this) {
+			lastSequence++;
+			ring[(int) (lastSequence % ring.length)] = new CatalogChange(lastSequence, operation, type, id, product);
+		}
+		appendCallbacks.forEach(Runnable::run);
+	}
+
+	// ***** CatalogChangeListener *****
+
+	@Override
+	public void widgetAdded(Widget w) {
+		append(CatalogChange.INSERT, WIDGET, w.getId(), w);
+	}
+
+	@Override
+	public void widgetUpdated(Widget w) {
+		append(CatalogChange.UPDATE, WIDGET, w.getId(), w);
+	}
+
+	@Override
+	public void widgetRemoved(int id) {
+		append(CatalogChange.DELETE, WIDGET, id, null);
+	}
+
+	@Override
+	public void gadgetAdded(Gadget g) {
+		append(CatalogChange.INSERT, GADGET, g.getId(), g);
+	}
+
+	@Override
+	public void gadgetUpdated(Gadget g) {
+		append(CatalogChange.UPDATE, GADGET, g.getId(), g);
+	}
+
+	@Override
+	public void gadgetRemoved(int id) {
+		append(CatalogChange.DELETE, GADGET, id, null);
+	}
+}
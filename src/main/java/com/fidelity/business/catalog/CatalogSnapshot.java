@@ -0,0 +1,377 @@
+package com.fidelity.business.catalog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fidelity.business.CatalogTotals;
+import com.fidelity.business.Gadget;
+import com.fidelity.business.Product;
+import com.fidelity.business.Widget;
+
+/**
+ * CatalogSnapshot stores Widgets and Gadgets column by column, one row per
+ * product, in arrays of primitives:
+ *    type         byte   1 = Widget, 2 = Gadget, 0 = deleted
+ *    id           int
+ *    price        int    in cents
+ *    gears        int    0 for Gadgets
+ *    sprockets    int    0 for Widgets
+ *    cylinders    int    0 for Widgets
+ *    description  int    code in the description dictionary, -1 for null
+ *
+ * A scan is a single pass over the primitive columns, which reads the
+ * next column of a row only while the row still matches, and creates no
+ * objects per row. The columns hold no references, so the garbage collector
+ * never has to trace them; for a million products they take 25 MB.
+ *
+ * Every write also updates the aggregates returned by totals() and
+ * priceBucketCounts(), by removing the old values of the row and adding
+ * the new ones. Only the lowest and highest price cannot be maintained 
+ * that way: when the row holding either of them changes, both are 
+ * recomputed from the price column by the next call of totals().
+ *
+ * The descriptions are also indexed by a DescriptionIndex for search(),
+ * and the prices by a PriceIndex per type for rowsByPrice(). An index is
+ * only updated when a write changes the column it indexes.
+ *
+ * Deleted rows are only marked as deleted; their space is reclaimed when
+ * the snapshot is rebuilt. Descriptions that are no longer used stay in
+ * the dictionary until then, too.
+ *
+ * This class is not thread-safe; ProductCatalog guards it with a lock.
+ */
+class CatalogSnapshot {
+	static final byte DELETED = 0;
+	static final byte WIDGET = 1;
+	static final byte GADGET = 2;
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private int capacity;
+	private int size;
+
+	private byte[] types;
+	private int[] ids;
+	private int[] prices;
+	private int[] gears;
+	private int[] sprockets;
+	private int[] cylinders;
+	private int[] descriptions;
+
+	private final List<String> dictionary = new ArrayList<>();
+	private final Map<String, Integer> dictionaryCodes = new HashMap<>();
+
+	private final Map<Integer, Integer> widgetRows = new HashMap<>();
+	private final Map<Integer, Integer> gadgetRows = new HashMap<>();
+
+	private final DescriptionIndex descriptionIndex = new DescriptionIndex();
+	private final PriceIndex widgetPrices = new PriceIndex();
+	private final PriceIndex gadgetPrices = new PriceIndex();
+
+	// Aggregates over the rows that are not deleted
+	private final int[] priceBucketBounds;
+	private final long[] priceBucketCounts;
+	private long totalPrice;
+	private long totalGears;
+	private long totalSprockets;
+	private long totalCylinders;
+	private int minPrice = Integer.MAX_VALUE;
+	private int maxPrice = Integer.MIN_VALUE;
+	private boolean priceRangeStale;
+
+	CatalogSnapshot() {
+		this(new int[0]);
+	}
+
+	/**
+	 * @param priceBucketBounds the ascending prices, in cents, that separate 
+	 *        the buckets of the price histogram
+	 */
+	CatalogSnapshot(int[] priceBucketBounds) {
+		this.priceBucketBounds = priceBucketBounds.clone();
+		this.priceBucketCounts = new long[priceBucketBounds.length + 1];
+		capacity = INITIAL_CAPACITY;
+		types = new byte[capacity];
+		ids = new int[capacity];
+		prices = new int[capacity];
+		gears = new int[capacity];
+		sprockets = new int[capacity];
+		cylinders = new int[capacity];
+		descriptions = new int[capacity];
+	}
+
+	static int toCents(double price) {
+		return (int) Math.round(price * 100);
+	}
+
+	int size() {
+		return size;
+	}
+
+	int productCount() {
+		return widgetRows.size() + gadgetRows.size();
+	}
+
+	// ***** Writes *****
+
+	void putWidget(Widget w) {
+		int row = rowFor(widgetRows, w.getId());
+		setRow(row, WIDGET, w, w.getGears(), w.getSprockets(), 0);
+	}
+
+	void putGadget(Gadget g) {
+		int row = rowFor(gadgetRows, g.getId());
+		setRow(row, GADGET, g, 0, 0, g.getCylinders());
+	}
+
+	void removeWidget(int id) {
+		removeRow(widgetRows, id);
+	}
+
+	void removeGadget(int id) {
+		removeRow(gadgetRows, id);
+	}
+
+	private int rowFor(Map<Integer, Integer> rowsById, int id) {
+		Integer row = rowsById.get(id);
+		if (row == null) {
+			if (size == capacity) {
+				grow();
+			}
+			row = size++;
+			rowsById.put(id, row);
+		}
+		return row;
+	}
+
+	private void setRow(int row, byte type, Product p, int gearCount, int sprocketCount, int cylinderCount) {
+		boolean replaced = types[row] != DELETED;
+		int oldDescription = descriptions[row];
+		int oldPrice = prices[row];
+		if (replaced) {
+			subtractFromAggregates(row);
+		}
+		types[row] = type;
+		ids[row] = p.getId();
+		prices[row] = toCents(p.getPrice());
+		gears[row] = gearCount;
+		sprockets[row] = sprocketCount;
+		cylinders[row] = cylinderCount;
+		descriptions[row] = encode(p.getDescription());
+		addToAggregates(row);
+		if (!replaced || descriptions[row] != oldDescription) {
+			if (replaced) {
+				descriptionIndex.remove(row, decode(oldDescription));
+			}
+			descriptionIndex.add(row, p.getDescription());
+		}
+		if (!replaced || prices[row] != oldPrice) {
+			if (replaced) {
+				priceIndex(type).remove(PriceIndex.key(oldPrice, type, ids[row]));
+			}
+			priceIndex(type).insert(PriceIndex.key(prices[row], type, ids[row]), row);
+		}
+	}
+
+	private void removeRow(Map<Integer, Integer> rowsById, int id) {
+		Integer row = rowsById.remove(id);
+		if (row != null) {
+			subtractFromAggregates(row);
+			descriptionIndex.remove(row, decode(descriptions[row]));
+			priceIndex(types[row]).remove(PriceIndex.key(prices[row], types[row], ids[row]));
+			types[row] = DELETED;
+		}
+	}
+
+	private PriceIndex priceIndex(byte type) {
+		return (type == WIDGET) ? widgetPrices : gadgetPrices;
+	}
+
+	private int encode(String description) {
+		if (description == null) {
+			return -1;
+		}
+		Integer code = dictionaryCodes.get(description);
+		if (code == null) {
+			code = dictionary.size();
+			dictionary.add(description);
+			dictionaryCodes.put(description, code);
+		}
+		return code;
+	}
+
+	private String decode(int code) {
+		return (code < 0) ? null : dictionary.get(code);
+	}
+
+	private void addToAggregates(int row) {
+		int price = prices[row];
+		totalPrice += price;
+		totalGears += gears[row];
+		totalSprockets += sprockets[row];
+		totalCylinders += cylinders[row];
+		priceBucketCounts[priceBucketOf(price)]++;
+		if (!priceRangeStale) {
+			minPrice = Math.min(minPrice, price);
+			maxPrice = Math.max(maxPrice, price);
+		}
+	}
+
+	private void subtractFromAggregates(int row) {
+		int price = prices[row];
+		totalPrice -= price;
+		totalGears -= gears[row];
+		totalSprockets -= sprockets[row];
+		totalCylinders -= cylinders[row];
+		priceBucketCounts[priceBucketOf(price)]--;
+		if (price == minPrice || price == maxPrice) {
+			priceRangeStale = true;
+		}
+	}
+
+	private int priceBucketOf(int price) {
+		// the number of bounds that are less than or equal to the price
+		int i = Arrays.binarySearch(priceBucketBounds, price);
+		return (i >= 0) ? i + 1 : -i - 1;
+	}
+
+	// ***** Reads *****
+
+	/**
+	 * Returns the aggregates over all products. The price range is 
+	 * recomputed here if a write made it stale.
+	 */
+	CatalogTotals totals() {
+		if (priceRangeStale) {
+			minPrice = Integer.MAX_VALUE;
+			maxPrice = Integer.MIN_VALUE;
+			for (int row = 0; row < size; row++) {
+				if (types[row] != DELETED) {
+					minPrice = Math.min(minPrice, prices[row]);
+					maxPrice = Math.max(maxPrice, prices[row]);
+				}
+			}
+			priceRangeStale = false;
+		}
+		CatalogTotals totals = new CatalogTotals();
+		totals.setWidgetCount(widgetRows.size());
+		totals.setGadgetCount(gadgetRows.size());
+		if (productCount() > 0) {
+			totals.setMinPriceCents((long) minPrice);
+			totals.setMaxPriceCents((long) maxPrice);
+		}
+		totals.setTotalPriceCents(totalPrice);
+		totals.setTotalGears(totalGears);
+		totals.setTotalSprockets(totalSprockets);
+		totals.setTotalCylinders(totalCylinders);
+		return totals;
+	}
+
+	/**
+	 * Returns the number of products in each bucket of the price histogram.
+	 * Bucket i holds the prices from bound i - 1 (inclusive) up to bound i
+	 * (exclusive); the first and last buckets are open-ended.
+	 */
+	long[] priceBucketCounts() {
+		return priceBucketCounts.clone();
+	}
+
+	int[] priceBucketBounds() {
+		return priceBucketBounds.clone();
+	}
+
+	/**
+	 * Scans all rows and returns the number of rows that match the bounds.
+	 * The first matching rows, up to the length of {@code hits}, are stored
+	 * in {@code hits}, in row order. All bounds are inclusive; typeMask has 
+	 * the bit (1 << type) set for each type that matches.
+	 */
+	int scan(int typeMask, int minPrice, int maxPrice,
+			 int minGears, int maxGears, int minSprockets, int maxSprockets,
+			 int minCylinders, int maxCylinders, int[] hits) {
+		int count = 0;
+		for (int row = 0; row < size; row++) {
+			if ((typeMask >>> types[row] & 1) != 0
+					&& prices[row] >= minPrice && prices[row] <= maxPrice
+					&& gears[row] >= minGears && gears[row] <= maxGears
+					&& sprockets[row] >= minSprockets && sprockets[row] <= maxSprockets
+					&& cylinders[row] >= minCylinders && cylinders[row] <= maxCylinders) {
+				if (count < hits.length) {
+					hits[count] = row;
+				}
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Finds the rows whose description contains every term of the query,
+	 * ranked by relevance (see DescriptionIndex.search).
+	 *
+	 * @return the number of rows that match
+	 */
+	int search(List<String> queryTerms, int[] hitRows, float[] hitScores) {
+		return descriptionIndex.search(queryTerms, hitRows, hitScores);
+	}
+
+	/**
+	 * Stores in {@code rows} the rows of the types in typeMask whose price
+	 * key (see PriceIndex) is from fromKey to toKey, both inclusive, in 
+	 * ascending key order, or in descending key order starting from toKey.
+	 * At most the length of {@code rows} rows are stored.
+	 *
+	 * @return the number of rows stored
+	 */
+	int rowsByPrice(int typeMask, long fromKey, long toKey, boolean descending, int[] rows) {
+		int limit = rows.length;
+		long[] widgetKeys = new long[limit];
+		int[] widgetHits = new int[limit];
+		int widgetCount = ((typeMask >>> WIDGET & 1) == 0) ? 0 
+				: widgetPrices.range(fromKey, toKey, descending, widgetKeys, widgetHits);
+		long[] gadgetKeys = new long[limit];
+		int[] gadgetHits = new int[limit];
+		int gadgetCount = ((typeMask >>> GADGET & 1) == 0) ? 0 
+				: gadgetPrices.range(fromKey, toKey, descending, gadgetKeys, gadgetHits);
+
+		// merge the two sorted runs
+		int count = 0;
+		int w = 0;
+		int g = 0;
+		while (count < limit && (w < widgetCount || g < gadgetCount)) {
+			boolean widgetFirst = g == gadgetCount 
+					|| (w < widgetCount && (descending ? widgetKeys[w] > gadgetKeys[g] 
+													   : widgetKeys[w] < gadgetKeys[g]));
+			rows[count++] = widgetFirst ? widgetHits[w++] : gadgetHits[g++];
+		}
+		return count;
+	}
+
+	/**
+	 * Creates the Widget or Gadget stored in a row that is not deleted.
+	 */
+	Product product(int row) {
+		String description = decode(descriptions[row]);
+		double price = prices[row] / 100.0;
+		if (types[row] == WIDGET) {
+			return new Widget(ids[row], description, price, gears[row], sprockets[row]);
+		}
+		return new Gadget(ids[row], description, price, cylinders[row]);
+	}
+
+	// ***** Storage *****
+
+	private void grow() {
+		capacity *= 2;
+		types = Arrays.copyOf(types, capacity);
+		ids = Arrays.copyOf(ids, capacity);
+		prices = Arrays.copyOf(prices, capacity);
+		gears = Arrays.copyOf(gears, capacity);
+		sprockets = Arrays.copyOf(sprockets, capacity);
+		cylinders = Arrays.copyOf(cylinders, capacity);
+		descriptions = Arrays.copyOf(descriptions, capacity);
+	}
+}
@@ -0,0 +1,98 @@
+package com.fidelity.business.catalog;
+
+import java.util.List;
+
+/**
+ * CatalogSummary holds the dashboard totals over all Widgets and Gadgets:
+ *    { "widgetCount": 3, "gadgetCount": 3, 
+ *      "minPrice": 12.99, "maxPrice": 89.99, "averagePrice": 40.99,
+ *      "totalGears": 17, "totalSprockets": 16, "totalCylinders": 14,
+ *      "priceHistogram": [ { "maxPrice": 10.0, "count": 0 }, ... ] }
+ * 
+ * The prices are null when the catalog is empty.
+ */
+public class CatalogSummary {
+	private long widgetCount;
+	private long gadgetCount;
+	private Double minPrice;
+	private Double maxPrice;
+	private Double averagePrice;
+	private long totalGears;
+	private long totalSprockets;
+	private long totalCylinders;
+	private List<PriceBucket> priceHistogram;
+
+	public CatalogSummary() {}
+
+	public long getWidgetCount() {
+		return widgetCount;
+	}
+
+	public void setWidgetCount(long widgetCount) {
+		this.widgetCount = widgetCount;
+	}
+
+	public long getGadgetCount() {
+		return gadgetCount;
+	}
+
+	public void setGadgetCount(long gadgetCount) {
+		this.gadgetCount = gadgetCount;
+	}
+
+	public Double getMinPrice() {
+		return minPrice;
+	}
+
+	public void setMinPrice(Double minPrice) {
+		this.minPrice = minPrice;
+	}
+
+	public Double getMaxPrice() {
+		return maxPrice;
+	}
+
+	public void setMaxPrice(Double maxPrice) {
+		this.maxPrice = maxPrice;
+	}
+
+	public Double getAveragePrice() {
+		return averagePrice;
+	}
+
+	public void setAveragePrice(Double averagePrice) {
+		this.averagePrice = averagePrice;
+	}
+
+	public long getTotalGears() {
+		return totalGears;
+	}
+
+	public void setTotalGears(long totalGears) {
+		this.totalGears = totalGears;
+	}
+
+	public long getTotalSprockets() {
+		return totalSprockets;
+	}
+
+	public void setTotalSprockets(long totalSprockets) {
+		this.totalSprockets = totalSprockets;
+	}
+
+	public long getTotalCylinders() {
+		return totalCylinders;
+	}
+
+	public void setTotalCylinders(long totalCylinders) {
+		this.totalCylinders = totalCylinders;
+	}
+
+	public List<PriceBucket> getPriceHistogram() {
+		return priceHistogram;
+	}
+
+	public void setPriceHistogram(List<PriceBucket> priceHistogram) {
+		this.priceHistogram = priceHistogram;
+	}
+}
@@ -0,0 +1,604 @@
+package com.fidelity.business.catalog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * DescriptionIndex is an inverted index over the descriptions of the rows
+ * of a CatalogSnapshot. A description is split into terms at every
+ * character that is not a letter or digit, and the terms are lowercased,
+ * so "Low-Impact Widget" has the terms "low", "impact" and "widget".
+ *
+ * Each indexed description is a document with its own number. The posting
+ * list of a term holds the documents that contain the term, in ascending
+ * order, each with the number of times the term occurs in it. The postings
+ * are compressed in blocks of 128 (see PostingList); for a common term, a
+ * posting takes one byte. A skip table lets an intersection jump over the
+ * blocks that cannot hold the next document, and bounds the scores in each
+ * block, so that a search for a single term can skip the blocks that
+ * cannot make it into the results.
+ *
+ * Posting lists are only ever appended to. When the description of a row
+ * changes, the row gets a new document, and the old document is marked as
+ * deleted; its postings stay until the snapshot is rebuilt. The statistics
+ * used for ranking (live documents, document frequencies and lengths) are
+ * kept exact by subtracting the terms of the old description.
+ *
+ * This class is not thread-safe; it is guarded with its CatalogSnapshot.
+ */
+class DescriptionIndex {
+	// the usual BM25 parameters
+	private static final double K1 = 1.2;
+	private static final double B = 0.75;
+
+	private static final int NO_DOC = -1;
+
+	private final Map<String, PostingList> postings = new HashMap<>();
+
+	private int docCount;
+	private int[] docRows = new int[1024];
+	private int[] docLengths = new int[1024];
+	private int[] rowDocs = new int[1024];
+
+	private int liveDocCount;
+	private long liveTermCount;
+
+	DescriptionIndex() {
+		Arrays.fill(rowDocs, NO_DOC);
+	}
+
+	/**
+	 * Splits a text into lowercase terms, keeping their order and duplicates.
+	 */
+	static List<String> terms(String text) {
+		List<String> terms = new ArrayList<>();
+		if (text == null) {
+			return terms;
+		}
+		int start = -1;
+		for (int i = 0; i <= text.length(); i++) {
+			boolean termChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+			if (termChar && start < 0) {
+				start = i;
+			}
+			else if (!termChar && start >= 0) {
+				terms.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+				start = -1;
+			}
+		}
+		return terms;
+	}
+
+	// ***** Writes *****
+
+	/**
+	 * Indexes the description of a row that has no description indexed.
+	 */
+	void add(int row, String description) {
+		List<String> terms = terms(description);
+		int doc = docCount++;
+		if (doc == docRows.length) {
+			docRows = Arrays.copyOf(docRows, doc * 2);
+			docLengths = Arrays.copyOf(docLengths, doc * 2);
+		}
+		if (row >= rowDocs.length) {
+			int oldLength = rowDocs.length;
+			rowDocs = Arrays.copyOf(rowDocs, Math.max(row + 1, oldLength * 2));
+			Arrays.fill(rowDocs, oldLength, rowDocs.length, NO_DOC);
+		}
+		docRows[doc] = row;
+		docLengths[doc] = terms.size();
+		rowDocs[row] = doc;
+		liveDocCount++;
+		liveTermCount += terms.size();
+
+		for (Map.Entry<String, Integer> term : termFrequencies(terms).entrySet()) {
+			postings.computeIfAbsent(term.getKey(), t -> new PostingList())
+					.append(doc, term.getValue(), terms.size());
+		}
+	}
+
+	/**
+	 * Removes the description of a row from the index. The description must
+	 * be the one the row was indexed with.
+	 */
+	void remove(int row, String description) {
+		int doc = rowDocs[row];
+		if (doc == NO_DOC) {
+			return;
+		}
+		List<String> terms = terms(description);
+		rowDocs[row] = NO_DOC;
+		docRows[doc] = NO_DOC;
+		liveDocCount--;
+		liveTermCount -= terms.size();
+		for (String term : termFrequencies(terms).keySet()) {
+			postings.get(term).liveCount--;
+		}
+	}
+
+	private static Map<String, Integer> termFrequencies(List<String> terms) {
+		Map<String, Integer> frequencies = new HashMap<>();
+		for (String term : terms) {
+			frequencies.merge(term, 1, Integer::sum);
+		}
+		return frequencies;
+	}
+
+	// ***** Search *****
+
+	/**
+	 * Finds the rows whose description contains every term of the query and
+	 * ranks them by their BM25 score. The best rows, up to the length of
+	 * {@code hitRows}, are stored in {@code hitRows} and their scores in
+	 * {@code hitScores}, best first; rows with equal scores are in the order
+	 * in which they were indexed.
+	 *
+	 * @return the number of rows that match
+	 */
+	int search(List<String> queryTerms, int[] hitRows, float[] hitScores) {
+		Set<String> distinctTerms = new LinkedHashSet<>(queryTerms);
+		if (distinctTerms.isEmpty()) {
+			return 0;
+		}
+		PostingList[] lists = new PostingList[distinctTerms.size()];
+		int i = 0;
+		for (String term : distinctTerms) {
+			lists[i] = postings.get(term);
+			if (lists[i] == null || lists[i].liveCount == 0) {
+				return 0;
+			}
+			i++;
+		}
+		Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+
+		double averageLength = (double) liveTermCount / liveDocCount;
+		TermScorer[] scorers = new TermScorer[lists.length];
+		for (i = 0; i < lists.length; i++) {
+			int df = lists[i].liveCount;
+			double idf = Math.log(1 + (liveDocCount - df + 0.5) / (df + 0.5));
+			scorers[i] = new TermScorer(idf, averageLength);
+		}
+
+		TopHits top = new TopHits(hitRows.length);
+		int matches = (lists.length == 1) 
+				? rankSingleTerm(lists[0], scorers[0], top) 
+				: rankIntersection(lists, scorers, top);
+
+		int hitCount = top.drainBestFirst(hitScores, hitRows);
+		for (i = 0; i < hitCount; i++) {
+			hitRows[i] = docRows[hitRows[i]];
+		}
+		return matches;
+	}
+
+	/**
+	 * Every live posting of a single term is a match, so the count is known
+	 * without reading the postings, and a block whose best possible score
+	 * cannot beat the hits found so far is skipped without being decoded.
+	 * (A later document with an equal score does not beat them either.)
+	 */
+	private int rankSingleTerm(PostingList list, TermScorer scorer, TopHits top) {
+		PostingList.Cursor cursor = list.cursor();
+		for (int block = 0; block < list.blockCount; block++) {
+			if (top.isFull()) {
+				double bound = scorer.score(list.blockMaxTfs[block], list.blockMinLengths[block]);
+				if ((float) bound <= top.worstScore()) {
+					continue;
+				}
+			}
+			cursor.decodeBlock(block);
+			for (int i = 0; i < cursor.count; i++) {
+				int doc = cursor.docs[i];
+				if (docRows[doc] != NO_DOC) {
+					top.offer((float) scorer.score(cursor.tfs[i], docLengths[doc]), doc);
+				}
+			}
+		}
+		return list.liveCount;
+	}
+
+	/**
+	 * Decodes the postings of the rarest term a block at a time, and keeps
+	 * the documents of the block that the postings of each other term also
+	 * have, adding up their scores. The cost depends on the rarest term
+	 * rather than on the size of the index, and the inner loops run over
+	 * the decoded arrays.
+	 */
+	private int rankIntersection(PostingList[] lists, TermScorer[] scorers, TopHits top) {
+		PostingList.Cursor[] cursors = new PostingList.Cursor[lists.length];
+		for (int i = 0; i < lists.length; i++) {
+			cursors[i] = lists[i].cursor();
+		}
+		int[] candidates = new int[PostingList.BLOCK_SIZE];
+		double[] scores = new double[PostingList.BLOCK_SIZE];
+		int matches = 0;
+		PostingList.Cursor lead = cursors[0];
+		for (int block = 0; block < lists[0].blockCount; block++) {
+			lead.decodeBlock(block);
+			int count = lead.count;
+			for (int j = 0; j < count; j++) {
+				candidates[j] = lead.docs[j];
+				scores[j] = scorers[0].score(lead.tfs[j], docLengths[candidates[j]]);
+			}
+			boolean exhausted = false;
+			for (int i = 1; i < cursors.length && count > 0; i++) {
+				count = cursors[i].retain(candidates, scores, count, scorers[i], docLengths);
+				exhausted |= cursors[i].exhausted;
+			}
+			for (int j = 0; j < count; j++) {
+				if (docRows[candidates[j]] != NO_DOC) {
+					matches++;
+					top.offer((float) scores[j], candidates[j]);
+				}
+			}
+			if (exhausted) {
+				break;
+			}
+		}
+		return matches;
+	}
+
+	/**
+	 * Computes the BM25 score of one query term in a document. The score
+	 * rises with the term frequency and falls with the document length.
+	 * Most terms occur once in a short description, so those scores are
+	 * computed once per length instead of once per document, which saves
+	 * the divisions of the formula.
+	 */
+	private static final class TermScorer {
+		private static final int CACHED_LENGTHS = 64;
+
+		private final double idf;
+		private final double averageLength;
+		private final double[] singleOccurrenceScores = new double[CACHED_LENGTHS];
+
+		TermScorer(double idf, double averageLength) {
+			this.idf = idf;
+			this.averageLength = averageLength;
+			for (int length = 0; length < CACHED_LENGTHS; length++) {
+				singleOccurrenceScores[length] = bm25(1, length);
+			}
+		}
+
+		double score(int tf, int length) {
+			return (tf == 1 && length < CACHED_LENGTHS) ? singleOccurrenceScores[length] : bm25(tf, length);
+		}
+
+		private double bm25(int tf, int length) {
+			return idf * tf * (K1 + 1) / (tf + K1 * (1 - B + B * length / averageLength));
+		}
+	}
+
+	/**
+	 * A bounded min-heap of the best documents seen so far. The root is
+	 * the worst of them: the lowest score, and of equal scores the latest
+	 * document.
+	 */
+	private static final class TopHits {
+		private final float[] scores;
+		private final int[] docs;
+		private int size;
+
+		TopHits(int capacity) {
+			scores = new float[capacity];
+			docs = new int[capacity];
+		}
+
+		boolean isFull() {
+			return size == scores.length;
+		}
+
+		// A heap without room does not take any score
+		float worstScore() {
+			return (scores.length == 0) ? Float.POSITIVE_INFINITY : scores[0];
+		}
+
+		void offer(float score, int doc) {
+			if (size < scores.length) {
+				scores[size] = score;
+				docs[size] = doc;
+				siftUp(size++);
+			}
+			else if (size > 0 && worse(scores[0], docs[0], score, doc)) {
+				scores[0] = score;
+				docs[0] = doc;
+				siftDown(0);
+			}
+		}
+
+		// Empties the heap into the arrays, best first
+		int drainBestFirst(float[] bestScores, int[] bestDocs) {
+			int count = size;
+			while (size > 0) {
+				size--;
+				bestScores[size] = scores[0];
+				bestDocs[size] = docs[0];
+				scores[0] = scores[size];
+				docs[0] = docs[size];
+				siftDown(0);
+			}
+			return count;
+		}
+
+		private static boolean worse(float score1, int doc1, float score2, int doc2) {
+			return score1 < score2 || (score1 == score2 && doc1 > doc2);
+		}
+
+		private void siftUp(int i) {
+			while (i > 0) {
+				int parent = (i - 1) / 2;
+				if (!worse(scores[i], docs[i], scores[parent], docs[parent])) {
+					return;
+				}
+				swap(i, parent);
+				i = parent;
+			}
+		}
+
+		private void siftDown(int i) {
+			while (true) {
+				int worst = i;
+				for (int child = 2 * i + 1; child <= 2 * i + 2 && child < size; child++) {
+					if (worse(scores[child], docs[child], scores[worst], docs[worst])) {
+						worst = child;
+					}
+				}
+				if (worst == i) {
+					return;
+				}
+				swap(i, worst);
+				i = worst;
+			}
+		}
+
+		private void swap(int i, int j) {
+			float score = scores[i];
+			scores[i] = scores[j];
+			scores[j] = score;
+			int doc = docs[i];
+			docs[i] = docs[j];
+			docs[j] = doc;
+		}
+	}
+
+	/**
+	 * The postings of one term, in blocks of BLOCK_SIZE postings. A full
+	 * block is compressed into data as one header byte, the gaps between 
+	 * its documents in 1, 2 or 4 bytes each, whichever fits the largest
+	 * gap, and, only if some frequency is not 1, the frequencies as 
+	 * variable-length integers. The last block stays uncompressed until it
+	 * is full. For each block, the skip table holds its first document and
+	 * byte offset, and the highest term frequency and shortest document
+	 * length in it, which bound its scores.
+	 */
+	private static final class PostingList {
+		static final int BLOCK_SIZE = 128;
+		private static final int HAS_FREQUENCIES = 0x10;
+
+		private byte[] data = new byte[0];
+		private int length;
+		private int size;
+		// the number of postings whose document is not deleted
+		private int liveCount;
+
+		private int[] blockFirstDocs = new int[1];
+		private int[] blockOffsets = new int[1];
+		private int[] blockMaxTfs = new int[1];
+		private int[] blockMinLengths = new int[1];
+		private int blockCount;
+
+		// the last block, while it is not full
+		private int[] openDocs = new int[4];
+		private int[] openTfs = new int[4];
+		private int openCount;
+
+		void append(int doc, int tf, int docLength) {
+			if (openCount == 0) {
+				if (blockCount == blockFirstDocs.length) {
+					int newLength = blockCount * 2;
+					blockFirstDocs = Arrays.copyOf(blockFirstDocs, newLength);
+					blockOffsets = Arrays.copyOf(blockOffsets, newLength);
+					blockMaxTfs = Arrays.copyOf(blockMaxTfs, newLength);
+					blockMinLengths = Arrays.copyOf(blockMinLengths, newLength);
+				}
+				blockFirstDocs[blockCount] = doc;
+				blockMaxTfs[blockCount] = tf;
+				blockMinLengths[blockCount] = docLength;
+				blockCount++;
+			}
+			int block = blockCount - 1;
+			blockMaxTfs[block] = Math.max(blockMaxTfs[block], tf);
+			blockMinLengths[block] = Math.min(blockMinLengths[block], docLength);
+			if (openCount == openDocs.length) {
+				openDocs = Arrays.copyOf(openDocs, Math.min(openCount * 2, BLOCK_SIZE));
+				openTfs = Arrays.copyOf(openTfs, openDocs.length);
+			}
+			openDocs[openCount] = doc;
+			openTfs[openCount] = tf;
+			openCount++;
+			size++;
+			liveCount++;
+			if (openCount == BLOCK_SIZE) {
+				compressOpenBlock();
+			}
+		}
+
+		private void compressOpenBlock() {
+			int maxGap = 0;
+			boolean hasFrequencies = false;
+			for (int i = 0; i < BLOCK_SIZE; i++) {
+				if (i > 0) {
+					maxGap = Math.max(maxGap, openDocs[i] - openDocs[i - 1]);
+				}
+				hasFrequencies |= openTfs[i] != 1;
+			}
+			int width = (maxGap < 1 << 8) ? 1 : (maxGap < 1 << 16) ? 2 : 4;
+
+			ensureCapacity(1 + (BLOCK_SIZE - 1) * width + (hasFrequencies ? BLOCK_SIZE * 5 : 0));
+			blockOffsets[blockCount - 1] = length;
+			data[length++] = (byte) (width | (hasFrequencies ? HAS_FREQUENCIES : 0));
+			for (int i = 1; i < BLOCK_SIZE; i++) {
+				int gap = openDocs[i] - openDocs[i - 1];
+				for (int b = 0; b < width; b++) {
+					data[length++] = (byte) (gap >>> 8 * b);
+				}
+			}
+			if (hasFrequencies) {
+				for (int i = 0; i < BLOCK_SIZE; i++) {
+					writeVarInt(openTfs[i]);
+				}
+			}
+			openCount = 0;
+		}
+
+		private void ensureCapacity(int extra) {
+			if (length + extra > data.length) {
+				data = Arrays.copyOf(data, Math.max(data.length + data.length / 2, length + extra));
+			}
+		}
+
+		private void writeVarInt(int value) {
+			while ((value & ~0x7F) != 0) {
+				data[length++] = (byte) (value & 0x7F | 0x80);
+				value >>>= 7;
+			}
+			data[length++] = (byte) value;
+		}
+
+		Cursor cursor() {
+			return new Cursor();
+		}
+
+		/**
+		 * Reads the postings a block at a time into docs and tfs.
+		 */
+		final class Cursor {
+			final int[] docs = new int[BLOCK_SIZE];
+			final int[] tfs = new int[BLOCK_SIZE];
+			int count;
+			// true once retain() ran past the last posting
+			boolean exhausted;
+			private int block = -1;
+			// the first posting of the block not passed by retain()
+			private int position;
+
+			/**
+			 * Keeps the candidates, which must be ascending and follow those
+			 * of the previous call, that are in the postings, and adds the
+			 * score of this term to theirs. Blocks that end before the next
+			 * candidate are not decoded.
+			 *
+			 * @return the number of candidates kept, at the start of the arrays
+			 */
+			int retain(int[] candidates, double[] scores, int n, TermScorer scorer, int[] docLengths) {
+				int[] blockDocs = docs;
+				int kept = 0;
+				int p = position;
+				int lastDoc = (count == 0) ? -1 : blockDocs[count - 1];
+				for (int j = 0; j < n; j++) {
+					int target = candidates[j];
+					if (lastDoc < target) {
+						if (!seekBlock(target)) {
+							exhausted = true;
+							return kept;
+						}
+						p = 0;
+						lastDoc = blockDocs[count - 1];
+					}
+					while (blockDocs[p] < target) {
+						p++;
+					}
+					if (blockDocs[p] == target) {
+						candidates[kept] = target;
+						scores[kept] = scores[j] + scorer.score(tfs[p], docLengths[target]);
+						kept++;
+					}
+				}
+				position = p;
+				return kept;
+			}
+
+			// Decodes the first block that ends at or after the target
+			private boolean seekBlock(int target) {
+				int from = block + 1;
+				if (from == blockCount) {
+					return false;
+				}
+				if (from + 1 == blockCount || blockFirstDocs[from + 1] > target) {
+					// the usual case when the other terms are common too
+					decodeBlock(from);
+				}
+				else {
+					int found = Arrays.binarySearch(blockFirstDocs, from + 1, blockCount, target);
+					decodeBlock((found >= 0) ? found : -found - 2);
+				}
+				while (docs[count - 1] < target) {
+					if (block + 1 == blockCount) {
+						return false;
+					}
+					decodeBlock(block + 1);
+				}
+				return true;
+			}
+
+			void decodeBlock(int b) {
+				block = b;
+				position = 0;
+				if (b == blockCount - 1 && openCount > 0) {
+					count = openCount;
+					System.arraycopy(openDocs, 0, docs, 0, count);
+					System.arraycopy(openTfs, 0, tfs, 0, count);
+					return;
+				}
+				count = BLOCK_SIZE;
+				byte[] bytes = data;
+				int offset = blockOffsets[b];
+				int header = bytes[offset++];
+				int d = blockFirstDocs[b];
+				docs[0] = d;
+				switch (header & 0x0F) {
+				case 1:
+					for (int i = 1; i < BLOCK_SIZE; i++) {
+						d += bytes[offset++] & 0xFF;
+						docs[i] = d;
+					}
+					break;
+				case 2:
+					for (int i = 1; i < BLOCK_SIZE; i++) {
+						d += bytes[offset] & 0xFF | (bytes[offset + 1] & 0xFF) << 8;
+						offset += 2;
+						docs[i] = d;
+					}
+					break;
+				default:
+					for (int i = 1; i < BLOCK_SIZE; i++) {
+						d += bytes[offset] & 0xFF | (bytes[offset + 1] & 0xFF) << 8 
+							 | (bytes[offset + 2] & 0xFF) << 16 | bytes[offset + 3] << 24;
+						offset += 4;
+						docs[i] = d;
+					}
+				}
+				if ((header & HAS_FREQUENCIES) == 0) {
+					Arrays.fill(tfs, 1);
+					return;
+				}
+				for (int i = 0; i < BLOCK_SIZE; i++) {
+					int v = bytes[offset++];
+					int frequency = v & 0x7F;
+					for (int shift = 7; v < 0; shift += 7) {
+						v = bytes[offset++];
+						frequency |= (v & 0x7F) << shift;
+					}
+					tfs[i] = frequency;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package com.fidelity.business.catalog;
+
+/**
+ * PriceBucket is one bar of the price histogram in a CatalogSummary: the
+ * number of products priced from minPrice (inclusive) up to maxPrice 
+ * (exclusive). The first bucket has no minPrice and the last bucket has
+ * no maxPrice.
+ */
+public class PriceBucket {
+	private Double minPrice;
+	private Double maxPrice;
+	private long count;
+
+	public PriceBucket() {}
+
+	public PriceBucket(Double minPrice, Double maxPrice, long count) {
+		this.minPrice = minPrice;
+		this.maxPrice = maxPrice;
+		this.count = count;
+	}
+
+	public Double getMinPrice() {
+		return minPrice;
+	}
+
+	public void setMinPrice(Double minPrice) {
+		this.minPrice = minPrice;
+	}
+
+	public Double getMaxPrice() {
+		return maxPrice;
+	}
+
+	public void setMaxPrice(Double maxPrice) {
+		this.maxPrice = maxPrice;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public void setCount(long count) {
+		this.count = count;
+	}
+}
@@ -0,0 +1,202 @@
+package com.fidelity.business.catalog;
+
+import java.util.Arrays;
+
+/**
+ * PriceIndex keeps the rows of one product type of a CatalogSnapshot
+ * sorted by a primitive key that packs the price in cents, the type and
+ * the id into a long:
+ *    bits 63..32  price in cents (signed)
+ *    bit  31      0 for Gadgets, 1 for Widgets
+ *    bits 30..0   id
+ * so the keys sort like ProductSortOrder.PRICE sorts products in the
+ * database: by price, then by type ("gadget" before "widget"), then by id.
+ * Each key has the row of its product as payload.
+ *
+ * The keys are kept in sorted blocks of up to BLOCK_CAPACITY keys, so an
+ * insert or delete moves at most one block's worth of keys, and a block
+ * that fills up is split in two. A range is read by locating its first
+ * key with two binary searches, one over the blocks and one within a block.
+ *
+ * This class is not thread-safe; it is guarded with its CatalogSnapshot.
+ */
+class PriceIndex {
+	private static final int BLOCK_CAPACITY = 1024;
+
+	private long[][] blockKeys = new long[1][];
+	private int[][] blockRows = new int[1][];
+	private int[] blockSizes = new int[1];
+	// the first key of each block, to find the block of a key
+	private long[] blockFirstKeys = new long[1];
+	private int blockCount;
+
+	/**
+	 * Returns the key of a product.
+	 */
+	static long key(int priceCents, byte type, int id) {
+		long typeBit = (type == CatalogSnapshot.WIDGET) ? 1L << 31 : 0;
+		return (long) priceCents << 32 | typeBit | id;
+	}
+
+	/**
+	 * Returns the lowest key of all products with the price.
+	 */
+	static long lowestKey(int priceCents) {
+		return (long) priceCents << 32;
+	}
+
+	/**
+	 * Returns the highest key of all products with the price.
+	 */
+	static long highestKey(int priceCents) {
+		return (long) priceCents << 32 | 0xFFFF_FFFFL;
+	}
+
+	// ***** Writes *****
+
+	void insert(long key, int row) {
+		if (blockCount == 0) {
+			blockKeys[0] = new long[BLOCK_CAPACITY];
+			blockRows[0] = new int[BLOCK_CAPACITY];
+			blockCount = 1;
+		}
+		int b = blockOf(key);
+		if (blockSizes[b] == BLOCK_CAPACITY) {
+			split(b);
+			if (key >= blockFirstKeys[b + 1]) {
+				b++;
+			}
+		}
+		long[] keys = blockKeys[b];
+		int[] rows = blockRows[b];
+		int size = blockSizes[b];
+		int i = -Arrays.binarySearch(keys, 0, size, key) - 1;
+		System.arraycopy(keys, i, keys, i + 1, size - i);
+		System.arraycopy(rows, i, rows, i + 1, size - i);
+		keys[i] = key;
+		rows[i] = row;
+		blockSizes[b]++;
+		blockFirstKeys[b] = keys[0];
+	}
+
+	void remove(long key) {
+		if (blockCount == 0) {
+			return;
+		}
+		int b = blockOf(key);
+		long[] keys = blockKeys[b];
+		int[] rows = blockRows[b];
+		int size = blockSizes[b];
+		int i = Arrays.binarySearch(keys, 0, size, key);
+		if (i < 0) {
+			return;
+		}
+		System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+		System.arraycopy(rows, i + 1, rows, i, size - i - 1);
+		blockSizes[b]--;
+		if (blockSizes[b] > 0) {
+			blockFirstKeys[b] = keys[0];
+		}
+		else if (blockCount > 1) {
+			removeBlock(b);
+		}
+	}
+
+	// The last block whose first key is not above the key, or block 0
+	private int blockOf(long key) {
+		int found = Arrays.binarySearch(blockFirstKeys, 0, blockCount, key);
+		return (found >= 0) ? found : Math.max(0, -found - 2);
+	}
+
+	private void split(int b) {
+		if (blockCount == blockKeys.length) {
+			int newLength = blockCount * 2;
+			blockKeys = Arrays.copyOf(blockKeys, newLength);
+			blockRows = Arrays.copyOf(blockRows, newLength);
+			blockSizes = Arrays.copyOf(blockSizes, newLength);
+			blockFirstKeys = Arrays.copyOf(blockFirstKeys, newLength);
+		}
+		int moved = blockCount - b - 1;
+		System.arraycopy(blockKeys, b + 1, blockKeys, b + 2, moved);
+		System.arraycopy(blockRows, b + 1, blockRows, b + 2, moved);
+		System.arraycopy(blockSizes, b + 1, blockSizes, b + 2, moved);
+		System.arraycopy(blockFirstKeys, b + 1, blockFirstKeys, b + 2, moved);
+		blockCount++;
+
+		int half = BLOCK_CAPACITY / 2;
+		blockKeys[b + 1] = new long[BLOCK_CAPACITY];
+		blockRows[b + 1] = new int[BLOCK_CAPACITY];
+		System.arraycopy(blockKeys[b], half, blockKeys[b + 1], 0, BLOCK_CAPACITY - half);
+		System.arraycopy(blockRows[b], half, blockRows[b + 1], 0, BLOCK_CAPACITY - half);
+		blockSizes[b] = half;
+		blockSizes[b + 1] = BLOCK_CAPACITY - half;
+		blockFirstKeys[b + 1] = blockKeys[b + 1][0];
+	}
+
+	private void removeBlock(int b) {
+		int moved = blockCount - b - 1;
+		System.arraycopy(blockKeys, b + 1, blockKeys, b, moved);
+		System.arraycopy(blockRows, b + 1, blockRows, b, moved);
+		System.arraycopy(blockSizes, b + 1, blockSizes, b, moved);
+		System.arraycopy(blockFirstKeys, b + 1, blockFirstKeys, b, moved);
+		blockCount--;
+		blockKeys[blockCount] = null;
+		blockRows[blockCount] = null;
+	}
+
+	// ***** Reads *****
+
+	/**
+	 * Stores the keys from {@code fromKey} to {@code toKey} (both inclusive)
+	 * and their rows in the arrays, in ascending order, or in descending
+	 * order starting from {@code toKey}, up to the length of the arrays.
+	 *
+	 * @return the number of keys stored
+	 */
+	int range(long fromKey, long toKey, boolean descending, long[] keys, int[] rows) {
+		if (blockCount == 0 || fromKey > toKey) {
+			return 0;
+		}
+		return descending ? descendingRange(fromKey, toKey, keys, rows)
+						  : ascendingRange(fromKey, toKey, keys, rows);
+	}
+
+	private int ascendingRange(long fromKey, long toKey, long[] keys, int[] rows) {
+		int count = 0;
+		int b = blockOf(fromKey);
+		int i = Arrays.binarySearch(blockKeys[b], 0, blockSizes[b], fromKey);
+		i = (i >= 0) ? i : -i - 1;
+		for (; b < blockCount; b++, i = 0) {
+			long[] block = blockKeys[b];
+			for (; i < blockSizes[b]; i++) {
+				if (count == keys.length || block[i] > toKey) {
+					return count;
+				}
+				keys[count] = block[i];
+				rows[count] = blockRows[b][i];
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private int descendingRange(long fromKey, long toKey, long[] keys, int[] rows) {
+		int count = 0;
+		int b = blockOf(toKey);
+		int i = Arrays.binarySearch(blockKeys[b], 0, blockSizes[b], toKey);
+		// the last key that is not above toKey
+		i = (i >= 0) ? i : -i - 2;
+		for (; b >= 0; b--, i = (b >= 0) ? blockSizes[b] - 1 : -1) {
+			long[] block = blockKeys[b];
+			for (; i >= 0; i--) {
+				if (count == keys.length || block[i] < fromKey) {
+					return count;
+				}
+				keys[count] = block[i];
+				rows[count] = blockRows[b][i];
+				count++;
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,460 @@
+package com.fidelity.business.catalog;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.fidelity.business.CatalogTotals;
+import com.fidelity.business.Gadget;
+import com.fidelity.business.Product;
+import com.fidelity.business.ProductKey;
+import com.fidelity.business.Widget;
+import com.fidelity.business.service.CatalogChangeListener;
+import com.fidelity.business.service.WarehouseBusinessServiceException;
+import com.fidelity.integration.WarehouseDao;
+
+/**
+ * ProductCatalog answers filter queries, description searches and price
+ * range queries over all Widgets and Gadgets from an in-memory columnar 
+ * snapshot (see CatalogSnapshot, DescriptionIndex and PriceIndex), without
+ * querying the database.
+ *
+ * The snapshot is loaded from the DAO when the application is ready (if
+ * warehouse.catalog.preload is true) or else by the first scan, and is
+ * kept current by the writes that WarehouseBusinessService reports as a
+ * CatalogChangeListener. Call rebuild() after changing the database by
+ * other means, or to reclaim the space of deleted rows.
+ *
+ * The snapshot also keeps the aggregates behind summary() current with
+ * every write. Because a write that is not reported leaves them wrong
+ * until the next rebuild, reconcile() compares them with the totals 
+ * computed by the database every warehouse.catalog.reconcile-interval,
+ * and rebuilds the snapshot if they differ.
+ *
+ * Price range queries do not load the snapshot; until it is loaded, they
+ * are answered by the database instead, in the same order.
+ *
+ * Scans share a read lock; writes take the write lock for the time it
+ * takes to update one row. A rebuild reads the tables without holding the
+ * lock and records the writes that happen meanwhile, then applies them to
+ * the new snapshot before it replaces the old one.
+ */
+@Service
+@Profile("!reactive")
+public class ProductCatalog implements CatalogChangeListener {
+	private static final int WIDGET_MASK = 1 << CatalogSnapshot.WIDGET;
+	private static final int GADGET_MASK = 1 << CatalogSnapshot.GADGET;
+
+	@Autowired
+	private Logger logger;
+
+	@Autowired
+	private WarehouseDao dao;
+
+	@Value("${warehouse.catalog.preload:true}")
+	private boolean preload;
+
+	@Value("${warehouse.catalog.price-buckets:10,25,50,100}")
+	private double[] priceBuckets = {};
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	// Replaced and written under the write lock; volatile so that scans
+	// can tell whether it was loaded before they take the read lock
+	private volatile CatalogSnapshot snapshot;
+	// Guarded by lock
+	private List<Consumer<CatalogSnapshot>> writesDuringRebuild;
+	private long writeCount;
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void preloadSnapshot() {
+		if (preload) {
+			rebuild();
+		}
+	}
+
+	/**
+	 * Loads the snapshot if it has not been loaded yet. Concurrent first
+	 * requests wait for a single load instead of each reading the tables.
+	 */
+	private void ensureLoaded() {
+		if (snapshot == null) {
+			synchronized (this) {
+				if (snapshot == null) {
+					rebuild();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reloads the snapshot from the database.
+	 */
+	public synchronized void rebuild() {
+		lock.writeLock().lock();
+		try {
+			writesDuringRebuild = new ArrayList<>();
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+
+		CatalogSnapshot rebuilt = new CatalogSnapshot(priceBucketBounds());
+		try {
+			dao.streamAllWidgets(rebuilt::putWidget);
+			dao.streamAllGadgets(rebuilt::putGadget);
+		}
+		catch (Exception e) {
+			lock.writeLock().lock();
+			try {
+				writesDuringRebuild = null;
+			}
+			finally {
+				lock.writeLock().unlock();
+			}
+			String msg = "Error loading the product catalog from the Warehouse database.";
+			throw new WarehouseBusinessServiceException(msg, e);
+		}
+
+		lock.writeLock().lock();
+		try {
+			writesDuringRebuild.forEach(write -> write.accept(rebuilt));
+			writesDuringRebuild = null;
+			snapshot = rebuilt;
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+		logger.info("Loaded {} products into the catalog snapshot", rebuilt.productCount());
+	}
+
+	private int[] priceBucketBounds() {
+		return Arrays.stream(priceBuckets)
+					 .sorted()
+					 .mapToInt(price -> cents(price, RoundingMode.HALF_UP))
+					 .distinct()
+					 .toArray();
+	}
+
+	/**
+	 * Compares the aggregates of the snapshot with the totals computed by
+	 * the database, and rebuilds the snapshot if they differ. The check is
+	 * skipped if a write is reported while the database computes its totals,
+	 * because the two would then see different rows.
+	 */
+	@Scheduled(initialDelayString="${warehouse.catalog.reconcile-interval:PT5M}",
+			   fixedDelayString="${warehouse.catalog.reconcile-interval:PT5M}")
+	public void reconcile() {
+		if (snapshot == null) {
+			return;
+		}
+		long writesBefore = writeCount();
+		CatalogTotals expected;
+		try {
+			expected = dao.getCatalogTotals();
+		}
+		catch (Exception e) {
+			logger.warn("Could not reconcile the catalog snapshot with the Warehouse database", e);
+			return;
+		}
+		CatalogTotals actual;
+		long writesAfter;
+		lock.writeLock().lock();
+		try {
+			actual = snapshot.totals();
+			writesAfter = writeCount;
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+		if (writesAfter != writesBefore) {
+			logger.debug("Skipped reconciling the catalog snapshot during writes");
+		}
+		else if (!expected.equals(actual)) {
+			logger.warn("The catalog snapshot differs from the Warehouse database and is rebuilt: {} in memory, {} in the database", 
+						actual, expected);
+			rebuild();
+		}
+	}
+
+	private long writeCount() {
+		lock.readLock().lock();
+		try {
+			return writeCount;
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the counts, price statistics, totals and price histogram
+	 * of all products.
+	 */
+	public CatalogSummary summary() {
+		ensureLoaded();
+		CatalogTotals totals;
+		long[] bucketCounts;
+		int[] bucketBounds;
+		// the write lock, because totals() may recompute the price range
+		lock.writeLock().lock();
+		try {
+			totals = snapshot.totals();
+			bucketCounts = snapshot.priceBucketCounts();
+			bucketBounds = snapshot.priceBucketBounds();
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+
+		CatalogSummary summary = new CatalogSummary();
+		long productCount = totals.getWidgetCount() + totals.getGadgetCount();
+		summary.setWidgetCount(totals.getWidgetCount());
+		summary.setGadgetCount(totals.getGadgetCount());
+		if (productCount > 0) {
+			summary.setMinPrice(totals.getMinPriceCents() / 100.0);
+			summary.setMaxPrice(totals.getMaxPriceCents() / 100.0);
+			summary.setAveragePrice(Math.round((double) totals.getTotalPriceCents() / productCount) / 100.0);
+		}
+		summary.setTotalGears(totals.getTotalGears());
+		summary.setTotalSprockets(totals.getTotalSprockets());
+		summary.setTotalCylinders(totals.getTotalCylinders());
+		List<PriceBucket> histogram = new ArrayList<>(bucketCounts.length);
+		for (int i = 0; i < bucketCounts.length; i++) {
+			Double min = (i == 0) ? null : bucketBounds[i - 1] / 100.0;
+			Double max = (i == bucketBounds.length) ? null : bucketBounds[i] / 100.0;
+			histogram.add(new PriceBucket(min, max, bucketCounts[i]));
+		}
+		summary.setPriceHistogram(histogram);
+		return summary;
+	}
+
+	/**
+	 * Returns the number of products that match the filter, and the first
+	 * {@code limit} of them. The products are in the order in which they were
+	 * loaded, Widgets by id and then Gadgets by id, followed by the products
+	 * added since the last rebuild.
+	 *
+	 * @throws IllegalArgumentException if the filter names an unknown type
+	 */
+	public ProductScanResult scan(ProductFilter filter, int limit) {
+		int typeMask = typeMask(filter);
+		int minPrice = (filter.getMinPrice() == null) ? Integer.MIN_VALUE : cents(filter.getMinPrice(), RoundingMode.CEILING);
+		int maxPrice = (filter.getMaxPrice() == null) ? Integer.MAX_VALUE : cents(filter.getMaxPrice(), RoundingMode.FLOOR);
+		int[] hits = new int[limit];
+
+		ensureLoaded();
+		lock.readLock().lock();
+		try {
+			int matches = snapshot.scan(typeMask, minPrice, maxPrice,
+										min(filter.getMinGears()), max(filter.getMaxGears()),
+										min(filter.getMinSprockets()), max(filter.getMaxSprockets()),
+										min(filter.getMinCylinders()), max(filter.getMaxCylinders()),
+										hits);
+			List<Product> products = new ArrayList<>(Math.min(matches, limit));
+			for (int i = 0; i < Math.min(matches, limit); i++) {
+				products.add(snapshot.product(hits[i]));
+			}
+			return new ProductScanResult(matches, products);
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of products whose description contains every term
+	 * of the query, and the page of them that starts at {@code offset} and
+	 * holds up to {@code limit} products, most relevant first. Terms are
+	 * the runs of letters and digits in the query, ignoring case.
+	 *
+	 * @throws IllegalArgumentException if the query has no terms, or the
+	 *         offset is negative
+	 */
+	public ProductSearchResult search(String query, int offset, int limit) {
+		List<String> terms = DescriptionIndex.terms(query);
+		if (terms.isEmpty()) {
+			throw new IllegalArgumentException("The query must contain at least one letter or digit");
+		}
+		if (offset < 0) {
+			throw new IllegalArgumentException("The offset must not be negative: " + offset);
+		}
+
+		ensureLoaded();
+		lock.readLock().lock();
+		try {
+			// no more hits than products, however far the page is
+			int[] hitRows = new int[(int) Math.min((long) offset + limit, snapshot.productCount())];
+			float[] hitScores = new float[hitRows.length];
+			int matches = snapshot.search(terms, hitRows, hitScores);
+			int end = Math.min(matches, hitRows.length);
+			List<ProductSearchHit> hits = new ArrayList<>(Math.max(0, end - offset));
+			for (int i = offset; i < end; i++) {
+				hits.add(new ProductSearchHit(hitScores[i], snapshot.product(hitRows[i])));
+			}
+			return new ProductSearchResult(matches, offset, hits);
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns up to {@code limit} products of the type ("widget" or "gadget",
+	 * or both if null) whose price is within the bounds, which are inclusive
+	 * and may be null. The products are in ProductSortOrder.PRICE, starting
+	 * after the product with the key {@code after}, or from the cheapest 
+	 * product if {@code after} is null.
+	 *
+	 * @throws IllegalArgumentException if the type is unknown
+	 */
+	public List<Product> findByPrice(String type, Double minPrice, Double maxPrice, ProductKey after, int limit) {
+		int typeMask = typeMask(type);
+		if (snapshot == null) {
+			try {
+				return dao.getProductsByPrice(type, minPrice, maxPrice, after, limit);
+			}
+			catch (Exception e) {
+				String msg = String.format("Error querying Products by price after %s in the Warehouse database.", after);
+				throw new WarehouseBusinessServiceException(msg, e);
+			}
+		}
+		long fromKey = (minPrice == null) ? Long.MIN_VALUE : PriceIndex.lowestKey(cents(minPrice, RoundingMode.CEILING));
+		long toKey = (maxPrice == null) ? Long.MAX_VALUE : PriceIndex.highestKey(cents(maxPrice, RoundingMode.FLOOR));
+		if (after != null) {
+			byte afterType = ProductKey.WIDGET.equals(after.getType()) ? CatalogSnapshot.WIDGET : CatalogSnapshot.GADGET;
+			long afterKey = PriceIndex.key(CatalogSnapshot.toCents(after.getPrice()), afterType, after.getId());
+			fromKey = Math.max(fromKey, afterKey + 1);
+		}
+		return productsByPrice(typeMask, fromKey, toKey, false, limit);
+	}
+
+	/**
+	 * Returns the {@code k} products of the type ("widget" or "gadget", or
+	 * both if null) with the highest or the lowest price. Highest first, 
+	 * the products are in the reverse of ProductSortOrder.PRICE.
+	 *
+	 * @throws IllegalArgumentException if the type is unknown
+	 */
+	public List<Product> findTopByPrice(String type, boolean highestFirst, int k) {
+		int typeMask = typeMask(type);
+		if (snapshot == null) {
+			try {
+				return dao.getTopProductsByPrice(type, highestFirst, k);
+			}
+			catch (Exception e) {
+				String msg = String.format("Error querying the top %d Products by price in the Warehouse database.", k);
+				throw new WarehouseBusinessServiceException(msg, e);
+			}
+		}
+		return productsByPrice(typeMask, Long.MIN_VALUE, Long.MAX_VALUE, highestFirst, k);
+	}
+
+	private List<Product> productsByPrice(int typeMask, long fromKey, long toKey, boolean descending, int limit) {
+		int[] rows = new int[limit];
+		lock.readLock().lock();
+		try {
+			int count = snapshot.rowsByPrice(typeMask, fromKey, toKey, descending, rows);
+			List<Product> products = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				products.add(snapshot.product(rows[i]));
+			}
+			return products;
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private static int typeMask(String type) {
+		if (type == null) {
+			return WIDGET_MASK | GADGET_MASK;
+		}
+		switch (type) {
+		case ProductKey.WIDGET:
+			return WIDGET_MASK;
+		case ProductKey.GADGET:
+			return GADGET_MASK;
+		default:
+			throw new IllegalArgumentException("Unknown product type: " + type);
+		}
+	}
+
+	private static int typeMask(ProductFilter filter) {
+		int mask = typeMask(filter.getType());
+		// only Widgets have gears and sprockets, only Gadgets have cylinders
+		if (filter.filtersWidgetColumns()) {
+			mask &= WIDGET_MASK;
+		}
+		if (filter.filtersGadgetColumns()) {
+			mask &= GADGET_MASK;
+		}
+		return mask;
+	}
+
+	// Prices beyond the range of the price column match either all or no rows
+	private static int cents(double price, RoundingMode rounding) {
+		long cents = BigDecimal.valueOf(price).movePointRight(2).setScale(0, rounding).longValue();
+		return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, cents));
+	}
+
+	private static int min(Integer bound) {
+		return (bound == null) ? Integer.MIN_VALUE : bound;
+	}
+
+	private static int max(Integer bound) {
+		return (bound == null) ? Integer.MAX_VALUE : bound;
+	}
+
+	// ***** CatalogChangeListener *****
+
+	@Override
+	public void widgetSaved(Widget w) {
+		write(s -> s.putWidget(w));
+	}
+
+	@Override
+	public void widgetRemoved(int id) {
+		write(s -> s.removeWidget(id));
+	}
+
+	@Override
+	public void gadgetSaved(Gadget g) {
+		write(s -> s.putGadget(g));
+	}
+
+	@Override
+	public void gadgetRemoved(int id) {
+		write(s -> s.removeGadget(id));
+	}
+
+	private void write(Consumer<CatalogSnapshot> write) {
+		lock.writeLock().lock();
+		try {
+			if (snapshot != null) {
+				write.accept(snapshot);
+			}
+			writeCount++;
+			if (writesDuringRebuild != null) {
+				writesDuringRebuild.add(write);
+			}
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+}
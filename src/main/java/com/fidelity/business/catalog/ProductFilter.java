@@ -0,0 +1,113 @@
+package com.fidelity.business.catalog;
+
+/**
+ * ProductFilter holds the criteria of a catalog scan. Every criterion is
+ * optional; a scan with an empty filter matches all products. Ranges are
+ * inclusive, and a range over gears or sprockets only matches Widgets, 
+ * while a range over cylinders only matches Gadgets.
+ * 
+ * The property names match the query parameters of 
+ * /warehouse/products/scan, for example:
+ *    /warehouse/products/scan?type=widget&minPrice=10&maxPrice=50&minGears=4
+ */
+public class ProductFilter {
+	private String type;
+	private Double minPrice;
+	private Double maxPrice;
+	private Integer minGears;
+	private Integer maxGears;
+	private Integer minSprockets;
+	private Integer maxSprockets;
+	private Integer minCylinders;
+	private Integer maxCylinders;
+
+	public ProductFilter() {}
+
+	public String getType() {
+		return type;
+	}
+
+	public void setType(String type) {
+		this.type = type;
+	}
+
+	public Double getMinPrice() {
+		return minPrice;
+	}
+
+	public void setMinPrice(Double minPrice) {
+		this.minPrice = minPrice;
+	}
+
+	public Double getMaxPrice() {
+		return maxPrice;
+	}
+
+	public void setMaxPrice(Double maxPrice) {
+		this.maxPrice = maxPrice;
+	}
+
+	public Integer getMinGears() {
+		return minGears;
+	}
+
+	public void setMinGears(Integer minGears) {
+		this.minGears = minGears;
+	}
+
+	public Integer getMaxGears() {
+		return maxGears;
+	}
+
+	public void setMaxGears(Integer maxGears) {
+		this.maxGears = maxGears;
+	}
+
+	public Integer getMinSprockets() {
+		return minSprockets;
+	}
+
+	public void setMinSprockets(Integer minSprockets) {
+		this.minSprockets = minSprockets;
+	}
+
+	public Integer getMaxSprockets() {
+		return maxSprockets;
+	}
+
+	public void setMaxSprockets(Integer maxSprockets) {
+		this.maxSprockets = maxSprockets;
+	}
+
+	public Integer getMinCylinders() {
+		return minCylinders;
+	}
+
+	public void setMinCylinders(Integer minCylinders) {
+		this.minCylinders = minCylinders;
+	}
+
+	public Integer getMaxCylinders() {
+		return maxCylinders;
+	}
+
+	public void setMaxCylinders(Integer maxCylinders) {
+		this.maxCylinders = maxCylinders;
+	}
+
+	boolean filtersWidgetColumns() {
+		return minGears != null || maxGears != null || minSprockets != null || maxSprockets != null;
+	}
+
+	boolean filtersGadgetColumns() {
+		return minCylinders != null || maxCylinders != null;
+	}
+
+	@Override
+	public String toString() {
+		return "ProductFilter [type=" + type + ", minPrice=" + minPrice + ", maxPrice=" + maxPrice 
+				+ ", minGears=" + minGears + ", maxGears=" + maxGears 
+				+ ", minSprockets=" + minSprockets + ", maxSprockets=" + maxSprockets 
+				+ ", minCylinders=" + minCylinders + ", maxCylinders=" + maxCylinders + "]";
+	}
+}
@@ -0,0 +1,39 @@
+package com.fidelity.business.catalog;
+
+import java.util.List;
+
+import com.fidelity.business.Product;
+
+/**
+ * ProductScanResult holds the outcome of a catalog scan: the number of 
+ * products that match the filter, and the first of those products, up
+ * to the limit of the scan.
+ *    { "matchCount": 2, "products": [ {...}, {...} ] }
+ */
+public class ProductScanResult {
+	private int matchCount;
+	private List<Product> products;
+
+	public ProductScanResult() {}
+
+	public ProductScanResult(int matchCount, List<Product> products) {
+		this.matchCount = matchCount;
+		this.products = products;
+	}
+
+	public int getMatchCount() {
+		return matchCount;
+	}
+
+	public void setMatchCount(int matchCount) {
+		this.matchCount = matchCount;
+	}
+
+	public List<Product> getProducts() {
+		return products;
+	}
+
+	public void setProducts(List<Product> products) {
+		this.products = products;
+	}
+}
@@ -0,0 +1,35 @@
+package com.fidelity.business.catalog;
+
+import com.fidelity.business.Product;
+
+/**
+ * ProductSearchHit is one product found by a description search, with its
+ * relevance score. Scores are only comparable within the same search.
+ */
+public class ProductSearchHit {
+	private double score;
+	private Product product;
+
+	public ProductSearchHit() {}
+
+	public ProductSearchHit(double score, Product product) {
+		this.score = score;
+		this.product = product;
+	}
+
+	public double getScore() {
+		return score;
+	}
+
+	public void setScore(double score) {
+		this.score = score;
+	}
+
+	public Product getProduct() {
+		return product;
+	}
+
+	public void setProduct(Product product) {
+		this.product = product;
+	}
+}
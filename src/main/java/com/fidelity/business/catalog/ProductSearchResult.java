@@ -0,0 +1,47 @@
+package com.fidelity.business.catalog;
+
+import java.util.List;
+
+/**
+ * ProductSearchResult holds the outcome of a description search: the 
+ * number of products that match the query, and one page of those 
+ * products, most relevant first, starting at the offset of the page.
+ *    { "matchCount": 2, "offset": 0, "hits": [ { "score": 1.3, "product": {...} }, ... ] }
+ */
+public class ProductSearchResult {
+	private int matchCount;
+	private int offset;
+	private List<ProductSearchHit> hits;
+
+	public ProductSearchResult() {}
+
+	public ProductSearchResult(int matchCount, int offset, List<ProductSearchHit> hits) {
+		this.matchCount = matchCount;
+		this.offset = offset;
+		this.hits = hits;
+	}
+
+	public int getMatchCount() {
+		return matchCount;
+	}
+
+	public void setMatchCount(int matchCount) {
+		this.matchCount = matchCount;
+	}
+
+	public int getOffset() {
+		return offset;
+	}
+
+	public void setOffset(int offset) {
+		this.offset = offset;
+	}
+
+	public List<ProductSearchHit> getHits() {
+		return hits;
+	}
+
+	public void setHits(List<ProductSearchHit> hits) {
+		this.hits = hits;
+	}
+}
@@ -0,0 +1,65 @@
+package com.fidelity.business.service;
+
+import com.fidelity.business.Gadget;
+import com.fidelity.business.Widget;
+
+/**
+ * A CatalogChangeListener is told about every Widget and Gadget that
+ * WarehouseBusinessService writes to the database, so that it can keep 
+ * an in-memory view of the catalog current without querying the database.
+ * 
+ * Every Spring bean that implements this interface is registered with the 
+ * service. The methods are called after the database statement succeeded, 
+ * on the thread of the caller, so they must be quick and must not throw. 
+ * Changes made to the database by other means, such as SQL scripts, are 
+ * not reported.
+ */
+public interface CatalogChangeListener {
+	/**
+	 * Called after a Widget was inserted or updated. The Widget holds the
+	 * values written to the database, including the generated id.
+	 * Listeners that need to tell inserts from updates override 
+	 * widgetAdded() and widgetUpdated() instead.
+	 */
+	default void widgetSaved(Widget w) {}
+
+	/**
+	 * Called after a Widget was inserted. By default, calls widgetSaved().
+	 */
+	default void widgetAdded(Widget w) {
+		widgetSaved(w);
+	}
+
+	/**
+	 * Called after a Widget was updated. By default, calls widgetSaved().
+	 */
+	default void widgetUpdated(Widget w) {
+		widgetSaved(w);
+	}
+
+	void widgetRemoved(int id);
+
+	/**
+	 * Called after a Gadget was inserted or updated. The Gadget holds the
+	 * values written to the database, including the generated id.
+	 * Listeners that need to tell inserts from updates override 
+	 * gadgetAdded() and gadgetUpdated() instead.
+	 */
+	default void gadgetSaved(Gadget g) {}
+
+	/**
+	 * Called after a Gadget was inserted. By default, calls gadgetSaved().
+	 */
+	default void gadgetAdded(Gadget g) {
+		gadgetSaved(g);
+	}
+
+	/**
+	 * Called after a Gadget was updated. By default, calls gadgetSaved().
+	 */
+	default void gadgetUpdated(Gadget g) {
+		gadgetSaved(g);
+	}
+
+	void gadgetRemoved(int id);
+}
@@ -0,0 +1,92 @@
+package com.fidelity.business.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * SingleFlight collapses concurrent loads of the same key into one call.
+ * The first caller for a key runs the loader; callers that arrive while
+ * that load is in flight wait for it and receive its result, or have its
+ * exception rethrown. Once the load completes, the next caller starts
+ * a new one, so results are never reused after the fact.
+ * 
+ * A caller that finds a load in flight joins it with a single map lookup,
+ * without taking a lock. All callers of one load receive the same result
+ * object, which therefore must not be modified.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the loaded values
+ */
+class SingleFlight<K, V> {
+	private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+	private final LongAdder collapsedCalls = new LongAdder();
+
+	/**
+	 * Returns the value loaded for the key, either by running the loader
+	 * or by waiting for a load of the same key that is already in flight.
+	 */
+	V load(K key, Supplier<V> loader) {
+		CompletableFuture<V> call = inFlight.get(key);
+		if (call == null) {
+			CompletableFuture<V> ownCall = new CompletableFuture<>();
+			call = inFlight.putIfAbsent(key, ownCall);
+			if (call == null) {
+				return run(key, ownCall, loader);
+			}
+		}
+		collapsedCalls.increment();
+		return await(call);
+	}
+
+	/**
+	 * Stops later callers from joining the load of the key that is in flight.
+	 * Call this after changing the data behind the key, so that no caller
+	 * receives a value that was read before the change.
+	 */
+	void forget(K key) {
+		inFlight.remove(key);
+	}
+
+	/**
+	 * Returns the number of calls that received the result of another 
+	 * caller's load instead of running their own.
+	 */
+	long getCollapsedCalls() {
+		return collapsedCalls.sum();
+	}
+
+	private V run(K key, CompletableFuture<V> call, Supplier<V> loader) {
+		try {
+			V value = loader.get();
+			call.complete(value);
+			return value;
+		} 
+		catch (RuntimeException | Error e) {
+			call.completeExceptionally(e);
+			throw e;
+		} 
+		finally {
+			inFlight.remove(key, call);
+		}
+	}
+
+	private static <V> V await(CompletableFuture<V> call) {
+		try {
+			return call.join();
+		} 
+		catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw e;
+		}
+	}
+}
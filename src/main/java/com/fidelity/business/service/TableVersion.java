@@ -0,0 +1,24 @@
+package com.fidelity.business.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TableVersion counts the changes made to one table through the business
+ * service. The version is incremented by every insert, update and delete.
+ * The version of a single row is its version column in the database.
+ * 
+ * The versions are only as good as the writes that go through this service 
+ * instance: changes made by other instances or directly in the database
+ * are not counted.
+ */
+class TableVersion {
+	private final AtomicLong version = new AtomicLong();
+
+	long current() {
+		return version.get();
+	}
+
+	void changed() {
+		version.incrementAndGet();
+	}
+}
@@ -1,8 +1,13 @@
 package com.fidelity.business.service;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 import com.fidelity.business.Gadget;
+import com.fidelity.business.Product;
+import com.fidelity.business.ProductKey;
+import com.fidelity.business.ProductSortOrder;
 import com.fidelity.business.Widget;
 
 /**
@@ -15,16 +20,32 @@ import com.fidelity.business.Widget;
 public interface WarehouseBusinessService {
 	// ***** Widget Methods *****
 	List<Widget> findAllWidgets();
+	void streamAllWidgets(Consumer<? super Widget> action);
+	List<Widget> findWidgetsAfter(int afterId, int limit);
+	List<Widget> findWidgetsByIds(Collection<Integer> ids);
 	Widget findWidgetById(int id);
 	int removeWidget(int id);
 	int addWidget(Widget w);
+	List<Integer> addWidgets(List<Widget> widgets);
 	int modifyWidget(Widget originalWidget);
+	int modifyWidget(Widget w, int expectedVersion);
+	long getWidgetsVersion();
 	
 	// ***** Gadget Methods *****
 	List<Gadget> findAllGadgets();
+	void streamAllGadgets(Consumer<? super Gadget> action);
+	List<Gadget> findGadgetsAfter(int afterId, int limit);
+	List<Gadget> findGadgetsByIds(Collection<Integer> ids);
 	Gadget findGadgetById(int id);
 	int removeGadget(int id);
 	int addGadget(Gadget g);
+	List<Integer> addGadgets(List<Gadget> gadgets);
 	int modifyGadget(Gadget g);
+	int modifyGadget(Gadget g, int expectedVersion);
+	long getGadgetsVersion();
+
+	// ***** Product Methods *****
+	List<Product> findProductsPage(ProductSortOrder order, ProductKey after, int limit);
+	List<Product> findProductsByIds(Collection<Integer> widgetIds, Collection<Integer> gadgetIds);
 
 }
\ No newline at end of file
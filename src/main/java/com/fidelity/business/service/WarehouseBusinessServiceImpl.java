@@ -1,33 +1,118 @@
 package com.fidelity.business.service;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
+
+import javax.annotation.PostConstruct;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
 
 import com.fidelity.business.Gadget;
+import com.fidelity.business.Product;
+import com.fidelity.business.ProductKey;
+import com.fidelity.business.ProductSortOrder;
 import com.fidelity.business.Widget;
 import com.fidelity.integration.WarehouseDao;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
 /**
  * The business service that manipulates Widgets and Gadgets 
  * in the warehouse.
  * 
+ * Single Widgets and Gadgets are served from a read-through cache
+ * (see WarehouseCacheConfig). Updates and deletes evict the affected
+ * entry, as do inserts, because a cache entry may record that an id
+ * was not found. Cached objects are shared by all callers and must
+ * not be modified.
+ * 
+ * Updates can be made conditional on the version of the row in the
+ * database (compare-and-set), which lets clients detect that another
+ * client changed the row since they read it without locking the row.
+ * 
+ * Every successful insert, update and delete increments the version
+ * of the Widget or Gadget table (see TableVersion). The versions let
+ * callers tell whether their copy of a table is current without querying
+ * the database.
+ * 
+ * Concurrent lookups of all Widgets or all Gadgets share one DAO call
+ * (see SingleFlight); the number of collapsed calls is published as the
+ * warehouse.service.collapsed metric. Lookups of a single product need
+ * no such help: the cache loads each id once (sync=true), and its
+ * refreshes are made one at a time by the cache (see WarehouseCacheConfig).
+ * 
+ * Successful writes are also reported to every CatalogChangeListener bean,
+ * after the versions have been updated.
+ * 
+ * When warehouse.write-behind.enabled is true, unconditional updates are
+ * queued in a WriteBehindQueue instead and reported to the listeners once
+ * they have been flushed to the database, if they updated a row. Such an
+ * update is acknowledged with a count of 1 before the row is known to
+ * exist; the update of a missing product is dropped by the flush. A lookup
+ * by id, a delete and a conditional update of a product with a queued 
+ * update flush the queue first, so this instance reads its own writes for
+ * single products; queries over many products see queued updates after 
+ * the next flush.
+ * 
  * @author ROI Instructor
  *
  */
 @Service
-public class WarehouseBusinessServiceImpl implements WarehouseBusinessService {
+@Profile("!reactive")
+public class WarehouseBusinessServiceImpl implements WarehouseBusinessService, MeterBinder {
+	// The key of the loads of all Widgets or all Gadgets
+	private static final String ALL = "all";
+
 	@Autowired
 	private WarehouseDao dao;
 
+	@Autowired(required=false)
+	private List<CatalogChangeListener> listeners = List.of();
+
+	// Present only in write-behind mode
+	@Autowired(required=false)
+	private WriteBehindQueue writeBehind;
+
+	private final TableVersion widgetVersion = new TableVersion();
+	private final TableVersion gadgetVersion = new TableVersion();
+
+	private final SingleFlight<String, List<Widget>> allWidgetLoads = new SingleFlight<>();
+	private final SingleFlight<String, List<Gadget>> allGadgetLoads = new SingleFlight<>();
+
+	@PostConstruct
+	public void init() {
+		if (writeBehind != null) {
+			writeBehind.setFlushListener(this::updatesFlushed);
+		}
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		bindCollapsedCalls(registry, "findAllWidgets", allWidgetLoads);
+		bindCollapsedCalls(registry, "findAllGadgets", allGadgetLoads);
+	}
+
+	private static void bindCollapsedCalls(MeterRegistry registry, String operation, SingleFlight<?, ?> loads) {
+		FunctionCounter.builder("warehouse.service.collapsed", loads, SingleFlight::getCollapsedCalls)
+					   .description("Calls that shared the DAO call of a concurrent identical call")
+					   .tag("operation", operation)
+					   .register(registry);
+	}
+
 	// ***** Widget Methods *****
 	@Override
 	public List<Widget> findAllWidgets() {
 		List<Widget> widgets;
 		
 		try {
-			widgets = dao.getAllWidgets();
+			widgets = allWidgetLoads.load(ALL, dao::getAllWidgets);
 		} catch (Exception e) {
 			String msg = "Error querying all Widgets in the Warehouse database.";
 			throw new WarehouseBusinessServiceException(msg, e);
@@ -37,10 +122,50 @@ public class WarehouseBusinessServiceImpl implements WarehouseBusinessService {
 	}
 
 	@Override
+	public void streamAllWidgets(Consumer<? super Widget> action) {
+		try {
+			dao.streamAllWidgets(action);
+		} catch (Exception e) {
+			String msg = "Error streaming all Widgets from the Warehouse database.";
+			throw new WarehouseBusinessServiceException(msg, e);
+		}
+	}
+
+	@Override
+	public List<Widget> findWidgetsAfter(int afterId, int limit) {
+		List<Widget> widgets;
+		
+		try {
+			widgets = dao.getWidgetsAfter(afterId, limit);
+		} catch (Exception e) {
+			String msg = String.format("Error querying a page of Widgets after id = %d in the Warehouse database.", afterId);
+			throw new WarehouseBusinessServiceException(msg, e);
+		}
+		
+		return widgets;
+	}
+
+	@Override
+	public List<Widget> findWidgetsByIds(Collection<Integer> ids) {
+		List<Widget> widgets;
+		
+		try {
+			widgets = dao.getWidgets(ids);
+		} catch (Exception e) {
+			String msg = String.format("Error querying for %d Widgets by id in the Warehouse database.", ids.size());
+			throw new WarehouseBusinessServiceException(msg, e);
+		}
+		
+		return widgets;
+	}
+
+	@Override
+	@Cacheable(cacheNames=WarehouseCacheConfig.WIDGET_CACHE, key="#id", sync=true)
 	public Widget findWidgetById(int id) {
 		Widget widget = null;
 
 		try {
+			flushPendingWidget(id);
 			widget = dao.getWidget(id);
 		} catch (Exception e) {
 			String msg = String.format("Error querying For Widget with id = %d in the Warehouse database.", id);
@@ -51,20 +176,27 @@ public class WarehouseBusinessServiceImpl implements WarehouseBusinessService {
 	}
 
 	@Override
+	@CacheEvict(cacheNames=WarehouseCacheConfig.WIDGET_CACHE, key="#id")
 	public int removeWidget(int id) {
 		int count = 0;
 		
 		try {
+			flushPendingWidget(id);
 			count = dao.deleteWidget(id);
 		} catch (Exception e) {
 			String msg = String.format("Error removing Widget with id = %d the Warehouse database.", id);
 			throw new WarehouseBusinessServiceException(msg, e);
 		}
+		if (count > 0) {
+			widgetsChanged();
+			listeners.forEach(l -> l.widgetRemoved(id));
+		}
 		
 		return count;
 	}
 
 	@Override
+	@CacheEvict(cacheNames=WarehouseCacheConfig.WIDGET_CACHE, key="#w.id")
 	public int addWidget(Widget w) {
 		int count = 0;
 		
@@ -74,31 +206,103 @@ public class WarehouseBusinessServiceImpl implements WarehouseBusinessService {
 			String msg = "Error inserting Widget into the Warehouse database.";
 			throw new WarehouseBusinessServiceException(msg, e);
 		}
+		if (count > 0) {
+			widgetsChanged();
+			listeners.forEach(l -> l.widgetAdded(w));
+		}
 
 		return count;
 	}
 
+	// Clears the whole cache, because any of the generated ids
+	// may have been cached as not found
 	@Override
+	@CacheEvict(cacheNames=WarehouseCacheConfig.WIDGET_CACHE, allEntries=true)
+	public List<Integer> addWidgets(List<Widget> widgets) {
+		List<Integer> ids;
+		
+		try {
+			ids = dao.insertWidgets(widgets);
+		} catch (Exception e) {
+			String msg = String.format("Error inserting %d Widgets into the Warehouse database.", widgets.size());
+			throw new WarehouseBusinessServiceException(msg, e);
+		}
+		widgetsChanged();
+		widgets.forEach(w -> listeners.forEach(l -> l.widgetAdded(w)));
+
+		return ids;
+	}
+
+	@Override
+	@CacheEvict(cacheNames=WarehouseCacheConfig.WIDGET_CACHE, key="#w.id")
 	public int modifyWidget(Widget w) {
 		int count = 0;
 		
+		if (writeBehind != null) {
+			try {
+				writeBehind.enqueue(w);
+			} catch (Exception e) {
+				String msg = String.format("Error queueing the update of Widget with id = %d.", w.getId());
+				throw new WarehouseBusinessServiceException(msg, e);
+			}
+			return 1;
+		}
 		try {
 			count = dao.updateWidget(w);
 		} catch (Exception e) {
 			String msg = "Error updating Widget in the Warehouse database.";
 			throw new WarehouseBusinessServiceException(msg, e);
 		}
+		if (count > 0) {
+			widgetsChanged();
+			listeners.forEach(l -> l.widgetUpdated(w));
+		}
+
+		return count;
+	}
+
+	// Evicts the cached Widget even when the version did not match,
+	// because the cached copy is then out of date
+	@Override
+	@CacheEvict(cacheNames=WarehouseCacheConfig.WIDGET_CACHE, key="#w.id")
+	public int modifyWidget(Widget w, int expectedVersion) {
+		int count = 0;
+		
+		try {
+			flushPendingWidget(w.getId());
+			count = dao.updateWidget(w, expectedVersion);
+		} catch (Exception e) {
+			String msg = String.format("Error updating Widget with id = %d at version %d in the Warehouse database.", 
+									   w.getId(), expectedVersion);
+			throw new WarehouseBusinessServiceException(msg, e);
+		}
+		if (count > 0) {
+			widgetsChanged();
+			listeners.forEach(l -> l.widgetUpdated(w));
+		}
 
 		return count;
 	}
 
+	@Override
+	public long getWidgetsVersion() {
+		return widgetVersion.current();
+	}
+
+	// Called after a write, so that later callers neither see the old 
+	// version nor join a load that may have read the old rows
+	private void widgetsChanged() {
+		widgetVersion.changed();
+		allWidgetLoads.forget(ALL);
+	}
+
 	// ***** Gadget Methods *****
 	@Override
 	public List<Gadget> findAllGadgets() {
 		List<Gadget> gadgets = null;
 		
 		try {
-			gadgets = dao.getAllGadgets();
+			gadgets = allGadgetLoads.load(ALL, dao::getAllGadgets);
 		} catch (Exception e) {
 			String msg = "Error querying for all Gadgets in the Warehouse database.";
 			throw new WarehouseBusinessServiceException(msg, e);
@@ -108,10 +312,50 @@ public class WarehouseBusinessServiceImpl implements WarehouseBusinessService {
 	}
 
 	@Override
+	public void streamAllGadgets(Consumer<? super Gadget> action) {
+		try {
+			dao.streamAllGadgets(action);
+		} catch (Exception e) {
+			String msg = "Error streaming all Gadgets from the Warehouse database.";
+			throw new WarehouseBusinessServiceException(msg, e);
+		}
+	}
+
+	@Override
+	public List<Gadget> findGadgetsAfter(int afterId, int limit) {
+		List<Gadget> gadgets = null;
+		
+		try {
+			gadgets = dao.getGadgetsAfter(afterId, limit);
+		} catch (Exception e) {
+			String msg = String.format("Error querying a page of Gadgets after id = %d in the Warehouse database.", afterId);
+			throw new WarehouseBusinessServiceException(msg, e);
+		}
+		
+		return gadgets;
+	}
+
+	@Override
+	public List<Gadget> findGadgetsByIds(Collection<Integer> ids) {
+		List<Gadget> gadgets;
+		
+		try {
+			gadgets = dao.getGadgets(ids);
+		} catch (Exception e) {
+			String msg = String.format("Error querying for %d Gadgets by id in the Warehouse database.", ids.size());
+			throw new WarehouseBusinessServiceException(msg, e);
+		}
+		
+		return gadgets;
+	}
+
+	@Override
+	@Cacheable(cacheNames=WarehouseCacheConfig.GADGET_CACHE, key="#id", sync=true)
 	public Gadget findGadgetById(int id) {
 		Gadget gadget = null;
 		
 		try {
+			flushPendingGadget(id);
 			gadget = dao.getGadget(id);
 		} catch (Exception e) {
 			String msg = String.format("Error querying for Gadget with id = %d in the Warehouse database.", id);
@@ -123,20 +367,27 @@ public class WarehouseBusinessServiceImpl implements WarehouseBusinessService {
 
 	
 	@Override
+	@CacheEvict(cacheNames=WarehouseCacheConfig.GADGET_CACHE, key="#id")
 	public int removeGadget(int id) {
 		int count = 0;
 		
 		try {
+			flushPendingGadget(id);
 			count = dao.deleteGadget(id);
 		} catch (Exception e) {
 			String msg = "Error removing Gadget in the Warehouse database.";
 			throw new WarehouseBusinessServiceException(msg, e);
 		}
+		if (count > 0) {
+			gadgetsChanged();
+			listeners.forEach(l -> l.gadgetRemoved(id));
+		}
 		
 		return count;
 	}
 
 	@Override
+	@CacheEvict(cacheNames=WarehouseCacheConfig.GADGET_CACHE, key="#g.id")
 	public int addGadget(Gadget g) {
 		int count = 0;
 		
@@ -146,23 +397,148 @@ public class WarehouseBusinessServiceImpl implements WarehouseBusinessService {
 			String msg = "Error inserting Gadget into the Warehouse database.";
 			throw new WarehouseBusinessServiceException(msg, e);
 		}
+		if (count > 0) {
+			gadgetsChanged();
+			listeners.forEach(l -> l.gadgetAdded(g));
+		}
 		
 		return count;
 	}
 
 	@Override
+	@CacheEvict(cacheNames=WarehouseCacheConfig.GADGET_CACHE, allEntries=true)
+	public List<Integer> addGadgets(List<Gadget> gadgets) {
+		List<Integer> ids;
+		
+		try {
+			ids = dao.insertGadgets(gadgets);
+		} catch (Exception e) {
+			String msg = String.format("Error inserting %d Gadgets into the Warehouse database.", gadgets.size());
+			throw new WarehouseBusinessServiceException(msg, e);
+		}
+		gadgetsChanged();
+		gadgets.forEach(g -> listeners.forEach(l -> l.gadgetAdded(g)));
+		
+		return ids;
+	}
+
+	@Override
+	@CacheEvict(cacheNames=WarehouseCacheConfig.GADGET_CACHE, key="#g.id")
 	public int modifyGadget(Gadget g) {
 		int count = 0;
 		
+		if (writeBehind != null) {
+			try {
+				writeBehind.enqueue(g);
+			} catch (Exception e) {
+				String msg = String.format("Error queueing the update of Gadget with id = %d.", g.getId());
+				throw new WarehouseBusinessServiceException(msg, e);
+			}
+			return 1;
+		}
 		try {
 			count = dao.updateGadget(g);
 		} catch (Exception e) {
 			String msg = "Error updating Gadget in the Warehouse database.";
 			throw new WarehouseBusinessServiceException(msg, e);
 		}
+		if (count > 0) {
+			gadgetsChanged();
+			listeners.forEach(l -> l.gadgetUpdated(g));
+		}
 
 		return count;
 	}
 
-	
+	@Override
+	@CacheEvict(cacheNames=WarehouseCacheConfig.GADGET_CACHE, key="#g.id")
+	public int modifyGadget(Gadget g, int expectedVersion) {
+		int count = 0;
+		
+		try {
+			flushPendingGadget(g.getId());
+			count = dao.updateGadget(g, expectedVersion);
+		} catch (Exception e) {
+			String msg = String.format("Error updating Gadget with id = %d at version %d in the Warehouse database.", 
+									   g.getId(), expectedVersion);
+			throw new WarehouseBusinessServiceException(msg, e);
+		}
+		if (count > 0) {
+			gadgetsChanged();
+			listeners.forEach(l -> l.gadgetUpdated(g));
+		}
+
+		return count;
+	}
+
+	@Override
+	public long getGadgetsVersion() {
+		return gadgetVersion.current();
+	}
+
+	private void gadgetsChanged() {
+		gadgetVersion.changed();
+		allGadgetLoads.forget(ALL);
+	}
+
+	// ***** Write-behind *****
+
+	private void flushPendingWidget(int id) {
+		if (writeBehind != null) {
+			writeBehind.flushWidget(id);
+		}
+	}
+
+	private void flushPendingGadget(int id) {
+		if (writeBehind != null) {
+			writeBehind.flushGadget(id);
+		}
+	}
+
+	// Called by the WriteBehindQueue after each flush has committed
+	private void updatesFlushed(List<Product> products) {
+		for (Product product : products) {
+			if (product instanceof Widget) {
+				Widget w = (Widget) product;
+				widgetsChanged();
+				listeners.forEach(l -> l.widgetUpdated(w));
+			}
+			else {
+				Gadget g = (Gadget) product;
+				gadgetsChanged();
+				listeners.forEach(l -> l.gadgetUpdated(g));
+			}
+		}
+	}
+
+	// ***** Product Methods *****
+	@Override
+	public List<Product> findProductsPage(ProductSortOrder order, ProductKey after, int limit) {
+		List<Product> products;
+		
+		try {
+			products = dao.getProductsPage(order, after, limit);
+		} catch (Exception e) {
+			String msg = String.format("Error querying a page of Products after %s in the Warehouse database.", after);
+			throw new WarehouseBusinessServiceException(msg, e);
+		}
+		
+		return products;
+	}
+
+	@Override
+	public List<Product> findProductsByIds(Collection<Integer> widgetIds, Collection<Integer> gadgetIds) {
+		List<Product> products;
+		
+		try {
+			products = dao.getProducts(widgetIds, gadgetIds);
+		} catch (Exception e) {
+			String msg = String.format("Error querying for %d Widgets and %d Gadgets by id in the Warehouse database.", 
+									   widgetIds.size(), gadgetIds.size());
+			throw new WarehouseBusinessServiceException(msg, e);
+		}
+		
+		return products;
+	}
+
 }
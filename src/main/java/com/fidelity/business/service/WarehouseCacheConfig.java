@@ -0,0 +1,66 @@
+package com.fidelity.business.service;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import com.fidelity.integration.WarehouseDao;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+
+/**
+ * Configures the read-through caches used by WarehouseBusinessServiceImpl
+ * for single Widget and Gadget lookups.
+ *
+ * Each cache is bounded by size and entries expire a fixed time after they
+ * are loaded. An entry that is read after the refresh interval is reloaded
+ * in the background while callers keep getting the current value, so hot
+ * entries are refreshed before they expire. When an entry is missing, only
+ * one caller loads it from the database; concurrent callers for the same id
+ * wait for that load (see sync = true on the @Cacheable methods).
+ *
+ * Hit, miss and eviction counts are published by Actuator as the
+ * cache.gets and cache.evictions metrics.
+ */
+@Configuration
+@EnableCaching
+@Profile("!reactive")
+public class WarehouseCacheConfig {
+	public static final String WIDGET_CACHE = "widgets";
+	public static final String GADGET_CACHE = "gadgets";
+
+	@Value("${warehouse.cache.maximum-size:10000}")
+	private long maximumSize;
+
+	@Value("${warehouse.cache.expire-after-write:5m}")
+	private Duration expireAfterWrite;
+
+	@Value("${warehouse.cache.refresh-after-write:1m}")
+	private Duration refreshAfterWrite;
+
+	@Bean
+	public CacheManager cacheManager(WarehouseDao dao) {
+		CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+		cacheManager.registerCustomCache(WIDGET_CACHE, buildCache(id -> dao.getWidget((Integer) id)));
+		cacheManager.registerCustomCache(GADGET_CACHE, buildCache(id -> dao.getGadget((Integer) id)));
+		return cacheManager;
+	}
+
+	// The loader is only used to refresh entries; misses are loaded
+	// by the @Cacheable service method itself.
+	private LoadingCache<Object, Object> buildCache(CacheLoader<Object, Object> loader) {
+		return Caffeine.newBuilder()
+					   .maximumSize(maximumSize)
+					   .expireAfterWrite(expireAfterWrite)
+					   .refreshAfterWrite(refreshAfterWrite)
+					   .recordStats()
+					   .build(loader);
+	}
+}
@@ -0,0 +1,454 @@
+package com.fidelity.business.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fidelity.business.Gadget;
+import com.fidelity.business.Product;
+import com.fidelity.business.Widget;
+import com.fidelity.integration.WarehouseDao;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * WriteBehindQueue takes the unconditional updates of Widgets and Gadgets
+ * off the request path when warehouse.write-behind.enabled is true.
+ *
+ * An update is acknowledged once it has been appended to a journal file
+ * and the file has been forced to disk. Appends that arrive while another
+ * thread is forcing the file are forced together by the next force (group
+ * commit), so a burst of updates costs a few fsyncs, not one each. The
+ * updates are kept in memory by product, so repeated updates of the same
+ * product are coalesced into the latest one.
+ *
+ * A background thread flushes the queue every warehouse.write-behind.flush-
+ * interval, or as soon as batch-size products are queued. A flush writes
+ * all queued products with JDBC batches in one transaction; the update of
+ * a product that does not exist matches no row and is dropped. The journal is
+ * rotated when the flush starts and the rotated file is deleted once the
+ * transaction has committed. A flush that fails is retried with the same
+ * products, before any newer ones.
+ *
+ * At most warehouse.write-behind.max-pending products are queued. An update
+ * of another product then waits for a flush, for up to offer-timeout,
+ * which slows producers down to the rate the database can take.
+ *
+ * The queue is flushed when the service shuts down. After a crash, the
+ * updates left in the journal files are written to the database when the
+ * service starts, before it takes requests.
+ */
+@Component
+@ConditionalOnProperty(name="warehouse.write-behind.enabled", havingValue="true")
+@Profile("!reactive")
+public class WriteBehindQueue implements MeterBinder {
+	private static final String WIDGET = "widget";
+	private static final String GADGET = "gadget";
+
+	@Autowired
+	private Logger logger;
+
+	@Autowired
+	private WarehouseDao dao;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Value("${warehouse.write-behind.journal:write-behind.journal}")
+	private String journalName;
+
+	@Value("${warehouse.write-behind.max-pending:10000}")
+	private int maxPending;
+
+	@Value("${warehouse.write-behind.batch-size:500}")
+	private int batchSize;
+
+	@Value("${warehouse.write-behind.flush-interval:100ms}")
+	private Duration flushInterval;
+
+	@Value("${warehouse.write-behind.offer-timeout:5s}")
+	private Duration offerTimeout;
+
+	private Path journal;
+	private Path flushingJournal;
+
+	// Guarded by this
+	private FileChannel channel;
+	private long journalBytes;
+	private Map<String, Product> pending = new LinkedHashMap<>();
+	private Map<String, Product> flushing;
+	private boolean flushRequested;
+	private long coalesced;
+
+	// The journal bytes, counted over all journal files, that are on disk
+	private final AtomicLong syncedBytes = new AtomicLong();
+	private final Object syncLock = new Object();
+
+	// Held for the whole of a flush, so that flushes do not overlap
+	private final Object flushLock = new Object();
+	private final AtomicLong flushed = new AtomicLong();
+
+	private Consumer<List<Product>> flushListener = products -> {};
+
+	private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(task -> {
+		Thread thread = new Thread(task, "write-behind");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	@PostConstruct
+	public void init() throws IOException {
+		journal = Paths.get(journalName).toAbsolutePath();
+		flushingJournal = journal.resolveSibling(journal.getFileName() + ".flushing");
+		Files.createDirectories(journal.getParent());
+		replayJournals();
+		channel = FileChannel.open(journal, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+								   StandardOpenOption.TRUNCATE_EXISTING);
+		long interval = flushInterval.toMillis();
+		flusher.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void shutdown() throws InterruptedException, IOException {
+		flusher.shutdown();
+		flusher.awaitTermination(10, TimeUnit.SECONDS);
+		try {
+			while (hasPending()) {
+				flush();
+			}
+		}
+		catch (RuntimeException e) {
+			logger.error("Could not flush the write-behind queue; the updates are kept in {}", journal, e);
+		}
+		synchronized (this) {
+			channel.close();
+		}
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		Gauge.builder("warehouse.write-behind.pending", this, WriteBehindQueue::getPendingCount)
+			 .description("Products whose update has not been flushed to the database")
+			 .register(registry);
+		FunctionCounter.builder("warehouse.write-behind.coalesced", this, WriteBehindQueue::getCoalescedCount)
+					   .description("Updates replaced by a later update of the same product before a flush")
+					   .register(registry);
+		FunctionCounter.builder("warehouse.write-behind.flushed", flushed, AtomicLong::get)
+					   .description("Products updated in the database by flushes")
+					   .register(registry);
+	}
+
+	/**
+	 * Sets the callback that is passed the products whose rows were updated
+	 * by each flush, after the transaction has committed. Updates of
+	 * products that do not exist are not passed.
+	 */
+	public void setFlushListener(Consumer<List<Product>> flushListener) {
+		this.flushListener = flushListener;
+	}
+
+	/**
+	 * Queues the update of a Widget or Gadget and returns once it is in
+	 * the journal on disk.
+	 *
+	 * @throws IllegalStateException if the queue stayed full for offer-timeout
+	 * @throws UncheckedIOException if the journal cannot be written
+	 */
+	public void enqueue(Product product) {
+		String key = key(product);
+		ByteBuffer record = StandardCharsets.UTF_8.encode(journalRecord(product));
+		long end;
+		synchronized (this) {
+			awaitRoomFor(key);
+			try {
+				while (record.hasRemaining()) {
+					journalBytes += channel.write(record);
+				}
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException("Could not write the write-behind journal " + journal, e);
+			}
+			end = journalBytes;
+			if (pending.put(key, product) != null) {
+				coalesced++;
+			}
+			if (pending.size() >= batchSize && !flushRequested) {
+				flushRequested = true;
+				flusher.execute(this::flushQuietly);
+			}
+		}
+		sync(end);
+	}
+
+	/**
+	 * Flushes the queue if it holds an update of the Widget, so that the
+	 * database is up to date for the id.
+	 */
+	public void flushWidget(int id) {
+		flushIfPending(WIDGET + id);
+	}
+
+	/**
+	 * Flushes the queue if it holds an update of the Gadget, so that the
+	 * database is up to date for the id.
+	 */
+	public void flushGadget(int id) {
+		flushIfPending(GADGET + id);
+	}
+
+	public synchronized int getPendingCount() {
+		return pending.size() + (flushing == null ? 0 : flushing.size());
+	}
+
+	public synchronized long getCoalescedCount() {
+		return coalesced;
+	}
+
+	private void flushIfPending(String key) {
+		boolean queued;
+		synchronized (this) {
+			queued = pending.containsKey(key) || (flushing != null && flushing.containsKey(key));
+		}
+		if (queued) {
+			// the flush of another thread may have started before the update
+			// was queued, so this flush writes the update if that one does not
+			flush();
+		}
+	}
+
+	private synchronized boolean hasPending() {
+		return !pending.isEmpty() || flushing != null;
+	}
+
+	// Waits, holding no lock but this, for a flush to make room for the key
+	private void awaitRoomFor(String key) {
+		long deadline = System.nanoTime() + offerTimeout.toNanos();
+		while (!pending.containsKey(key) && pending.size() >= maxPending) {
+			long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+			if (remaining <= 0) {
+				throw new IllegalStateException("The write-behind queue is full");
+			}
+			try {
+				wait(remaining);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for the write-behind queue", e);
+			}
+		}
+	}
+
+	// Forces the journal to disk up to the end of the caller's record; one
+	// force covers the records appended by other threads in the meantime
+	private void sync(long end) {
+		if (syncedBytes.get() >= end) {
+			return;
+		}
+		synchronized (syncLock) {
+			if (syncedBytes.get() >= end) {
+				return;
+			}
+			FileChannel journalChannel;
+			long target;
+			synchronized (this) {
+				journalChannel = channel;
+				target = journalBytes;
+			}
+			try {
+				journalChannel.force(false);
+			}
+			catch (ClosedChannelException e) {
+				// the journal was rotated, and forced before it was closed
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException("Could not force the write-behind journal " + journal, e);
+			}
+			syncedBytes.accumulateAndGet(target, Math::max);
+		}
+	}
+
+	private void flushQuietly() {
+		synchronized (this) {
+			flushRequested = false;
+		}
+		try {
+			flush();
+		}
+		catch (RuntimeException e) {
+			logger.error("Could not flush the write-behind queue; the flush will be retried", e);
+		}
+	}
+
+	/**
+	 * Writes the queued products to the database in one transaction. If the
+	 * previous flush failed, its products are written first.
+	 */
+	private void flush() {
+		synchronized (flushLock) {
+			Map<String, Product> batch;
+			synchronized (this) {
+				if (flushing == null) {
+					if (pending.isEmpty()) {
+						return;
+					}
+					rotateJournal();
+					flushing = pending;
+					pending = new LinkedHashMap<>();
+					notifyAll();
+				}
+				batch = flushing;
+			}
+			List<Product> products = write(new ArrayList<>(batch.values()));
+			try {
+				Files.deleteIfExists(flushingJournal);
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException("Could not delete the flushed journal " + flushingJournal, e);
+			}
+			finally {
+				synchronized (this) {
+					flushing = null;
+				}
+			}
+			flushed.addAndGet(products.size());
+			flushListener.accept(products);
+		}
+	}
+
+	// Called holding this, with no flush in progress
+	private void rotateJournal() {
+		try {
+			channel.force(false);
+			channel.close();
+			syncedBytes.accumulateAndGet(journalBytes, Math::max);
+			Files.move(journal, flushingJournal, StandardCopyOption.REPLACE_EXISTING);
+			channel = FileChannel.open(journal, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException("Could not rotate the write-behind journal " + journal, e);
+		}
+	}
+
+	// Returns the products whose rows were updated: the update of a
+	// product that does not exist (or was deleted meanwhile) matches no row
+	private List<Product> write(List<Product> products) {
+		List<Widget> widgets = new ArrayList<>();
+		List<Gadget> gadgets = new ArrayList<>();
+		for (Product product : products) {
+			if (product instanceof Widget) {
+				widgets.add((Widget) product);
+			}
+			else {
+				gadgets.add((Gadget) product);
+			}
+		}
+		List<Product> updated = new ArrayList<>(products.size());
+		transactionTemplate.executeWithoutResult(status -> {
+			if (!widgets.isEmpty()) {
+				addUpdated(widgets, dao.updateWidgets(widgets), updated);
+			}
+			if (!gadgets.isEmpty()) {
+				addUpdated(gadgets, dao.updateGadgets(gadgets), updated);
+			}
+		});
+		if (updated.size() < products.size()) {
+			logger.info("Skipped the queued updates of {} products that do not exist", 
+						products.size() - updated.size());
+		}
+		return updated;
+	}
+
+	// A driver that does not report the count (SUCCESS_NO_INFO) is trusted
+	private static void addUpdated(List<? extends Product> products, int[] counts, List<Product> updated) {
+		for (int i = 0; i < products.size(); i++) {
+			if (counts[i] != 0) {
+				updated.add(products.get(i));
+			}
+		}
+	}
+
+	// Writes the updates left by a crash, oldest journal first
+	private void replayJournals() throws IOException {
+		Map<String, Product> updates = new LinkedHashMap<>();
+		for (Path file : List.of(flushingJournal, journal)) {
+			if (Files.exists(file)) {
+				readJournal(file, updates);
+			}
+		}
+		if (!updates.isEmpty()) {
+			write(new ArrayList<>(updates.values()));
+			logger.info("Wrote {} updates left in the write-behind journal", updates.size());
+		}
+		Files.deleteIfExists(flushingJournal);
+		Files.deleteIfExists(journal);
+	}
+
+	private void readJournal(Path file, Map<String, Product> updates) throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				int tab = line.indexOf('\t');
+				try {
+					Class<? extends Product> type = line.startsWith(WIDGET + "\t") ? Widget.class : Gadget.class;
+					Product product = objectMapper.readValue(line.substring(tab + 1), type);
+					updates.put(key(product), product);
+				}
+				catch (IOException e) {
+					// the last record is cut short if the service died while writing it,
+					// and such an update was never acknowledged
+					logger.warn("Skipping an incomplete record in the write-behind journal {}", file);
+				}
+			}
+		}
+	}
+
+	private String journalRecord(Product product) {
+		try {
+			return (product instanceof Widget ? WIDGET : GADGET) + "\t"
+					+ objectMapper.writeValueAsString(product) + "\n";
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static String key(Product product) {
+		return (product instanceof Widget ? WIDGET : GADGET) + product.getId();
+	}
+}
@@ -0,0 +1,205 @@
+package com.fidelity.business.transfer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.fidelity.business.Product;
+
+/**
+ * Reads products from CSV as described by RFC 4180: fields are separated
+ * by commas, records by CRLF or LF, and a field in double quotes may hold
+ * commas, line breaks and doubled quotes. The first record is the header,
+ * which maps the column names to the fields of the products.
+ *
+ * The characters are parsed straight from a buffer of the reader, and
+ * only the fields of the current record are held in memory. A record
+ * longer than MAX_RECORD_LENGTH characters is rejected; the rest of it is
+ * read without being kept, so an unclosed quote or a very long line does
+ * not fill the heap.
+ */
+class CsvProductRecordReader implements ProductRecordReader {
+	private static final int BUFFER_SIZE = 8192;
+	// Far more than a record of valid fields needs
+	static final int MAX_RECORD_LENGTH = 64 * 1024;
+
+	private final Reader reader;
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private int position;
+	private int limit;
+	// The line of the next character
+	private long line = 1;
+
+	// The fields of the current record
+	private final List<String> fields = new ArrayList<>();
+	private final StringBuilder field = new StringBuilder();
+	private int recordLength;
+	private String malformed;
+
+	// The column of each name in the header, by lowercase name
+	private Map<String, Integer> columns;
+	private int columnCount;
+
+	CsvProductRecordReader(Reader reader) {
+		this.reader = reader;
+	}
+
+	@Override
+	public Product next() throws IOException, RejectedRowException {
+		if (columns == null) {
+			readHeader();
+		}
+		long recordLine;
+		do {
+			recordLine = line;
+			if (!readRecord()) {
+				return null;
+			}
+		} while (isBlankRecord());
+
+		if (malformed != null) {
+			throw new RejectedRowException(recordLine, malformed);
+		}
+		if (fields.size() != columnCount) {
+			throw new RejectedRowException(recordLine, "expected " + columnCount + " fields, found " + fields.size());
+		}
+		return ProductRecordReader.toProduct(recordLine,
+				column("type"), column("description"), column("price"),
+				column("gears"), column("sprockets"), column("cylinders"));
+	}
+
+	private void readHeader() throws IOException {
+		if (!readRecord() || malformed != null) {
+			throw new IllegalArgumentException("The CSV input has no header");
+		}
+		columns = new HashMap<>();
+		for (int i = 0; i < fields.size(); i++) {
+			// a byte order mark is not part of the first column name
+			String name = (i == 0) ? fields.get(i).replace("\uFEFF", "") : fields.get(i);
+			columns.put(name.trim().toLowerCase(Locale.ROOT), i);
+		}
+		columnCount = fields.size();
+		if (!columns.containsKey("type") || !columns.containsKey("description") || !columns.containsKey("price")) {
+			throw new IllegalArgumentException("The CSV header must name the columns type, description and price, not "
+											   + String.join(",", fields));
+		}
+	}
+
+	private String column(String name) {
+		Integer i = columns.get(name);
+		return (i == null) ? null : fields.get(i);
+	}
+
+	private boolean isBlankRecord() {
+		return malformed == null && fields.size() == 1 && fields.get(0).isEmpty();
+	}
+
+	/**
+	 * Reads the fields of the next record, up to and including its line
+	 * break. A record that breaks the quoting rules is read to its end,
+	 * and {@code malformed} is set to the reason.
+	 *
+	 * @return false at the end of the input
+	 */
+	private boolean readRecord() throws IOException {
+		fields.clear();
+		field.setLength(0);
+		recordLength = 0;
+		malformed = null;
+
+		int c = read();
+		if (c < 0) {
+			return false;
+		}
+		boolean inQuotes = false;
+		boolean fieldQuoted = false;
+		for (;; c = read()) {
+			if (++recordLength > MAX_RECORD_LENGTH && c >= 0 && c != '\n') {
+				// drop the record, but still follow its quotes and line
+				// breaks to find where it ends
+				fields.clear();
+				field.setLength(0);
+				malformed = "the record is longer than " + MAX_RECORD_LENGTH + " characters";
+				if (c == '"') {
+					inQuotes = !inQuotes;
+				}
+				continue;
+			}
+			if (inQuotes) {
+				if (c < 0) {
+					malformed = "a quoted field is not closed";
+					break;
+				}
+				if (c == '"') {
+					if (peek() == '"') {
+						read();
+						field.append('"');
+					}
+					else {
+						inQuotes = false;
+					}
+				}
+				else {
+					if (c == '\n') {
+						line++;
+					}
+					field.append((char) c);
+				}
+			}
+			else if (c == ',') {
+				fields.add(field.toString());
+				field.setLength(0);
+				fieldQuoted = false;
+			}
+			else if (c == '\n' || c < 0) {
+				if (c == '\n') {
+					line++;
+				}
+				break;
+			}
+			else if (c == '\r' && peek() == '\n') {
+				// the LF ends the record
+			}
+			else if (c == '"' && field.length() == 0 && !fieldQuoted) {
+				inQuotes = true;
+				fieldQuoted = true;
+			}
+			else if (fieldQuoted) {
+				malformed = "a quoted field is followed by other characters";
+			}
+			else {
+				field.append((char) c);
+			}
+		}
+		fields.add(field.toString());
+		return true;
+	}
+
+	private int read() throws IOException {
+		if (position == limit && !fill()) {
+			return -1;
+		}
+		return buffer[position++];
+	}
+
+	private int peek() throws IOException {
+		if (position == limit && !fill()) {
+			return -1;
+		}
+		return buffer[position];
+	}
+
+	private boolean fill() throws IOException {
+		int count = reader.read(buffer, 0, BUFFER_SIZE);
+		if (count <= 0) {
+			return false;
+		}
+		position = 0;
+		limit = count;
+		return true;
+	}
+}
@@ -0,0 +1,72 @@
+package com.fidelity.business.transfer;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import com.fidelity.business.Gadget;
+import com.fidelity.business.Product;
+import com.fidelity.business.Widget;
+
+/**
+ * Writes products as CSV records in the columns
+ *    type,id,description,price,gears,sprockets,cylinders
+ * after a header row with those names. The columns of the other type are
+ * left empty. Descriptions are quoted as RFC 4180 requires when they hold
+ * a comma, a double quote or a line break.
+ */
+class CsvProductRecordWriter implements ProductRecordWriter {
+	static final String HEADER = "type,id,description,price,gears,sprockets,cylinders\n";
+
+	private final Writer writer;
+
+	CsvProductRecordWriter(Writer writer) throws IOException {
+		this.writer = writer;
+		writer.write(HEADER);
+	}
+
+	@Override
+	public void write(Product product) throws IOException {
+		writer.write((product instanceof Widget) ? "widget," : "gadget,");
+		writer.write(Integer.toString(product.getId()));
+		writer.write(',');
+		writeDescription(product.getDescription());
+		writer.write(',');
+		writer.write(Double.toString(product.getPrice()));
+		if (product instanceof Widget) {
+			Widget w = (Widget) product;
+			writer.write(',');
+			writer.write(Integer.toString(w.getGears()));
+			writer.write(',');
+			writer.write(Integer.toString(w.getSprockets()));
+			writer.write(",\n");
+		}
+		else {
+			writer.write(",,,");
+			writer.write(Integer.toString(((Gadget) product).getCylinders()));
+			writer.write('\n');
+		}
+	}
+
+	private void writeDescription(String description) throws IOException {
+		if (description == null) {
+			return;
+		}
+		boolean quoted = false;
+		for (int i = 0; i < description.length() && !quoted; i++) {
+			char c = description.charAt(i);
+			quoted = c == ',' || c == '"' || c == '\n' || c == '\r';
+		}
+		if (!quoted) {
+			writer.write(description);
+			return;
+		}
+		writer.write('"');
+		writer.write(description.replace("\"", "\"\""));
+		writer.write('"');
+	}
+
+	@Override
+	public void finish() throws IOException {
+		writer.flush();
+	}
+}
@@ -0,0 +1,219 @@
+package com.fidelity.business.transfer;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ImportJob is the status of one import run by ProductImporter. It is
+ * updated by the import thread as the file is read, and may be read by
+ * any thread at any time.
+ */
+public class ImportJob {
+	public enum State { QUEUED, RUNNING, COMPLETED, FAILED }
+
+	/**
+	 * A record of the import file that was not imported, and why.
+	 */
+	public static class RejectedRow {
+		private final long line;
+		private final String reason;
+
+		public RejectedRow(long line, String reason) {
+			this.line = line;
+			this.reason = reason;
+		}
+
+		public long getLine() {
+			return line;
+		}
+
+		public String getReason() {
+			return reason;
+		}
+
+		@Override
+		public String toString() {
+			return "RejectedRow [line=" + line + ", reason=" + reason + "]";
+		}
+	}
+
+	private final String id;
+	private final TransferFormat format;
+	private final long sizeBytes;
+	private final Instant submittedAt;
+	private final int maxRejectedRows;
+
+	// Written only by the import thread
+	private volatile State state = State.QUEUED;
+	private volatile Instant startedAt;
+	private volatile Instant finishedAt;
+	private volatile long bytesRead;
+	private volatile long rowsRead;
+	private volatile long rowsImported;
+	private volatile long rowsRejected;
+	private volatile String error;
+	// Guarded by itself
+	private final List<RejectedRow> rejectedRows = new ArrayList<>();
+
+	public ImportJob(String id, TransferFormat format, long sizeBytes, int maxRejectedRows) {
+		this.id = id;
+		this.format = format;
+		this.sizeBytes = sizeBytes;
+		this.maxRejectedRows = maxRejectedRows;
+		this.submittedAt = Instant.now();
+	}
+
+	// ***** Updates by the import thread *****
+
+	void started() {
+		startedAt = Instant.now();
+		state = State.RUNNING;
+	}
+
+	void progress(long bytesRead, long rowsRead) {
+		this.bytesRead = bytesRead;
+		this.rowsRead = rowsRead;
+	}
+
+	void imported(int rows) {
+		rowsImported += rows;
+	}
+
+	void rejected(RejectedRow row) {
+		rowsRejected++;
+		synchronized (rejectedRows) {
+			if (rejectedRows.size() < maxRejectedRows) {
+				rejectedRows.add(row);
+			}
+		}
+	}
+
+	void completed() {
+		bytesRead = sizeBytes;
+		finish(State.COMPLETED);
+	}
+
+	void failed(String error) {
+		this.error = error;
+		finish(State.FAILED);
+	}
+
+	private void finish(State finalState) {
+		if (startedAt == null) {
+			startedAt = Instant.now();
+		}
+		finishedAt = Instant.now();
+		state = finalState;
+	}
+
+	// ***** Status *****
+
+	public String getId() {
+		return id;
+	}
+
+	public TransferFormat getFormat() {
+		return format;
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	public boolean isDone() {
+		State current = state;
+		return current == State.COMPLETED || current == State.FAILED;
+	}
+
+	public Instant getSubmittedAt() {
+		return submittedAt;
+	}
+
+	public Instant getStartedAt() {
+		return startedAt;
+	}
+
+	public Instant getFinishedAt() {
+		return finishedAt;
+	}
+
+	/**
+	 * Returns the size of the import file as uploaded, compressed or not.
+	 */
+	public long getSizeBytes() {
+		return sizeBytes;
+	}
+
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	/**
+	 * Returns the fraction of the import file that has been read, from 0 to 1.
+	 */
+	public double getProgress() {
+		if (state == State.COMPLETED) {
+			return 1;
+		}
+		if (sizeBytes == 0) {
+			return 0;
+		}
+		return Math.min(1, (double) bytesRead / sizeBytes);
+	}
+
+	/**
+	 * Returns the number of records read, valid or not.
+	 */
+	public long getRowsRead() {
+		return rowsRead;
+	}
+
+	/**
+	 * Returns the number of products inserted and committed.
+	 */
+	public long getRowsImported() {
+		return rowsImported;
+	}
+
+	public long getRowsRejected() {
+		return rowsRejected;
+	}
+
+	/**
+	 * Returns the records read per second since the job started.
+	 */
+	public double getRowsPerSecond() {
+		Instant start = startedAt;
+		if (start == null) {
+			return 0;
+		}
+		Instant end = (finishedAt != null) ? finishedAt : Instant.now();
+		double seconds = Duration.between(start, end).toNanos() / 1e9;
+		return (seconds > 0) ? rowsRead / seconds : 0;
+	}
+
+	/**
+	 * Returns the first of the rejected records, up to
+	 * warehouse.import.max-rejected-rows.
+	 */
+	public List<RejectedRow> getRejectedRows() {
+		synchronized (rejectedRows) {
+			return new ArrayList<>(rejectedRows);
+		}
+	}
+
+	/**
+	 * Returns why the job failed, or null if it did not.
+	 */
+	public String getError() {
+		return error;
+	}
+
+	@Override
+	public String toString() {
+		return "ImportJob [id=" + id + ", format=" + format + ", state=" + state + ", rowsRead=" + rowsRead
+				+ ", rowsImported=" + rowsImported + ", rowsRejected=" + rowsRejected + "]";
+	}
+}
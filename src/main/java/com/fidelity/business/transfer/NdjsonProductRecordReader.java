@@ -0,0 +1,56 @@
+package com.fidelity.business.transfer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fidelity.business.Product;
+
+/**
+ * Reads products from newline-delimited JSON: each non-blank line holds
+ * one JSON object. Each line is parsed on its own, so a line that is not
+ * valid JSON rejects only its own record.
+ */
+class NdjsonProductRecordReader implements ProductRecordReader {
+	private final BufferedReader reader;
+	private final ObjectMapper objectMapper;
+	private long line;
+
+	NdjsonProductRecordReader(BufferedReader reader, ObjectMapper objectMapper) {
+		this.reader = reader;
+		this.objectMapper = objectMapper;
+	}
+
+	@Override
+	public Product next() throws IOException, RejectedRowException {
+		String text;
+		do {
+			text = reader.readLine();
+			if (text == null) {
+				return null;
+			}
+			line++;
+		} while (text.isBlank());
+
+		JsonNode record;
+		try {
+			record = objectMapper.readTree(text);
+		}
+		catch (JsonProcessingException e) {
+			throw new RejectedRowException(line, "not valid JSON: " + e.getOriginalMessage());
+		}
+		if (!record.isObject()) {
+			throw new RejectedRowException(line, "not a JSON object");
+		}
+		return ProductRecordReader.toProduct(line,
+				field(record, "type"), field(record, "description"), field(record, "price"),
+				field(record, "gears"), field(record, "sprockets"), field(record, "cylinders"));
+	}
+
+	private static String field(JsonNode record, String name) {
+		JsonNode value = record.get(name);
+		return (value == null || value.isNull()) ? null : value.asText();
+	}
+}
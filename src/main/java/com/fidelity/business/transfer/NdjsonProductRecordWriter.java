@@ -0,0 +1,52 @@
+package com.fidelity.business.transfer;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fidelity.business.Gadget;
+import com.fidelity.business.Product;
+import com.fidelity.business.Widget;
+
+/**
+ * Writes products as newline-delimited JSON, one object per line. The
+ * fields are written directly with a JsonGenerator rather than by data
+ * binding, so that each object also carries the type of the product.
+ */
+class NdjsonProductRecordWriter implements ProductRecordWriter {
+	private final Writer writer;
+	private final JsonGenerator generator;
+
+	NdjsonProductRecordWriter(Writer writer, ObjectMapper objectMapper) throws IOException {
+		this.writer = writer;
+		this.generator = objectMapper.getFactory().createGenerator(writer);
+		// the line breaks are written after each object instead
+		generator.setRootValueSeparator(null);
+	}
+
+	@Override
+	public void write(Product product) throws IOException {
+		generator.writeStartObject();
+		generator.writeStringField("type", (product instanceof Widget) ? "widget" : "gadget");
+		generator.writeNumberField("id", product.getId());
+		generator.writeStringField("description", product.getDescription());
+		generator.writeNumberField("price", product.getPrice());
+		if (product instanceof Widget) {
+			Widget w = (Widget) product;
+			generator.writeNumberField("gears", w.getGears());
+			generator.writeNumberField("sprockets", w.getSprockets());
+		}
+		else {
+			generator.writeNumberField("cylinders", ((Gadget) product).getCylinders());
+		}
+		generator.writeEndObject();
+		generator.writeRaw('\n');
+	}
+
+	@Override
+	public void finish() throws IOException {
+		generator.flush();
+		writer.flush();
+	}
+}
@@ -0,0 +1,110 @@
+package com.fidelity.business.transfer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fidelity.business.Product;
+import com.fidelity.business.service.WarehouseBusinessService;
+
+/**
+ * ProductExporter writes the Widgets and Gadgets in the database to an
+ * output stream as CSV or NDJSON.
+ *
+ * The rows are read through the MyBatis cursors of the business service's
+ * streamAll methods and each one is written as soon as it is read, so the
+ * memory used by an export does not grow with the size of the catalog.
+ */
+@Service
+@Profile("!reactive")
+public class ProductExporter {
+	// Large enough that the writer does not flush the response for every few rows
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	@Autowired
+	private WarehouseBusinessService service;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	/**
+	 * Writes the products like export(), gzipped. The compression level is
+	 * the fastest one: an export is limited by the CPU, and the fastest
+	 * level takes much less of it for a file that is only slightly larger.
+	 * The gzip trailer is written, but the stream is not closed.
+	 */
+	public long exportGzipped(TransferFormat format, String type, OutputStream out) throws IOException {
+		FastGzipOutputStream gzipOut = new FastGzipOutputStream(out);
+		try {
+			long count = export(format, type, gzipOut);
+			gzipOut.finish();
+			return count;
+		}
+		finally {
+			gzipOut.release();
+		}
+	}
+
+	/**
+	 * Writes the products of the type ("widget" or "gadget", or both if
+	 * null) to the stream in the format: the Widgets first, then the
+	 * Gadgets, each ordered by id. The stream is flushed but not closed.
+	 *
+	 * @return the number of products written
+	 * @throws IllegalArgumentException if the type is not widget or gadget
+	 */
+	public long export(TransferFormat format, String type, OutputStream out) throws IOException {
+		boolean widgets = type == null || type.equalsIgnoreCase("widget");
+		boolean gadgets = type == null || type.equalsIgnoreCase("gadget");
+		if (!widgets && !gadgets) {
+			throw new IllegalArgumentException("type must be 'widget' or 'gadget', not " + type);
+		}
+		Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+		ProductRecordWriter records = format.create(writer, objectMapper);
+		long[] count = { 0 };
+		Consumer<Product> exportRow = product -> {
+			try {
+				records.write(product);
+				count[0]++;
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		};
+		if (widgets) {
+			service.streamAllWidgets(exportRow);
+		}
+		if (gadgets) {
+			service.streamAllGadgets(exportRow);
+		}
+		records.finish();
+		return count[0];
+	}
+
+	/**
+	 * Gzips at the fastest compression level.
+	 */
+	private static class FastGzipOutputStream extends GZIPOutputStream {
+		FastGzipOutputStream(OutputStream out) throws IOException {
+			super(out, BUFFER_SIZE);
+			def.setLevel(Deflater.BEST_SPEED);
+		}
+
+		// Frees the native memory of the deflater without closing the stream
+		void release() {
+			def.end();
+		}
+	}
+}
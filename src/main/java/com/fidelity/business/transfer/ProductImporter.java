@@ -0,0 +1,287 @@
+package com.fidelity.business.transfer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fidelity.business.Gadget;
+import com.fidelity.business.Product;
+import com.fidelity.business.Widget;
+import com.fidelity.business.service.WarehouseBusinessService;
+
+/**
+ * ProductImporter loads Widgets and Gadgets from CSV or NDJSON files in
+ * the background.
+ *
+ * submit() copies the request body to a spool file as it arrives, so the
+ * upload never sits in memory and the client is answered as soon as the
+ * upload is complete, not when the import is. The file may be gzipped; it
+ * is recognized by its first bytes and decompressed while it is read.
+ *
+ * The import then parses the file one record at a time, skips and reports
+ * the records that are not valid products, and inserts the others with
+ * the batch inserts of WarehouseBusinessService, warehouse.import.chunk-size
+ * products at a time. The Widgets and the Gadgets of a chunk are inserted
+ * in a transaction each. A chunk that fails to insert fails the job; the
+ * chunks before it stay committed, and so do the Widgets of the failed
+ * chunk if its Gadgets failed, as reported by rowsImported.
+ *
+ * Imports run one at a time on a thread of their own, so that a large
+ * import holds at most one database connection and does not starve the
+ * request threads. Further imports wait in the queue. On shutdown the
+ * running import is interrupted, and the queued imports fail and have
+ * their spool files deleted.
+ */
+@Service
+@Profile("!reactive")
+public class ProductImporter {
+	private static final byte[] GZIP_MAGIC = { (byte) 0x1f, (byte) 0x8b };
+
+	@Autowired
+	private Logger logger;
+
+	@Autowired
+	private WarehouseBusinessService service;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Value("${warehouse.import.chunk-size:5000}")
+	private int chunkSize = 5000;
+
+	@Value("${warehouse.import.max-rejected-rows:100}")
+	private int maxRejectedRows = 100;
+
+	@Value("${warehouse.import.retained-jobs:100}")
+	private int retainedJobs = 100;
+
+	// Guarded by itself; in the order the jobs were submitted
+	private final Map<String, ImportJob> jobs = new LinkedHashMap<>();
+
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(task -> {
+		Thread thread = new Thread(task, "product-import");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Spools the import file to disk and queues the import.
+	 *
+	 * @return the job, which is updated as the import runs
+	 * @throws IOException if the file cannot be read or spooled
+	 */
+	public ImportJob submit(InputStream file, TransferFormat format) throws IOException {
+		Path spoolFile = Files.createTempFile("warehouse-import-", "." + format.name().toLowerCase(Locale.ROOT));
+		ImportJob job;
+		try {
+			Files.copy(file, spoolFile, StandardCopyOption.REPLACE_EXISTING);
+			job = new ImportJob(UUID.randomUUID().toString(), format, Files.size(spoolFile), maxRejectedRows);
+			register(job);
+			executor.execute(new ImportTask(job, spoolFile));
+		}
+		catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(spoolFile);
+			throw e;
+		}
+		logger.info("Queued import {} of {} bytes of {}", job.getId(), job.getSizeBytes(), format);
+		return job;
+	}
+
+	/**
+	 * Returns the job with the id, or null if there is no such job or it
+	 * is no longer retained.
+	 */
+	public ImportJob getJob(String id) {
+		synchronized (jobs) {
+			return jobs.get(id);
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		for (Runnable queued : executor.shutdownNow()) {
+			ImportTask task = (ImportTask) queued;
+			task.job.failed("The service shut down before the import started");
+			deleteSpoolFile(task.spoolFile);
+		}
+	}
+
+	// Keeps the job, and forgets the oldest finished jobs beyond retainedJobs
+	private void register(ImportJob job) {
+		synchronized (jobs) {
+			jobs.put(job.getId(), job);
+			Iterator<ImportJob> oldest = jobs.values().iterator();
+			while (jobs.size() > retainedJobs && oldest.hasNext()) {
+				if (oldest.next().isDone()) {
+					oldest.remove();
+				}
+			}
+		}
+	}
+
+	private void run(ImportJob job, Path spoolFile) {
+		job.started();
+		try (CountingInputStream in = new CountingInputStream(Files.newInputStream(spoolFile));
+			 BufferedReader reader = new BufferedReader(new InputStreamReader(decompress(in), StandardCharsets.UTF_8))) {
+			importRecords(job, job.getFormat().open(reader, objectMapper), in);
+			job.completed();
+			logger.info("Completed import {}: {} rows imported, {} rejected, {} rows/s", job.getId(),
+						job.getRowsImported(), job.getRowsRejected(), Math.round(job.getRowsPerSecond()));
+		}
+		catch (Exception e) {
+			job.failed(e.getMessage());
+			logger.error("Import " + job.getId() + " failed after " + job.getRowsImported() + " rows", e);
+		}
+		finally {
+			deleteSpoolFile(spoolFile);
+		}
+	}
+
+	private void deleteSpoolFile(Path spoolFile) {
+		try {
+			Files.deleteIfExists(spoolFile);
+		}
+		catch (IOException e) {
+			logger.warn("Cannot delete the import spool file {}", spoolFile, e);
+		}
+	}
+
+	private void importRecords(ImportJob job, ProductRecordReader records, CountingInputStream in)
+			throws IOException {
+		List<Widget> widgets = new ArrayList<>();
+		List<Gadget> gadgets = new ArrayList<>();
+		long rowsRead = 0;
+		while (true) {
+			Product product;
+			try {
+				product = records.next();
+			}
+			catch (RejectedRowException e) {
+				job.rejected(new ImportJob.RejectedRow(e.getLine(), e.getMessage()));
+				job.progress(in.getCount(), ++rowsRead);
+				continue;
+			}
+			if (product == null) {
+				break;
+			}
+			if (product instanceof Widget) {
+				widgets.add((Widget) product);
+			}
+			else {
+				gadgets.add((Gadget) product);
+			}
+			job.progress(in.getCount(), ++rowsRead);
+			if (widgets.size() + gadgets.size() == chunkSize) {
+				insertChunk(job, widgets, gadgets);
+			}
+		}
+		insertChunk(job, widgets, gadgets);
+	}
+
+	private void insertChunk(ImportJob job, List<Widget> widgets, List<Gadget> gadgets) {
+		if (!widgets.isEmpty()) {
+			service.addWidgets(widgets);
+			job.imported(widgets.size());
+			widgets.clear();
+		}
+		if (!gadgets.isEmpty()) {
+			service.addGadgets(gadgets);
+			job.imported(gadgets.size());
+			gadgets.clear();
+		}
+	}
+
+	private static InputStream decompress(InputStream in) throws IOException {
+		BufferedInputStream buffered = new BufferedInputStream(in);
+		buffered.mark(GZIP_MAGIC.length);
+		byte[] start = buffered.readNBytes(GZIP_MAGIC.length);
+		buffered.reset();
+		boolean gzipped = start.length == GZIP_MAGIC.length
+						  && start[0] == GZIP_MAGIC[0] && start[1] == GZIP_MAGIC[1];
+		return gzipped ? new GZIPInputStream(buffered, 64 * 1024) : buffered;
+	}
+
+	/**
+	 * A queued import, which shutdown() can clean up if it never runs.
+	 */
+	private class ImportTask implements Runnable {
+		private final ImportJob job;
+		private final Path spoolFile;
+
+		ImportTask(ImportJob job, Path spoolFile) {
+			this.job = job;
+			this.spoolFile = spoolFile;
+		}
+
+		@Override
+		public void run() {
+			ProductImporter.this.run(job, spoolFile);
+		}
+	}
+
+	/**
+	 * Counts the bytes read from the spool file, for the progress of the job.
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+		private long count;
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		long getCount() {
+			return count;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) {
+				count++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0) {
+				count += n;
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			count += skipped;
+			return skipped;
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package com.fidelity.business.transfer;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Locale;
+
+import com.fidelity.business.Gadget;
+import com.fidelity.business.Product;
+import com.fidelity.business.Widget;
+
+/**
+ * A ProductRecordReader parses the records of an import file one at a
+ * time, so that a file of any size is read with constant memory, and
+ * turns each record into a new Widget or Gadget.
+ */
+interface ProductRecordReader {
+	// The width of the description columns
+	int MAX_DESCRIPTION_LENGTH = 45;
+	// The price columns are numeric(6,2)
+	BigDecimal MAX_PRICE = new BigDecimal("9999.99");
+
+	/**
+	 * Returns the product in the next record, or null at the end of the
+	 * input.
+	 *
+	 * @throws RejectedRowException if the next record is not a valid
+	 *         product; the following call reads the record after it
+	 * @throws IOException if the input cannot be read
+	 * @throws IllegalArgumentException if the input as a whole is not in 
+	 *         the format, such as a CSV file without a valid header
+	 */
+	Product next() throws IOException, RejectedRowException;
+
+	/**
+	 * Validates the field values of a record and creates its product.
+	 * Only the type, description and price are required; the other
+	 * fields default to 0, and the fields of the other type are ignored.
+	 */
+	static Product toProduct(long line, String type, String description, String price,
+							 String gears, String sprockets, String cylinders) throws RejectedRowException {
+		if (isBlank(description)) {
+			throw new RejectedRowException(line, "description is missing");
+		}
+		if (description.length() > MAX_DESCRIPTION_LENGTH) {
+			throw new RejectedRowException(line, "description is longer than "
+											+ MAX_DESCRIPTION_LENGTH + " characters");
+		}
+		double unitPrice = parsePrice(line, price);
+		String productType = isBlank(type) ? "" : type.trim().toLowerCase(Locale.ROOT);
+		switch (productType) {
+		case "widget":
+			return new Widget(description, unitPrice,
+							  parseCount(line, "gears", gears), parseCount(line, "sprockets", sprockets));
+		case "gadget":
+			return new Gadget(description, unitPrice, parseCount(line, "cylinders", cylinders));
+		default:
+			throw new RejectedRowException(line, "type must be widget or gadget");
+		}
+	}
+
+	private static double parsePrice(long line, String price) throws RejectedRowException {
+		if (isBlank(price)) {
+			throw new RejectedRowException(line, "price is missing");
+		}
+		BigDecimal value;
+		try {
+			value = new BigDecimal(price.trim());
+		}
+		catch (NumberFormatException e) {
+			throw new RejectedRowException(line, "price is not a number: " + price);
+		}
+		if (value.signum() < 0 || value.compareTo(MAX_PRICE) > 0 || value.stripTrailingZeros().scale() > 2) {
+			throw new RejectedRowException(line, "price must be from 0 to " + MAX_PRICE
+											+ " with at most 2 decimals: " + price);
+		}
+		return value.doubleValue();
+	}
+
+	private static int parseCount(long line, String field, String count) throws RejectedRowException {
+		if (isBlank(count)) {
+			return 0;
+		}
+		try {
+			int value = Integer.parseInt(count.trim());
+			if (value >= 0) {
+				return value;
+			}
+		}
+		catch (NumberFormatException e) {
+			// reported below
+		}
+		throw new RejectedRowException(line, field + " must be a whole number of at least 0: " + count);
+	}
+
+	private static boolean isBlank(String s) {
+		return s == null || s.isBlank();
+	}
+}
@@ -0,0 +1,23 @@
+package com.fidelity.business.transfer;
+
+import java.io.IOException;
+
+import com.fidelity.business.Product;
+
+/**
+ * A ProductRecordWriter writes Widgets and Gadgets as the records of an
+ * export file, one at a time, so that a catalog of any size is written
+ * with constant memory.
+ */
+interface ProductRecordWriter {
+	/**
+	 * Writes the product as the next record.
+	 */
+	void write(Product product) throws IOException;
+
+	/**
+	 * Writes what the format needs after the last record and flushes the
+	 * writer. The underlying writer is not closed.
+	 */
+	void finish() throws IOException;
+}
@@ -0,0 +1,23 @@
+package com.fidelity.business.transfer;
+
+/**
+ * Thrown by a ProductRecordReader for a record that is not a valid
+ * product. The import skips the record and goes on with the next one.
+ */
+class RejectedRowException extends Exception {
+	private static final long serialVersionUID = 1L;
+
+	private final long line;
+
+	RejectedRowException(long line, String reason) {
+		super(reason);
+		this.line = line;
+	}
+
+	/**
+	 * Returns the line of the import file on which the record starts.
+	 */
+	long getLine() {
+		return line;
+	}
+}
@@ -0,0 +1,86 @@
+package com.fidelity.business.transfer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * The file formats read by ProductImporter and written by ProductExporter,
+ * and the media types they are sent with. A file written by the exporter
+ * can be imported again; the ids in it are ignored by the import.
+ */
+public enum TransferFormat {
+	/**
+	 * Comma-separated values with a header row that names the columns
+	 * type, description and price, and optionally gears, sprockets and
+	 * cylinders, in any order. Other columns, such as id, are ignored.
+	 * The export writes the columns type,id,description,price,gears,sprockets,cylinders.
+	 */
+	CSV("text/csv"),
+
+	/**
+	 * One JSON object per line, with the same fields as the CSV columns:
+	 *    {"type":"widget","id":1,"description":"Low Impact Widget","price":12.99,"gears":2,"sprockets":3}
+	 */
+	NDJSON("application/x-ndjson");
+
+	private final String mediaType;
+
+	private TransferFormat(String mediaType) {
+		this.mediaType = mediaType;
+	}
+
+	public String getMediaType() {
+		return mediaType;
+	}
+
+	/**
+	 * Returns the file name extension of the format.
+	 */
+	public String getExtension() {
+		return name().toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Returns the format sent with the media type, ignoring parameters
+	 * such as charset.
+	 *
+	 * @throws IllegalArgumentException if no format has the media type
+	 */
+	public static TransferFormat forMediaType(String mediaType) {
+		String type = (mediaType == null) ? "" : mediaType.split(";")[0].trim();
+		for (TransferFormat format : values()) {
+			if (format.mediaType.equalsIgnoreCase(type)) {
+				return format;
+			}
+		}
+		throw new IllegalArgumentException("Cannot import products from " + mediaType);
+	}
+
+	/**
+	 * Returns the format with the extension, such as csv.
+	 *
+	 * @throws IllegalArgumentException if no format has the extension
+	 */
+	public static TransferFormat forExtension(String extension) {
+		for (TransferFormat format : values()) {
+			if (format.getExtension().equalsIgnoreCase(extension)) {
+				return format;
+			}
+		}
+		throw new IllegalArgumentException("format must be 'csv' or 'ndjson', not " + extension);
+	}
+
+	ProductRecordReader open(BufferedReader reader, ObjectMapper objectMapper) {
+		return (this == CSV) ? new CsvProductRecordReader(reader)
+							 : new NdjsonProductRecordReader(reader, objectMapper);
+	}
+
+	ProductRecordWriter create(Writer writer, ObjectMapper objectMapper) throws IOException {
+		return (this == CSV) ? new CsvProductRecordWriter(writer)
+							 : new NdjsonProductRecordWriter(writer, objectMapper);
+	}
+}
@@ -0,0 +1,19 @@
+package com.fidelity.integration;
+
+import org.mybatis.spring.annotation.MapperScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * Registers the MyBatis mapper interfaces of the servlet stack.
+ * 
+ * The reactive profile excludes the JDBC and MyBatis auto-configuration
+ * (see application-reactive.properties), so there is no SqlSessionFactory
+ * for the mappers there.
+ */
+@Configuration
+@Profile("!reactive")
+// tell MyBatis where to scan for mapping interface files
+@MapperScan(basePackages="com.fidelity.integration.mapper")
+public class MyBatisMapperConfig {
+}
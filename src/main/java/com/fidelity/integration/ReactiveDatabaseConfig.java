@@ -0,0 +1,60 @@
+package com.fidelity.integration;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.r2dbc.connection.init.ConnectionFactoryInitializer;
+import org.springframework.r2dbc.connection.init.ResourceDatabasePopulator;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+
+/**
+ * Configures the R2DBC database access of the reactive profile: a pool
+ * of non-blocking connections to the database at warehouse.r2dbc.url,
+ * created with schema-r2dbc.sql (schema.sql in H2's dialect) and the
+ * same data.sql as the embedded database of the servlet stack.
+ * 
+ * The pool is not published as a ConnectionFactory bean, so none of
+ * Spring Boot's R2DBC auto-configuration applies to it. The JDBC pool,
+ * MyBatis and the blocking service beans are not created in this profile
+ * (see application-reactive.properties).
+ */
+@Configuration
+@Profile("reactive")
+public class ReactiveDatabaseConfig {
+	private final ConnectionPool connectionPool;
+
+	public ReactiveDatabaseConfig(@Value("${warehouse.r2dbc.url}") String url,
+								  @Value("${warehouse.r2dbc.pool.max-size:10}") int maxPoolSize) {
+		connectionPool = new ConnectionPool(
+				ConnectionPoolConfiguration.builder(ConnectionFactories.get(url))
+										   .maxSize(maxPoolSize)
+										   .build());
+	}
+
+	@Bean
+	public DatabaseClient databaseClient() {
+		return DatabaseClient.create(connectionPool);
+	}
+
+	@Bean
+	public ConnectionFactoryInitializer reactiveDatabaseInitializer() {
+		ConnectionFactoryInitializer initializer = new ConnectionFactoryInitializer();
+		initializer.setConnectionFactory(connectionPool);
+		initializer.setDatabasePopulator(new ResourceDatabasePopulator(
+				new ClassPathResource("schema-r2dbc.sql"), new ClassPathResource("data.sql")));
+		return initializer;
+	}
+
+	@PreDestroy
+	public void closeConnectionPool() {
+		connectionPool.dispose();
+	}
+}
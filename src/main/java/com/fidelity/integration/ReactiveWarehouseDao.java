@@ -0,0 +1,72 @@
+package com.fidelity.integration;
+
+import com.fidelity.business.Gadget;
+import com.fidelity.business.Product;
+import com.fidelity.business.ProductKey;
+import com.fidelity.business.ProductSortOrder;
+import com.fidelity.business.Widget;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * The non-blocking counterpart of WarehouseDao. Queries return a Flux
+ * that reads rows as the subscriber requests them, so a slow consumer 
+ * slows down the reading of rows instead of buffering them.
+ */
+public interface ReactiveWarehouseDao {
+
+	// Widget methods
+	Flux<Widget> getAllWidgets();
+
+	/**
+	 * Returns at most {@code limit} Widgets whose id is greater than
+	 * {@code afterId}, ordered by id.
+	 */
+	Flux<Widget> getWidgetsAfter(int afterId, int limit);
+
+	Mono<Widget> getWidget(int id);
+
+	Mono<Integer> deleteWidget(int id);
+
+	/**
+	 * Inserts the Widget and sets its generated id.
+	 * 
+	 * @return the number of rows inserted
+	 */
+	Mono<Integer> insertWidget(Widget w);
+
+	Mono<Integer> updateWidget(Widget w);
+
+	// Gadget methods
+	Flux<Gadget> getAllGadgets();
+
+	/**
+	 * Returns at most {@code limit} Gadgets whose id is greater than
+	 * {@code afterId}, ordered by id.
+	 */
+	Flux<Gadget> getGadgetsAfter(int afterId, int limit);
+
+	Mono<Gadget> getGadget(int id);
+
+	Mono<Integer> deleteGadget(int id);
+
+	/**
+	 * Inserts the Gadget and sets its generated id.
+	 * 
+	 * @return the number of rows inserted
+	 */
+	Mono<Integer> insertGadget(Gadget g);
+
+	Mono<Integer> updateGadget(Gadget g);
+
+	// Product methods
+
+	/**
+	 * Returns at most {@code limit} Widgets and Gadgets in the given order,
+	 * starting after the product with the key {@code after}, or from the 
+	 * first product if {@code after} is null.
+	 */
+	Flux<Product> getProductsPage(ProductSortOrder order, ProductKey after, int limit);
+
+}
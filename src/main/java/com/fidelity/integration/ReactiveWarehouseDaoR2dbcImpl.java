@@ -0,0 +1,231 @@
+package com.fidelity.integration;
+
+import java.math.BigDecimal;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.r2dbc.core.DatabaseClient.GenericExecuteSpec;
+import org.springframework.stereotype.Repository;
+
+import com.fidelity.business.Gadget;
+import com.fidelity.business.Product;
+import com.fidelity.business.ProductKey;
+import com.fidelity.business.ProductSortOrder;
+import com.fidelity.business.Widget;
+
+import io.r2dbc.spi.Row;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * ReactiveWarehouseDao implemented with the Spring R2DBC DatabaseClient.
+ * The SQL statements are the same as in WarehouseMapper.xml.
+ */
+@Repository("reactiveWarehouseDao")
+@Profile("reactive")
+public class ReactiveWarehouseDaoR2dbcImpl implements ReactiveWarehouseDao {
+	private static final String WIDGET_COLUMNS = "SELECT id, description, price, gears, sprockets from widgets ";
+	private static final String GADGET_COLUMNS = "SELECT id, description, price, cylinders from gadgets ";
+	private static final String ALL_PRODUCTS = 
+			"SELECT 'gadget' as product_type, id, description, price, " 
+		  + "  cast(null as integer) as gears, cast(null as integer) as sprockets, cylinders "
+		  + "from gadgets "
+		  + "union all "
+		  + "SELECT 'widget' as product_type, id, description, price, "
+		  + "  gears, sprockets, cast(null as integer) as cylinders "
+		  + "from widgets";
+
+	@Autowired
+	private DatabaseClient client;
+
+	// Widget methods
+	@Override
+	public Flux<Widget> getAllWidgets() {
+		return client.sql(WIDGET_COLUMNS + "order by id")
+					 .map(ReactiveWarehouseDaoR2dbcImpl::toWidget)
+					 .all();
+	}
+
+	@Override
+	public Flux<Widget> getWidgetsAfter(int afterId, int limit) {
+		return client.sql(WIDGET_COLUMNS + "where id > :after order by id fetch first :limit rows only")
+					 .bind("after", afterId)
+					 .bind("limit", limit)
+					 .map(ReactiveWarehouseDaoR2dbcImpl::toWidget)
+					 .all();
+	}
+
+	@Override
+	public Mono<Widget> getWidget(int id) {
+		return client.sql(WIDGET_COLUMNS + "where id = :id")
+					 .bind("id", id)
+					 .map(ReactiveWarehouseDaoR2dbcImpl::toWidget)
+					 .one();
+	}
+
+	@Override
+	public Mono<Integer> deleteWidget(int id) {
+		return client.sql("delete from widgets where id = :id")
+					 .bind("id", id)
+					 .fetch()
+					 .rowsUpdated();
+	}
+
+	@Override
+	public Mono<Integer> insertWidget(Widget w) {
+		GenericExecuteSpec insert = 
+				client.sql("insert into widgets (description, price, gears, sprockets) "
+						 + "values (:description, :price, :gears, :sprockets)");
+		insert = bindDescription(insert, w)
+					.bind("price", BigDecimal.valueOf(w.getPrice()))
+					.bind("gears", w.getGears())
+					.bind("sprockets", w.getSprockets());
+		return insertReturningId(insert, w);
+	}
+
+	@Override
+	public Mono<Integer> updateWidget(Widget w) {
+		GenericExecuteSpec update = 
+				client.sql("update widgets set description = :description, price = :price, " 
+						 + "gears = :gears, sprockets = :sprockets where id = :id");
+		return bindDescription(update, w)
+					.bind("price", BigDecimal.valueOf(w.getPrice()))
+					.bind("gears", w.getGears())
+					.bind("sprockets", w.getSprockets())
+					.bind("id", w.getId())
+					.fetch()
+					.rowsUpdated();
+	}
+
+	// Gadget methods
+	@Override
+	public Flux<Gadget> getAllGadgets() {
+		return client.sql(GADGET_COLUMNS + "order by id")
+					 .map(ReactiveWarehouseDaoR2dbcImpl::toGadget)
+					 .all();
+	}
+
+	@Override
+	public Flux<Gadget> getGadgetsAfter(int afterId, int limit) {
+		return client.sql(GADGET_COLUMNS + "where id > :after order by id fetch first :limit rows only")
+					 .bind("after", afterId)
+					 .bind("limit", limit)
+					 .map(ReactiveWarehouseDaoR2dbcImpl::toGadget)
+					 .all();
+	}
+
+	@Override
+	public Mono<Gadget> getGadget(int id) {
+		return client.sql(GADGET_COLUMNS + "where id = :id")
+					 .bind("id", id)
+					 .map(ReactiveWarehouseDaoR2dbcImpl::toGadget)
+					 .one();
+	}
+
+	@Override
+	public Mono<Integer> deleteGadget(int id) {
+		return client.sql("delete from gadgets where id = :id")
+					 .bind("id", id)
+					 .fetch()
+					 .rowsUpdated();
+	}
+
+	@Override
+	public Mono<Integer> insertGadget(Gadget g) {
+		GenericExecuteSpec insert = 
+				client.sql("insert into gadgets (description, price, cylinders) "
+						 + "values (:description, :price, :cylinders)");
+		insert = bindDescription(insert, g)
+					.bind("price", BigDecimal.valueOf(g.getPrice()))
+					.bind("cylinders", g.getCylinders());
+		return insertReturningId(insert, g);
+	}
+
+	@Override
+	public Mono<Integer> updateGadget(Gadget g) {
+		GenericExecuteSpec update = 
+				client.sql("update gadgets set description = :description, price = :price, " 
+						 + "cylinders = :cylinders where id = :id");
+		return bindDescription(update, g)
+					.bind("price", BigDecimal.valueOf(g.getPrice()))
+					.bind("cylinders", g.getCylinders())
+					.bind("id", g.getId())
+					.fetch()
+					.rowsUpdated();
+	}
+
+	// Product methods
+	@Override
+	public Flux<Product> getProductsPage(ProductSortOrder order, ProductKey after, int limit) {
+		boolean byPrice = order == ProductSortOrder.PRICE;
+		StringBuilder sql = new StringBuilder("SELECT product_type, id, description, price, gears, sprockets, cylinders from (")
+									.append(ALL_PRODUCTS)
+									.append(") p ");
+		if (after != null) {
+			String afterKey = "(product_type > :afterType or (product_type = :afterType and id > :afterId))";
+			// a missing price is read as 0, so it is sorted and compared as 0 too
+			String afterPrice = "coalesce(price, 0) > :afterPrice or (coalesce(price, 0) = :afterPrice and "
+							  + afterKey + ") ";
+			sql.append("where ")
+			   .append(byPrice ? afterPrice : afterKey + " ");
+		}
+		sql.append("order by ")
+		   .append(byPrice ? "coalesce(price, 0), " : "")
+		   .append("product_type, id fetch first :limit rows only");
+
+		GenericExecuteSpec query = client.sql(sql.toString()).bind("limit", limit);
+		if (after != null) {
+			query = query.bind("afterType", after.getType()).bind("afterId", after.getId());
+			if (byPrice) {
+				// bind the price as a decimal so that it compares exactly with the price column
+				query = query.bind("afterPrice", BigDecimal.valueOf(after.getPrice()));
+			}
+		}
+		return query.map(row -> ProductKey.GADGET.equals(row.get("product_type", String.class)) 
+									? (Product) toGadget(row) 
+									: (Product) toWidget(row))
+					.all();
+	}
+
+	// ***** Row mapping helpers *****
+
+	private static Widget toWidget(Row row) {
+		return new Widget(intValue(row, "id"), row.get("description", String.class), priceOf(row),
+						  intValue(row, "gears"), intValue(row, "sprockets"));
+	}
+
+	private static Gadget toGadget(Row row) {
+		return new Gadget(intValue(row, "id"), row.get("description", String.class), priceOf(row),
+						  intValue(row, "cylinders"));
+	}
+
+	// Like MyBatis, maps a null column to 0
+	private static int intValue(Row row, String column) {
+		Integer value = row.get(column, Integer.class);
+		return (value == null) ? 0 : value;
+	}
+
+	private static double priceOf(Row row) {
+		BigDecimal price = row.get("price", BigDecimal.class);
+		return (price == null) ? 0 : price.doubleValue();
+	}
+
+	private static GenericExecuteSpec bindDescription(GenericExecuteSpec spec, Product p) {
+		return (p.getDescription() == null) 
+				? spec.bindNull("description", String.class)
+				: spec.bind("description", p.getDescription());
+	}
+
+	// Executes the insert and sets the generated id on the product
+	private static Mono<Integer> insertReturningId(GenericExecuteSpec insert, Product p) {
+		return insert.filter(statement -> statement.returnGeneratedValues("id"))
+					 .map(row -> intValue(row, "id"))
+					 .one()
+					 .map(id -> {
+						 p.setId(id);
+						 return 1;
+					 })
+					 .defaultIfEmpty(0);
+	}
+}
@@ -1,8 +1,14 @@
 package com.fidelity.integration;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
+import com.fidelity.business.CatalogTotals;
 import com.fidelity.business.Gadget;
+import com.fidelity.business.Product;
+import com.fidelity.business.ProductKey;
+import com.fidelity.business.ProductSortOrder;
 import com.fidelity.business.Widget;
 
 public interface WarehouseDao {
@@ -10,23 +16,150 @@ public interface WarehouseDao {
 	// Widget methods
 	List<Widget> getAllWidgets();
 
+	/**
+	 * Passes every Widget, ordered by id, to the action one row at a time,
+	 * without loading the whole table into memory.
+	 */
+	void streamAllWidgets(Consumer<? super Widget> action);
+
+	/**
+	 * Returns at most {@code limit} Widgets whose id is greater than
+	 * {@code afterId}, ordered by id.
+	 */
+	List<Widget> getWidgetsAfter(int afterId, int limit);
+
+	/**
+	 * Returns the Widgets with the given ids, ordered by id. Ids that
+	 * are not in the table are ignored, as are duplicate ids. 
+	 */
+	List<Widget> getWidgets(Collection<Integer> ids);
+
 	Widget getWidget(int id);
 
 	int deleteWidget(int id);
 
 	int insertWidget(Widget w);
 
+	/**
+	 * Inserts all the Widgets in one transaction using JDBC batches,
+	 * and sets the generated id on each Widget.
+	 * 
+	 * @return the generated ids, in the order of the Widgets in the list
+	 */
+	List<Integer> insertWidgets(List<Widget> widgets);
+
 	int updateWidget(Widget w);
 
+	/**
+	 * Updates the Widget only if its row is still at {@code expectedVersion},
+	 * and increments the version. No lock is held between the read of the 
+	 * version and this update.
+	 * 
+	 * @return 1, or 0 if the Widget does not exist or has another version
+	 */
+	int updateWidget(Widget w, int expectedVersion);
+
+	/**
+	 * Updates all the Widgets in one transaction using JDBC batches.
+	 * Widgets that do not exist are skipped.
+	 * 
+	 * @return the update count of each Widget, in the order of the list: 1, 
+	 *         0 if the Widget does not exist, or Statement.SUCCESS_NO_INFO
+	 *         if the driver does not report the count
+	 */
+	int[] updateWidgets(List<Widget> widgets);
+
 	// Gadget methods
 	List<Gadget> getAllGadgets();
 
+	/**
+	 * Passes every Gadget, ordered by id, to the action one row at a time,
+	 * without loading the whole table into memory.
+	 */
+	void streamAllGadgets(Consumer<? super Gadget> action);
+
+	/**
+	 * Returns at most {@code limit} Gadgets whose id is greater than
+	 * {@code afterId}, ordered by id.
+	 */
+	List<Gadget> getGadgetsAfter(int afterId, int limit);
+
+	/**
+	 * Returns the Gadgets with the given ids, ordered by id. Ids that
+	 * are not in the table are ignored, as are duplicate ids. 
+	 */
+	List<Gadget> getGadgets(Collection<Integer> ids);
+
 	Gadget getGadget(int id);
 
 	int deleteGadget(int id);
 
 	int insertGadget(Gadget g);
 
+	/**
+	 * Inserts all the Gadgets in one transaction using JDBC batches,
+	 * and sets the generated id on each Gadget.
+	 * 
+	 * @return the generated ids, in the order of the Gadgets in the list
+	 */
+	List<Integer> insertGadgets(List<Gadget> gadgets);
+
 	int updateGadget(Gadget g);
 
+	/**
+	 * Updates the Gadget only if its row is still at {@code expectedVersion},
+	 * and increments the version.
+	 * 
+	 * @return 1, or 0 if the Gadget does not exist or has another version
+	 */
+	int updateGadget(Gadget g, int expectedVersion);
+
+	/**
+	 * Updates all the Gadgets in one transaction using JDBC batches.
+	 * Gadgets that do not exist are skipped.
+	 * 
+	 * @return the update count of each Gadget, in the order of the list: 1, 
+	 *         0 if the Gadget does not exist, or Statement.SUCCESS_NO_INFO
+	 *         if the driver does not report the count
+	 */
+	int[] updateGadgets(List<Gadget> gadgets);
+
+	// Product methods
+
+	/**
+	 * Returns at most {@code limit} Widgets and Gadgets in the given order,
+	 * starting after the product with the key {@code after}, or from the 
+	 * first product if {@code after} is null. Both tables are read in a 
+	 * single query.
+	 */
+	List<Product> getProductsPage(ProductSortOrder order, ProductKey after, int limit);
+
+	/**
+	 * Returns at most {@code limit} products of the type ("widget" or 
+	 * "gadget", or both if null) whose price is within the bounds, which 
+	 * are inclusive and may be null. The products are in 
+	 * ProductSortOrder.PRICE, starting after the product with the key 
+	 * {@code after}, or from the first product if {@code after} is null.
+	 */
+	List<Product> getProductsByPrice(String type, Double minPrice, Double maxPrice, ProductKey after, int limit);
+
+	/**
+	 * Returns the {@code limit} products of the type ("widget" or "gadget",
+	 * or both if null) with the highest or the lowest price. Highest first,
+	 * the products are in the reverse of ProductSortOrder.PRICE.
+	 */
+	List<Product> getTopProductsByPrice(String type, boolean highestFirst, int limit);
+
+	/**
+	 * Returns the Widgets and Gadgets with the given ids, Gadgets first,
+	 * each ordered by id. Ids that are not in their table are ignored.
+	 */
+	List<Product> getProducts(Collection<Integer> widgetIds, Collection<Integer> gadgetIds);
+
+	/**
+	 * Returns the counts and sums over all Widgets and Gadgets, computed
+	 * by the database in a single query.
+	 */
+	CatalogTotals getCatalogTotals();
+
 }
\ No newline at end of file
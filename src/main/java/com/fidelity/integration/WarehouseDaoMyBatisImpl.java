@@ -1,25 +1,99 @@
 package com.fidelity.integration;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.function.Consumer;
 
+import javax.annotation.PostConstruct;
+
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.SqlSessionTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.fidelity.business.CatalogTotals;
 import com.fidelity.business.Gadget;
+import com.fidelity.business.Product;
+import com.fidelity.business.ProductKey;
+import com.fidelity.business.ProductSortOrder;
 import com.fidelity.business.Widget;
 import com.fidelity.integration.mapper.WarehouseMapper;
 
 @Repository("warehouseDao")
+@Profile("!reactive")
 public class WarehouseDaoMyBatisImpl implements WarehouseDao {
+	// Oracle accepts at most 1000 expressions in an IN list
+	private static final int MAX_IN_LIST_SIZE = 1000;
+
 	@Autowired
 	private WarehouseMapper mapper;
+
+	@Autowired
+	private SqlSessionFactory sqlSessionFactory;
+
+	// Number of rows sent to the database in one JDBC batch
+	@Value("${warehouse.batch.chunk-size:500}")
+	private int batchChunkSize;
+
+	// The bulk inserts run on a SqlSession with a BATCH executor, which queues
+	// the insert statements and sends them to the database when flushed.
+	// MyBatis does not allow a transaction to switch executor types, so the
+	// bulk insert methods must not share a transaction with the other methods.
+	private SqlSessionTemplate batchSession;
+	private WarehouseMapper batchMapper;
+
+	@PostConstruct
+	public void initBatchMapper() {
+		batchSession = new SqlSessionTemplate(sqlSessionFactory, ExecutorType.BATCH);
+		batchMapper = batchSession.getMapper(WarehouseMapper.class);
+	}
 		
 	@Override
 	public List<Widget> getAllWidgets() {
 		List<Widget> products = mapper.getAllWidgets();
 		return products;
 	}
+
+	// A MyBatis Cursor reads rows lazily, so it is only usable while its
+	// SqlSession is open. The transaction keeps the session open until
+	// the last row has been consumed.
+	@Override
+	@Transactional(readOnly = true)
+	public void streamAllWidgets(Consumer<? super Widget> action) {
+		try (Cursor<Widget> cursor = mapper.streamAllWidgets()) {
+			cursor.forEach(action);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public List<Widget> getWidgetsAfter(int afterId, int limit) {
+		List<Widget> products = mapper.getWidgetsAfter(afterId, limit);
+		return products;
+	}
 	
+	@Override
+	public List<Widget> getWidgets(Collection<Integer> ids) {
+		List<Widget> products = new ArrayList<>(ids.size());
+		for (List<Integer> chunk : inListChunks(ids)) {
+			products.addAll(mapper.getWidgetsByIds(chunk));
+		}
+		return products;
+	}
+
 	@Override
 	public Widget getWidget(int id) {
 		Widget widget = mapper.getWidget(id);
@@ -38,12 +112,38 @@ public class WarehouseDaoMyBatisImpl implements WarehouseDao {
 		return count;
 	}
 
+	@Override
+	@Transactional
+	public List<Integer> insertWidgets(List<Widget> widgets) {
+		List<Integer> ids = new ArrayList<>(widgets.size());
+		for (int start = 0; start < widgets.size(); start += batchChunkSize) {
+			List<Widget> chunk = widgets.subList(start, Math.min(start + batchChunkSize, widgets.size()));
+			chunk.forEach(batchMapper::insertWidget);
+			// executes the batch; the generated keys are set on the Widgets
+			batchSession.flushStatements();
+			chunk.forEach(w -> ids.add(w.getId()));
+		}
+		return ids;
+	}
+
 	@Override
 	public int updateWidget(Widget w) {
 		int count = mapper.updateWidget(w);
 		return count;
 	}
 
+	@Override
+	public int updateWidget(Widget w, int expectedVersion) {
+		int count = mapper.updateWidgetIfVersion(w, expectedVersion);
+		return count;
+	}
+
+	@Override
+	@Transactional
+	public int[] updateWidgets(List<Widget> widgets) {
+		return updateInBatches(widgets, batchMapper::updateWidget);
+	}
+
 	// Gadget methods
 	@Override
 	public List<Gadget> getAllGadgets() {
@@ -51,6 +151,31 @@ public class WarehouseDaoMyBatisImpl implements WarehouseDao {
 		return products;
 	}
 
+	@Override
+	@Transactional(readOnly = true)
+	public void streamAllGadgets(Consumer<? super Gadget> action) {
+		try (Cursor<Gadget> cursor = mapper.streamAllGadgets()) {
+			cursor.forEach(action);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public List<Gadget> getGadgetsAfter(int afterId, int limit) {
+		List<Gadget> products = mapper.getGadgetsAfter(afterId, limit);
+		return products;
+	}
+
+	@Override
+	public List<Gadget> getGadgets(Collection<Integer> ids) {
+		List<Gadget> products = new ArrayList<>(ids.size());
+		for (List<Integer> chunk : inListChunks(ids)) {
+			products.addAll(mapper.getGadgetsByIds(chunk));
+		}
+		return products;
+	}
+
 	@Override
 	public Gadget getGadget(int id) {
 		Gadget gadget = mapper.getGadget(id);
@@ -69,10 +194,117 @@ public class WarehouseDaoMyBatisImpl implements WarehouseDao {
 		return count;
 	}
 
+	@Override
+	@Transactional
+	public List<Integer> insertGadgets(List<Gadget> gadgets) {
+		List<Integer> ids = new ArrayList<>(gadgets.size());
+		for (int start = 0; start < gadgets.size(); start += batchChunkSize) {
+			List<Gadget> chunk = gadgets.subList(start, Math.min(start + batchChunkSize, gadgets.size()));
+			chunk.forEach(batchMapper::insertGadget);
+			batchSession.flushStatements();
+			chunk.forEach(g -> ids.add(g.getId()));
+		}
+		return ids;
+	}
+
 	@Override
 	public int updateGadget(Gadget g) {
 		int count = mapper.updateGadget(g);
 		return count;
 	}
 
+	@Override
+	public int updateGadget(Gadget g, int expectedVersion) {
+		int count = mapper.updateGadgetIfVersion(g, expectedVersion);
+		return count;
+	}
+
+	@Override
+	@Transactional
+	public int[] updateGadgets(List<Gadget> gadgets) {
+		return updateInBatches(gadgets, batchMapper::updateGadget);
+	}
+
+	// Executes the updates in chunks and collects the update counts;
+	// each chunk is one statement, so one BatchResult per flush.
+	// Oracle drivers before 12c report SUCCESS_NO_INFO instead of counts
+	private <T> int[] updateInBatches(List<T> products, Consumer<T> update) {
+		int[] counts = new int[products.size()];
+		int next = 0;
+		for (int start = 0; start < products.size(); start += batchChunkSize) {
+			products.subList(start, Math.min(start + batchChunkSize, products.size()))
+					.forEach(update);
+			for (BatchResult result : batchSession.flushStatements()) {
+				int[] updateCounts = result.getUpdateCounts();
+				System.arraycopy(updateCounts, 0, counts, next, updateCounts.length);
+				next += updateCounts.length;
+			}
+		}
+		return counts;
+	}
+
+	// Product methods
+	@Override
+	public List<Product> getProductsPage(ProductSortOrder order, ProductKey after, int limit) {
+		// bind the price as a decimal so that it compares exactly with the price column
+		BigDecimal afterPrice = (after == null) ? null : BigDecimal.valueOf(after.getPrice());
+		List<Product> products = mapper.getProductsPage(order == ProductSortOrder.PRICE, after, afterPrice, limit);
+		return products;
+	}
+
+	@Override
+	public List<Product> getProductsByPrice(String type, Double minPrice, Double maxPrice, ProductKey after, int limit) {
+		BigDecimal afterPrice = (after == null) ? null : BigDecimal.valueOf(after.getPrice());
+		List<Product> products = mapper.getProductsByPrice(type, decimal(minPrice), decimal(maxPrice), 
+														   after, afterPrice, false, limit);
+		return products;
+	}
+
+	@Override
+	public List<Product> getTopProductsByPrice(String type, boolean highestFirst, int limit) {
+		List<Product> products = mapper.getProductsByPrice(type, null, null, null, null, highestFirst, limit);
+		return products;
+	}
+
+	private static BigDecimal decimal(Double price) {
+		return (price == null) ? null : BigDecimal.valueOf(price);
+	}
+
+	// Each query reads up to MAX_IN_LIST_SIZE Widgets and as many Gadgets.
+	// With more than one chunk the Gadgets are no longer all first, so the
+	// results are sorted again.
+	@Override
+	public List<Product> getProducts(Collection<Integer> widgetIds, Collection<Integer> gadgetIds) {
+		List<List<Integer>> widgetChunks = inListChunks(widgetIds);
+		List<List<Integer>> gadgetChunks = inListChunks(gadgetIds);
+		int queries = Math.max(widgetChunks.size(), gadgetChunks.size());
+		List<Product> products = new ArrayList<>(widgetIds.size() + gadgetIds.size());
+		for (int i = 0; i < queries; i++) {
+			// the mapper leaves out the query for a table without ids
+			List<Integer> widgetChunk = (i < widgetChunks.size()) ? widgetChunks.get(i) : null;
+			List<Integer> gadgetChunk = (i < gadgetChunks.size()) ? gadgetChunks.get(i) : null;
+			products.addAll(mapper.getProductsByIds(widgetChunk, gadgetChunk));
+		}
+		if (queries > 1) {
+			products.sort(Comparator.comparing(ProductKey::typeOf)
+									.thenComparingInt(Product::getId));
+		}
+		return products;
+	}
+
+	@Override
+	public CatalogTotals getCatalogTotals() {
+		return mapper.getCatalogTotals();
+	}
+
+	// Splits the distinct ids into lists that fit in one IN list
+	private static List<List<Integer>> inListChunks(Collection<Integer> ids) {
+		List<Integer> distinctIds = new ArrayList<>(new LinkedHashSet<>(ids));
+		List<List<Integer>> chunks = new ArrayList<>();
+		for (int start = 0; start < distinctIds.size(); start += MAX_IN_LIST_SIZE) {
+			chunks.add(distinctIds.subList(start, Math.min(start + MAX_IN_LIST_SIZE, distinctIds.size())));
+		}
+		return chunks;
+	}
+
 }
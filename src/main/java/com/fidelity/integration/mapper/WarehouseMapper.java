@@ -1,8 +1,15 @@
 package com.fidelity.integration.mapper;
 
+import java.math.BigDecimal;
 import java.util.List;
 
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
+
+import com.fidelity.business.CatalogTotals;
 import com.fidelity.business.Gadget;
+import com.fidelity.business.Product;
+import com.fidelity.business.ProductKey;
 import com.fidelity.business.Widget;
 
 
@@ -19,16 +26,41 @@ import com.fidelity.business.Widget;
 public interface WarehouseMapper {
 	// ***** Widget Methods *****
 	List<Widget> getAllWidgets();
+	Cursor<Widget> streamAllWidgets();
+	List<Widget> getWidgetsAfter(@Param("after") int after, @Param("limit") int limit);
+	List<Widget> getWidgetsByIds(@Param("ids") List<Integer> ids);
 	Widget getWidget(int id);
 	int deleteWidget(int id);
 	int updateWidget(Widget widget);
+	int updateWidgetIfVersion(@Param("widget") Widget widget, @Param("version") int version);
 	int insertWidget(Widget widget);
 
 	// ***** Gadget Methods *****
 	List<Gadget> getAllGadgets();
+	Cursor<Gadget> streamAllGadgets();
+	List<Gadget> getGadgetsAfter(@Param("after") int after, @Param("limit") int limit);
+	List<Gadget> getGadgetsByIds(@Param("ids") List<Integer> ids);
 	Gadget getGadget(int id);
 	int deleteGadget(int id);
 	int updateGadget(Gadget gadget);
+	int updateGadgetIfVersion(@Param("gadget") Gadget gadget, @Param("version") int version);
 	int insertGadget(Gadget gadget);
 
+	// ***** Product Methods *****
+	List<Product> getProductsPage(@Param("byPrice") boolean byPrice, 
+								  @Param("after") ProductKey after, 
+								  @Param("afterPrice") BigDecimal afterPrice, 
+								  @Param("limit") int limit);
+	List<Product> getProductsByPrice(@Param("type") String type,
+									 @Param("minPrice") BigDecimal minPrice,
+									 @Param("maxPrice") BigDecimal maxPrice,
+									 @Param("after") ProductKey after, 
+									 @Param("afterPrice") BigDecimal afterPrice, 
+									 @Param("descending") boolean descending,
+									 @Param("limit") int limit);
+	List<Product> getProductsByIds(@Param("widgetIds") List<Integer> widgetIds,
+								   @Param("gadgetIds") List<Integer> gadgetIds);
+
+	CatalogTotals getCatalogTotals();
+
  }
@@ -0,0 +1,222 @@
+package com.fidelity.monitoring;
+
+import java.time.Instant;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.jdbc.DataSourceUnwrapper;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * AdaptivePoolSizer resizes the Hikari connection pool between
+ * warehouse.pool.adaptive.min-size and max-size when
+ * warehouse.pool.adaptive.enabled is true.
+ *
+ * Every warehouse.pool.adaptive.interval it compares, over the interval,
+ * the average wait for a connection with the average time a connection is
+ * held (see ConnectionHoldTracker), which stands for the database latency;
+ * connections held for cursors and batches are left out of that average:
+ *  - when requests wait for connections longer than wait-ratio times the
+ *    hold time, the pool is grown by a quarter, unless the hold time is
+ *    more than slowdown-factor times its usual value; then the database
+ *    itself is the bottleneck, and more connections would only add to
+ *    its load
+ *  - when fewer than half of the connections were in use on average
+ *    (the total time all connections were held, divided by the
+ *    interval), the pool is shrunk by one connection
+ * The usual hold time is a moving average of the intervals in which no
+ * request waited. Hikari closes connections beyond the new maximum as
+ * they become idle.
+ *
+ * The bounds and the last decision are published by the connectionpool
+ * Actuator endpoint; the current size is the hikaricp.connections.max
+ * metric.
+ */
+@Component
+@Profile("!reactive")
+public class AdaptivePoolSizer {
+	// Weight of the latest interval in the usual hold time
+	private static final double BASELINE_WEIGHT = 0.2;
+
+	@Autowired
+	private Logger logger;
+
+	@Autowired
+	private DataSource dataSource;
+
+	@Autowired
+	private ConnectionHoldTracker tracker;
+
+	@Value("${warehouse.pool.adaptive.enabled:false}")
+	private boolean enabled;
+
+	@Value("${warehouse.pool.adaptive.min-size:5}")
+	private int minSize;
+
+	@Value("${warehouse.pool.adaptive.max-size:30}")
+	private int maxSize;
+
+	@Value("${warehouse.pool.adaptive.wait-ratio:0.1}")
+	private double waitRatio;
+
+	@Value("${warehouse.pool.adaptive.slowdown-factor:2.0}")
+	private double slowdownFactor;
+
+	private HikariDataSource pool;
+
+	// Guarded by this: the tracker totals at the last adjustment
+	private long lastSampleNanos = System.nanoTime();
+	private long lastAcquireNanos;
+	private long lastAcquireCount;
+	private long lastHoldNanos;
+	private long lastHoldCount;
+	private long lastConnectionNanos;
+	private double baselineHoldNanos;
+
+	private volatile Decision lastDecision;
+	private volatile Instant lastDecisionTime;
+
+	@PostConstruct
+	public void init() {
+		if (minSize < 1 || minSize > maxSize) {
+			throw new IllegalArgumentException(
+					"warehouse.pool.adaptive.min-size must be between 1 and max-size");
+		}
+		pool = DataSourceUnwrapper.unwrap(dataSource, HikariConfigMXBean.class, HikariDataSource.class);
+		if (enabled && pool == null) {
+			logger.warn("Adaptive pool sizing is enabled, but the DataSource is not a Hikari pool");
+		}
+	}
+
+	/**
+	 * Returns the Hikari pool, or null if the DataSource is another kind.
+	 */
+	public HikariDataSource getPool() {
+		return pool;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public int getMinSize() {
+		return minSize;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public Decision getLastDecision() {
+		return lastDecision;
+	}
+
+	public Instant getLastDecisionTime() {
+		return lastDecisionTime;
+	}
+
+	@Scheduled(fixedDelayString="${warehouse.pool.adaptive.interval:PT10S}")
+	public synchronized void adjust() {
+		if (!enabled || pool == null) {
+			return;
+		}
+		long now = System.nanoTime();
+		long acquireNanos = tracker.getAcquireNanos();
+		long acquireCount = tracker.getAcquireCount();
+		long holdNanos = tracker.getHoldNanos();
+		long holdCount = tracker.getHoldCount();
+		long connectionNanos = tracker.getConnectionNanos();
+		long acquires = acquireCount - lastAcquireCount;
+		long holds = holdCount - lastHoldCount;
+		double averageWait = acquires == 0 ? 0 : (double) (acquireNanos - lastAcquireNanos) / acquires;
+		double averageHold = holds == 0 ? 0 : (double) (holdNanos - lastHoldNanos) / holds;
+		double connectionsInUse = (double) (connectionNanos - lastConnectionNanos) / (now - lastSampleNanos);
+		lastSampleNanos = now;
+		lastAcquireNanos = acquireNanos;
+		lastAcquireCount = acquireCount;
+		lastHoldNanos = holdNanos;
+		lastHoldCount = holdCount;
+		lastConnectionNanos = connectionNanos;
+		if (holds == 0) {
+			return;
+		}
+
+		HikariConfigMXBean config = pool.getHikariConfigMXBean();
+		int size = config.getMaximumPoolSize();
+		Decision decision = decide(size, minSize, maxSize, averageWait, averageHold, baselineHoldNanos,
+								   connectionsInUse, waitRatio, slowdownFactor);
+		if (averageWait <= averageHold * waitRatio) {
+			baselineHoldNanos = (baselineHoldNanos == 0) ? averageHold
+					: (1 - BASELINE_WEIGHT) * baselineHoldNanos + BASELINE_WEIGHT * averageHold;
+		}
+		if (decision.getSize() != size) {
+			config.setMaximumPoolSize(decision.getSize());
+			if (config.getMinimumIdle() > decision.getSize()) {
+				config.setMinimumIdle(decision.getSize());
+			}
+			logger.info("Resized the connection pool from {} to {}: {}", size, decision.getSize(), decision.getReason());
+		}
+		lastDecision = decision;
+		lastDecisionTime = Instant.now();
+	}
+
+	/**
+	 * Returns the pool size for the measurements of the last interval.
+	 *
+	 * @param averageWait the average wait for a connection
+	 * @param averageHold the average time a connection was held
+	 * @param baselineHold the usual average hold time, or 0 if not known yet
+	 * @param connectionsInUse the average number of connections held
+	 */
+	static Decision decide(int size, int minSize, int maxSize, double averageWait, double averageHold,
+						   double baselineHold, double connectionsInUse, double waitRatio, double slowdownFactor) {
+		if (size < minSize) {
+			return new Decision(minSize, "the pool is smaller than min-size");
+		}
+		if (size > maxSize) {
+			return new Decision(maxSize, "the pool is larger than max-size");
+		}
+		boolean waiting = averageWait > averageHold * waitRatio;
+		boolean databaseSlow = baselineHold > 0 && averageHold > baselineHold * slowdownFactor;
+		if (waiting && databaseSlow) {
+			return new Decision(size, "requests wait for connections, but the database is slower than usual");
+		}
+		if (waiting && size < maxSize) {
+			return new Decision(Math.min(maxSize, size + Math.max(1, size / 4)), "requests wait for connections");
+		}
+		if (!waiting && connectionsInUse < size / 2.0 && size > minSize) {
+			return new Decision(size - 1, "fewer than half of the connections are in use");
+		}
+		return new Decision(size, "the pool size fits the load");
+	}
+
+	/**
+	 * A pool size and the reason for it.
+	 */
+	public static class Decision {
+		private final int size;
+		private final String reason;
+
+		Decision(int size, String reason) {
+			this.size = size;
+			this.reason = reason;
+		}
+
+		public int getSize() {
+			return size;
+		}
+
+		public String getReason() {
+			return reason;
+		}
+	}
+}
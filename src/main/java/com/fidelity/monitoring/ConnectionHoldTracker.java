@@ -0,0 +1,286 @@
+package com.fidelity.monitoring;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletRequest;
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.HandlerMapping;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * ConnectionHoldTracker measures, for each connection handed out by the
+ * TrackingDataSource, the time spent waiting for the pool and the time the
+ * connection was held before it was returned:
+ *    warehouse.connection.acquire   - the wait for the pool
+ *    warehouse.connection.hold      - the time from getConnection() to close()
+ * Both timers are tagged with:
+ *    route     - the HTTP method and path pattern of the request being
+ *                served, e.g. "GET /warehouse/widgets/{id}", or none for
+ *                background threads and streamed response bodies
+ *    statement - the MyBatis statement that asked for the connection;
+ *                for a connection obtained by a transaction, the first
+ *                statement run in it; none for JdbcTemplate
+ *    bulk      - true if a cursor or a batch ran on the connection
+ * Both are recorded when the connection is returned, since a transaction
+ * obtains its connection before its first statement runs.
+ *
+ * A bulk hold lasts as long as the caller takes to consume a cursor or
+ * build a batch, e.g. while /export writes the response, so it is left
+ * out of the hold totals that AdaptivePoolSizer reads as the latency of
+ * the database, and out of the long-hold check. Other connections held
+ * longer than warehouse.pool.long-hold-threshold are reported once, with
+ * the stack of the thread that holds them, as they are found by a check
+ * every long-hold-check-interval, and counted in
+ * warehouse.connection.long.holds. A connection that is never returned
+ * (a leak) keeps showing up in the open holds of the connectionpool
+ * Actuator endpoint.
+ */
+@Component
+@Profile("!reactive")
+public class ConnectionHoldTracker {
+	public static final String ACQUIRE_TIMER = "warehouse.connection.acquire";
+	public static final String HOLD_TIMER = "warehouse.connection.hold";
+	private static final String NONE = "none";
+
+	// The last connection the thread obtained that it still holds
+	private static final ThreadLocal<Hold> THREAD_HOLD = new ThreadLocal<>();
+
+	@Autowired
+	private Logger logger;
+
+	@Autowired
+	private DataSource dataSource;
+
+	@Autowired
+	private MeterRegistry registry;
+
+	@Value("${warehouse.pool.long-hold-threshold:10s}")
+	private Duration longHoldThreshold;
+
+	private final Set<Hold> openHolds = ConcurrentHashMap.newKeySet();
+
+	// Totals since startup, for the adaptive pool sizing; the hold time
+	// and count leave out bulk holds, the connection time includes them
+	private final LongAdder acquireNanos = new LongAdder();
+	private final LongAdder acquireCount = new LongAdder();
+	private final LongAdder holdNanos = new LongAdder();
+	private final LongAdder holdCount = new LongAdder();
+	private final LongAdder connectionNanos = new LongAdder();
+
+	private Counter longHolds;
+
+	@PostConstruct
+	public void init() {
+		longHolds = Counter.builder("warehouse.connection.long.holds")
+						   .description("Connections held longer than warehouse.pool.long-hold-threshold")
+						   .register(registry);
+		if (dataSource instanceof TrackingDataSource) {
+			((TrackingDataSource) dataSource).setTracker(this);
+		}
+	}
+
+	/**
+	 * Records that the calling thread obtained a connection after waiting
+	 * for it, and starts its hold.
+	 */
+	Hold acquired(long waitNanos) {
+		String statement = MyBatisStatementTimer.currentStatement();
+		Hold hold = new Hold(Thread.currentThread(), currentRoute(), statement != null ? statement : NONE,
+							 MyBatisStatementTimer.currentStatementIsBulk(), waitNanos, THREAD_HOLD.get());
+		THREAD_HOLD.set(hold);
+		acquireNanos.add(waitNanos);
+		acquireCount.increment();
+		openHolds.add(hold);
+		return hold;
+	}
+
+	/**
+	 * Attributes the connection that the calling thread holds, if no
+	 * statement has run on it yet, to the statement that is starting.
+	 */
+	static void statementStarted(String statement, boolean bulk) {
+		Hold hold = THREAD_HOLD.get();
+		if (hold != null) {
+			if (hold.statement.equals(NONE)) {
+				hold.statement = statement;
+			}
+			if (bulk) {
+				hold.bulk = true;
+			}
+		}
+	}
+
+	/**
+	 * Records that the connection of the hold was returned to the pool.
+	 */
+	void released(Hold hold) {
+		openHolds.remove(hold);
+		if (THREAD_HOLD.get() == hold) {
+			Hold enclosing = hold.enclosing;
+			if (enclosing != null && openHolds.contains(enclosing)) {
+				THREAD_HOLD.set(enclosing);
+			} else {
+				THREAD_HOLD.remove();
+			}
+		}
+		long heldNanos = System.nanoTime() - hold.startNanos;
+		Timer.builder(ACQUIRE_TIMER)
+			 .tag("route", hold.route)
+			 .tag("statement", hold.statement)
+			 .tag("bulk", String.valueOf(hold.bulk))
+			 .register(registry)
+			 .record(hold.waitNanos, TimeUnit.NANOSECONDS);
+		Timer.builder(HOLD_TIMER)
+			 .tag("route", hold.route)
+			 .tag("statement", hold.statement)
+			 .tag("bulk", String.valueOf(hold.bulk))
+			 .register(registry)
+			 .record(heldNanos, TimeUnit.NANOSECONDS);
+		connectionNanos.add(heldNanos);
+		if (!hold.bulk) {
+			holdNanos.add(heldNanos);
+			holdCount.increment();
+		}
+		if (hold.reported) {
+			logger.info("The connection held by {} was returned after {} ms",
+						hold.threadName, TimeUnit.NANOSECONDS.toMillis(heldNanos));
+		}
+	}
+
+	/**
+	 * Reports the connections that have been held longer than the
+	 * threshold since the last check.
+	 */
+	@Scheduled(fixedDelayString="${warehouse.pool.long-hold-check-interval:PT5S}")
+	public void reportLongHolds() {
+		long threshold = longHoldThreshold.toNanos();
+		for (Hold hold : openHolds) {
+			if (!hold.reported && !hold.bulk && hold.heldNanos() > threshold) {
+				hold.reported = true;
+				longHolds.increment();
+				String stack = Arrays.stream(hold.thread.getStackTrace())
+									 .map(frame -> "\tat " + frame)
+									 .collect(Collectors.joining("\n"));
+				logger.warn("A connection has been held for {} ms by {} (route {}, statement {}), which is at\n{}",
+							TimeUnit.NANOSECONDS.toMillis(hold.heldNanos()), hold.threadName,
+							hold.route, hold.statement, stack);
+			}
+		}
+	}
+
+	/**
+	 * Returns the connections that are held now, longest first.
+	 */
+	public List<Hold> getOpenHolds() {
+		return openHolds.stream()
+						.sorted(Comparator.comparingLong((Hold hold) -> hold.startNanos))
+						.collect(Collectors.toList());
+	}
+
+	public Duration getLongHoldThreshold() {
+		return longHoldThreshold;
+	}
+
+	long getAcquireNanos() {
+		return acquireNanos.sum();
+	}
+
+	long getAcquireCount() {
+		return acquireCount.sum();
+	}
+
+	long getHoldNanos() {
+		return holdNanos.sum();
+	}
+
+	long getHoldCount() {
+		return holdCount.sum();
+	}
+
+	long getConnectionNanos() {
+		return connectionNanos.sum();
+	}
+
+	private static String currentRoute() {
+		RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+		if (attributes instanceof ServletRequestAttributes) {
+			HttpServletRequest request = ((ServletRequestAttributes) attributes).getRequest();
+			Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+			if (pattern != null) {
+				return request.getMethod() + " " + pattern;
+			}
+		}
+		return NONE;
+	}
+
+	/**
+	 * A connection that has been handed out.
+	 */
+	public static class Hold {
+		private final Thread thread;
+		private final String threadName;
+		private final String route;
+		private volatile String statement;
+		private volatile boolean bulk;
+		private final long waitNanos;
+		private final long startNanos = System.nanoTime();
+		private final Hold enclosing;
+		private volatile boolean reported;
+
+		Hold(Thread thread, String route, String statement, boolean bulk, long waitNanos, Hold enclosing) {
+			this.thread = thread;
+			this.threadName = thread.getName();
+			this.route = route;
+			this.statement = statement;
+			this.bulk = bulk;
+			this.waitNanos = waitNanos;
+			this.enclosing = enclosing;
+		}
+
+		long heldNanos() {
+			return System.nanoTime() - startNanos;
+		}
+
+		public String getThread() {
+			return threadName;
+		}
+
+		public String getRoute() {
+			return route;
+		}
+
+		public String getStatement() {
+			return statement;
+		}
+
+		public boolean isBulk() {
+			return bulk;
+		}
+
+		public long getHeldMillis() {
+			return TimeUnit.NANOSECONDS.toMillis(heldNanos());
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package com.fidelity.monitoring;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+/**
+ * The connectionpool Actuator endpoint (/actuator/connectionpool) shows
+ * the state of the Hikari pool, the connections that are held now with
+ * the route and statement they were obtained for, and the bounds and last
+ * decision of the AdaptivePoolSizer.
+ *
+ * The wait and hold time histograms are the warehouse.connection.acquire
+ * and warehouse.connection.hold metrics (see ConnectionHoldTracker).
+ */
+@Component
+@Endpoint(id="connectionpool")
+@Profile("!reactive")
+public class ConnectionPoolEndpoint {
+	@Autowired
+	private ConnectionHoldTracker tracker;
+
+	@Autowired
+	private AdaptivePoolSizer sizer;
+
+	@ReadOperation
+	public Map<String, Object> connectionPool() {
+		Map<String, Object> result = new LinkedHashMap<>();
+		HikariDataSource pool = sizer.getPool();
+		if (pool != null) {
+			Map<String, Object> poolState = new LinkedHashMap<>();
+			poolState.put("name", pool.getPoolName());
+			poolState.put("minimumIdle", pool.getHikariConfigMXBean().getMinimumIdle());
+			poolState.put("maximumPoolSize", pool.getHikariConfigMXBean().getMaximumPoolSize());
+			// the pool is started by the first request for a connection
+			HikariPoolMXBean poolBean = pool.getHikariPoolMXBean();
+			if (poolBean != null) {
+				poolState.put("active", poolBean.getActiveConnections());
+				poolState.put("idle", poolBean.getIdleConnections());
+				poolState.put("total", poolBean.getTotalConnections());
+				poolState.put("threadsAwaitingConnection", poolBean.getThreadsAwaitingConnection());
+			}
+			result.put("pool", poolState);
+		}
+		result.put("longHoldThreshold", tracker.getLongHoldThreshold().toString());
+		result.put("openHolds", tracker.getOpenHolds());
+
+		Map<String, Object> adaptive = new LinkedHashMap<>();
+		adaptive.put("enabled", sizer.isEnabled());
+		adaptive.put("minSize", sizer.getMinSize());
+		adaptive.put("maxSize", sizer.getMaxSize());
+		if (sizer.getLastDecision() != null) {
+			adaptive.put("lastDecision", sizer.getLastDecision());
+			adaptive.put("lastDecisionTime", sizer.getLastDecisionTime().toString());
+		}
+		result.put("adaptive", adaptive);
+		return result;
+	}
+}
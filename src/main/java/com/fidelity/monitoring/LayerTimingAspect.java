@@ -0,0 +1,102 @@
+package com.fidelity.monitoring;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * LayerTimingAspect times every public method of WarehouseController,
+ * WarehouseBusinessService and WarehouseDao. Each layer has its own timer:
+ *    warehouse.controller, warehouse.service, warehouse.dao
+ * 
+ * The timers are tagged with:
+ *    operation   - the method name, e.g. queryForWidgetById
+ *    productType - widget, gadget or product, taken from the method name
+ *    outcome     - success or error
+ *    exception   - the simple name of the exception thrown, or none
+ * 
+ * Comparing the layers with http.server.requests shows where a slow
+ * request spends its time: the gap between http.server.requests and
+ * warehouse.controller is Tomcat, filters and Jackson; the gap between
+ * warehouse.dao and warehouse.sql is MyBatis result mapping.
+ * 
+ * Percentile histograms are enabled in application.properties.
+ * Note that a streaming controller method returns before the response
+ * body is written, so its timer covers only the setup of the stream.
+ */
+@Aspect
+@Component
+public class LayerTimingAspect {
+	public static final String CONTROLLER_TIMER = "warehouse.controller";
+	public static final String SERVICE_TIMER = "warehouse.service";
+	public static final String DAO_TIMER = "warehouse.dao";
+
+	private final MeterRegistry registry;
+
+	// productType tag for each method name, so the name is only parsed once
+	private final Map<String, String> productTypes = new ConcurrentHashMap<>();
+
+	public LayerTimingAspect(MeterRegistry registry) {
+		this.registry = registry;
+	}
+
+	@Around("execution(public * com.fidelity.restservices.WarehouseController.*(..))")
+	public Object timeController(ProceedingJoinPoint joinPoint) throws Throwable {
+		return time(CONTROLLER_TIMER, joinPoint);
+	}
+
+	@Around("execution(* com.fidelity.business.service.WarehouseBusinessService.*(..))")
+	public Object timeService(ProceedingJoinPoint joinPoint) throws Throwable {
+		return time(SERVICE_TIMER, joinPoint);
+	}
+
+	@Around("execution(* com.fidelity.integration.WarehouseDao.*(..))")
+	public Object timeDao(ProceedingJoinPoint joinPoint) throws Throwable {
+		return time(DAO_TIMER, joinPoint);
+	}
+
+	private Object time(String timerName, ProceedingJoinPoint joinPoint) throws Throwable {
+		String operation = joinPoint.getSignature().getName();
+		String exception = "none";
+		Timer.Sample sample = Timer.start(registry);
+		try {
+			return joinPoint.proceed();
+		} catch (Throwable e) {
+			exception = e.getClass().getSimpleName();
+			throw e;
+		} finally {
+			sample.stop(Timer.builder(timerName)
+							 .tag("operation", operation)
+							 .tag("productType", productTypes.computeIfAbsent(operation, 
+									 							LayerTimingAspect::productTypeOf))
+							 .tag("outcome", "none".equals(exception) ? "success" : "error")
+							 .tag("exception", exception)
+							 .register(registry));
+		}
+	}
+
+	/**
+	 * Returns the productType tag for a method name: "widget" for
+	 * findWidgetById, "gadget" for getAllGadgets, "product" for
+	 * queryForAllProducts, and "none" for methods like ping.
+	 */
+	static String productTypeOf(String methodName) {
+		if (methodName.contains("Widget")) {
+			return "widget";
+		}
+		if (methodName.contains("Gadget")) {
+			return "gadget";
+		}
+		if (methodName.contains("Product")) {
+			return "product";
+		}
+		return "none";
+	}
+}
@@ -0,0 +1,134 @@
+package com.fidelity.monitoring;
+
+import java.lang.reflect.Proxy;
+
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.BatchExecutor;
+import org.apache.ibatis.executor.CachingExecutor;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.reflection.SystemMetaObject;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * MyBatisStatementTimer is a MyBatis plugin that times the execution of
+ * each mapped statement in the warehouse.sql timer, tagged with:
+ *    statement - the statement id without its namespace, e.g. getAllWidgets
+ *    command   - SELECT, INSERT, UPDATE or DELETE
+ *    outcome   - success or error
+ * 
+ * The MyBatis auto-configuration registers every Interceptor bean
+ * with the SqlSessionFactory, so this class only needs to be a component.
+ * 
+ * The timer measures the Executor call: for a query that includes fetching
+ * and mapping the rows; for a Cursor it covers only opening the cursor, and
+ * for an insert on a BATCH executor it covers only queuing the statement.
+ * 
+ * While a statement runs, its name is available to ConnectionHoldTracker
+ * through currentStatement(), so that a connection that MyBatis obtains
+ * for the statement is attributed to it. A connection that a transaction
+ * obtained before its first statement is attributed to that statement
+ * when it starts (see ConnectionHoldTracker.statementStarted()).
+ * 
+ * Cursors and statements on a BATCH executor are bulk statements: the
+ * caller holds the connection while it consumes the rows or builds the
+ * batch, so the hold says little about the latency of the database.
+ */
+@Intercepts({
+	@Signature(type = Executor.class, method = "update", 
+			   args = { MappedStatement.class, Object.class }),
+	@Signature(type = Executor.class, method = "query", 
+			   args = { MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class }),
+	@Signature(type = Executor.class, method = "query", 
+			   args = { MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class, 
+					    CacheKey.class, BoundSql.class }),
+	@Signature(type = Executor.class, method = "queryCursor", 
+			   args = { MappedStatement.class, Object.class, RowBounds.class })
+})
+@Component
+@Profile("!reactive")
+public class MyBatisStatementTimer implements Interceptor {
+	public static final String SQL_TIMER = "warehouse.sql";
+
+	private static final ThreadLocal<String> CURRENT_STATEMENT = new ThreadLocal<>();
+	private static final ThreadLocal<Boolean> CURRENT_STATEMENT_BULK = new ThreadLocal<>();
+
+	private final MeterRegistry registry;
+
+	// The registry is resolved on first use: MeterBinder beans that depend
+	// on MyBatis mappers would otherwise form a cycle with the registry
+	public MyBatisStatementTimer(@Lazy MeterRegistry registry) {
+		this.registry = registry;
+	}
+
+	@Override
+	public Object intercept(Invocation invocation) throws Throwable {
+		MappedStatement statement = (MappedStatement) invocation.getArgs()[0];
+		String outcome = "success";
+		String enclosingStatement = CURRENT_STATEMENT.get();
+		Boolean enclosingBulk = CURRENT_STATEMENT_BULK.get();
+		boolean bulk = invocation.getMethod().getName().equals("queryCursor") || isBatch(invocation.getTarget());
+		CURRENT_STATEMENT.set(statementName(statement.getId()));
+		CURRENT_STATEMENT_BULK.set(bulk);
+		ConnectionHoldTracker.statementStarted(statementName(statement.getId()), bulk);
+		Timer.Sample sample = Timer.start(registry);
+		try {
+			return invocation.proceed();
+		} catch (Throwable e) {
+			outcome = "error";
+			throw e;
+		} finally {
+			CURRENT_STATEMENT.set(enclosingStatement);
+			CURRENT_STATEMENT_BULK.set(enclosingBulk);
+			sample.stop(Timer.builder(SQL_TIMER)
+							 .tag("statement", statementName(statement.getId()))
+							 .tag("command", statement.getSqlCommandType().name())
+							 .tag("outcome", outcome)
+							 .register(registry));
+		}
+	}
+
+	/**
+	 * Returns the name of the statement that the calling thread is
+	 * executing, or null if it is not executing one.
+	 */
+	public static String currentStatement() {
+		return CURRENT_STATEMENT.get();
+	}
+
+	/**
+	 * Returns true if the calling thread is executing a bulk statement.
+	 */
+	public static boolean currentStatementIsBulk() {
+		return Boolean.TRUE.equals(CURRENT_STATEMENT_BULK.get());
+	}
+
+	// The executor may be wrapped in the proxies of other plugins and in
+	// the CachingExecutor, neither of which has an accessor for its target
+	private static boolean isBatch(Object executor) {
+		while (Proxy.isProxyClass(executor.getClass())) {
+			executor = SystemMetaObject.forObject(executor).getValue("h.target");
+		}
+		if (executor instanceof CachingExecutor) {
+			executor = SystemMetaObject.forObject(executor).getValue("delegate");
+		}
+		return executor instanceof BatchExecutor;
+	}
+
+	// com.fidelity.integration.mapper.WarehouseMapper.getAllWidgets -> getAllWidgets
+	private static String statementName(String statementId) {
+		return statementId.substring(statementId.lastIndexOf('.') + 1);
+	}
+}
@@ -0,0 +1,41 @@
+package com.fidelity.monitoring;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.context.annotation.Profile;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * The slowqueries Actuator endpoint (/actuator/slowqueries) lists the SQL
+ * fingerprints recorded by SlowQueryLog with the most total time first:
+ * count, total, p50, p99 and max in milliseconds, the number of slow
+ * executions, the last slow execution and, if captured, the plan.
+ *
+ * The top query parameter sets the number of fingerprints listed;
+ * the default is warehouse.sql.top.
+ */
+@Component
+@Endpoint(id="slowqueries")
+@Profile("!reactive")
+public class SlowQueryEndpoint {
+	@Autowired
+	private SlowQueryLog slowQueryLog;
+
+	@Value("${warehouse.sql.top:20}")
+	private int defaultTop;
+
+	@ReadOperation
+	public Map<String, Object> slowQueries(@Nullable Integer top) {
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("slowThreshold", slowQueryLog.getSlowThreshold().toString());
+		result.put("fingerprints", slowQueryLog.getStatistics().size());
+		result.put("top", slowQueryLog.getTopStatistics(top != null ? Math.max(top, 0) : defaultTop));
+		return result;
+	}
+}
@@ -0,0 +1,307 @@
+package com.fidelity.monitoring;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.ParameterMode;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.reflection.SystemMetaObject;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ResultHandler;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * SlowQueryLog is a MyBatis plugin that times the JDBC execution of each
+ * mapped statement and aggregates the times by SQL fingerprint: the SQL
+ * with whitespace collapsed, literals replaced by ? and IN lists of any
+ * length shown as (?, ...), so that a dynamic statement is counted once
+ * per shape. The time of a query includes the mapping of its rows; for a
+ * Cursor only opening the cursor is timed, as the rows are fetched after
+ * the statement has returned.
+ *
+ * On a BATCH executor, statements are only queued when they are called
+ * and are executed when the batch is flushed. Such flushes are timed
+ * (Executor.flushStatements) and each batch statement is counted as one
+ * execution, with the rows it affected. If a flush executes several
+ * batches, its time is shared between them in proportion to their
+ * number of parameter sets, as they are not timed one by one. A flush
+ * that MyBatis makes itself on commit is not intercepted; the DAO
+ * flushes its batches explicitly.
+ *
+ * An execution longer than warehouse.sql.slow-threshold is logged with
+ * its time, the rows it returned or affected and, if
+ * warehouse.sql.log-parameters is true, its bound parameters. If
+ * warehouse.sql.explain is true, the plan of the first slow execution of
+ * each fingerprint is captured on the same connection, on HSQLDB and
+ * Oracle.
+ *
+ * The slowqueries Actuator endpoint lists the fingerprints by total time.
+ * Unlike MyBatisStatementTimer, this plugin intercepts the StatementHandler,
+ * so the time excludes obtaining a connection and preparing the statement.
+ */
+@Intercepts({
+	@Signature(type = StatementHandler.class, method = "query",
+			   args = { Statement.class, ResultHandler.class }),
+	@Signature(type = StatementHandler.class, method = "queryCursor",
+			   args = { Statement.class }),
+	@Signature(type = StatementHandler.class, method = "update",
+			   args = { Statement.class }),
+	@Signature(type = Executor.class, method = "flushStatements",
+			   args = {})
+})
+@Component
+@Profile("!reactive")
+public class SlowQueryLog implements Interceptor {
+	// Executions of the statements beyond max-fingerprints are counted here
+	static final String OTHER_FINGERPRINT = "(other statements)";
+
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+	private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+	private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+	private static final Pattern IN_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+
+	@Autowired
+	private Logger logger;
+
+	@Value("${warehouse.sql.slow-threshold:200ms}")
+	private Duration slowThreshold;
+
+	@Value("${warehouse.sql.log-parameters:true}")
+	private boolean logParameters;
+
+	@Value("${warehouse.sql.explain:false}")
+	private boolean explain;
+
+	@Value("${warehouse.sql.max-fingerprints:1000}")
+	private int maxFingerprints;
+
+	private final Map<String, SqlStatistics> statistics = new ConcurrentHashMap<>();
+
+	// The fingerprint of each SQL text, so that each text is normalized once
+	private final Map<String, String> fingerprints = new ConcurrentHashMap<>();
+
+	@Override
+	public Object intercept(Invocation invocation) throws Throwable {
+		long start = System.nanoTime();
+		Object result = invocation.proceed();
+		long nanos = System.nanoTime() - start;
+
+		if (invocation.getTarget() instanceof Executor) {
+			@SuppressWarnings("unchecked")
+			List<BatchResult> batches = (List<BatchResult>) result;
+			recordBatches((Executor) invocation.getTarget(), batches, nanos);
+			return result;
+		}
+		StatementHandler handler = (StatementHandler) invocation.getTarget();
+		MappedStatement statement = mappedStatement(handler);
+		BoundSql boundSql = handler.getBoundSql();
+		int rows = (result instanceof List) ? ((List<?>) result).size()
+				 : (result instanceof Integer) ? (Integer) result
+				 : -1;
+		Statement jdbcStatement = (Statement) invocation.getArgs()[0];
+		record(statement, boundSql.getSql(), nanos, rows,
+			   () -> parameters(statement.getConfiguration(), boundSql), jdbcStatement::getConnection);
+		return result;
+	}
+
+	private void recordBatches(Executor executor, List<BatchResult> batches, long nanos) throws SQLException {
+		long parameterSets = batches.stream().mapToLong(batch -> batch.getParameterObjects().size()).sum();
+		for (BatchResult batch : batches) {
+			long batchNanos = (parameterSets == 0) ? nanos / batches.size()
+							: nanos * batch.getParameterObjects().size() / parameterSets;
+			int rows = 0;
+			for (int count : batch.getUpdateCounts()) {
+				rows += Math.max(count, 0);
+			}
+			// the parameters of a batch are its parameter objects, one per row
+			record(batch.getMappedStatement(), batch.getSql(), batchNanos, rows,
+				   batch::getParameterObjects, () -> executor.getTransaction().getConnection());
+		}
+	}
+
+	private void record(MappedStatement statement, String sql, long nanos, int rows,
+						Supplier<List<Object>> parameters, ConnectionSupplier connection) throws SQLException {
+		String statementName = statementName(statement.getId());
+		SqlStatistics sqlStatistics = statisticsFor(sql);
+		sqlStatistics.record(statementName, nanos);
+
+		if (nanos > slowThreshold.toNanos()) {
+			List<Object> loggedParameters = logParameters ? parameters.get() : null;
+			SqlStatistics.SlowExecution execution = new SqlStatistics.SlowExecution(
+					statementName, nanos, rows, loggedParameters);
+			logger.warn("Slow statement {} took {} ms, {} rows, parameters {}: {}",
+						statementName, TimeUnit.NANOSECONDS.toMillis(nanos), rows,
+						logParameters ? loggedParameters : "not logged", sqlStatistics.getFingerprint());
+			if (explain && sqlStatistics.getSlowCount() == 0) {
+				sqlStatistics.setPlan(explain(connection.get(), sql));
+			}
+			sqlStatistics.recordSlow(execution);
+		}
+	}
+
+	@FunctionalInterface
+	private interface ConnectionSupplier {
+		Connection get() throws SQLException;
+	}
+
+	/**
+	 * Returns the statistics of the top fingerprints by total time.
+	 */
+	public List<SqlStatistics> getTopStatistics(int top) {
+		return statistics.values().stream()
+						 .sorted(Comparator.comparingLong(SqlStatistics::getTotalNanos).reversed())
+						 .limit(top)
+						 .collect(Collectors.toList());
+	}
+
+	public Collection<SqlStatistics> getStatistics() {
+		return statistics.values();
+	}
+
+	public Duration getSlowThreshold() {
+		return slowThreshold;
+	}
+
+	/**
+	 * Returns the fingerprint of an SQL statement.
+	 */
+	static String fingerprint(String sql) {
+		String fingerprint = WHITESPACE.matcher(sql.trim()).replaceAll(" ");
+		fingerprint = STRING_LITERAL.matcher(fingerprint).replaceAll("?");
+		fingerprint = NUMBER_LITERAL.matcher(fingerprint).replaceAll("?");
+		return IN_LIST.matcher(fingerprint).replaceAll("(?, ...)");
+	}
+
+	private SqlStatistics statisticsFor(String sql) {
+		String fingerprint = fingerprints.get(sql);
+		if (fingerprint == null) {
+			fingerprint = fingerprint(sql);
+			if (fingerprints.size() < maxFingerprints * 10) {
+				fingerprints.put(sql, fingerprint);
+			}
+		}
+		SqlStatistics sqlStatistics = statistics.get(fingerprint);
+		if (sqlStatistics == null) {
+			String key = statistics.size() < maxFingerprints ? fingerprint : OTHER_FINGERPRINT;
+			sqlStatistics = statistics.computeIfAbsent(key, SqlStatistics::new);
+		}
+		return sqlStatistics;
+	}
+
+	// The handler is a RoutingStatementHandler around the handler for the
+	// statement type; neither has an accessor for the MappedStatement
+	private static MappedStatement mappedStatement(StatementHandler handler) {
+		MetaObject metaObject = SystemMetaObject.forObject(handler);
+		return (MappedStatement) metaObject.getValue("delegate.mappedStatement");
+	}
+
+	// The same lookup as MyBatis' DefaultParameterHandler
+	private static List<Object> parameters(Configuration configuration, BoundSql boundSql) {
+		Object parameterObject = boundSql.getParameterObject();
+		MetaObject metaObject = null;
+		List<Object> parameters = new ArrayList<>();
+		for (ParameterMapping mapping : boundSql.getParameterMappings()) {
+			if (mapping.getMode() == ParameterMode.OUT) {
+				continue;
+			}
+			String property = mapping.getProperty();
+			if (boundSql.hasAdditionalParameter(property)) {
+				parameters.add(boundSql.getAdditionalParameter(property));
+			} else if (parameterObject == null) {
+				parameters.add(null);
+			} else if (configuration.getTypeHandlerRegistry().hasTypeHandler(parameterObject.getClass())) {
+				parameters.add(parameterObject);
+			} else {
+				if (metaObject == null) {
+					metaObject = configuration.newMetaObject(parameterObject);
+				}
+				parameters.add(metaObject.getValue(property));
+			}
+		}
+		return parameters;
+	}
+
+	// Neither database uses the values of the parameters for the plan:
+	// HSQLDB explains the ? markers as they are, and Oracle explains a
+	// statement with unbound :n placeholders
+	private List<String> explain(Connection connection, String sql) {
+		List<String> plan = new ArrayList<>();
+		try {
+			String database = connection.getMetaData().getDatabaseProductName();
+			if (database.startsWith("HSQL")) {
+				readPlan(connection, "EXPLAIN PLAN FOR " + sql, plan);
+			} else if (database.startsWith("Oracle")) {
+				try (Statement explainStatement = connection.createStatement()) {
+					explainStatement.execute("EXPLAIN PLAN FOR " + numberPlaceholders(sql));
+				}
+				readPlan(connection, "SELECT plan_table_output FROM TABLE(DBMS_XPLAN.DISPLAY())", plan);
+			} else {
+				plan.add("EXPLAIN is not supported on " + database);
+			}
+		} catch (SQLException e) {
+			logger.debug("Cannot explain " + sql, e);
+			plan.add("EXPLAIN failed: " + e.getMessage());
+		}
+		return plan;
+	}
+
+	private static void readPlan(Connection connection, String sql, List<String> plan) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement(sql);
+			 ResultSet rs = statement.executeQuery()) {
+			while (rs.next()) {
+				plan.add(rs.getString(1));
+			}
+		}
+	}
+
+	// where id = ? and price > ? -> where id = :1 and price > :2
+	private static String numberPlaceholders(String sql) {
+		StringBuilder numbered = new StringBuilder(sql.length() + 16);
+		int placeholder = 0;
+		boolean inLiteral = false;
+		for (char c : sql.toCharArray()) {
+			if (c == '\'') {
+				inLiteral = !inLiteral;
+			}
+			if (c == '?' && !inLiteral) {
+				numbered.append(':').append(++placeholder);
+			} else {
+				numbered.append(c);
+			}
+		}
+		return numbered.toString();
+	}
+
+	// com.fidelity.integration.mapper.WarehouseMapper.getAllWidgets -> getAllWidgets
+	private static String statementName(String statementId) {
+		return statementId.substring(statementId.lastIndexOf('.') + 1);
+	}
+}
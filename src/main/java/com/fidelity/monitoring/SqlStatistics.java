@@ -0,0 +1,192 @@
+package com.fidelity.monitoring;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+/**
+ * SqlStatistics aggregates the executions of the statements that share a
+ * SQL fingerprint (see SlowQueryLog.fingerprint()).
+ *
+ * The percentiles come from a histogram with four buckets for each power
+ * of two nanoseconds, so they are the upper bound of a bucket and may be
+ * up to 25% above the exact value (but never above the maximum).
+ */
+@JsonPropertyOrder({ "fingerprint", "statements", "count", "totalMillis", "p50Millis", "p99Millis", "maxMillis",
+					 "slowCount", "lastSlowExecution", "plan" })
+public class SqlStatistics {
+	private static final int BUCKETS = 64 * 4;
+
+	private final String fingerprint;
+	private final Set<String> statements = ConcurrentHashMap.newKeySet();
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalNanos = new LongAdder();
+	private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+	private final LongAdder slowCount = new LongAdder();
+	private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+	private volatile SlowExecution lastSlowExecution;
+	private volatile List<String> plan;
+
+	SqlStatistics(String fingerprint) {
+		this.fingerprint = fingerprint;
+	}
+
+	void record(String statement, long nanos) {
+		statements.add(statement);
+		count.increment();
+		totalNanos.add(nanos);
+		maxNanos.accumulate(nanos);
+		histogram.incrementAndGet(bucket(nanos));
+	}
+
+	void recordSlow(SlowExecution execution) {
+		slowCount.increment();
+		lastSlowExecution = execution;
+	}
+
+	void setPlan(List<String> plan) {
+		this.plan = plan;
+	}
+
+	// 0-3 are exact; above that, the 2 bits after the highest set bit
+	// divide each power of two into 4 buckets
+	static int bucket(long nanos) {
+		if (nanos < 4) {
+			return (int) Math.max(nanos, 0);
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		return exponent * 4 + (int) ((nanos >>> (exponent - 2)) & 3);
+	}
+
+	static long bucketUpperBound(int bucket) {
+		if (bucket < 4) {
+			return bucket;
+		}
+		int exponent = bucket / 4;
+		return ((4L + bucket % 4 + 1) << (exponent - 2)) - 1;
+	}
+
+	/**
+	 * Returns the time in nanoseconds that the given fraction (0 to 1) of
+	 * the executions did not exceed.
+	 */
+	long percentileNanos(double fraction) {
+		long total = 0;
+		long[] counts = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = histogram.get(i);
+			total += counts[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(fraction * total);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= Math.max(rank, 1)) {
+				return Math.min(bucketUpperBound(i), maxNanos.get());
+			}
+		}
+		return maxNanos.get();
+	}
+
+	public String getFingerprint() {
+		return fingerprint;
+	}
+
+	public Set<String> getStatements() {
+		return statements;
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public double getTotalMillis() {
+		return millis(totalNanos.sum());
+	}
+
+	public double getP50Millis() {
+		return millis(percentileNanos(0.5));
+	}
+
+	public double getP99Millis() {
+		return millis(percentileNanos(0.99));
+	}
+
+	public double getMaxMillis() {
+		return millis(maxNanos.get());
+	}
+
+	public long getSlowCount() {
+		return slowCount.sum();
+	}
+
+	public SlowExecution getLastSlowExecution() {
+		return lastSlowExecution;
+	}
+
+	public List<String> getPlan() {
+		return plan;
+	}
+
+	long getTotalNanos() {
+		return totalNanos.sum();
+	}
+
+	private static double millis(long nanos) {
+		return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/**
+	 * An execution that took longer than the slow threshold.
+	 */
+	public static class SlowExecution {
+		private final Instant time = Instant.now();
+		private final String statement;
+		private final double millis;
+		private final int rows;
+		private final List<Object> parameters;
+
+		SlowExecution(String statement, long nanos, int rows, List<Object> parameters) {
+			this.statement = statement;
+			this.millis = millis(nanos);
+			this.rows = rows;
+			this.parameters = parameters;
+		}
+
+		public String getTime() {
+			return time.toString();
+		}
+
+		public String getStatement() {
+			return statement;
+		}
+
+		public double getMillis() {
+			return millis;
+		}
+
+		/**
+		 * Returns the rows returned or affected, or -1 for a cursor.
+		 */
+		public int getRows() {
+			return rows;
+		}
+
+		/**
+		 * Returns the bound parameters, or null if they are not logged.
+		 */
+		public List<Object> getParameters() {
+			return parameters;
+		}
+	}
+}
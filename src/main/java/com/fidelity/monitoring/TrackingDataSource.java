@@ -0,0 +1,110 @@
+package com.fidelity.monitoring;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+/**
+ * TrackingDataSource reports to a ConnectionHoldTracker how long each
+ * connection took to obtain from the pool and how long it was held until
+ * it was closed, i.e. returned to the pool.
+ *
+ * Until a tracker is set, connections are handed out untouched; the
+ * connections used to initialize the database at startup are not tracked.
+ * Spring Boot unwraps the DelegatingDataSource to find the Hikari pool for
+ * its own hikaricp.* metrics.
+ */
+class TrackingDataSource extends DelegatingDataSource {
+	private volatile ConnectionHoldTracker tracker;
+
+	TrackingDataSource(DataSource target) {
+		super(target);
+	}
+
+	void setTracker(ConnectionHoldTracker tracker) {
+		this.tracker = tracker;
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		ConnectionHoldTracker holdTracker = tracker;
+		if (holdTracker == null) {
+			return super.getConnection();
+		}
+		long start = System.nanoTime();
+		Connection connection = super.getConnection();
+		return track(connection, holdTracker, holdTracker.acquired(System.nanoTime() - start));
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		ConnectionHoldTracker holdTracker = tracker;
+		if (holdTracker == null) {
+			return super.getConnection(username, password);
+		}
+		long start = System.nanoTime();
+		Connection connection = super.getConnection(username, password);
+		return track(connection, holdTracker, holdTracker.acquired(System.nanoTime() - start));
+	}
+
+	private static Connection track(Connection connection, ConnectionHoldTracker tracker, 
+									ConnectionHoldTracker.Hold hold) {
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, new TrackedConnection(connection, tracker, hold));
+	}
+
+	/**
+	 * Passes every call to the pooled connection, and ends the hold when
+	 * the connection is closed the first time.
+	 */
+	private static class TrackedConnection implements InvocationHandler {
+		private final Connection target;
+		private final ConnectionHoldTracker tracker;
+		private final ConnectionHoldTracker.Hold hold;
+		private boolean closed;
+
+		TrackedConnection(Connection target, ConnectionHoldTracker tracker, ConnectionHoldTracker.Hold hold) {
+			this.target = target;
+			this.tracker = tracker;
+			this.hold = hold;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "close":
+				if (closed) {
+					return null;
+				}
+				closed = true;
+				try {
+					return method.invoke(target, args);
+				}
+				catch (InvocationTargetException e) {
+					throw e.getTargetException();
+				}
+				finally {
+					tracker.released(hold);
+				}
+			default:
+				try {
+					return method.invoke(target, args);
+				}
+				catch (InvocationTargetException e) {
+					throw e.getTargetException();
+				}
+			}
+		}
+	}
+}
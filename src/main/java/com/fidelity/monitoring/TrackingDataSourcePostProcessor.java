@@ -0,0 +1,26 @@
+package com.fidelity.monitoring;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Wraps the application's DataSource in a TrackingDataSource, so that
+ * every component that uses connections - MyBatis, the transaction manager,
+ * JdbcTemplate - is tracked by ConnectionHoldTracker.
+ *
+ * A BeanPostProcessor is created before the other beans, so this class
+ * must not depend on any of them; the tracker connects itself later.
+ */
+@Component
+public class TrackingDataSourcePostProcessor implements BeanPostProcessor {
+
+	@Override
+	public Object postProcessAfterInitialization(Object bean, String beanName) {
+		if (bean instanceof DataSource && !(bean instanceof TrackingDataSource)) {
+			return new TrackingDataSource((DataSource) bean);
+		}
+		return bean;
+	}
+}
@@ -0,0 +1,346 @@
+package com.fidelity.restservices;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.fidelity.business.catalog.CatalogChange;
+import com.fidelity.business.catalog.CatalogChangeFeed;
+
+/**
+ * CatalogChangeBroadcaster sends the changes recorded by CatalogChangeFeed
+ * to the subscribers of GET /warehouse/changes as Server-Sent Events.
+ *
+ * Every subscriber has its own cursor into the feed. When changes are
+ * recorded, each subscriber with new changes is drained by one of
+ * warehouse.changes.sender-threads threads. A write to a client that has
+ * stopped reading blocks its sender, so a subscriber whose write takes
+ * longer than warehouse.changes.send-timeout is disconnected, and an extra
+ * sender thread stands in for the blocked one until the write returns (at
+ * the latest after Tomcat's connection timeout) and the stream is
+ * completed with an error. A subscriber with a slow connection thus
+ * delays only itself.
+ *
+ * A subscriber that falls so far behind that its cursor is overwritten
+ * is also disconnected; when it reconnects with its Last-Event-ID, it is sent a "reset" event telling it to reload the
+ * catalog, followed by the changes from then on. Idle streams are sent a
+ * comment every warehouse.changes.heartbeat-interval, which keeps proxies
+ * from closing them and detects clients that have gone away.
+ *
+ * The event ids carry the start time of the service, so an id from an
+ * earlier run is recognized as unknown and also answered with a reset.
+ */
+@Component
+@Profile("!reactive")
+public class CatalogChangeBroadcaster {
+	// Changes read from the feed at a time while draining a subscriber
+	private static final int BATCH_SIZE = 256;
+
+	@Autowired
+	private Logger logger;
+
+	@Autowired
+	private CatalogChangeFeed feed;
+
+	@Value("${warehouse.changes.timeout:30m}")
+	private Duration timeout;
+
+	@Value("${warehouse.changes.sender-threads:4}")
+	private int senderThreads;
+
+	@Value("${warehouse.changes.send-timeout:PT10S}")
+	private Duration sendTimeout;
+
+	private final String epoch = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+
+	private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+	private ThreadPoolExecutor senders;
+	// Guarded by senders; sender threads blocked in a write that timed out
+	private int stalledSenders;
+
+	@PostConstruct
+	public void init() {
+		AtomicInteger threadCount = new AtomicInteger();
+		senders = new ThreadPoolExecutor(senderThreads, senderThreads, 0, TimeUnit.MILLISECONDS,
+										 new LinkedBlockingQueue<>(), task -> {
+			Thread thread = new Thread(task, "change-feed-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		feed.addAppendCallback(this::changesAppended);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		subscriptions.forEach(subscription -> close(subscription));
+		senders.shutdownNow();
+	}
+
+	/**
+	 * Returns the number of open streams.
+	 */
+	public int getSubscriberCount() {
+		return subscriptions.size();
+	}
+
+	/**
+	 * Opens a stream of the changes of the type ("widget" or "gadget", or
+	 * both if null) made after the change with the Last-Event-ID, or after
+	 * now if there is none.
+	 *
+	 * @throws IllegalArgumentException if the type is not widget or gadget
+	 */
+	public SseEmitter subscribe(String type, String lastEventId) {
+		return subscribe(new SseEmitter(timeout.toMillis()), type, lastEventId);
+	}
+
+	SseEmitter subscribe(SseEmitter emitter, String type, String lastEventId) {
+		if (type != null && !type.equals("widget") && !type.equals("gadget")) {
+			throw new IllegalArgumentException("type must be 'widget' or 'gadget', not " + type);
+		}
+		long last = feed.getLastSequence();
+		long cursor = last;
+		boolean reset = false;
+		if (lastEventId != null) {
+			long resumeAfter = sequenceOf(lastEventId);
+			if (resumeAfter >= feed.getOldestSequence() - 1 && resumeAfter <= last) {
+				cursor = resumeAfter;
+			}
+			else {
+				reset = true;
+			}
+		}
+		Subscription subscription = new Subscription(emitter, type, cursor, reset);
+		emitter.onCompletion(() -> subscriptions.remove(subscription));
+		emitter.onTimeout(() -> close(subscription));
+		emitter.onError(e -> close(subscription));
+		subscriptions.add(subscription);
+		// early events are buffered by the emitter until the response starts
+		schedule(subscription);
+		return emitter;
+	}
+
+	/**
+	 * Marks every stream as due for a heartbeat.
+	 */
+	@Scheduled(fixedDelayString="${warehouse.changes.heartbeat-interval:PT15S}")
+	public void sendHeartbeats() {
+		for (Subscription subscription : subscriptions) {
+			subscription.heartbeatDue = true;
+			schedule(subscription);
+		}
+	}
+
+	/**
+	 * Drops the subscribers whose current write has taken longer than the
+	 * send timeout, and replaces their blocked sender threads.
+	 */
+	@Scheduled(fixedDelayString="PT1S")
+	public void checkSends() {
+		long now = System.nanoTime();
+		for (Subscription subscription : subscriptions) {
+			long started = subscription.sendStarted;
+			if (started != 0 && now - started > sendTimeout.toNanos() && !subscription.stalled) {
+				logger.info("Disconnecting a change feed subscriber whose write has taken longer than {}", sendTimeout);
+				subscription.stalled = true;
+				close(subscription);
+				resizeSenders(1);
+			}
+		}
+	}
+
+	private void resizeSenders(int stalledChange) {
+		synchronized (senders) {
+			stalledSenders += stalledChange;
+			int size = senderThreads + stalledSenders;
+			// the core size may never exceed the maximum size
+			if (stalledChange > 0) {
+				senders.setMaximumPoolSize(size);
+				senders.setCorePoolSize(size);
+			}
+			else {
+				senders.setCorePoolSize(size);
+				senders.setMaximumPoolSize(size);
+			}
+		}
+	}
+
+	// Runs on the thread that made the change
+	private void changesAppended() {
+		long oldest = feed.getOldestSequence();
+		for (Subscription subscription : subscriptions) {
+			if (subscription.cursor + 1 < oldest) {
+				logger.info("Disconnecting a slow change feed subscriber at change {}; the oldest change kept is {}",
+							subscription.cursor, oldest);
+				close(subscription);
+			}
+			else {
+				schedule(subscription);
+			}
+		}
+	}
+
+	private void schedule(Subscription subscription) {
+		if (!subscription.closed && subscription.draining.compareAndSet(false, true)) {
+			senders.execute(() -> drain(subscription));
+		}
+	}
+
+	/**
+	 * Sends the subscriber the changes after its cursor, and a heartbeat if
+	 * one is due. Only one thread drains a subscriber at a time.
+	 */
+	private void drain(Subscription subscription) {
+		try {
+			if (subscription.reset) {
+				subscription.reset = false;
+				send(subscription, SseEmitter.event()
+											 .id(eventId(subscription.cursor))
+											 .name("reset")
+											 .data("Changes were missed; reload the catalog"));
+			}
+			if (subscription.heartbeatDue) {
+				subscription.heartbeatDue = false;
+				send(subscription, SseEmitter.event().comment("heartbeat"));
+			}
+			while (!subscription.closed) {
+				List<CatalogChange> changes = feed.readAfter(subscription.cursor, BATCH_SIZE);
+				if (changes == null) {
+					// the cursor was overwritten while this subscriber was drained
+					close(subscription);
+					break;
+				}
+				if (changes.isEmpty()) {
+					break;
+				}
+				for (CatalogChange change : changes) {
+					if (subscription.type == null || subscription.type.equals(change.getType())) {
+						send(subscription, SseEmitter.event()
+													 .id(eventId(change.getSequence()))
+													 .name(change.getOperation())
+													 .data(change, MediaType.APPLICATION_JSON));
+					}
+					subscription.cursor = change.getSequence();
+				}
+			}
+		}
+		catch (IOException | IllegalStateException e) {
+			// the client has gone away, or the stream has been completed
+			close(subscription);
+		}
+		finally {
+			subscription.draining.set(false);
+		}
+		if (subscription.closed) {
+			// close() leaves a stream that is being drained to its sender
+			complete(subscription);
+			return;
+		}
+		// changes recorded after the last read found the subscriber draining
+		if (feed.getLastSequence() > subscription.cursor) {
+			schedule(subscription);
+		}
+	}
+
+	// Runs the write with the time it started recorded for checkSends()
+	private void send(Subscription subscription, SseEmitter.SseEventBuilder event) throws IOException {
+		subscription.sendStarted = System.nanoTime();
+		try {
+			subscription.emitter.send(event);
+		}
+		finally {
+			subscription.sendStarted = 0;
+		}
+	}
+
+	private void close(Subscription subscription) {
+		subscription.closed = true;
+		subscriptions.remove(subscription);
+		// a sender blocked in a write holds the lock of the emitter, so a
+		// stream that is being drained is completed by its sender
+		if (!subscription.draining.get()) {
+			complete(subscription);
+		}
+	}
+
+	private void complete(Subscription subscription) {
+		if (!subscription.completed.compareAndSet(false, true)) {
+			return;
+		}
+		if (subscription.stalled) {
+			resizeSenders(-1);
+		}
+		try {
+			if (subscription.stalled) {
+				subscription.emitter.completeWithError(
+						new IOException("Writing to the change feed subscriber took longer than " + sendTimeout));
+			}
+			else {
+				subscription.emitter.complete();
+			}
+		}
+		catch (RuntimeException e) {
+			// the connection has already been closed, e.g. by Tomcat stopping
+			logger.debug("Could not complete a change feed stream", e);
+		}
+	}
+
+	private String eventId(long sequence) {
+		return epoch + "-" + sequence;
+	}
+
+	// Returns -1 for an id that was not sent by this run of the service
+	private long sequenceOf(String eventId) {
+		int dash = eventId.lastIndexOf('-');
+		if (dash < 0 || !eventId.substring(0, dash).equals(epoch)) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(eventId.substring(dash + 1));
+		}
+		catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private static class Subscription {
+		final SseEmitter emitter;
+		final String type;
+		final AtomicBoolean draining = new AtomicBoolean();
+		final AtomicBoolean completed = new AtomicBoolean();
+		// Written only by the thread that drains the subscription
+		volatile long cursor;
+		volatile boolean reset;
+		volatile boolean heartbeatDue;
+		volatile boolean closed;
+		// System.nanoTime() when the current write started, 0 if none
+		volatile long sendStarted;
+		volatile boolean stalled;
+
+		Subscription(SseEmitter emitter, String type, long cursor, boolean reset) {
+			this.emitter = emitter;
+			this.type = type;
+			this.cursor = cursor;
+			this.reset = reset;
+		}
+	}
+}
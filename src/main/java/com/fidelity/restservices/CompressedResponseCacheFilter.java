@@ -0,0 +1,208 @@
+package com.fidelity.restservices;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import com.fidelity.business.service.WarehouseBusinessService;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * Keeps the gzipped bodies of the collection responses (/widgets,
+ * /gadgets and /products, including their pages) so that clients that
+ * poll an unchanged catalog are sent the same compressed bytes again
+ * instead of having the catalog queried, encoded and compressed on every
+ * request.
+ *
+ * A response is cached when the client accepts gzip, the controller
+ * answered 200 with an ETag, and the body is at least
+ * server.compression.min-response-size long. It is keyed by the request
+ * URI and query, the Accept header and the table versions of the business
+ * service, so any insert, update or delete makes the cached bodies
+ * unreachable; they are then evicted by the size bound
+ * warehouse.compression.cache-max-size. Smaller responses, and all other
+ * responses, are compressed by Tomcat (server.compression.*).
+ *
+ * The cached headers include Vary: Accept (see WarehouseWebConfig);
+ * Vary: Accept-Encoding is added to every response. The gzipped body is
+ * another representation than the one the controller's ETag names, so it
+ * is sent with that ETag suffixed by -gz. A request whose If-None-Match
+ * holds it is answered with 304 while the body is cached; once it has
+ * been evicted, the controller no longer recognizes the ETag and the
+ * body is sent again.
+ */
+@Component
+@Profile("!reactive")
+public class CompressedResponseCacheFilter extends OncePerRequestFilter {
+	private static final Set<String> CACHED_PATHS =
+			Set.of("/warehouse/widgets", "/warehouse/gadgets", "/warehouse/products");
+
+	// Response headers that are set from the compressed body itself
+	private static final Set<String> BODY_HEADERS = Set.of(
+			HttpHeaders.CONTENT_LENGTH.toLowerCase(), HttpHeaders.CONTENT_ENCODING.toLowerCase(),
+			HttpHeaders.CONTENT_TYPE.toLowerCase(), HttpHeaders.ETAG.toLowerCase());
+
+	@Autowired
+	private WarehouseBusinessService service;
+
+	@Value("${server.compression.min-response-size:2KB}")
+	private DataSize minResponseSize;
+
+	@Value("${warehouse.compression.cache-max-size:32MB}")
+	private DataSize cacheMaxSize;
+
+	private Cache<String, CompressedResponse> cache;
+
+	@PostConstruct
+	public void init() {
+		cache = Caffeine.newBuilder()
+						.maximumWeight(cacheMaxSize.toBytes())
+						.weigher((String key, CompressedResponse response) -> key.length() + response.body.length)
+						.build();
+	}
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		String path = request.getRequestURI().substring(request.getContextPath().length());
+		return !"GET".equals(request.getMethod())
+				|| !CACHED_PATHS.contains(path)
+				// streamed bodies are written after the filter has returned
+				|| request.getParameter("stream") != null
+				|| !acceptsGzip(request);
+	}
+
+	private static boolean acceptsGzip(HttpServletRequest request) {
+		String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+		return acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+		// The versions are read before the catalog is, so that a body read
+		// after a concurrent update is never cached under the new versions
+		String key = cacheKey(request);
+		CompressedResponse cached = cache.getIfPresent(key);
+		if (cached != null) {
+			cached.writeTo(request, response);
+			return;
+		}
+		ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+		chain.doFilter(request, wrapper);
+		byte[] body = wrapper.getContentAsByteArray();
+		if (wrapper.getStatus() != HttpServletResponse.SC_OK
+				|| wrapper.getHeader(HttpHeaders.ETAG) == null
+				|| body.length < minResponseSize.toBytes()) {
+			response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+			wrapper.copyBodyToResponse();
+			return;
+		}
+		CompressedResponse compressed = new CompressedResponse(wrapper, gzip(body));
+		cache.put(key, compressed);
+		compressed.writeBody(response);
+	}
+
+	private String cacheKey(HttpServletRequest request) {
+		return "w" + service.getWidgetsVersion() + "-g" + service.getGadgetsVersion()
+				+ " " + request.getRequestURI() + "?" + request.getQueryString()
+				+ " " + request.getHeader(HttpHeaders.ACCEPT);
+	}
+
+	private static byte[] gzip(byte[] body) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length / 4);
+		try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+			out.write(body);
+		}
+		return bytes.toByteArray();
+	}
+
+	// "42-w7-g3-json" -> "42-w7-g3-json-gz"
+	static String gzipEtag(String etag) {
+		return etag.endsWith("\"") ? etag.substring(0, etag.length() - 1) + "-gz\"" : etag + "-gz";
+	}
+
+	/**
+	 * Returns true if an If-None-Match header holds the ETag or is "*".
+	 * If-None-Match uses the weak comparison, so W/ is ignored.
+	 */
+	static boolean matches(String ifNoneMatch, String etag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		String opaqueTag = etag.startsWith("W/") ? etag.substring(2) : etag;
+		for (String candidate : ifNoneMatch.split(",")) {
+			candidate = candidate.trim();
+			if (candidate.startsWith("W/")) {
+				candidate = candidate.substring(2);
+			}
+			if (candidate.equals("*") || candidate.equals(opaqueTag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The headers and the gzipped body of a cached response.
+	 */
+	private static class CompressedResponse {
+		private final String contentType;
+		private final String etag;
+		private final Map<String, List<String>> headers = new LinkedHashMap<>();
+		private final byte[] body;
+
+		CompressedResponse(HttpServletResponse response, byte[] body) {
+			this.contentType = response.getContentType();
+			this.etag = gzipEtag(response.getHeader(HttpHeaders.ETAG));
+			for (String name : response.getHeaderNames()) {
+				if (!BODY_HEADERS.contains(name.toLowerCase())) {
+					headers.put(name, new ArrayList<>(response.getHeaders(name)));
+				}
+			}
+			this.body = body;
+		}
+
+		// Answers a request that was served from the cache
+		void writeTo(HttpServletRequest request, HttpServletResponse response) throws IOException {
+			headers.forEach((name, values) -> values.forEach(value -> response.addHeader(name, value)));
+			response.setHeader(HttpHeaders.ETAG, etag);
+			if (matches(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+				response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+				return;
+			}
+			response.setStatus(HttpServletResponse.SC_OK);
+			response.setContentType(contentType);
+			writeBody(response);
+		}
+
+		void writeBody(HttpServletResponse response) throws IOException {
+			response.setHeader(HttpHeaders.ETAG, etag);
+			response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+			response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+			response.setContentLength(body.length);
+			response.getOutputStream().write(body);
+			response.flushBuffer();
+		}
+	}
+}
@@ -0,0 +1,221 @@
+package com.fidelity.restservices;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Decompresses the body of a POST or PUT request sent with
+ *    Content-Encoding: gzip
+ * so that clients can upload large batches compressed. The body is inflated as it is read, and the controller sees the request
+ * as if it had been sent uncompressed: without a Content-Encoding and with
+ * an unknown Content-Length. A body that is not gzip is rejected with
+ * 400 Bad Request.
+ * 
+ * A few KB of gzip can inflate to gigabytes, so the inflated body is
+ * limited to warehouse.compression.max-request-size: reading past it
+ * fails the request with 413 Payload Too Large.
+ * 
+ * Import files (POST /warehouse/import) are passed on still compressed.
+ * They may be far larger than the limit, and ProductImporter spools them
+ * to disk as they are and recognizes gzip by its leading bytes.
+ */
+@Component
+@Profile("!reactive")
+public class GzipRequestFilter extends OncePerRequestFilter {
+	// Large enough that the inflater is not called for every few bytes
+	private static final int BUFFER_SIZE = 8 * 1024;
+
+	private static final String IMPORT_PATH = "/warehouse/import";
+
+	@Value("${warehouse.compression.max-request-size:100MB}")
+	private DataSize maxRequestSize;
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		String method = request.getMethod();
+		String encoding = request.getHeader(HttpHeaders.CONTENT_ENCODING);
+		String path = request.getRequestURI().substring(request.getContextPath().length());
+		return !("POST".equals(method) || "PUT".equals(method))
+				|| !("gzip".equalsIgnoreCase(encoding) || "x-gzip".equalsIgnoreCase(encoding))
+				|| IMPORT_PATH.equals(path);
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+		GZIPInputStream body;
+		try {
+			body = new GZIPInputStream(request.getInputStream(), BUFFER_SIZE);
+		}
+		catch (ZipException | EOFException e) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "The request body is not gzip");
+			return;
+		}
+		try {
+			chain.doFilter(new DecompressedRequest(request, body, maxRequestSize.toBytes()), response);
+		}
+		finally {
+			// frees the native memory of the inflater
+			body.close();
+		}
+	}
+
+	/**
+	 * The request, with its body replaced by the inflated stream.
+	 */
+	private static class DecompressedRequest extends HttpServletRequestWrapper {
+		private final ServletInputStream body;
+		private BufferedReader reader;
+
+		DecompressedRequest(HttpServletRequest request, InputStream body, long maxSize) {
+			super(request);
+			this.body = new DecompressedInputStream(body, maxSize);
+		}
+
+		private static boolean isHidden(String name) {
+			return HttpHeaders.CONTENT_ENCODING.equalsIgnoreCase(name)
+					|| HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name);
+		}
+
+		@Override
+		public ServletInputStream getInputStream() {
+			return body;
+		}
+
+		@Override
+		public BufferedReader getReader() {
+			if (reader == null) {
+				String encoding = getCharacterEncoding();
+				Charset charset = (encoding != null) ? Charset.forName(encoding) : StandardCharsets.ISO_8859_1;
+				reader = new BufferedReader(new InputStreamReader(body, charset));
+			}
+			return reader;
+		}
+
+		@Override
+		public int getContentLength() {
+			return -1;
+		}
+
+		@Override
+		public long getContentLengthLong() {
+			return -1;
+		}
+
+		@Override
+		public String getHeader(String name) {
+			return isHidden(name) ? null : super.getHeader(name);
+		}
+
+		@Override
+		public Enumeration<String> getHeaders(String name) {
+			return isHidden(name) ? Collections.emptyEnumeration() : super.getHeaders(name);
+		}
+
+		@Override
+		public int getIntHeader(String name) {
+			return isHidden(name) ? -1 : super.getIntHeader(name);
+		}
+
+		@Override
+		public Enumeration<String> getHeaderNames() {
+			List<String> names = Collections.list(super.getHeaderNames());
+			names.removeIf(DecompressedRequest::isHidden);
+			return Collections.enumeration(names);
+		}
+	}
+
+	/**
+	 * A blocking ServletInputStream over the inflated body. 
+	 * 
+	 * Exceeding the limit throws a ResponseStatusException rather than an
+	 * IOException, because the message converters turn an IOException
+	 * into 400 Bad Request.
+	 */
+	private static class DecompressedInputStream extends ServletInputStream {
+		private final InputStream in;
+		private final long maxSize;
+		private long size;
+		private boolean finished;
+
+		DecompressedInputStream(InputStream in, long maxSize) {
+			this.in = in;
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = in.read();
+			finished = (b < 0);
+			if (!finished) {
+				counted(1);
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			int count = in.read(buffer, offset, length);
+			finished = (count < 0);
+			if (!finished) {
+				counted(count);
+			}
+			return count;
+		}
+
+		private void counted(int count) {
+			size += count;
+			if (size > maxSize) {
+				throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+						"The decompressed request body is larger than " + maxSize + " bytes");
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+
+		@Override
+		public boolean isFinished() {
+			return finished;
+		}
+
+		@Override
+		public boolean isReady() {
+			return true;
+		}
+
+		@Override
+		public void setReadListener(ReadListener listener) {
+			throw new UnsupportedOperationException("The decompressed body can only be read blocking");
+		}
+	}
+}
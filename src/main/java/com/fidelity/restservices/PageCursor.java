@@ -0,0 +1,88 @@
+package com.fidelity.restservices;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import com.fidelity.business.Product;
+import com.fidelity.business.ProductKey;
+import com.fidelity.business.ProductSortOrder;
+
+/**
+ * PageCursor encodes the sort key of the last row in a page as an opaque,
+ * URL-safe token. Clients pass the token back in the {@code after} request
+ * parameter to fetch the next page.
+ *
+ * A plain numeric value is also accepted as a cursor, so a client that
+ * already knows an id can start a page right after it:
+ *    /warehouse/widgets?after=42&limit=20
+ */
+final class PageCursor {
+	private static final String SEPARATOR = "|";
+
+	private PageCursor() {}
+
+	/**
+	 * Encodes the parts of a sort key as a cursor token.
+	 */
+	static String encode(String... keyParts) {
+		String key = String.join(SEPARATOR, keyParts);
+		return Base64.getUrlEncoder()
+					 .withoutPadding()
+					 .encodeToString(key.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Decodes a cursor token into the parts of a sort key.
+	 *
+	 * @throws IllegalArgumentException if the token is not a valid cursor
+	 */
+	static String[] decode(String cursor) {
+		if (cursor.matches("\\d+")) {
+			return new String[] { cursor };
+		}
+		String key = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+		return key.split("\\" + SEPARATOR, -1);
+	}
+
+	/**
+	 * Decodes a cursor token whose only key part is an id.
+	 *
+	 * @throws IllegalArgumentException if the token is not a valid id cursor
+	 */
+	static int decodeId(String cursor) {
+		String[] parts = decode(cursor);
+		if (parts.length != 1) {
+			throw new IllegalArgumentException("Not an id cursor: " + cursor);
+		}
+		return Integer.parseInt(parts[0]);
+	}
+
+	/**
+	 * Encodes the complete sort key of a product as a cursor token: 
+	 * type and id, preceded by the price when sorting by price.
+	 */
+	static String encodeProductKey(Product p, ProductSortOrder order) {
+		ProductKey key = ProductKey.of(p);
+		String id = String.valueOf(key.getId());
+		return (order == ProductSortOrder.PRICE) 
+				? encode(String.valueOf(key.getPrice()), key.getType(), id)
+				: encode(key.getType(), id);
+	}
+
+	/**
+	 * Decodes a cursor token created by encodeProductKey for the same order.
+	 *
+	 * @throws IllegalArgumentException if the token is not a valid product 
+	 *         cursor for the order
+	 */
+	static ProductKey decodeProductKey(String cursor, ProductSortOrder order) {
+		String[] parts = decode(cursor);
+		if (order == ProductSortOrder.PRICE && parts.length == 3) {
+			return new ProductKey(parts[1], Integer.parseInt(parts[2]), Double.parseDouble(parts[0]));
+		}
+		if (order == ProductSortOrder.TYPE && parts.length == 2) {
+			return new ProductKey(parts[0], Integer.parseInt(parts[1]), 0);
+		}
+		throw new IllegalArgumentException("Not a product cursor for " + order + ": " + cursor);
+	}
+}
@@ -0,0 +1,283 @@
+package com.fidelity.restservices;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.protobuf.ProtobufMapper;
+import com.fasterxml.jackson.dataformat.protobuf.schema.NativeProtobufSchema;
+import com.fasterxml.jackson.dataformat.protobuf.schema.ProtobufSchema;
+import com.fasterxml.jackson.dataformat.protobuf.schema.ProtobufSchemaLoader;
+
+import com.fidelity.business.Gadget;
+import com.fidelity.business.Product;
+import com.fidelity.business.Widget;
+import com.fidelity.restservices.dto.DatabaseRequestResultDTO;
+
+/**
+ * ProtobufProductHttpMessageConverter reads and writes the Protocol Buffers
+ * bodies (application/x-protobuf) of the Warehouse API: a Widget, a Gadget,
+ * a list of either or of both, and a DatabaseRequestResultDTO. The messages
+ * are defined by warehouse.proto, next to this class.
+ *
+ * The messages are bound to the business classes by Jackson's protobuf
+ * module, so there are no generated classes to keep in step with Widget
+ * and Gadget. A list is wrapped in the list message of its element type.
+ * Other types are left to the Jackson converters, so the endpoints that
+ * return them only offer JSON, CBOR and Smile.
+ */
+public class ProtobufProductHttpMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
+	public static final String APPLICATION_PROTOBUF_VALUE = "application/x-protobuf";
+	public static final MediaType APPLICATION_PROTOBUF = MediaType.parseMediaType(APPLICATION_PROTOBUF_VALUE);
+
+	private static final String SCHEMA_RESOURCE = "warehouse.proto";
+
+	/**
+	 * The messages of warehouse.proto, with the classes they are bound to.
+	 */
+	private enum Message {
+		WIDGET("Widget", Widget.class),
+		GADGET("Gadget", Gadget.class),
+		WIDGET_LIST("WidgetList", WidgetList.class),
+		GADGET_LIST("GadgetList", GadgetList.class),
+		PRODUCT_LIST("ProductList", ProductList.class),
+		DATABASE_REQUEST_RESULT("DatabaseRequestResult", DatabaseRequestResultDTO.class);
+
+		private final String name;
+		private final Class<?> boundClass;
+
+		Message(String name, Class<?> boundClass) {
+			this.name = name;
+			this.boundClass = boundClass;
+		}
+	}
+
+	// Readers and writers are immutable and cache their serializers
+	private final Map<Message, ObjectReader> readers = new EnumMap<>(Message.class);
+	private final Map<Message, ObjectWriter> writers = new EnumMap<>(Message.class);
+
+	public ProtobufProductHttpMessageConverter() {
+		super(APPLICATION_PROTOBUF);
+		ProtobufMapper mapper = new ProtobufMapper();
+		NativeProtobufSchema schema;
+		try (InputStream in = getClass().getResourceAsStream(SCHEMA_RESOURCE)) {
+			schema = ProtobufSchemaLoader.std.loadNative(in, false);
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException("Cannot load " + SCHEMA_RESOURCE, e);
+		}
+		for (Message message : Message.values()) {
+			ProtobufSchema messageSchema = schema.forType(message.name);
+			readers.put(message, mapper.readerFor(message.boundClass).with(messageSchema));
+			writers.put(message, mapper.writerFor(message.boundClass).with(messageSchema));
+		}
+	}
+
+	/**
+	 * Returns the message of a body of the type, or null if there is none.
+	 */
+	private static Message messageOf(Type type) {
+		if (type instanceof Class) {
+			Class<?> clazz = (Class<?>) type;
+			if (clazz == Widget.class) {
+				return Message.WIDGET;
+			}
+			if (clazz == Gadget.class) {
+				return Message.GADGET;
+			}
+			if (clazz == DatabaseRequestResultDTO.class) {
+				return Message.DATABASE_REQUEST_RESULT;
+			}
+		}
+		else if (type instanceof ParameterizedType) {
+			ParameterizedType parameterized = (ParameterizedType) type;
+			Type raw = parameterized.getRawType();
+			if (raw == List.class || raw == Collection.class) {
+				Type element = parameterized.getActualTypeArguments()[0];
+				if (element == Widget.class) {
+					return Message.WIDGET_LIST;
+				}
+				if (element == Gadget.class) {
+					return Message.GADGET_LIST;
+				}
+				if (element == Product.class) {
+					return Message.PRODUCT_LIST;
+				}
+			}
+		}
+		return null;
+	}
+
+	@Override
+	protected boolean supports(Class<?> clazz) {
+		return messageOf(clazz) != null;
+	}
+
+	@Override
+	public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+		return messageOf(type) != null && canRead(mediaType);
+	}
+
+	@Override
+	public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+		return messageOf(type != null ? type : clazz) != null && canWrite(mediaType);
+	}
+
+	@Override
+	public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage)
+			throws IOException, HttpMessageNotReadableException {
+		Message message = messageOf(type);
+		try {
+			Object value = readers.get(message).readValue(inputMessage.getBody());
+			switch (message) {
+			case WIDGET_LIST:
+				return ((WidgetList) value).widgets;
+			case GADGET_LIST:
+				return ((GadgetList) value).gadgets;
+			case PRODUCT_LIST:
+				List<Product> products = new ArrayList<>();
+				for (ProductMessage product : ((ProductList) value).products) {
+					products.add(product.toProduct());
+				}
+				return products;
+			default:
+				return value;
+			}
+		}
+		catch (JsonProcessingException | IllegalArgumentException e) {
+			throw new HttpMessageNotReadableException("Invalid " + message.name + " message: " + e.getMessage(),
+					e, inputMessage);
+		}
+	}
+
+	@Override
+	protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage)
+			throws IOException, HttpMessageNotReadableException {
+		return read(clazz, null, inputMessage);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	protected void writeInternal(Object body, Type type, HttpOutputMessage outputMessage)
+			throws IOException, HttpMessageNotWritableException {
+		Message message = messageOf(type != null ? type : body.getClass());
+		if (message == null) {
+			throw new HttpMessageNotWritableException("No Protocol Buffers message for " + type);
+		}
+		Object value;
+		switch (message) {
+		case WIDGET_LIST:
+			value = new WidgetList((List<Widget>) body);
+			break;
+		case GADGET_LIST:
+			value = new GadgetList((List<Gadget>) body);
+			break;
+		case PRODUCT_LIST:
+			List<ProductMessage> products = new ArrayList<>();
+			for (Product product : (List<Product>) body) {
+				products.add(new ProductMessage(product));
+			}
+			value = new ProductList(products);
+			break;
+		default:
+			value = body;
+		}
+		writers.get(message).writeValue(outputMessage.getBody(), value);
+	}
+
+	// **** Message classes that have no business class ****
+
+	static class WidgetList {
+		public List<Widget> widgets = new ArrayList<>();
+
+		WidgetList() {}
+
+		WidgetList(List<Widget> widgets) {
+			this.widgets = widgets;
+		}
+	}
+
+	static class GadgetList {
+		public List<Gadget> gadgets = new ArrayList<>();
+
+		GadgetList() {}
+
+		GadgetList(List<Gadget> gadgets) {
+			this.gadgets = gadgets;
+		}
+	}
+
+	static class ProductList {
+		public List<ProductMessage> products = new ArrayList<>();
+
+		ProductList() {}
+
+		ProductList(List<ProductMessage> products) {
+			this.products = products;
+		}
+	}
+
+	/**
+	 * A Widget or a Gadget, with its type. The fields of the other type are
+	 * null and so are left out of the message.
+	 */
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	static class ProductMessage {
+		public String type;
+		public Integer id;
+		public String description;
+		public Double price;
+		public Integer gears;
+		public Integer sprockets;
+		public Integer cylinders;
+
+		ProductMessage() {}
+
+		ProductMessage(Product product) {
+			id = product.getId();
+			description = product.getDescription();
+			price = product.getPrice();
+			if (product instanceof Widget) {
+				Widget w = (Widget) product;
+				type = "widget";
+				gears = w.getGears();
+				sprockets = w.getSprockets();
+			}
+			else {
+				type = "gadget";
+				cylinders = ((Gadget) product).getCylinders();
+			}
+		}
+
+		Product toProduct() {
+			int productId = (id == null) ? 0 : id;
+			double productPrice = (price == null) ? 0 : price;
+			if ("widget".equals(type)) {
+				return new Widget(productId, description, productPrice,
+						(gears == null) ? 0 : gears, (sprockets == null) ? 0 : sprockets);
+			}
+			if ("gadget".equals(type)) {
+				return new Gadget(productId, description, productPrice, (cylinders == null) ? 0 : cylinders);
+			}
+			throw new IllegalArgumentException("type must be 'widget' or 'gadget', not " + type);
+		}
+	}
+}
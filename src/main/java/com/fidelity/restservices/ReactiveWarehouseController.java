@@ -0,0 +1,281 @@
+package com.fidelity.restservices;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerErrorException;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.fidelity.business.Gadget;
+import com.fidelity.business.Product;
+import com.fidelity.business.ProductKey;
+import com.fidelity.business.ProductSortOrder;
+import com.fidelity.business.Widget;
+import com.fidelity.integration.ReactiveWarehouseDao;
+import com.fidelity.restservices.dto.DatabaseRequestResultDTO;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * ReactiveWarehouseController is the non-blocking counterpart of 
+ * WarehouseController. It serves the same routes when the "reactive"
+ * profile is active, and reads and writes the database through
+ * ReactiveWarehouseDao, so no thread waits for the database.
+ * 
+ * A request for all Widgets or all Gadgets is answered with a JSON array.
+ * A client that accepts application/x-ndjson instead receives one JSON
+ * document per line, written as the rows are read: the rate at which the
+ * client reads the response controls the rate at which rows are fetched.
+ * 
+ * Unlike WarehouseController, these responses are not cached, and the 
+ * bulk insert, multi-get and conditional GET variants are not provided.
+ */
+@RestController
+@RequestMapping("/warehouse")
+@Profile("reactive")
+public class ReactiveWarehouseController {
+	private static final String DB_ERROR_MSG = 
+			"Error communicating with the warehouse database";
+
+	@Autowired
+	private ReactiveWarehouseDao dao;
+
+	@Value("${warehouse.paging.default-limit:100}")
+	private int defaultPageLimit;
+
+	@Value("${warehouse.paging.max-limit:1000}")
+	private int maxPageLimit;
+
+	@GetMapping(value="/ping",
+				produces=MediaType.ALL_VALUE)
+	public Mono<String> ping() {
+		return Mono.just("Wareshouse web service is alive and awaits your command");
+	}
+
+	// **** Widget methods ****
+
+	@GetMapping(value="/widgets",
+				produces={ MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE })
+	public Mono<ResponseEntity<Flux<Widget>>> queryForAllWidgets(
+						@RequestParam(required=false) String after,
+						@RequestParam(required=false) Integer limit,
+						ServerHttpRequest request) {
+		if (after != null || limit != null) {
+			int pageLimit = pageLimit(limit);
+			// fetch one extra row to find out whether there is a next page
+			Flux<Widget> rows = dao.getWidgetsAfter(decodeIdCursor(after), pageLimit + 1);
+			return pageResponse(rows, pageLimit, request, w -> PageCursor.encode(String.valueOf(w.getId())));
+		}
+		return Mono.just(ResponseEntity.ok(dao.getAllWidgets().onErrorMap(this::databaseError)));
+	}
+
+	@GetMapping(value="/widgets/{id}",
+				produces=MediaType.APPLICATION_JSON_VALUE)
+	public Mono<Widget> queryForWidgetById(@PathVariable int id) {
+		return dao.getWidget(id)
+				  .onErrorMap(this::databaseError)
+				  .switchIfEmpty(Mono.error(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, 
+						  "No widget in the warehouse with id = " + id)));
+	}
+
+	@DeleteMapping(value="/widgets/{id}",
+				   produces=MediaType.APPLICATION_JSON_VALUE)
+	public Mono<DatabaseRequestResultDTO> removeWidget(@PathVariable("id") int id) {
+		return rowCountResult(dao.deleteWidget(id), 
+				() -> new ResponseStatusException(HttpStatus.NOT_FOUND, 
+						"No widget in the warehouse with id = " + id));
+	}
+
+	@PostMapping(value="/widgets",
+				 produces=MediaType.APPLICATION_JSON_VALUE,
+				 consumes=MediaType.APPLICATION_JSON_VALUE)
+	public Mono<DatabaseRequestResultDTO> insertWidget(@RequestBody Widget w) {
+		return rowCountResult(dao.insertWidget(w), 
+				() -> new ResponseStatusException(HttpStatus.BAD_REQUEST));
+	}
+
+	@PutMapping(value="/widgets",
+				produces=MediaType.APPLICATION_JSON_VALUE,
+				consumes=MediaType.APPLICATION_JSON_VALUE)
+	public Mono<DatabaseRequestResultDTO> updateWidget(@RequestBody Widget w) {
+		return dao.updateWidget(w)
+				  .onErrorMap(this::databaseError)
+				  .map(DatabaseRequestResultDTO::new);
+	}
+
+	// **** Gadget methods ****
+
+	@GetMapping(value="/gadgets",
+				produces={ MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE })
+	public Mono<ResponseEntity<Flux<Gadget>>> queryForAllGadgets(
+						@RequestParam(required=false) String after,
+						@RequestParam(required=false) Integer limit,
+						ServerHttpRequest request) {
+		if (after != null || limit != null) {
+			int pageLimit = pageLimit(limit);
+			Flux<Gadget> rows = dao.getGadgetsAfter(decodeIdCursor(after), pageLimit + 1);
+			return pageResponse(rows, pageLimit, request, g -> PageCursor.encode(String.valueOf(g.getId())));
+		}
+		return Mono.just(ResponseEntity.ok(dao.getAllGadgets().onErrorMap(this::databaseError)));
+	}
+
+	@GetMapping(value="/gadgets/{id}",
+				produces=MediaType.APPLICATION_JSON_VALUE)
+	public Mono<Gadget> queryForGadgetById(@PathVariable("id") int id) {
+		return dao.getGadget(id)
+				  .onErrorMap(this::databaseError)
+				  .switchIfEmpty(Mono.error(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, 
+						  "No gadgets in the warehouse with id = " + id)));
+	}
+
+	@DeleteMapping(value="/gadgets/{id}",
+				   produces=MediaType.APPLICATION_JSON_VALUE)
+	public Mono<DatabaseRequestResultDTO> removeGadget(@PathVariable("id") int id) {
+		return rowCountResult(dao.deleteGadget(id), 
+				() -> new ResponseStatusException(HttpStatus.NOT_FOUND, 
+						"No gadgets in the warehouse with id = " + id));
+	}
+
+	@PostMapping(value="/gadgets",
+				 produces=MediaType.APPLICATION_JSON_VALUE,
+				 consumes=MediaType.APPLICATION_JSON_VALUE)
+	public Mono<DatabaseRequestResultDTO> insertGadget(@RequestBody Gadget g) {
+		return rowCountResult(dao.insertGadget(g), 
+				() -> new ResponseStatusException(HttpStatus.BAD_REQUEST));
+	}
+
+	@PutMapping(value="/gadgets",
+				produces=MediaType.APPLICATION_JSON_VALUE,
+				consumes=MediaType.APPLICATION_JSON_VALUE)
+	public Mono<DatabaseRequestResultDTO> updateGadget(@RequestBody Gadget g) {
+		return rowCountResult(dao.updateGadget(g), 
+				() -> new ResponseStatusException(HttpStatus.BAD_REQUEST));
+	}
+
+	// **** Product methods ****
+
+	@GetMapping(value="/products",
+				produces={ MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE })
+	public Mono<ResponseEntity<Flux<Product>>> queryForAllProducts(
+						@RequestParam(required=false) String after,
+						@RequestParam(required=false) Integer limit,
+						@RequestParam(defaultValue="type") String sort,
+						ServerHttpRequest request) {
+		ProductSortOrder order = productSortOrder(sort);
+		ProductKey afterKey = decodeProductCursor(after, order);
+		int pageLimit = pageLimit(limit);
+		Flux<Product> rows = dao.getProductsPage(order, afterKey, pageLimit + 1);
+		return pageResponse(rows, pageLimit, request, p -> PageCursor.encodeProductKey(p, order));
+	}
+
+	// **** Helpers ****
+
+	private Throwable databaseError(Throwable e) {
+		return (e instanceof ResponseStatusException) ? e : new ServerErrorException(DB_ERROR_MSG, e);
+	}
+
+	private Mono<DatabaseRequestResultDTO> rowCountResult(Mono<Integer> rowCount, 
+															 Supplier<ResponseStatusException> noRowsError) {
+		return rowCount.onErrorMap(this::databaseError)
+					   .flatMap(rows -> (rows == 0) 
+							   ? Mono.error(noRowsError.get()) 
+							   : Mono.just(new DatabaseRequestResultDTO(rows)));
+	}
+
+	/**
+	 * Builds the response for one page of rows, with the same status codes
+	 * and next-page headers as WarehouseController. The page is bounded by
+	 * warehouse.paging.max-limit, so it is collected before the response
+	 * is started.
+	 */
+	private <T> Mono<ResponseEntity<Flux<T>>> pageResponse(Flux<T> rows, int limit, ServerHttpRequest request,
+														   Function<T, String> cursorOf) {
+		return rows.onErrorMap(this::databaseError)
+				   .collectList()
+				   .map(page -> {
+					   if (page.isEmpty()) {
+						   return ResponseEntity.noContent().build();
+					   }
+					   ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+					   if (page.size() > limit) {
+						   page = page.subList(0, limit);
+						   String next = cursorOf.apply(page.get(limit - 1));
+						   String nextUri = UriComponentsBuilder.fromHttpRequest(request)
+								   .replaceQueryParam("after", next)
+								   .replaceQueryParam("limit", limit)
+								   .toUriString();
+						   builder.header(HttpHeaders.LINK, "<" + nextUri + ">; rel=\"next\"")
+								  .header(WarehouseController.NEXT_CURSOR_HEADER, next);
+					   }
+					   List<T> body = page;
+					   return builder.body(Flux.fromIterable(body));
+				   });
+	}
+
+	private int pageLimit(Integer limit) {
+		if (limit == null) {
+			return defaultPageLimit;
+		}
+		if (limit < 1) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, 
+					"limit must be greater than zero");
+		}
+		return Math.min(limit, maxPageLimit);
+	}
+
+	private static int decodeIdCursor(String after) {
+		if (after == null) {
+			return 0;
+		}
+		try {
+			return PageCursor.decodeId(after);
+		}
+		catch (IllegalArgumentException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, 
+					"Invalid page cursor: " + after);
+		}
+	}
+
+	private static ProductSortOrder productSortOrder(String sort) {
+		try {
+			return ProductSortOrder.valueOf(sort.toUpperCase());
+		}
+		catch (IllegalArgumentException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, 
+					"sort must be 'type' or 'price'");
+		}
+	}
+
+	private static ProductKey decodeProductCursor(String after, ProductSortOrder order) {
+		if (after == null) {
+			return null;
+		}
+		try {
+			return PageCursor.decodeProductKey(after, order);
+		}
+		catch (IllegalArgumentException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, 
+					"Invalid page cursor for sort=" + order.name().toLowerCase() + ": " + after);
+		}
+	}
+}
@@ -1,46 +1,156 @@
 package com.fidelity.restservices;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
+import org.springframework.web.accept.ContentNegotiationManager;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.server.ServerErrorException;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import com.fidelity.business.Gadget;
 import com.fidelity.business.Product;
+import com.fidelity.business.ProductKey;
+import com.fidelity.business.ProductSortOrder;
 import com.fidelity.business.Widget;
+import com.fidelity.business.catalog.CatalogSummary;
+import com.fidelity.business.catalog.ProductCatalog;
+import com.fidelity.business.catalog.ProductFilter;
+import com.fidelity.business.catalog.ProductScanResult;
+import com.fidelity.business.catalog.ProductSearchResult;
 import com.fidelity.business.service.WarehouseBusinessService;
+import com.fidelity.business.transfer.ImportJob;
+import com.fidelity.business.transfer.ProductExporter;
+import com.fidelity.business.transfer.ProductImporter;
+import com.fidelity.business.transfer.TransferFormat;
+import com.fidelity.restservices.dto.BatchInsertResultDTO;
 import com.fidelity.restservices.dto.DatabaseRequestResultDTO;
+import com.fidelity.restservices.dto.MultiGetResultDTO;
 
 /**
  * WarehouseController is a RESTful web service.
  * It provides web methods to manage Widgets and Gadgets 
  * in the Warehouse database.
  * 
+ * The GET methods support conditional requests: responses carry a strong
+ * ETag built from the business service's table versions, and a request 
+ * whose If-None-Match header holds the current ETag is answered with 
+ * 304 Not Modified before the database is queried.
+ * 
+ * Every ETag also names the media type of the body, because the JSON,
+ * CBOR, Smile and Protocol Buffers bodies of a resource differ; the 
+ * responses carry Vary: Accept (see WarehouseWebConfig).
+ * 
+ * The ETag of a single Widget or Gadget is its row version in the 
+ * database. A PUT that sends it back in an If-Match header updates the
+ * product only if nobody has changed it since (compare-and-set); otherwise
+ * it is answered with 412 Precondition Failed, and the client has to read
+ * the product again. No row lock is held between the read and the update.
+ * 
+ * Bodies are JSON by default. A client can also send and ask for CBOR or
+ * Smile, the binary encodings of the same JSON documents, and, for
+ * Widgets, Gadgets, lists of products and row counts, Protocol Buffers
+ * (see ProtobufProductHttpMessageConverter). The streamed responses are
+ * JSON only.
+ * 
+ * GET /warehouse/changes streams every insert, update and delete made 
+ * through this instance as Server-Sent Events.
+ * 
+ * When the "reactive" profile is active, ReactiveWarehouseController 
+ * serves the same routes instead.
+ * 
  * @author ROI Instructor
  *
  */
 @RestController
 @RequestMapping("/warehouse")
+@Profile("!reactive")
 public class WarehouseController {
 	private static final String DB_ERROR_MSG = 
 			"Error communicating with the warehouse database";
 	
+	// Media types of the request and response bodies; JSON comes first so
+	// that it is chosen when the Accept header allows any of them
+	private static final String JSON = MediaType.APPLICATION_JSON_VALUE;
+	private static final String CBOR = MediaType.APPLICATION_CBOR_VALUE;
+	private static final String SMILE = "application/x-jackson-smile";
+	private static final String PROTOBUF = ProtobufProductHttpMessageConverter.APPLICATION_PROTOBUF_VALUE;
+
+	// Response header that carries the cursor for the next page
+	static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+	
 	@Autowired
 	private WarehouseBusinessService service;
 
+	@Autowired
+	private ProductCatalog catalog;
+
+	@Autowired
+	private ProductImporter importer;
+
+	@Autowired
+	private ProductExporter exporter;
+
+	@Autowired
+	private CatalogChangeBroadcaster broadcaster;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private ContentNegotiationManager contentNegotiationManager;
+
+	@Value("${warehouse.paging.default-limit:100}")
+	private int defaultPageLimit;
+
+	@Value("${warehouse.paging.max-limit:1000}")
+	private int maxPageLimit;
+
+	@Value("${warehouse.multiget.max-ids:1000}")
+	private int maxMultiGetIds;
+
+	// Part of every ETag, so that ETags from an earlier run of the service,
+	// whose versions also started at zero, never match
+	private final String etagEpoch = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+
 	@GetMapping(value="/ping",
 				produces=MediaType.ALL_VALUE)
 	public String ping() {
@@ -50,8 +160,17 @@ public class WarehouseController {
 	// **** Widget methods ****
 	
 	@GetMapping(value="/widgets",
-				produces=MediaType.APPLICATION_JSON_VALUE)
-	public ResponseEntity<List<Widget>> queryForAllWidgets() {
+				produces={ JSON, CBOR, SMILE, PROTOBUF })
+	public ResponseEntity<List<Widget>> queryForAllWidgets(
+						@RequestParam(required=false) String after,
+						@RequestParam(required=false) Integer limit,
+						WebRequest request) {
+		if (notModified(request, "w" + service.getWidgetsVersion())) {
+			return null;
+		}
+		if (after != null || limit != null) {
+			return queryForWidgetsPage(after, limit);
+		}
 		ResponseEntity<List<Widget>> result;
 		List<Widget> products;
 		try {
@@ -70,9 +189,38 @@ public class WarehouseController {
 		return result;
 	}
 
-	@GetMapping(value="/widgets/{id}",
+	/**
+	 * Streams all Widgets as a JSON array. Rows are read through a database
+	 * cursor and written to the response one at a time, so memory use does
+	 * not grow with the size of the table. An empty table yields [].
+	 */
+	@GetMapping(value="/widgets",
+				params="stream=true",
 				produces=MediaType.APPLICATION_JSON_VALUE)
-	public Widget queryForWidgetById(@PathVariable int id) {
+	public ResponseEntity<StreamingResponseBody> streamAllWidgets(WebRequest request) {
+		if (notModified(request, "w" + service.getWidgetsVersion())) {
+			return null;
+		}
+		return streamJsonArray(generator -> service.streamAllWidgets(writeTo(generator)));
+	}
+
+	private ResponseEntity<List<Widget>> queryForWidgetsPage(String after, Integer limit) {
+		int afterId = decodeIdCursor(after);
+		int pageLimit = pageLimit(limit);
+		List<Widget> products;
+		try {
+			// fetch one extra row to find out whether there is a next page
+			products = service.findWidgetsAfter(afterId, pageLimit + 1);
+		} 
+		catch (Exception e) {
+			throw new ServerErrorException(DB_ERROR_MSG, e);
+		}
+		return pageResponse(products, pageLimit, w -> PageCursor.encode(String.valueOf(w.getId())));
+	}
+
+	@GetMapping(value="/widgets/{id}",
+				produces={ JSON, CBOR, SMILE, PROTOBUF })
+	public Widget queryForWidgetById(@PathVariable int id, WebRequest request) {
 		Widget widget = null;
 		try {
 			widget = service.findWidgetById(id);
@@ -84,11 +232,46 @@ public class WarehouseController {
 			throw new ResponseStatusException(HttpStatus.NOT_FOUND, 
 					"No widget in the warehouse with id = " + id);
 		}
+		if (request.checkNotModified(rowEtag("w", id, widget.getVersion(), representation(request)))) {
+			return null;
+		}
 		return widget;
 	}
 
+	/**
+	 * Looks up several Widgets with one database query:
+	 *    /warehouse/widgets?ids=1,5,9
+	 * Returns the Widgets found, in the order of the ids, and the ids
+	 * that are not in the warehouse.
+	 */
+	@GetMapping(value="/widgets",
+				params="ids",
+				produces={ JSON, CBOR, SMILE })
+	public MultiGetResultDTO<Widget, Integer> queryForWidgetsByIds(@RequestParam List<Integer> ids) {
+		checkMultiGetSize(ids);
+		List<Widget> widgets;
+		try {
+			widgets = service.findWidgetsByIds(ids);
+		} 
+		catch (Exception e) {
+			throw new ServerErrorException(DB_ERROR_MSG, e);
+		}
+		return multiGetResult(ids, widgets, Widget::getId);
+	}
+
+	/**
+	 * Looks up several Widgets by the ids in the request body, a JSON array
+	 * of ids, for id lists that are too long for a URL.
+	 */
+	@PostMapping(value="/widgets/lookup",
+				 produces={ JSON, CBOR, SMILE },
+				 consumes={ JSON, CBOR, SMILE })
+	public MultiGetResultDTO<Widget, Integer> lookupWidgets(@RequestBody List<Integer> ids) {
+		return queryForWidgetsByIds(ids);
+	}
+
 	@DeleteMapping(value="/widgets/{id}",
-				   produces=MediaType.APPLICATION_JSON_VALUE)
+				   produces={ JSON, CBOR, SMILE, PROTOBUF })
 	public DatabaseRequestResultDTO removeWidget(@PathVariable("id") int id) {
 		int rows = 0;
 		try {
@@ -105,8 +288,8 @@ public class WarehouseController {
 	}
 
 	@PostMapping(value="/widgets",
-				 produces=MediaType.APPLICATION_JSON_VALUE,
-				 consumes=MediaType.APPLICATION_JSON_VALUE)
+				 produces={ JSON, CBOR, SMILE, PROTOBUF },
+				 consumes={ JSON, CBOR, SMILE, PROTOBUF })
 	public DatabaseRequestResultDTO insertWidget(@RequestBody Widget w) {
 		int count = 0;
 		try {
@@ -121,25 +304,63 @@ public class WarehouseController {
 		return new DatabaseRequestResultDTO(count);
 	}
 
+	/**
+	 * Inserts all the Widgets in the request in one transaction,
+	 * using JDBC batches, and returns the generated ids.
+	 */
+	@PostMapping(value="/widgets/batch",
+				 produces={ JSON, CBOR, SMILE },
+				 consumes={ JSON, CBOR, SMILE, PROTOBUF })
+	public BatchInsertResultDTO insertWidgets(@RequestBody List<Widget> widgets) {
+		if (widgets.isEmpty()) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, 
+					"The request must contain at least one widget");
+		}
+		List<Integer> ids;
+		try {
+			ids = service.addWidgets(widgets);
+		} 
+		catch (Exception e) {
+			throw new ServerErrorException(DB_ERROR_MSG, e);
+		}
+		return new BatchInsertResultDTO(ids);
+	}
+
 	@PutMapping(value="/widgets",
-					produces=MediaType.APPLICATION_JSON_VALUE,
-					consumes=MediaType.APPLICATION_JSON_VALUE)
-	public DatabaseRequestResultDTO updateWidget(@RequestBody Widget w) {
+					produces={ JSON, CBOR, SMILE, PROTOBUF },
+					consumes={ JSON, CBOR, SMILE, PROTOBUF })
+	public ResponseEntity<DatabaseRequestResultDTO> updateWidget(@RequestBody Widget w,
+						@RequestHeader(value=HttpHeaders.IF_MATCH, required=false) String ifMatch,
+						WebRequest request) {
+		Integer expectedVersion = expectedVersion(ifMatch, "w", w.getId());
 		int count = 0;
 		try {
-			count = service.modifyWidget(w);
+			count = (expectedVersion == null) ? service.modifyWidget(w) 
+											  : service.modifyWidget(w, expectedVersion);
 		} 
 		catch (Exception e) {
 			throw new ServerErrorException(DB_ERROR_MSG, e);
 		}
-		return new DatabaseRequestResultDTO(count);
+		if (ifMatch == null) {
+			return ResponseEntity.ok(new DatabaseRequestResultDTO(count));
+		}
+		return conditionalUpdateResponse(count, "w", w.getId(), expectedVersion, representation(request));
 	}
 
 	// Gadget methods
 	
 	@GetMapping(value="/gadgets",
-				produces=MediaType.APPLICATION_JSON_VALUE)
-	public ResponseEntity<List<Gadget>> queryForAllGadgets() {
+				produces={ JSON, CBOR, SMILE, PROTOBUF })
+	public ResponseEntity<List<Gadget>> queryForAllGadgets(
+						@RequestParam(required=false) String after,
+						@RequestParam(required=false) Integer limit,
+						WebRequest request) {
+		if (notModified(request, "g" + service.getGadgetsVersion())) {
+			return null;
+		}
+		if (after != null || limit != null) {
+			return queryForGadgetsPage(after, limit);
+		}
 		ResponseEntity<List<Gadget>> result;
 		List<Gadget> products;
 		try {
@@ -157,9 +378,36 @@ public class WarehouseController {
 		return result;
 	}
 
-	@GetMapping(value="/gadgets/{id}",
+	/**
+	 * Streams all Gadgets as a JSON array, one row at a time.
+	 */
+	@GetMapping(value="/gadgets",
+				params="stream=true",
 				produces=MediaType.APPLICATION_JSON_VALUE)
-	public Gadget queryForGadgetById(@PathVariable("id") int id) {
+	public ResponseEntity<StreamingResponseBody> streamAllGadgets(WebRequest request) {
+		if (notModified(request, "g" + service.getGadgetsVersion())) {
+			return null;
+		}
+		return streamJsonArray(generator -> service.streamAllGadgets(writeTo(generator)));
+	}
+
+	private ResponseEntity<List<Gadget>> queryForGadgetsPage(String after, Integer limit) {
+		int afterId = decodeIdCursor(after);
+		int pageLimit = pageLimit(limit);
+		List<Gadget> products;
+		try {
+			// fetch one extra row to find out whether there is a next page
+			products = service.findGadgetsAfter(afterId, pageLimit + 1);
+		} 
+		catch (Exception e) {
+			throw new ServerErrorException(DB_ERROR_MSG, e);
+		}
+		return pageResponse(products, pageLimit, g -> PageCursor.encode(String.valueOf(g.getId())));
+	}
+
+	@GetMapping(value="/gadgets/{id}",
+				produces={ JSON, CBOR, SMILE, PROTOBUF })
+	public Gadget queryForGadgetById(@PathVariable("id") int id, WebRequest request) {
 		Gadget gadget = null;
 		try {
 			gadget = service.findGadgetById(id);
@@ -171,11 +419,43 @@ public class WarehouseController {
 			throw new ResponseStatusException(HttpStatus.NOT_FOUND, 
 					"No gadgets in the warehouse with id = " + id);
 		}
+		if (request.checkNotModified(rowEtag("g", id, gadget.getVersion(), representation(request)))) {
+			return null;
+		}
 		return gadget;
 	}
 
+	/**
+	 * Looks up several Gadgets with one database query:
+	 *    /warehouse/gadgets?ids=1,5,9
+	 */
+	@GetMapping(value="/gadgets",
+				params="ids",
+				produces={ JSON, CBOR, SMILE })
+	public MultiGetResultDTO<Gadget, Integer> queryForGadgetsByIds(@RequestParam List<Integer> ids) {
+		checkMultiGetSize(ids);
+		List<Gadget> gadgets;
+		try {
+			gadgets = service.findGadgetsByIds(ids);
+		} 
+		catch (Exception e) {
+			throw new ServerErrorException(DB_ERROR_MSG, e);
+		}
+		return multiGetResult(ids, gadgets, Gadget::getId);
+	}
+
+	/**
+	 * Looks up several Gadgets by the ids in the request body, a JSON array.
+	 */
+	@PostMapping(value="/gadgets/lookup",
+				 produces={ JSON, CBOR, SMILE },
+				 consumes={ JSON, CBOR, SMILE })
+	public MultiGetResultDTO<Gadget, Integer> lookupGadgets(@RequestBody List<Integer> ids) {
+		return queryForGadgetsByIds(ids);
+	}
+
 	@DeleteMapping(value="/gadgets/{id}",
-				   produces=MediaType.APPLICATION_JSON_VALUE)
+				   produces={ JSON, CBOR, SMILE, PROTOBUF })
 	public DatabaseRequestResultDTO removeGadget(@PathVariable("id") int id) {
 		int rows = 0;
 		try {
@@ -192,8 +472,8 @@ public class WarehouseController {
 	}
 
 	@PostMapping(value="/gadgets",
-				 produces=MediaType.APPLICATION_JSON_VALUE,
-				 consumes=MediaType.APPLICATION_JSON_VALUE)
+				 produces={ JSON, CBOR, SMILE, PROTOBUF },
+				 consumes={ JSON, CBOR, SMILE, PROTOBUF })
 	public DatabaseRequestResultDTO insertGadget(@RequestBody Gadget g) {
 		int count = 0;
 		try {
@@ -208,46 +488,634 @@ public class WarehouseController {
 		return new DatabaseRequestResultDTO(count);
 	}
 
+	/**
+	 * Inserts all the Gadgets in the request in one transaction,
+	 * using JDBC batches, and returns the generated ids.
+	 */
+	@PostMapping(value="/gadgets/batch",
+				 produces={ JSON, CBOR, SMILE },
+				 consumes={ JSON, CBOR, SMILE, PROTOBUF })
+	public BatchInsertResultDTO insertGadgets(@RequestBody List<Gadget> gadgets) {
+		if (gadgets.isEmpty()) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, 
+					"The request must contain at least one gadget");
+		}
+		List<Integer> ids;
+		try {
+			ids = service.addGadgets(gadgets);
+		} 
+		catch (Exception e) {
+			throw new ServerErrorException(DB_ERROR_MSG, e);
+		}
+		return new BatchInsertResultDTO(ids);
+	}
+
 	@PutMapping(value="/gadgets",
-				produces=MediaType.APPLICATION_JSON_VALUE,
-				consumes=MediaType.APPLICATION_JSON_VALUE)
-	public DatabaseRequestResultDTO updateGadget(@RequestBody Gadget g) {
+				produces={ JSON, CBOR, SMILE, PROTOBUF },
+				consumes={ JSON, CBOR, SMILE, PROTOBUF })
+	public ResponseEntity<DatabaseRequestResultDTO> updateGadget(@RequestBody Gadget g,
+						@RequestHeader(value=HttpHeaders.IF_MATCH, required=false) String ifMatch,
+						WebRequest request) {
+		Integer expectedVersion = expectedVersion(ifMatch, "g", g.getId());
 		int count = 0;
 		try {
-			count = service.modifyGadget(g);
+			count = (expectedVersion == null) ? service.modifyGadget(g) 
+											  : service.modifyGadget(g, expectedVersion);
 		} 
 		catch (Exception e) {
 			throw new ServerErrorException(DB_ERROR_MSG, e);
 		}
-		if (count == 0) {
-			throw new ResponseStatusException(HttpStatus.BAD_REQUEST);
+		if (ifMatch == null) {
+			if (count == 0) {
+				throw new ResponseStatusException(HttpStatus.BAD_REQUEST);
+			}
+			return ResponseEntity.ok(new DatabaseRequestResultDTO(count));
 		}
-		return new DatabaseRequestResultDTO(count);
+		return conditionalUpdateResponse(count, "g", g.getId(), expectedVersion, representation(request));
 	}
 	
-	// Query for all products
+	/**
+	 * Queries for one page of Widgets and Gadgets with a single database query.
+	 * The products are ordered by type and id (sort=type, the default) or by
+	 * price (sort=price). The page size is bounded by warehouse.paging.max-limit;
+	 * use the next-page cursor to read further, or ?stream=true to read 
+	 * all products at once.
+	 *
+	 * With sort=price, the products can be limited to a type and to a price
+	 * range; those pages are read from the in-memory price index kept by
+	 * ProductCatalog:
+	 *    /warehouse/products?sort=price&type=widget&minPrice=20&maxPrice=50&limit=20
+	 */
 	@GetMapping(value="/products",
-				produces=MediaType.APPLICATION_JSON_VALUE)
-	public ResponseEntity<List<Product>> queryForAllProducts() {
-		ResponseEntity<List<Product>> result;
-		List<Product> products = new ArrayList<>();
+				produces={ JSON, CBOR, SMILE, PROTOBUF })
+	public ResponseEntity<List<Product>> queryForAllProducts(
+						@RequestParam(required=false) String after,
+						@RequestParam(required=false) Integer limit,
+						@RequestParam(defaultValue="type") String sort,
+						@RequestParam(required=false) String type,
+						@RequestParam(required=false) Double minPrice,
+						@RequestParam(required=false) Double maxPrice,
+						WebRequest request) {
+		if (notModified(request, productsVersion())) {
+			return null;
+		}
+		ProductSortOrder order = productSortOrder(sort);
+		ProductKey afterKey = decodeProductCursor(after, order);
+		int pageLimit = pageLimit(limit);
+		boolean filtered = type != null || minPrice != null || maxPrice != null;
+		if (filtered && order != ProductSortOrder.PRICE) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, 
+					"type, minPrice and maxPrice require sort=price");
+		}
+		List<Product> products;
 		try {
-			List<Widget> widgets = service.findAllWidgets();
-			List<Gadget> gadgets = service.findAllGadgets();
+			// fetch one extra row to find out whether there is a next page
+			products = filtered 
+					? catalog.findByPrice(type, minPrice, maxPrice, afterKey, pageLimit + 1)
+					: service.findProductsPage(order, afterKey, pageLimit + 1);
+		} 
+		catch (IllegalArgumentException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+		}
+		catch (Exception e) {
+			throw new ServerErrorException(DB_ERROR_MSG, e);
+		}
+		return pageResponse(products, pageLimit, p -> PageCursor.encodeProductKey(p, order));
+	}
 
-			products.addAll(widgets);
-			products.addAll(gadgets);
+	/**
+	 * Streams all Widgets followed by all Gadgets as a JSON array, 
+	 * one row at a time.
+	 */
+	@GetMapping(value="/products",
+				params="stream=true",
+				produces=MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<StreamingResponseBody> streamAllProducts(WebRequest request) {
+		if (notModified(request, productsVersion())) {
+			return null;
+		}
+		return streamJsonArray(generator -> {
+			service.streamAllWidgets(writeTo(generator));
+			service.streamAllGadgets(writeTo(generator));
+		});
+	}
+
+	/**
+	 * Looks up several Widgets and Gadgets with one database query. 
+	 * Each id is prefixed with its product type:
+	 *    /warehouse/products?ids=widget:1,gadget:3,widget:9
+	 */
+	@GetMapping(value="/products",
+				params="ids",
+				produces={ JSON, CBOR, SMILE })
+	public MultiGetResultDTO<Product, String> queryForProductsByIds(@RequestParam List<String> ids) {
+		checkMultiGetSize(ids);
+		List<String> productIds = new ArrayList<>(ids.size());
+		List<Integer> widgetIds = new ArrayList<>();
+		List<Integer> gadgetIds = new ArrayList<>();
+		for (String id : ids) {
+			ProductKey key = parseProductId(id);
+			(ProductKey.WIDGET.equals(key.getType()) ? widgetIds : gadgetIds).add(key.getId());
+			productIds.add(productIdOf(key.getType(), key.getId()));
+		}
+		List<Product> products;
+		try {
+			products = service.findProductsByIds(widgetIds, gadgetIds);
 		} 
 		catch (Exception e) {
 			throw new ServerErrorException(DB_ERROR_MSG, e);
 		}
-		if (products.size() > 0) {
-			result = ResponseEntity.ok(products);
+		return multiGetResult(productIds, products, p -> productIdOf(ProductKey.typeOf(p), p.getId()));
+	}
+
+	/**
+	 * Looks up several Widgets and Gadgets by the typed ids in the request
+	 * body, a JSON array such as ["widget:1", "gadget:3"].
+	 */
+	@PostMapping(value="/products/lookup",
+				 produces={ JSON, CBOR, SMILE },
+				 consumes={ JSON, CBOR, SMILE })
+	public MultiGetResultDTO<Product, String> lookupProducts(@RequestBody List<String> ids) {
+		return queryForProductsByIds(ids);
+	}
+
+	/**
+	 * Scans all Widgets and Gadgets for the products that match the filter
+	 * in the query parameters (see ProductFilter). The scan runs over the 
+	 * in-memory catalog snapshot kept by ProductCatalog, not the database.
+	 * The response holds the number of matches and the first {@code limit} 
+	 * matching products:
+	 *    /warehouse/products/scan?minPrice=10&maxPrice=50&minGears=4&limit=20
+	 */
+	@GetMapping(value="/products/scan",
+				produces={ JSON, CBOR, SMILE })
+	public ProductScanResult scanProducts(ProductFilter filter,
+										  @RequestParam(required=false) Integer limit) {
+		int scanLimit = pageLimit(limit);
+		try {
+			return catalog.scan(filter, scanLimit);
 		}
-		else {
-			result = ResponseEntity.noContent().build();
+		catch (IllegalArgumentException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+		}
+		catch (Exception e) {
+			throw new ServerErrorException(DB_ERROR_MSG, e);
 		}
-		return result;
 	}
-}
 
+	/**
+	 * Searches the descriptions of all Widgets and Gadgets for the products
+	 * that contain every term of the query, most relevant first. The search
+	 * uses the in-memory index kept by ProductCatalog, not the database.
+	 * The response holds the number of matches and the page of them that
+	 * starts at {@code offset}:
+	 *    /warehouse/products/search?q=impact+widget&offset=20&limit=20
+	 */
+	@GetMapping(value="/products/search",
+				produces={ JSON, CBOR, SMILE })
+	public ProductSearchResult searchProducts(@RequestParam String q,
+											  @RequestParam(defaultValue="0") int offset,
+											  @RequestParam(required=false) Integer limit) {
+		int searchLimit = pageLimit(limit);
+		try {
+			return catalog.search(q, offset, searchLimit);
+		}
+		catch (IllegalArgumentException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+		}
+		catch (Exception e) {
+			throw new ServerErrorException(DB_ERROR_MSG, e);
+		}
+	}
+
+	/**
+	 * Returns the {@code k} most expensive Widgets and Gadgets (order=desc, 
+	 * the default) or the {@code k} cheapest (order=asc), optionally of one
+	 * type. The products are read from the in-memory price index kept by 
+	 * ProductCatalog:
+	 *    /warehouse/products/top?by=price&k=10&order=asc&type=gadget
+	 * Price is the only ranking for now.
+	 */
+	@GetMapping(value="/products/top",
+				produces={ JSON, CBOR, SMILE, PROTOBUF })
+	public List<Product> queryForTopProducts(@RequestParam(defaultValue="price") String by,
+											 @RequestParam(required=false) Integer k,
+											 @RequestParam(defaultValue="desc") String order,
+											 @RequestParam(required=false) String type,
+											 WebRequest request) {
+		if (!"price".equalsIgnoreCase(by)) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "by must be 'price'");
+		}
+		if (!"asc".equalsIgnoreCase(order) && !"desc".equalsIgnoreCase(order)) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "order must be 'asc' or 'desc'");
+		}
+		if (notModified(request, productsVersion())) {
+			return null;
+		}
+		try {
+			return catalog.findTopByPrice(type, "desc".equalsIgnoreCase(order), pageLimit(k));
+		}
+		catch (IllegalArgumentException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+		}
+		catch (Exception e) {
+			throw new ServerErrorException(DB_ERROR_MSG, e);
+		}
+	}
+
+	/**
+	 * Returns the counts, price statistics, totals and price histogram of
+	 * all Widgets and Gadgets. The summary is maintained in memory by 
+	 * ProductCatalog, so polling it does not query the database.
+	 */
+	@GetMapping(value="/products/summary",
+				produces={ JSON, CBOR, SMILE })
+	public CatalogSummary queryForProductSummary(WebRequest request) {
+		if (notModified(request, productsVersion())) {
+			return null;
+		}
+		try {
+			return catalog.summary();
+		}
+		catch (Exception e) {
+			throw new ServerErrorException(DB_ERROR_MSG, e);
+		}
+	}
+
+	// **** Import and export methods ****
+
+	/**
+	 * Imports Widgets and Gadgets from a CSV (text/csv) or NDJSON 
+	 * (application/x-ndjson) file in the request body, which may be
+	 * gzipped. The body is spooled to disk and the import runs in the
+	 * background, so the response is 202 Accepted with the status of the
+	 * new job, whose Location is polled for progress:
+	 *    /warehouse/import/{jobId}
+	 */
+	@PostMapping(value="/import",
+				 produces={ JSON, CBOR, SMILE },
+				 consumes={ "text/csv", "application/x-ndjson" })
+	public ResponseEntity<ImportJob> importProducts(InputStream body,
+								@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType) {
+		ImportJob job;
+		try {
+			job = importer.submit(body, TransferFormat.forMediaType(contentType));
+		}
+		catch (IOException e) {
+			throw new ServerErrorException("Error receiving the import file", e);
+		}
+		URI status = ServletUriComponentsBuilder.fromCurrentRequestUri()
+				.path("/{jobId}")
+				.buildAndExpand(job.getId())
+				.toUri();
+		return ResponseEntity.accepted().location(status).body(job);
+	}
+
+	/**
+	 * Returns the progress of an import: its state, the rows read, imported
+	 * and rejected so far, the rate, and the first rejected rows.
+	 */
+	@GetMapping(value="/import/{jobId}",
+				produces={ JSON, CBOR, SMILE })
+	public ImportJob queryForImportJob(@PathVariable String jobId) {
+		ImportJob job = importer.getJob(jobId);
+		if (job == null) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, 
+					"No import job with id = " + jobId);
+		}
+		return job;
+	}
+
+	/**
+	 * Streams all Widgets and Gadgets, or those of one type, as an NDJSON
+	 * or CSV file that can be imported again:
+	 *    /warehouse/export?format=csv&type=widget
+	 * The rows are written as they are read from the database, so the 
+	 * export needs no more memory for a million rows than for ten. The
+	 * file is gzipped if the request accepts the gzip content encoding.
+	 */
+	@GetMapping(value="/export")
+	public ResponseEntity<StreamingResponseBody> exportProducts(
+						@RequestParam(defaultValue="ndjson") String format,
+						@RequestParam(defaultValue="all") String type,
+						@RequestHeader(value=HttpHeaders.ACCEPT_ENCODING, required=false) String acceptEncoding) {
+		TransferFormat exportFormat;
+		try {
+			exportFormat = TransferFormat.forExtension(format);
+		}
+		catch (IllegalArgumentException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+		}
+		if (!type.matches("(?i)all|widget|gadget")) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, 
+					"type must be 'widget', 'gadget' or 'all'");
+		}
+		String exportType = type.equalsIgnoreCase("all") ? null : type;
+		boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+
+		StreamingResponseBody body = gzip ? out -> exporter.exportGzipped(exportFormat, exportType, out)
+										 : out -> exporter.export(exportFormat, exportType, out);
+		ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+				.contentType(MediaType.parseMediaType(exportFormat.getMediaType() + ";charset=UTF-8"))
+				.header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+						.filename("products." + exportFormat.getExtension())
+						.build()
+						.toString())
+				.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+		if (gzip) {
+			builder.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+		}
+		return builder.body(body);
+	}
+
+	// **** Change feed ****
+
+	/**
+	 * Streams the inserts, updates and deletes of Widgets and Gadgets, or of
+	 * one type, as Server-Sent Events:
+	 *    /warehouse/changes?type=gadget
+	 * Each event is named after the operation, and its data is the change
+	 * with the product as it was written. A client that reconnects with the
+	 * Last-Event-ID header receives the changes it missed, or a "reset" event
+	 * if they are no longer kept (see CatalogChangeBroadcaster).
+	 */
+	@GetMapping(value="/changes",
+				produces=MediaType.TEXT_EVENT_STREAM_VALUE)
+	public SseEmitter streamChanges(@RequestParam(required=false) String type,
+									@RequestHeader(value="Last-Event-ID", required=false) String lastEventId) {
+		try {
+			return broadcaster.subscribe(type, lastEventId);
+		}
+		catch (IllegalArgumentException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+		}
+	}
+
+	// **** Multi-get helpers ****
+
+	private void checkMultiGetSize(List<?> ids) {
+		if (ids.isEmpty()) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, 
+					"The request must contain at least one id");
+		}
+		if (ids.size() > maxMultiGetIds) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, 
+					"The request must contain at most " + maxMultiGetIds + " ids");
+		}
+	}
+
+	private static String productIdOf(String type, int id) {
+		return type + ":" + id;
+	}
+
+	private static ProductKey parseProductId(String productId) {
+		String[] parts = productId.trim().split(":");
+		try {
+			if (parts.length == 2) {
+				return new ProductKey(parts[0], Integer.parseInt(parts[1]), 0);
+			}
+		}
+		catch (IllegalArgumentException e) {
+			// reported below
+		}
+		throw new ResponseStatusException(HttpStatus.BAD_REQUEST, 
+				"Product ids must look like widget:1 or gadget:1, not " + productId);
+	}
+
+	/**
+	 * Splits the requested ids into the rows that were found, in the order
+	 * of the ids, and the ids that were not. Duplicate ids are reported once.
+	 */
+	private static <T, I> MultiGetResultDTO<T, I> multiGetResult(List<I> ids, List<T> rows, 
+																 Function<T, I> idOf) {
+		Map<I, T> rowsById = new HashMap<>();
+		rows.forEach(row -> rowsById.put(idOf.apply(row), row));
+		List<T> found = new ArrayList<>(rows.size());
+		List<I> missing = new ArrayList<>();
+		for (I id : new LinkedHashSet<>(ids)) {
+			T row = rowsById.get(id);
+			if (row != null) {
+				found.add(row);
+			}
+			else {
+				missing.add(id);
+			}
+		}
+		return new MultiGetResultDTO<>(found, missing);
+	}
+
+	// **** Conditional request helpers ****
+
+	/**
+	 * Sets a strong ETag built from the version parts on the response.
+	 * Returns true if the request's If-None-Match header matches the ETag;
+	 * the response status is then already set to 304 Not Modified, and the
+	 * handler must return without a body.
+	 * 
+	 * The versions must be read before the rows are queried: if a write 
+	 * slips in between, the rows are newer than the ETag, which only costs
+	 * the client a refetch on its next request.
+	 */
+	private boolean notModified(WebRequest request, String... versionParts) {
+		String etag = etagEpoch + "-" + String.join("-", versionParts) + "-" + representation(request);
+		return request.checkNotModified(etag);
+	}
+
+	/**
+	 * Returns the subtype of the media type the body will be written in,
+	 * e.g. json or cbor: the first of the handler's produces types that
+	 * the Accept header allows, in the order Spring MVC tries them.
+	 */
+	@SuppressWarnings("unchecked")
+	private String representation(WebRequest request) {
+		Set<MediaType> producible = (Set<MediaType>) request.getAttribute(
+				HandlerMapping.PRODUCIBLE_MEDIA_TYPES_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+		if (producible == null || producible.isEmpty()) {
+			return MediaType.APPLICATION_JSON.getSubtype();
+		}
+		List<MediaType> accepted;
+		try {
+			accepted = new ArrayList<>(contentNegotiationManager.resolveMediaTypes((NativeWebRequest) request));
+		}
+		catch (HttpMediaTypeNotAcceptableException e) {
+			throw new ResponseStatusException(HttpStatus.NOT_ACCEPTABLE, e.getMessage(), e);
+		}
+		MediaType.sortBySpecificityAndQuality(accepted);
+		for (MediaType acceptedType : accepted) {
+			for (MediaType producibleType : producible) {
+				if (acceptedType.isCompatibleWith(producibleType)) {
+					return producibleType.getSubtype();
+				}
+			}
+		}
+		return producible.iterator().next().getSubtype();
+	}
+
+	private String[] productsVersion() {
+		return new String[] { "w" + service.getWidgetsVersion(), "g" + service.getGadgetsVersion() };
+	}
+
+	// **** Optimistic concurrency helpers ****
+
+	/**
+	 * The ETag of a Widget ("w") or Gadget ("g") at a row version, in the
+	 * representation (see representation()). It comes from the database,
+	 * so unlike the collection ETags it stays valid across restarts and 
+	 * instances of the service.
+	 */
+	private static String rowEtag(String type, int id, int version, String representation) {
+		return type + id + "-v" + version + "-" + representation;
+	}
+
+	/**
+	 * Returns the row version in the ETag of an If-Match header sent to
+	 * update the product, or null if there is no header or it is "*".
+	 * The version is the same in every representation, so the ETag of any
+	 * of them matches. Weak ETags never match. Answers 412 Precondition
+	 * Failed if the header holds no ETag of the product.
+	 */
+	private static Integer expectedVersion(String ifMatch, String type, int id) {
+		if (ifMatch == null || ifMatch.trim().equals("*")) {
+			return null;
+		}
+		String prefix = "\"" + type + id + "-v";
+		for (String etag : ifMatch.split(",")) {
+			etag = etag.trim();
+			if (etag.startsWith(prefix) && etag.endsWith("\"") && etag.length() > prefix.length() + 1) {
+				String version = etag.substring(prefix.length(), etag.length() - 1);
+				int representation = version.indexOf('-');
+				try {
+					return Integer.valueOf(representation < 0 ? version : version.substring(0, representation));
+				}
+				catch (NumberFormatException e) {
+					// not an ETag of this service
+				}
+			}
+		}
+		throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, 
+				"If-Match does not hold an ETag of the product with id = " + id);
+	}
+
+	/**
+	 * The response to an update with an If-Match header: the new ETag of the
+	 * product if it was updated, or 412 Precondition Failed if the product
+	 * has been changed or deleted since the client read it.
+	 */
+	private static ResponseEntity<DatabaseRequestResultDTO> conditionalUpdateResponse(int count, 
+												String type, int id, Integer expectedVersion, String representation) {
+		if (count == 0) {
+			throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, 
+					"The product with id = " + id + " has been changed or deleted; read it again");
+		}
+		ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+		if (expectedVersion != null) {
+			response.eTag(rowEtag(type, id, expectedVersion + 1, representation));
+		}
+		return response.body(new DatabaseRequestResultDTO(count));
+	}
+
+	// **** Streaming helpers ****
+
+	/**
+	 * Wraps a JSON array around the elements written by the writer. The body
+	 * is written on an MVC async thread after the handler returns, so the 
+	 * status and headers are already committed by the time rows are read.
+	 */
+	private ResponseEntity<StreamingResponseBody> streamJsonArray(Consumer<JsonGenerator> elementWriter) {
+		StreamingResponseBody body = out -> {
+			try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+				generator.writeStartArray();
+				elementWriter.accept(generator);
+				generator.writeEndArray();
+			}
+		};
+		return ResponseEntity.ok()
+							 .contentType(MediaType.APPLICATION_JSON)
+							 .body(body);
+	}
+
+	private static Consumer<Product> writeTo(JsonGenerator generator) {
+		return product -> {
+			try {
+				generator.writeObject(product);
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		};
+	}
+
+	// **** Paging helpers ****
+
+	private int pageLimit(Integer limit) {
+		if (limit == null) {
+			return defaultPageLimit;
+		}
+		if (limit < 1) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, 
+					"limit must be greater than zero");
+		}
+		return Math.min(limit, maxPageLimit);
+	}
+
+	private int decodeIdCursor(String after) {
+		if (after == null) {
+			return 0;
+		}
+		try {
+			return PageCursor.decodeId(after);
+		}
+		catch (IllegalArgumentException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, 
+					"Invalid page cursor: " + after);
+		}
+	}
+
+	private static ProductSortOrder productSortOrder(String sort) {
+		try {
+			return ProductSortOrder.valueOf(sort.toUpperCase());
+		}
+		catch (IllegalArgumentException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, 
+					"sort must be 'type' or 'price'");
+		}
+	}
+
+	private static ProductKey decodeProductCursor(String after, ProductSortOrder order) {
+		if (after == null) {
+			return null;
+		}
+		try {
+			return PageCursor.decodeProductKey(after, order);
+		}
+		catch (IllegalArgumentException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, 
+					"Invalid page cursor for sort=" + order.name().toLowerCase() + ": " + after);
+		}
+	}
+
+	/**
+	 * Builds the response for one page of rows. The caller queries for 
+	 * limit + 1 rows; if the extra row is present, it is dropped and the
+	 * cursor of the last returned row is sent in a Link header and in
+	 * the X-Next-Cursor header.
+	 */
+	private <T> ResponseEntity<List<T>> pageResponse(List<T> rows, int limit, 
+													 Function<T, String> cursorOf) {
+		if (rows.isEmpty()) {
+			return ResponseEntity.noContent().build();
+		}
+		ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+		if (rows.size() > limit) {
+			rows = rows.subList(0, limit);
+			String next = cursorOf.apply(rows.get(limit - 1));
+			String nextUri = ServletUriComponentsBuilder.fromCurrentRequest()
+					.replaceQueryParam("after", next)
+					.replaceQueryParam("limit", limit)
+					.toUriString();
+			builder.header(HttpHeaders.LINK, "<" + nextUri + ">; rel=\"next\"")
+				   .header(NEXT_CURSOR_HEADER, next);
+		}
+		return builder.body(rows);
+	}
+}
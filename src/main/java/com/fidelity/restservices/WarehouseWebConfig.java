@@ -0,0 +1,56 @@
+package com.fidelity.restservices;
+
+import java.util.Collection;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Spring MVC configuration of WarehouseController.
+ *
+ * Spring Boot registers the Jackson converters for JSON, CBOR and Smile by
+ * itself; this adds the Protocol Buffers converter. It is added after them
+ * and only to Spring MVC, rather than declared as a bean, so that JSON stays
+ * the preferred format and the RestTemplates built by Spring Boot do not
+ * start asking for Protocol Buffers.
+ *
+ * The responses of the handlers that produce more than one media type
+ * carry Vary: Accept, so that caches keep a copy per format. The header is
+ * added before the handler runs, so 304 Not Modified responses carry it
+ * as well.
+ */
+@Configuration
+@Profile("!reactive")
+public class WarehouseWebConfig implements WebMvcConfigurer {
+
+	@Override
+	public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+		converters.add(new ProtobufProductHttpMessageConverter());
+	}
+
+	@Override
+	public void addInterceptors(InterceptorRegistry registry) {
+		registry.addInterceptor(new VaryAcceptInterceptor());
+	}
+
+	static class VaryAcceptInterceptor implements HandlerInterceptor {
+		@Override
+		public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+			Object producible = request.getAttribute(HandlerMapping.PRODUCIBLE_MEDIA_TYPES_ATTRIBUTE);
+			if (producible instanceof Collection && ((Collection<?>) producible).size() > 1) {
+				response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+			}
+			return true;
+		}
+	}
+}
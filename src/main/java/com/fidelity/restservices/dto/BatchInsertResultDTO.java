@@ -0,0 +1,38 @@
+package com.fidelity.restservices.dto;
+
+import java.util.List;
+
+/**
+ * BatchInsertResultDTO is a Data Transfer Object (DTO) returned by the bulk insert
+ * web methods. It holds the number of rows inserted and the ids generated by the
+ * database, in the same order as the products in the request:
+ *    { "rowCount": 3, "ids": [ 7, 8, 9 ] }
+ *
+ */
+public class BatchInsertResultDTO {
+	private int rowCount;
+	private List<Integer> ids;
+
+	public BatchInsertResultDTO() {}
+
+	public BatchInsertResultDTO(List<Integer> ids) {
+		this.rowCount = ids.size();
+		this.ids = ids;
+	}
+
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	public void setRowCount(int rowCount) {
+		this.rowCount = rowCount;
+	}
+
+	public List<Integer> getIds() {
+		return ids;
+	}
+
+	public void setIds(List<Integer> ids) {
+		this.ids = ids;
+	}
+}
@@ -0,0 +1,40 @@
+package com.fidelity.restservices.dto;
+
+import java.util.List;
+
+/**
+ * MultiGetResultDTO is a Data Transfer Object (DTO) returned by the web methods
+ * that look up several products by id. It holds the products that were found,
+ * in the order their ids were requested, and the requested ids that were not:
+ *    { "found": [ { "id": 1, ... }, { "id": 5, ... } ], "missing": [ 9 ] }
+ *
+ * @param <T> the type of the products
+ * @param <I> the type of the ids
+ */
+public class MultiGetResultDTO<T, I> {
+	private List<T> found;
+	private List<I> missing;
+
+	public MultiGetResultDTO() {}
+
+	public MultiGetResultDTO(List<T> found, List<I> missing) {
+		this.found = found;
+		this.missing = missing;
+	}
+
+	public List<T> getFound() {
+		return found;
+	}
+
+	public void setFound(List<T> found) {
+		this.found = found;
+	}
+
+	public List<I> getMissing() {
+		return missing;
+	}
+
+	public void setMissing(List<I> missing) {
+		this.missing = missing;
+	}
+}
@@ -0,0 +1,66 @@
+package com.fidelity.warehouseservice;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.scheduling.annotation.AsyncAnnotationBeanPostProcessor;
+
+/**
+ * Runs the service on virtual threads when the property
+ *    warehouse.threads.virtual = true
+ * is set. Tomcat then starts a new virtual thread for each request instead
+ * of taking a thread from its pool of server.tomcat.threads.max platform 
+ * threads, so a request that blocks in JDBC no longer holds a scarce thread.
+ * The application task executor, which writes the streaming responses and
+ * runs @Async methods, also uses virtual threads.
+ * 
+ * Virtual threads need Java 21 or later. The service is built for Java 17,
+ * so the executor is created reflectively, and startup fails with a clear
+ * message when the mode is enabled on an older JVM.
+ * 
+ * The number of concurrent database calls is still bounded by the size of
+ * the connection pool; requests beyond that wait for a connection.
+ */
+@Configuration
+@ConditionalOnProperty(name="warehouse.threads.virtual", havingValue="true")
+public class VirtualThreadConfig {
+
+	@Bean
+	public ExecutorService virtualThreadExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} 
+		catch (NoSuchMethodException e) {
+			throw new IllegalStateException("warehouse.threads.virtual=true requires Java 21 or later, "
+											+ "but the service is running on Java " + Runtime.version(), e);
+		} 
+		catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Cannot create the virtual thread executor", e);
+		}
+	}
+
+	@Bean
+	public WebServerFactoryCustomizer<TomcatServletWebServerFactory> virtualThreadTomcatCustomizer(
+											ExecutorService virtualThreadExecutor) {
+		return factory -> factory.addProtocolHandlerCustomizers(
+								handler -> handler.setExecutor(virtualThreadExecutor));
+	}
+
+	// Replaces the pooled executor that Spring Boot would otherwise create 
+	// under these names for Spring MVC async requests and @Async methods
+	@Bean(name={ TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME,
+				 AsyncAnnotationBeanPostProcessor.DEFAULT_TASK_EXECUTOR_BEAN_NAME })
+	public AsyncTaskExecutor applicationTaskExecutor(ExecutorService virtualThreadExecutor) {
+		return new TaskExecutorAdapter(virtualThreadExecutor);
+	}
+}
@@ -1,6 +1,5 @@
 package com.fidelity.warehouseservice;
 
-import org.mybatis.spring.annotation.MapperScan;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InjectionPoint;
@@ -8,7 +7,9 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Import;
 import org.springframework.context.annotation.Scope;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 import io.swagger.v3.oas.models.OpenAPI;
 import io.swagger.v3.oas.models.info.Info;
@@ -23,9 +24,12 @@ import io.swagger.v3.oas.models.info.License;
  */
 @SpringBootApplication
 // tell Spring Boot where to scan for annotated components
-@ComponentScan(basePackages={"com.fidelity.integration", "com.fidelity.restservices", "com.fidelity.business.service"})
-// tell MyBatis where to scan for mapping interface files
-@MapperScan(basePackages="com.fidelity.integration.mapper")  
+@ComponentScan(basePackages={"com.fidelity.integration", "com.fidelity.restservices", "com.fidelity.business.service",
+                         "com.fidelity.business.catalog", "com.fidelity.business.transfer", "com.fidelity.monitoring"})
+// opt-in virtual thread execution (warehouse.threads.virtual)
+@Import(VirtualThreadConfig.class)
+// run @Scheduled maintenance tasks, such as ProductCatalog.reconcile()
+@EnableScheduling
 public class WarehouseServiceApplication {
 	public static void main(String[] args) {
 		SpringApplication.run(WarehouseServiceApplication.class, args);
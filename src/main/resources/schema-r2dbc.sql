@@ -0,0 +1,25 @@
+-- Schema definition for the widgets and gadgets in the H2 database
+-- of the reactive profile. Same tables as schema.sql, in H2's syntax.
+
+-- Drop the tables if they exist
+drop table if exists widgets;
+drop table if exists gadgets;
+
+-- Widgets
+create table widgets (
+  id integer GENERATED BY DEFAULT AS IDENTITY(START WITH 1 INCREMENT BY 1) PRIMARY KEY, 
+  description varchar(45), 
+  price numeric(6,2), 
+  gears integer, 
+  sprockets integer,
+  version integer default 0 not null
+);
+
+-- Gadgets
+create table gadgets (
+  id integer GENERATED BY DEFAULT AS IDENTITY(START WITH 1 INCREMENT BY 1) PRIMARY KEY, 
+  description varchar(45), 
+  price numeric(6,2), 
+  cylinders integer,
+  version integer default 0 not null
+);
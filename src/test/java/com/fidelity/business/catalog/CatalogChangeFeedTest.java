@@ -0,0 +1,84 @@
+package com.fidelity.business.catalog;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import com.fidelity.business.Gadget;
+import com.fidelity.business.Widget;
+
+/**
+ * Unit tests for CatalogChangeFeed and its ring buffer.
+ */
+class CatalogChangeFeedTest {
+	CatalogChangeFeed feed = new CatalogChangeFeed(3);
+
+	private static List<Long> sequences(List<CatalogChange> changes) {
+		return changes.stream().map(CatalogChange::getSequence).collect(Collectors.toList());
+	}
+
+	@Test
+	void testRecordsChangesInOrder() {
+		Widget w = new Widget(1, "Low Impact Widget", 12.99, 2, 3);
+		Gadget g = new Gadget(4, "Twelve Cylinder Gadget", 99.99, 12);
+		feed.widgetUpdated(w);
+		feed.gadgetAdded(g);
+		feed.widgetRemoved(1);
+
+		List<CatalogChange> changes = feed.readAfter(0, 10);
+
+		assertThat(sequences(changes), contains(1L, 2L, 3L));
+		assertThat(changes.get(0).getOperation(), is(equalTo(CatalogChange.UPDATE)));
+		assertThat(changes.get(0).getType(), is(equalTo("widget")));
+		assertThat(changes.get(0).getProduct(), is(equalTo(w)));
+		assertThat(changes.get(1).getOperation(), is(equalTo(CatalogChange.INSERT)));
+		assertThat(changes.get(1).getType(), is(equalTo("gadget")));
+		assertThat(changes.get(1).getId(), is(4));
+		assertThat(changes.get(2).getOperation(), is(equalTo(CatalogChange.DELETE)));
+		assertThat(changes.get(2).getProduct(), is(nullValue()));
+	}
+
+	@Test
+	void testReadAfterHonoursCursorAndMax() {
+		for (int id = 1; id <= 3; id++) {
+			feed.gadgetRemoved(id);
+		}
+
+		assertThat(sequences(feed.readAfter(1, 1)), contains(2L));
+		assertThat(sequences(feed.readAfter(1, 10)), contains(2L, 3L));
+		assertThat(feed.readAfter(3, 10), is(empty()));
+	}
+
+	@Test
+	void testOverwrittenCursorIsReported() {
+		for (int id = 1; id <= 5; id++) {
+			feed.widgetRemoved(id);
+		}
+
+		assertThat(feed.getLastSequence(), is(5L));
+		assertThat(feed.getOldestSequence(), is(3L));
+		assertThat(sequences(feed.readAfter(2, 10)), contains(3L, 4L, 5L));
+		// change 2 has been overwritten
+		assertThat(feed.readAfter(1, 10), is(nullValue()));
+	}
+
+	@Test
+	void testAppendCallbacksRunAfterEveryChange() {
+		AtomicInteger calls = new AtomicInteger();
+		feed.addAppendCallback(calls::incrementAndGet);
+
+		feed.widgetRemoved(1);
+		feed.gadgetRemoved(1);
+
+		assertThat(calls.get(), is(2));
+	}
+}
@@ -0,0 +1,410 @@
+package com.fidelity.business.catalog;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.slf4j.Logger;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fidelity.business.CatalogTotals;
+import com.fidelity.business.Gadget;
+import com.fidelity.business.Product;
+import com.fidelity.business.ProductKey;
+import com.fidelity.business.Widget;
+import com.fidelity.integration.WarehouseDao;
+
+/**
+ * Unit tests for ProductCatalog and its CatalogSnapshot. The catalog is
+ * loaded from a mock DAO, so these tests need neither Spring nor a database.
+ */
+class ProductCatalogTest {
+	@Mock
+	WarehouseDao mockDao;
+
+	@Mock
+	Logger logger;
+
+	@InjectMocks
+	ProductCatalog catalog;
+
+	List<Widget> widgets = List.of(
+			new Widget(1, "Low Impact Widget", 12.99, 2, 3),
+			new Widget(2, "Medium Impact Widget", 42.99, 5, 5),
+			new Widget(3, "High Impact Widget", 89.99, 10, 8));
+	List<Gadget> gadgets = List.of(
+			new Gadget(1, "Two Cylinder Gadget", 19.99, 2),
+			new Gadget(2, "Four Cylinder Gadget", 29.99, 4),
+			new Gadget(3, "Eight Cylinder Gadget", 49.99, 8));
+
+	@SuppressWarnings("unchecked")
+	@BeforeEach
+	void init() {
+		catalog = new ProductCatalog();
+		MockitoAnnotations.initMocks(this);
+		doAnswer(invocation -> {
+			widgets.forEach(invocation.getArgument(0, Consumer.class));
+			return null;
+		}).when(mockDao).streamAllWidgets(any(Consumer.class));
+		doAnswer(invocation -> {
+			gadgets.forEach(invocation.getArgument(0, Consumer.class));
+			return null;
+		}).when(mockDao).streamAllGadgets(any(Consumer.class));
+	}
+
+	private static ProductFilter priceBand(Double minPrice, Double maxPrice) {
+		ProductFilter filter = new ProductFilter();
+		filter.setMinPrice(minPrice);
+		filter.setMaxPrice(maxPrice);
+		return filter;
+	}
+
+	@Test
+	void testScanWithEmptyFilterMatchesAllProducts() {
+		ProductScanResult result = catalog.scan(new ProductFilter(), 100);
+
+		assertThat(result.getMatchCount(), is(6));
+		assertThat(result.getProducts().get(0), equalTo(widgets.get(0)));
+		assertThat(result.getProducts().get(3), equalTo(gadgets.get(0)));
+	}
+
+	@Test
+	void testScanPriceBandIsInclusive() {
+		ProductScanResult result = catalog.scan(priceBand(19.99, 42.99), 100);
+
+		assertThat(result.getProducts(), contains(widgets.get(1), gadgets.get(0), gadgets.get(1)));
+	}
+
+	@Test
+	void testScanReturnsAtMostLimitProducts() {
+		ProductScanResult result = catalog.scan(priceBand(20.0, null), 2);
+
+		assertThat(result.getMatchCount(), is(4));
+		assertThat(result.getProducts(), contains(widgets.get(1), widgets.get(2)));
+	}
+
+	@Test
+	void testScanByGearsOnlyMatchesWidgets() {
+		ProductFilter filter = new ProductFilter();
+		filter.setMinGears(0);
+
+		assertThat(catalog.scan(filter, 100).getProducts(), equalTo(widgets));
+	}
+
+	@Test
+	void testScanByCylindersAndType() {
+		ProductFilter filter = new ProductFilter();
+		filter.setMinCylinders(4);
+		assertThat(catalog.scan(filter, 100).getProducts(), contains(gadgets.get(1), gadgets.get(2)));
+
+		filter.setType("widget");
+		assertThat(catalog.scan(filter, 100).getProducts(), is(empty()));
+	}
+
+	@Test
+	void testScanRejectsUnknownType() {
+		ProductFilter filter = new ProductFilter();
+		filter.setType("gizmo");
+
+		assertThrows(IllegalArgumentException.class, () -> catalog.scan(filter, 100));
+	}
+
+	@Test
+	void testScanSeesReportedChanges() {
+		catalog.rebuild();
+		Widget cheaper = new Widget(3, "High Impact Widget", 9.99, 10, 8);
+		Widget added = new Widget(4, "New Widget", 5.00, 1, 1);
+
+		catalog.widgetSaved(cheaper);
+		catalog.widgetSaved(added);
+		catalog.gadgetRemoved(1);
+
+		assertThat(catalog.scan(priceBand(null, 19.99), 100).getProducts(), contains(widgets.get(0), cheaper, added));
+		assertThat(catalog.scan(new ProductFilter(), 100).getMatchCount(), is(6));
+	}
+
+	@Test
+	void testSnapshotGrowsPastItsInitialCapacity() {
+		catalog.rebuild();
+		for (int id = 100; id < 5100; id++) {
+			catalog.gadgetSaved(new Gadget(id, "Gadget " + id, 1.00, 1));
+		}
+
+		ProductScanResult result = catalog.scan(priceBand(1.00, 1.00), 10);
+
+		assertThat(result.getMatchCount(), is(5000));
+		assertThat(result.getProducts(), hasSize(10));
+	}
+
+	@Test
+	void testSummaryIsMaintainedByWrites() {
+		ReflectionTestUtils.setField(catalog, "priceBuckets", new double[] { 50, 20 });
+
+		CatalogSummary summary = catalog.summary();
+
+		assertThat(summary.getWidgetCount(), is(3L));
+		assertThat(summary.getGadgetCount(), is(3L));
+		assertThat(summary.getMinPrice(), is(12.99));
+		assertThat(summary.getMaxPrice(), is(89.99));
+		assertThat(summary.getAveragePrice(), is(40.99));
+		assertThat(summary.getTotalGears(), is(17L));
+		assertThat(summary.getTotalSprockets(), is(16L));
+		assertThat(summary.getTotalCylinders(), is(14L));
+		assertThat(summary.getPriceHistogram().get(1).getMinPrice(), is(20.0));
+		assertThat(summary.getPriceHistogram().get(1).getMaxPrice(), is(50.0));
+		assertThat(bucketCounts(summary), contains(2L, 3L, 1L));
+
+		catalog.widgetRemoved(1);
+		catalog.gadgetSaved(new Gadget(3, "Eight Cylinder Gadget", 59.99, 6));
+		summary = catalog.summary();
+
+		assertThat(summary.getWidgetCount(), is(2L));
+		assertThat(summary.getMinPrice(), is(19.99));
+		assertThat(summary.getTotalCylinders(), is(12L));
+		assertThat(bucketCounts(summary), contains(1L, 2L, 2L));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	void testConcurrentFirstRequestsLoadSnapshotOnce() throws Exception {
+		// a slow load, so that the requests arrive while it runs
+		doAnswer(invocation -> {
+			Thread.sleep(100);
+			widgets.forEach(invocation.getArgument(0, Consumer.class));
+			return null;
+		}).when(mockDao).streamAllWidgets(any(Consumer.class));
+		ExecutorService requests = Executors.newFixedThreadPool(6);
+		try {
+			List<Future<?>> results = new ArrayList<>();
+			for (int i = 0; i < 2; i++) {
+				results.add(requests.submit((Callable<?>) () -> catalog.scan(new ProductFilter(), 100)));
+				results.add(requests.submit((Callable<?>) () -> catalog.summary()));
+				results.add(requests.submit((Callable<?>) () -> catalog.search("widget", 0, 10)));
+			}
+			for (Future<?> result : results) {
+				result.get();
+			}
+		}
+		finally {
+			requests.shutdown();
+		}
+
+		verify(mockDao, times(1)).streamAllWidgets(any());
+		verify(mockDao, times(1)).streamAllGadgets(any());
+	}
+
+	@Test
+	void testReconcileKeepsMatchingSnapshot() {
+		catalog.rebuild();
+		when(mockDao.getCatalogTotals()).thenReturn(totals(3, 24594));
+
+		catalog.reconcile();
+
+		verify(mockDao, times(1)).streamAllWidgets(any());
+	}
+
+	@Test
+	void testReconcileRebuildsDriftedSnapshot() {
+		catalog.rebuild();
+		when(mockDao.getCatalogTotals()).thenReturn(totals(4, 25594));
+
+		catalog.reconcile();
+
+		verify(mockDao, times(2)).streamAllWidgets(any());
+	}
+
+	private static List<Long> bucketCounts(CatalogSummary summary) {
+		return summary.getPriceHistogram().stream()
+										  .map(PriceBucket::getCount)
+										  .collect(Collectors.toList());
+	}
+
+	private static CatalogTotals totals(long gadgetCount, long totalPriceCents) {
+		CatalogTotals totals = new CatalogTotals();
+		totals.setWidgetCount(3);
+		totals.setGadgetCount(gadgetCount);
+		totals.setMinPriceCents(1299L);
+		totals.setMaxPriceCents(8999L);
+		totals.setTotalPriceCents(totalPriceCents);
+		totals.setTotalGears(17);
+		totals.setTotalSprockets(16);
+		totals.setTotalCylinders(14);
+		return totals;
+	}
+
+	private static List<Product> products(ProductSearchResult result) {
+		return result.getHits().stream()
+							   .map(ProductSearchHit::getProduct)
+							   .collect(Collectors.toList());
+	}
+
+	@Test
+	void testSearchMatchesAllTermsIgnoringCase() {
+		assertThat(products(catalog.search("impact WIDGET", 0, 100)), contains(widgets.get(0), widgets.get(1), widgets.get(2)));
+		assertThat(products(catalog.search("low-impact", 0, 100)), contains(widgets.get(0)));
+		assertThat(catalog.search("impact gadget", 0, 100).getMatchCount(), is(0));
+		assertThat(catalog.search("gizmo", 0, 100).getMatchCount(), is(0));
+	}
+
+	@Test
+	void testSearchRanksByRelevance() {
+		catalog.rebuild();
+		Widget repeated = new Widget(4, "Widget Widget", 5.00, 1, 1);
+		catalog.widgetSaved(repeated);
+
+		ProductSearchResult result = catalog.search("widget", 0, 100);
+
+		assertThat(result.getMatchCount(), is(4));
+		assertThat(products(result), contains(repeated, widgets.get(0), widgets.get(1), widgets.get(2)));
+		assertThat(result.getHits().get(0).getScore() > result.getHits().get(1).getScore(), is(true));
+	}
+
+	@Test
+	void testSearchReturnsOnePage() {
+		ProductSearchResult result = catalog.search("cylinder", 1, 1);
+
+		assertThat(result.getMatchCount(), is(3));
+		assertThat(result.getOffset(), is(1));
+		assertThat(products(result), contains(gadgets.get(1)));
+		assertThat(catalog.search("cylinder", 5, 10).getHits(), is(empty()));
+	}
+
+	@Test
+	void testSearchRejectsQueryWithoutTerms() {
+		assertThrows(IllegalArgumentException.class, () -> catalog.search(" - ", 0, 100));
+		assertThrows(IllegalArgumentException.class, () -> catalog.search("widget", -1, 100));
+	}
+
+	@Test
+	void testSearchSeesReportedChanges() {
+		catalog.rebuild();
+		Widget renamed = new Widget(1, "Low Friction Widget", 12.99, 2, 3);
+		Widget repriced = new Widget(2, "Medium Impact Widget", 39.99, 5, 5);
+
+		catalog.widgetSaved(renamed);
+		catalog.widgetSaved(repriced);
+		catalog.gadgetRemoved(2);
+
+		assertThat(products(catalog.search("impact", 0, 100)), contains(repriced, widgets.get(2)));
+		assertThat(products(catalog.search("friction", 0, 100)), contains(renamed));
+		assertThat(products(catalog.search("cylinder gadget", 0, 100)), contains(gadgets.get(0), gadgets.get(2)));
+	}
+
+	@Test
+	void testSearchAcrossManyPostingBlocks() {
+		catalog.rebuild();
+		for (int id = 100; id < 5100; id++) {
+			String description = (id % 300 == 0) ? "Rare Rare Bulk Gadget" : "Bulk Gadget " + id;
+			catalog.gadgetSaved(new Gadget(id, description, 1.00, 1));
+		}
+		catalog.gadgetRemoved(300);
+
+		ProductSearchResult rare = catalog.search("bulk rare", 0, 3);
+		ProductSearchResult bulk = catalog.search("bulk", 4000, 10);
+
+		assertThat(rare.getMatchCount(), is(15));
+		assertThat(products(rare).get(0).getId(), is(600));
+		assertThat(bulk.getMatchCount(), is(4999));
+		assertThat(bulk.getHits(), hasSize(10));
+		assertThat(catalog.search("gadget 5099", 0, 10).getMatchCount(), is(1));
+	}
+
+	@Test
+	void testFindByPriceReturnsRangeInPriceOrder() {
+		catalog.rebuild();
+
+		assertThat(catalog.findByPrice(null, 19.99, 49.99, null, 100), 
+				   contains(gadgets.get(0), gadgets.get(1), widgets.get(1), gadgets.get(2)));
+		assertThat(catalog.findByPrice("widget", 20.0, 50.0, null, 100), contains(widgets.get(1)));
+		assertThat(catalog.findByPrice(null, null, null, null, 2), contains(widgets.get(0), gadgets.get(0)));
+	}
+
+	@Test
+	void testFindByPriceStartsAfterKey() {
+		catalog.rebuild();
+		ProductKey after = ProductKey.of(gadgets.get(1));
+
+		assertThat(catalog.findByPrice(null, null, 50.0, after, 100), contains(widgets.get(1), gadgets.get(2)));
+	}
+
+	@Test
+	void testFindTopByPrice() {
+		catalog.rebuild();
+
+		assertThat(catalog.findTopByPrice(null, true, 2), contains(widgets.get(2), gadgets.get(2)));
+		assertThat(catalog.findTopByPrice("gadget", false, 2), contains(gadgets.get(0), gadgets.get(1)));
+		assertThrows(IllegalArgumentException.class, () -> catalog.findTopByPrice("gizmo", true, 2));
+	}
+
+	@Test
+	void testFindByPriceSeesReportedChanges() {
+		catalog.rebuild();
+		Widget cheaper = new Widget(3, "High Impact Widget", 9.99, 10, 8);
+		Gadget tied = new Gadget(4, "Tied Gadget", 9.99, 1);
+
+		catalog.widgetSaved(cheaper);
+		catalog.gadgetSaved(tied);
+		catalog.widgetRemoved(1);
+
+		assertThat(catalog.findTopByPrice(null, false, 3), contains(tied, cheaper, gadgets.get(0)));
+		assertThat(catalog.findTopByPrice("widget", true, 10), contains(widgets.get(1), cheaper));
+	}
+
+	@Test
+	void testFindByPriceQueriesDatabaseUntilLoaded() {
+		when(mockDao.getProductsByPrice("gadget", 1.0, null, null, 5)).thenReturn(List.of(gadgets.get(0)));
+		when(mockDao.getTopProductsByPrice(null, true, 3)).thenReturn(List.of(widgets.get(2)));
+
+		assertThat(catalog.findByPrice("gadget", 1.0, null, null, 5), contains(gadgets.get(0)));
+		assertThat(catalog.findTopByPrice(null, true, 3), contains(widgets.get(2)));
+		verify(mockDao, times(0)).streamAllWidgets(any());
+	}
+
+	@Test
+	void testPriceIndexAcrossManyBlocks() {
+		catalog.rebuild();
+		for (int id = 100; id < 5100; id++) {
+			// prices from 100.00 to 149.99, not inserted in order
+			catalog.gadgetSaved(new Gadget(id, "Gadget " + id, 100 + (id * 7919 % 5000) / 100.0, 1));
+		}
+		for (int id = 100; id < 5100; id += 2) {
+			catalog.gadgetRemoved(id);
+		}
+		long expected = IntStream.range(100, 5100)
+								 .filter(id -> id % 2 == 1 && id * 7919 % 5000 < 4999)
+								 .count();
+
+		List<Product> products = catalog.findByPrice("gadget", 100.0, 149.98, null, 5000);
+
+		assertThat((long) products.size(), is(expected));
+		for (int i = 1; i < products.size(); i++) {
+			assertThat(products.get(i - 1).getPrice() <= products.get(i).getPrice(), is(true));
+			assertThat(products.get(i).getId() % 2, is(1));
+		}
+		assertThat(catalog.findTopByPrice("gadget", true, 1).get(0).getPrice(), is(149.99));
+	}
+}
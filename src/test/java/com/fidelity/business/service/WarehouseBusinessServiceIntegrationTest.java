@@ -17,6 +17,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -42,6 +43,8 @@ import com.fidelity.business.Widget;
  *
  * Notice the use of @Transactional to automatically rollback 
  * any changes to the database that may be made in a test.
+ * The rollback does not reach the service's entity caches, so they
+ * are cleared before each test.
  *
  * Note that Spring Boot needs to find an application class in order to scan
  * for components. The trivial class com.fidelity.TestApplication in src/test/java 
@@ -60,6 +63,15 @@ class WarehouseBusinessServiceIntegrationTest {
 	@Autowired
 	private JdbcTemplate jdbcTemplate;  // for executing SQL queries
 	
+	@Autowired
+	private CacheManager cacheManager;
+	
+	@BeforeEach
+	void clearCaches() {
+		cacheManager.getCacheNames()
+					.forEach(name -> cacheManager.getCache(name).clear());
+	}
+	
 	// Because the test database is tiny, we can check all products.
 	// If the database was larger, we could just spot-check a few products.
 	
@@ -100,6 +112,32 @@ class WarehouseBusinessServiceIntegrationTest {
 		assertThat(w, equalTo(firstWidget));
 	}
 
+	@Test
+	void testFindWidgetByIdIsCached() {
+		int id = 1;
+		Widget first = service.findWidgetById(id);
+		
+		// change the row behind the service's back
+		jdbcTemplate.update("update widgets set price = price + 1 where id = ?", id);
+		
+		// verify that the second lookup is served from the cache
+		assertThat(service.findWidgetById(id), is(equalTo(first)));
+	}
+
+	@Test
+	void testModifyWidgetEvictsCachedWidget() {
+		int id = 1;
+		service.findWidgetById(id);
+		
+		// modify Widget 1 through the service
+		Widget localWidget = loadWidgetFromDb(id);
+		localWidget.setPrice(localWidget.getPrice() + 1.0);
+		service.modifyWidget(localWidget);
+		
+		// verify that the next lookup sees the modified Widget
+		assertThat(service.findWidgetById(id), is(equalTo(localWidget)));
+	}
+
 	@Test
 	void testDeleteWidget() {
 		int id = 1;
@@ -2,24 +2,46 @@ package com.fidelity.business.service;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import com.fidelity.business.Gadget;
+import com.fidelity.business.Product;
 import com.fidelity.business.Widget;
 import com.fidelity.integration.WarehouseDao;
 import com.fidelity.integration.WarehouseDaoMyBatisImpl;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
 /**
  * JUnit tests for WarehouseBusinessService using Mockito for managing mock objects.
  * 
@@ -151,6 +173,165 @@ class WarehouseBusinessServiceUnitTest {
 		assertThat(count, equalTo(expected));						
 	}
 
+	@Test
+	void testModifyWidgetChangesVersion() {
+		Widget changed = new Widget(1, "Test widget", 4.52, 20, 10);
+		Widget missing = new Widget(99, "Missing widget", 4.52, 20, 10);
+		when(mockDao.updateWidget(changed)).thenReturn(1);
+		when(mockDao.updateWidget(missing)).thenReturn(0);
+		long tableVersion = service.getWidgetsVersion();
+		
+		service.modifyWidget(changed);
+		
+		// verify that the table has a new version
+		assertThat(service.getWidgetsVersion(), greaterThan(tableVersion));
+		
+		// verify that an update that changes no rows keeps the versions
+		tableVersion = service.getWidgetsVersion();
+		service.modifyWidget(missing);
+		assertThat(service.getWidgetsVersion(), equalTo(tableVersion));
+	}
+
+	@Test
+	void testWritesAreReportedToCatalogListeners() {
+		CatalogChangeListener listener = mock(CatalogChangeListener.class);
+		ReflectionTestUtils.setField(service, "listeners", List.of(listener));
+		try {
+			Widget w = new Widget(1, "Test widget", 4.52, 20, 10);
+			when(mockDao.updateWidget(w)).thenReturn(1);
+			when(mockDao.deleteGadget(2)).thenReturn(1);
+			when(mockDao.deleteGadget(99)).thenReturn(0);
+			
+			service.modifyWidget(w);
+			service.removeGadget(2);
+			service.removeGadget(99);
+			
+			// verify that only the writes that changed a row are reported
+			verify(listener).widgetUpdated(w);
+			verify(listener).gadgetRemoved(2);
+			verifyNoMoreInteractions(listener);
+		}
+		finally {
+			ReflectionTestUtils.setField(service, "listeners", List.of());
+		}
+	}
+
+	@Test
+	void testConcurrentFindAllWidgetsShareOneDaoCall() throws Exception {
+		List<Widget> widgets = Arrays.asList(new Widget(1, "Low Impact Widget", 12.99, 2, 3));
+		CountDownLatch daoCalled = new CountDownLatch(1);
+		CountDownLatch daoMayReturn = new CountDownLatch(1);
+		when(mockDao.getAllWidgets()).thenAnswer(invocation -> {
+			daoCalled.countDown();
+			daoMayReturn.await();
+			return widgets;
+		});
+		MeterRegistry registry = new SimpleMeterRegistry();
+		((MeterBinder) service).bindTo(registry);
+		FunctionCounter collapsed = registry.get("warehouse.service.collapsed")
+											.tag("operation", "findAllWidgets")
+											.functionCounter();
+		double collapsedBefore = collapsed.count();
+		
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<List<Widget>> first = executor.submit(service::findAllWidgets);
+			daoCalled.await();
+			Future<List<Widget>> second = executor.submit(service::findAllWidgets);
+			
+			// wait until the second call has joined the DAO call in flight
+			long deadline = System.currentTimeMillis() + 5000;
+			while (collapsed.count() == collapsedBefore && System.currentTimeMillis() < deadline) {
+				Thread.sleep(5);
+			}
+			daoMayReturn.countDown();
+			
+			// verify that both calls received the result of one DAO call
+			assertThat(first.get(), equalTo(widgets));
+			assertThat(second.get(), equalTo(widgets));
+			verify(mockDao, times(1)).getAllWidgets();
+			assertThat(collapsed.count(), equalTo(collapsedBefore + 1));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	// **** Write-behind Tests ****
+	/**
+	 * Returns a service in write-behind mode, with its own queue and
+	 * listener mocks, and the callback it registered with the queue.
+	 */
+	@SuppressWarnings("unchecked")
+	private static Consumer<List<Product>> initWriteBehind(WarehouseBusinessServiceImpl writeBehindService, 
+														   WriteBehindQueue queue, CatalogChangeListener listener) {
+		ReflectionTestUtils.setField(writeBehindService, "dao", mockDao);
+		ReflectionTestUtils.setField(writeBehindService, "writeBehind", queue);
+		ReflectionTestUtils.setField(writeBehindService, "listeners", List.of(listener));
+		writeBehindService.init();
+		ArgumentCaptor<Consumer<List<Product>>> flushListener = ArgumentCaptor.forClass(Consumer.class);
+		verify(queue).setFlushListener(flushListener.capture());
+		return flushListener.getValue();
+	}
+
+	@Test
+	void testWriteBehindUpdateIsReportedAfterFlush() {
+		WarehouseBusinessServiceImpl writeBehindService = new WarehouseBusinessServiceImpl();
+		WriteBehindQueue queue = mock(WriteBehindQueue.class);
+		CatalogChangeListener listener = mock(CatalogChangeListener.class);
+		Consumer<List<Product>> updatesFlushed = initWriteBehind(writeBehindService, queue, listener);
+		Widget w = new Widget(1, "Test widget", 4.52, 20, 10);
+		Gadget g = new Gadget(2, "Two Cylinder Gadget", 19.99, 2);
+		long widgetsVersion = writeBehindService.getWidgetsVersion();
+		
+		assertThat(writeBehindService.modifyWidget(w), equalTo(1));
+		assertThat(writeBehindService.modifyGadget(g), equalTo(1));
+		
+		// verify that the updates are queued, not written or reported
+		verify(queue).enqueue(w);
+		verify(queue).enqueue(g);
+		verify(mockDao, never()).updateWidget(w);
+		verify(mockDao, never()).updateGadget(g);
+		verifyNoInteractions(listener);
+		assertThat(writeBehindService.getWidgetsVersion(), equalTo(widgetsVersion));
+		
+		// verify that the flushed updates are reported once committed
+		updatesFlushed.accept(List.of(w, g));
+		verify(listener).widgetUpdated(w);
+		verify(listener).gadgetUpdated(g);
+		assertThat(writeBehindService.getWidgetsVersion(), greaterThan(widgetsVersion));
+	}
+
+	@Test
+	void testWriteBehindReadsOwnWrites() {
+		WarehouseBusinessServiceImpl writeBehindService = new WarehouseBusinessServiceImpl();
+		WriteBehindQueue queue = mock(WriteBehindQueue.class);
+		initWriteBehind(writeBehindService, queue, mock(CatalogChangeListener.class));
+		Widget w = new Widget(1, "Test widget", 4.52, 20, 10);
+		Gadget g = new Gadget(2, "Two Cylinder Gadget", 19.99, 2);
+		
+		writeBehindService.findWidgetById(1);
+		writeBehindService.modifyWidget(w, 3);
+		writeBehindService.removeWidget(1);
+		writeBehindService.findGadgetById(2);
+		writeBehindService.modifyGadget(g, 3);
+		writeBehindService.removeGadget(2);
+		
+		// verify that each call flushed a queued update of its product first
+		InOrder inOrder = inOrder(queue, mockDao);
+		inOrder.verify(queue).flushWidget(1);
+		inOrder.verify(mockDao).getWidget(1);
+		inOrder.verify(queue).flushWidget(1);
+		inOrder.verify(mockDao).updateWidget(w, 3);
+		inOrder.verify(queue).flushWidget(1);
+		inOrder.verify(mockDao).deleteWidget(1);
+		inOrder.verify(queue).flushGadget(2);
+		inOrder.verify(mockDao).getGadget(2);
+		inOrder.verify(queue).flushGadget(2);
+		inOrder.verify(mockDao).updateGadget(g, 3);
+		inOrder.verify(queue).flushGadget(2);
+		inOrder.verify(mockDao).deleteGadget(2);
+	}
+
 	// **** Gadget Tests ****
 	@Test
 	void testFindAllGadgets() {
@@ -0,0 +1,197 @@
+package com.fidelity.business.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.slf4j.Logger;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fidelity.business.Gadget;
+import com.fidelity.business.Product;
+import com.fidelity.business.Widget;
+import com.fidelity.integration.WarehouseDao;
+
+/**
+ * Unit tests for WriteBehindQueue. The DAO and the transaction are mocks;
+ * the journal is written to a temporary directory. The queue is only
+ * flushed when a test asks for it.
+ */
+class WriteBehindQueueTest {
+	@Mock
+	WarehouseDao mockDao;
+
+	@Mock
+	TransactionTemplate mockTransactionTemplate;
+
+	@Mock
+	Logger logger;
+
+	@TempDir
+	Path journalDir;
+
+	WriteBehindQueue queue;
+	List<Product> flushedProducts = new ArrayList<>();
+
+	@SuppressWarnings("unchecked")
+	@BeforeEach
+	void init() throws Exception {
+		MockitoAnnotations.initMocks(this);
+		doAnswer(invocation -> {
+			invocation.getArgument(0, Consumer.class).accept(null);
+			return null;
+		}).when(mockTransactionTemplate).executeWithoutResult(any(Consumer.class));
+		when(mockDao.updateWidgets(any())).thenAnswer(invocation -> allUpdated(invocation.getArgument(0)));
+		when(mockDao.updateGadgets(any())).thenAnswer(invocation -> allUpdated(invocation.getArgument(0)));
+		queue = startQueue(100);
+	}
+
+	private static int[] allUpdated(List<?> products) {
+		int[] counts = new int[products.size()];
+		Arrays.fill(counts, 1);
+		return counts;
+	}
+
+	@AfterEach
+	void shutdown() throws Exception {
+		queue.shutdown();
+	}
+
+	private WriteBehindQueue startQueue(int maxPending) throws Exception {
+		WriteBehindQueue newQueue = new WriteBehindQueue();
+		ReflectionTestUtils.setField(newQueue, "logger", logger);
+		ReflectionTestUtils.setField(newQueue, "dao", mockDao);
+		ReflectionTestUtils.setField(newQueue, "transactionTemplate", mockTransactionTemplate);
+		ReflectionTestUtils.setField(newQueue, "objectMapper", new ObjectMapper());
+		ReflectionTestUtils.setField(newQueue, "journalName", journalDir.resolve("updates.journal").toString());
+		ReflectionTestUtils.setField(newQueue, "maxPending", maxPending);
+		ReflectionTestUtils.setField(newQueue, "batchSize", 1000);
+		ReflectionTestUtils.setField(newQueue, "flushInterval", Duration.ofHours(1));
+		ReflectionTestUtils.setField(newQueue, "offerTimeout", Duration.ofMillis(50));
+		newQueue.setFlushListener(flushedProducts::addAll);
+		newQueue.init();
+		return newQueue;
+	}
+
+	@Test
+	void testCoalescesUpdatesOfTheSameProduct() {
+		Widget latest = new Widget(1, "Low Impact Widget", 14.99, 2, 3);
+		Gadget gadget = new Gadget(2, "Four Cylinder Gadget", 31.99, 4);
+		queue.enqueue(new Widget(1, "Low Impact Widget", 13.99, 2, 3));
+		queue.enqueue(gadget);
+		queue.enqueue(latest);
+
+		assertThat(queue.getPendingCount(), is(2));
+		assertThat(queue.getCoalescedCount(), is(1L));
+
+		queue.flushWidget(1);
+
+		// both tables are written in one transaction
+		verify(mockTransactionTemplate).executeWithoutResult(any());
+		verify(mockDao).updateWidgets(List.of(latest));
+		verify(mockDao).updateGadgets(List.of(gadget));
+		assertThat(flushedProducts, contains(latest, gadget));
+		assertThat(queue.getPendingCount(), is(0));
+	}
+
+	@Test
+	void testFlushIsSkippedWithoutPendingUpdate() {
+		queue.enqueue(new Gadget(1, "Two Cylinder Gadget", 20.99, 2));
+
+		queue.flushWidget(1);
+
+		verify(mockDao, never()).updateGadgets(any());
+		assertThat(flushedProducts, is(empty()));
+	}
+
+	@Test
+	void testFailedFlushIsRetried() {
+		Widget widget = new Widget(2, "Medium Impact Widget", 44.99, 5, 5);
+		doThrow(new RuntimeException("database down")).doReturn(new int[] { 1 }).when(mockDao).updateWidgets(any());
+		queue.enqueue(widget);
+
+		assertThrows(RuntimeException.class, () -> queue.flushWidget(2));
+		assertThat(queue.getPendingCount(), is(1));
+
+		queue.flushWidget(2);
+
+		verify(mockDao, times(2)).updateWidgets(List.of(widget));
+		assertThat(flushedProducts, contains(widget));
+		assertThat(queue.getPendingCount(), is(0));
+	}
+
+	@Test
+	void testUpdatesOfMissingProductsAreNotReported() {
+		Widget existing = new Widget(1, "Low Impact Widget", 13.99, 2, 3);
+		Widget missing = new Widget(99, "Missing Widget", 1.00, 1, 1);
+		doReturn(new int[] { 1, 0 }).when(mockDao).updateWidgets(any());
+		queue.enqueue(existing);
+		queue.enqueue(missing);
+
+		queue.flushWidget(99);
+
+		verify(mockDao).updateWidgets(List.of(existing, missing));
+		assertThat(flushedProducts, contains(existing));
+		assertThat(queue.getPendingCount(), is(0));
+	}
+
+	@Test
+	void testFullQueueRejectsUpdatesOfOtherProducts() throws Exception {
+		queue.shutdown();
+		queue = startQueue(1);
+		queue.enqueue(new Widget(1, "Low Impact Widget", 13.99, 2, 3));
+
+		assertThrows(IllegalStateException.class,
+					 () -> queue.enqueue(new Widget(2, "Medium Impact Widget", 44.99, 5, 5)));
+
+		// an update of a queued product replaces it, so it needs no room
+		queue.enqueue(new Widget(1, "Low Impact Widget", 14.99, 2, 3));
+		assertThat(queue.getPendingCount(), is(1));
+	}
+
+	@Test
+	void testUnflushedUpdatesAreWrittenAtStartup() throws Exception {
+		Widget latest = new Widget(3, "High Impact Widget", 91.99, 10, 8);
+		queue.enqueue(new Widget(3, "High Impact Widget", 90.99, 10, 8));
+		queue.enqueue(latest);
+		// a record cut short by a crash is skipped
+		Files.writeString(journalDir.resolve("updates.journal"), "widget\t{\"id\":3,\"desc",
+						  StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+		// a second queue on the same journal, as after a crash of the first
+		WriteBehindQueue restarted = startQueue(100);
+		restarted.shutdown();
+
+		verify(mockDao).updateWidgets(List.of(latest));
+		assertThat(Files.size(journalDir.resolve("updates.journal")), is(equalTo(0L)));
+	}
+}
@@ -0,0 +1,131 @@
+package com.fidelity.business.transfer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fidelity.business.Gadget;
+import com.fidelity.business.Product;
+import com.fidelity.business.Widget;
+import com.fidelity.business.service.WarehouseBusinessService;
+
+/**
+ * Unit tests for ProductExporter and its record writers. The products
+ * are streamed from a mock business service, so these tests need neither
+ * Spring nor a database.
+ */
+class ProductExporterTest {
+	@Mock
+	WarehouseBusinessService mockService;
+
+	@InjectMocks
+	ProductExporter exporter;
+
+	ObjectMapper objectMapper = new ObjectMapper();
+
+	List<Widget> widgets = List.of(
+			new Widget(1, "Low Impact Widget", 12.99, 2, 3),
+			new Widget(2, "Widget, \"Deluxe\"", 42.5, 5, 5));
+	List<Gadget> gadgets = List.of(
+			new Gadget(1, "Two Cylinder Gadget", 19.99, 2));
+
+	@SuppressWarnings("unchecked")
+	@BeforeEach
+	void init() {
+		exporter = new ProductExporter();
+		MockitoAnnotations.initMocks(this);
+		ReflectionTestUtils.setField(exporter, "objectMapper", objectMapper);
+		doAnswer(invocation -> {
+			widgets.forEach(invocation.getArgument(0, Consumer.class));
+			return null;
+		}).when(mockService).streamAllWidgets(any(Consumer.class));
+		doAnswer(invocation -> {
+			gadgets.forEach(invocation.getArgument(0, Consumer.class));
+			return null;
+		}).when(mockService).streamAllGadgets(any(Consumer.class));
+	}
+
+	private String export(TransferFormat format, String type) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		exporter.export(format, type, out);
+		return out.toString(StandardCharsets.UTF_8);
+	}
+
+	@Test
+	void testExportCsv() throws Exception {
+		String csv = export(TransferFormat.CSV, null);
+
+		assertThat(csv, is(equalTo(
+				"type,id,description,price,gears,sprockets,cylinders\n"
+				+ "widget,1,Low Impact Widget,12.99,2,3,\n"
+				+ "widget,2,\"Widget, \"\"Deluxe\"\"\",42.5,5,5,\n"
+				+ "gadget,1,Two Cylinder Gadget,19.99,,,2\n")));
+	}
+
+	@Test
+	void testExportNdjsonOfOneType() throws Exception {
+		String ndjson = export(TransferFormat.NDJSON, "gadget");
+
+		assertThat(ndjson, is(equalTo(
+				"{\"type\":\"gadget\",\"id\":1,\"description\":\"Two Cylinder Gadget\",\"price\":19.99,\"cylinders\":2}\n")));
+		verify(mockService, never()).streamAllWidgets(any());
+	}
+
+	@Test
+	void testExportGzipped() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		long count = exporter.exportGzipped(TransferFormat.CSV, "widget", out);
+
+		assertThat(count, is(2L));
+		try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+			String csv = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+			assertThat(csv.split("\n").length, is(3));
+		}
+	}
+
+	@Test
+	void testExportUnknownType() {
+		assertThrows(IllegalArgumentException.class, () -> export(TransferFormat.CSV, "gizmo"));
+	}
+
+	@Test
+	void testExportCanBeImported() throws Exception {
+		for (TransferFormat format : TransferFormat.values()) {
+			String file = export(format, null);
+			ProductRecordReader reader = format.open(new BufferedReader(new StringReader(file)), objectMapper);
+			List<Product> imported = new ArrayList<>();
+			for (Product p = reader.next(); p != null; p = reader.next()) {
+				imported.add(p);
+			}
+
+			// the import ignores the ids
+			assertThat(imported, is(equalTo(List.of(
+					new Widget(widgets.get(0).getDescription(), 12.99, 2, 3),
+					new Widget(widgets.get(1).getDescription(), 42.5, 5, 5),
+					new Gadget(gadgets.get(0).getDescription(), 19.99, 2)))));
+		}
+	}
+}
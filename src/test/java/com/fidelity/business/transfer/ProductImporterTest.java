@@ -0,0 +1,278 @@
+package com.fidelity.business.transfer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.slf4j.Logger;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fidelity.business.Gadget;
+import com.fidelity.business.Widget;
+import com.fidelity.business.service.WarehouseBusinessService;
+import com.fidelity.business.service.WarehouseBusinessServiceException;
+
+/**
+ * Unit tests for ProductImporter and its record readers. The products
+ * are inserted into a mock business service, so these tests need neither
+ * Spring nor a database.
+ */
+class ProductImporterTest {
+	@Mock
+	WarehouseBusinessService mockService;
+
+	@Mock
+	Logger logger;
+
+	@InjectMocks
+	ProductImporter importer;
+
+	// The products passed to the service, in the order of the calls
+	List<List<Widget>> insertedWidgets = new ArrayList<>();
+	List<List<Gadget>> insertedGadgets = new ArrayList<>();
+
+	@SuppressWarnings("unchecked")
+	@BeforeEach
+	void init() {
+		importer = new ProductImporter();
+		MockitoAnnotations.initMocks(this);
+		ReflectionTestUtils.setField(importer, "objectMapper", new ObjectMapper());
+		// the importer reuses its lists, so copy them
+		doAnswer(invocation -> {
+			insertedWidgets.add(new ArrayList<>(invocation.getArgument(0, List.class)));
+			return null;
+		}).when(mockService).addWidgets(anyList());
+		doAnswer(invocation -> {
+			insertedGadgets.add(new ArrayList<>(invocation.getArgument(0, List.class)));
+			return null;
+		}).when(mockService).addGadgets(anyList());
+	}
+
+	@AfterEach
+	void shutdown() {
+		importer.shutdown();
+	}
+
+	private ImportJob importAndWait(String file, TransferFormat format) throws Exception {
+		return importAndWait(file.getBytes(StandardCharsets.UTF_8), format);
+	}
+
+	private ImportJob importAndWait(byte[] file, TransferFormat format) throws Exception {
+		ImportJob job = importer.submit(new ByteArrayInputStream(file), format);
+		for (int i = 0; i < 500 && !job.isDone(); i++) {
+			Thread.sleep(10);
+		}
+		assertThat(job.isDone(), is(true));
+		return job;
+	}
+
+	private static List<Long> rejectedLines(ImportJob job) {
+		return job.getRejectedRows().stream()
+									.map(ImportJob.RejectedRow::getLine)
+									.collect(Collectors.toList());
+	}
+
+	@Test
+	void testImportCsv() throws Exception {
+		String csv = "id,type,description,price,gears,sprockets,cylinders\r\n"
+				   + "7,widget,Low Impact Widget,12.99,2,3,\r\n"
+				   + ",GADGET,\"Two Cylinder Gadget, \"\"Mark II\"\"\",19.99,,,2\r\n"
+				   + "\r\n"
+				   + ",widget,\"Multi-line\nWidget\",5,1,1,\r\n";
+
+		ImportJob job = importAndWait(csv, TransferFormat.CSV);
+
+		assertThat(job.getState(), is(ImportJob.State.COMPLETED));
+		assertThat(job.getRowsRead(), is(3L));
+		assertThat(job.getRowsImported(), is(3L));
+		assertThat(job.getProgress(), is(1.0));
+		// the ids in the file are ignored
+		assertThat(insertedWidgets, contains(List.of(new Widget("Low Impact Widget", 12.99, 2, 3),
+													 new Widget("Multi-line\nWidget", 5, 1, 1))));
+		assertThat(insertedGadgets, contains(List.of(new Gadget("Two Cylinder Gadget, \"Mark II\"", 19.99, 2))));
+	}
+
+	@Test
+	void testImportCsvRejectsInvalidRows() throws Exception {
+		String csv = "type,description,price\n"
+				   + "widget,Good Widget,1.50\n"
+				   + "widget,Negative Widget,-1\n"
+				   + "sprocket,Unknown Type,1\n"
+				   + "gadget,,1\n"
+				   + "gadget,Cheap Gadget,0.001\n"
+				   + "gadget,Short Row\n"
+				   + "gadget,\"Quoted\"Gadget,1\n"
+				   + "gadget,Good Gadget,2\n";
+
+		ImportJob job = importAndWait(csv, TransferFormat.CSV);
+
+		assertThat(job.getState(), is(ImportJob.State.COMPLETED));
+		assertThat(job.getRowsRead(), is(8L));
+		assertThat(job.getRowsImported(), is(2L));
+		assertThat(job.getRowsRejected(), is(6L));
+		assertThat(rejectedLines(job), contains(3L, 4L, 5L, 6L, 7L, 8L));
+		assertThat(job.getRejectedRows().get(1).getReason(), containsString("widget or gadget"));
+	}
+
+	@Test
+	void testImportCsvRejectsTooLongRecords() throws Exception {
+		String csv = "type,description,price\n"
+				   + "widget,Good Widget,1.50\n"
+				   + "widget,\"" + "x\n".repeat(CsvProductRecordReader.MAX_RECORD_LENGTH) + "\",1\n"
+				   + "gadget,Good Gadget,2\n";
+
+		ImportJob job = importAndWait(csv, TransferFormat.CSV);
+
+		assertThat(job.getState(), is(ImportJob.State.COMPLETED));
+		assertThat(job.getRowsImported(), is(2L));
+		assertThat(rejectedLines(job), contains(3L));
+		assertThat(job.getRejectedRows().get(0).getReason(), containsString("longer than"));
+	}
+
+	@Test
+	void testImportCsvWithoutHeaderFails() throws Exception {
+		ImportJob job = importAndWait("widget,Low Impact Widget,12.99\n", TransferFormat.CSV);
+
+		assertThat(job.getState(), is(ImportJob.State.FAILED));
+		assertThat(job.getError(), containsString("type, description and price"));
+		verify(mockService, never()).addWidgets(anyList());
+	}
+
+	@Test
+	void testImportGzippedNdjson() throws Exception {
+		String ndjson = "{\"type\":\"widget\",\"description\":\"Low Impact Widget\",\"price\":12.99,\"gears\":2,\"sprockets\":3}\n"
+					  + "{\"type\":\"gadget\",\"description\":\"Two Cylinder Gadget\",\"price\":\"19.99\",\"cylinders\":2}\n"
+					  + "\n"
+					  + "{\"type\":\"gadget\",\"description\":\"Broken\"\n"
+					  + "[1,2,3]\n";
+		ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+		try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+			out.write(ndjson.getBytes(StandardCharsets.UTF_8));
+		}
+
+		ImportJob job = importAndWait(gzipped.toByteArray(), TransferFormat.NDJSON);
+
+		assertThat(job.getState(), is(ImportJob.State.COMPLETED));
+		assertThat(job.getRowsImported(), is(2L));
+		assertThat(rejectedLines(job), contains(4L, 5L));
+		assertThat(insertedWidgets, contains(List.of(new Widget("Low Impact Widget", 12.99, 2, 3))));
+		assertThat(insertedGadgets, contains(List.of(new Gadget("Two Cylinder Gadget", 19.99, 2))));
+	}
+
+	@Test
+	void testImportCommitsInChunks() throws Exception {
+		ReflectionTestUtils.setField(importer, "chunkSize", 2);
+		String csv = "type,description,price\n"
+				   + "widget,Widget 1,1\n"
+				   + "widget,Widget 2,2\n"
+				   + "gadget,Gadget 1,1\n"
+				   + "widget,Widget 3,3\n"
+				   + "gadget,Gadget 2,2\n";
+
+		ImportJob job = importAndWait(csv, TransferFormat.CSV);
+
+		assertThat(job.getRowsImported(), is(5L));
+		verify(mockService, times(2)).addWidgets(anyList());
+		verify(mockService, times(2)).addGadgets(anyList());
+		assertThat(insertedWidgets.get(0).size(), is(equalTo(2)));
+		assertThat(insertedGadgets.get(1).get(0).getDescription(), is(equalTo("Gadget 2")));
+	}
+
+	@Test
+	void testImportFailsOnDatabaseError() throws Exception {
+		ReflectionTestUtils.setField(importer, "chunkSize", 2);
+		doAnswer(invocation -> null)
+			.doThrow(new WarehouseBusinessServiceException("Error inserting 2 Widgets"))
+			.when(mockService).addWidgets(anyList());
+		String csv = "type,description,price\n"
+				   + "widget,Widget 1,1\n"
+				   + "widget,Widget 2,2\n"
+				   + "widget,Widget 3,3\n"
+				   + "widget,Widget 4,4\n";
+
+		ImportJob job = importAndWait(csv, TransferFormat.CSV);
+
+		// the first chunk stays committed
+		assertThat(job.getState(), is(ImportJob.State.FAILED));
+		assertThat(job.getRowsImported(), is(2L));
+		assertThat(job.getError(), containsString("Error inserting"));
+	}
+
+	@Test
+	void testShutdownDeletesQueuedImports() throws Exception {
+		CountDownLatch importing = new CountDownLatch(1);
+		doAnswer(invocation -> {
+			importing.countDown();
+			// until shutdown() interrupts the import
+			new CountDownLatch(1).await();
+			return null;
+		}).when(mockService).addWidgets(anyList());
+		String csv = "type,description,price\n"
+				   + "widget,Widget 1,1\n";
+		long spoolFiles = countSpoolFiles();
+
+		ImportJob running = importer.submit(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)),
+											TransferFormat.CSV);
+		ImportJob queued = importer.submit(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)),
+										   TransferFormat.CSV);
+		importing.await(5, TimeUnit.SECONDS);
+		importer.shutdown();
+		// the running import deletes its own spool file once it has stopped
+		for (int i = 0; i < 500 && countSpoolFiles() > spoolFiles; i++) {
+			Thread.sleep(10);
+		}
+
+		assertThat(running.getState(), is(ImportJob.State.FAILED));
+		assertThat(queued.getState(), is(ImportJob.State.FAILED));
+		assertThat(countSpoolFiles(), is(equalTo(spoolFiles)));
+	}
+
+	private static long countSpoolFiles() throws IOException {
+		try (Stream<Path> files = Files.list(Path.of(System.getProperty("java.io.tmpdir")))) {
+			return files.filter(file -> file.getFileName().toString().startsWith("warehouse-import-")).count();
+		}
+	}
+
+	@Test
+	void testGetJob() throws Exception {
+		ImportJob job = importAndWait("type,description,price\n", TransferFormat.CSV);
+
+		assertThat(importer.getJob(job.getId()), is(job));
+		assertThat(importer.getJob("no-such-job"), is(nullValue()));
+	}
+
+	@Test
+	void testForMediaType() {
+		assertThat(TransferFormat.forMediaType("text/csv; charset=UTF-8"), is(TransferFormat.CSV));
+		assertThat(TransferFormat.forMediaType("application/x-ndjson"), is(TransferFormat.NDJSON));
+	}
+}
@@ -2,8 +2,12 @@ package com.fidelity.integration;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import javax.sql.DataSource;
 
@@ -17,7 +21,11 @@ import org.springframework.test.context.jdbc.Sql;
 import org.springframework.test.jdbc.JdbcTestUtils;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.jdbc.datasource.init.*;
+import com.fidelity.business.CatalogTotals;
 import com.fidelity.business.Gadget;
+import com.fidelity.business.Product;
+import com.fidelity.business.ProductKey;
+import com.fidelity.business.ProductSortOrder;
 import com.fidelity.business.Widget;
 
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -80,6 +88,50 @@ public class WarehouseDaoMyBatisImplUnitTest {
 		assertThat(widgets, is(equalTo(allWidgets)));
 	}
 
+	@Test
+	void testStreamAllWidgets() {
+		List<Widget> widgets = new ArrayList<>();
+		
+		dao.streamAllWidgets(widgets::add);
+		
+		// verify that every Widget was streamed in id order
+		assertThat(widgets, is(equalTo(allWidgets)));
+	}
+
+	@Test
+	void testGetWidgetsAfter() {
+		List<Widget> widgets = dao.getWidgetsAfter(1, 1);
+		
+		// verify that the page starts after id 1 and holds at most 1 Widget
+		assertThat(widgets, is(equalTo(allWidgets.subList(1, 2))));
+	}
+
+	@Test
+	void testGetWidgetsAfter_LastPage() {
+		List<Widget> widgets = dao.getWidgetsAfter(3, 10);
+		
+		// verify that there are no Widgets after the last id
+		assertThat(widgets.size(), is(equalTo(0)));
+	}
+
+	@Test
+	void testGetWidgetsByIds() {
+		List<Widget> widgets = dao.getWidgets(Arrays.asList(3, 1, 99, 3));
+		
+		// verify that only the Widgets in the table are returned, once each, ordered by id
+		assertThat(widgets, is(equalTo(Arrays.asList(allWidgets.get(0), allWidgets.get(2)))));
+	}
+
+	@Test
+	void testGetWidgetsByIds_MoreIdsThanOneInList() {
+		List<Integer> ids = IntStream.rangeClosed(1, 2500).boxed().collect(Collectors.toList());
+		
+		List<Widget> widgets = dao.getWidgets(ids);
+		
+		// verify that the ids are queried in several IN lists
+		assertThat(widgets, is(equalTo(allWidgets)));
+	}
+
 	@Test
 	void testGetWidget() {
 		Widget widget = dao.getWidget(1);
@@ -123,6 +175,26 @@ public class WarehouseDaoMyBatisImplUnitTest {
 			JdbcTestUtils.countRowsInTableWhere(jdbcTemplate, "widgets", "id = " + w.getId()))));
 	}
 
+	@Test
+	void testInsertWidgets() {
+		int widgetCount = JdbcTestUtils.countRowsInTable(jdbcTemplate, "widgets");
+		List<Widget> widgets = Arrays.asList(
+			new Widget("Test widget 1", 4.52, 20, 10),
+			new Widget("Test widget 2", 5.52, 30, 20));
+
+		List<Integer> ids = dao.insertWidgets(widgets);
+		
+		// verify that a generated id was returned for each Widget
+		assertThat(ids.size(), is(equalTo(2)));
+		assertThat(ids.get(1), is(equalTo(widgets.get(1).getId())));
+		
+		// verify that both Widgets are in the database
+		assertThat(JdbcTestUtils.countRowsInTable(jdbcTemplate, "widgets"), is(equalTo(widgetCount + 2)));
+		assertThat(1, is(equalTo(
+			JdbcTestUtils.countRowsInTableWhere(jdbcTemplate, "widgets", 
+					"id = " + ids.get(0) + " AND description = 'Test widget 1'"))));
+	}
+
 	@Test
 	void testUpdateWidget() {
 		int id = 1;
@@ -146,6 +218,45 @@ public class WarehouseDaoMyBatisImplUnitTest {
 
 	}
 
+	@Test
+	void testUpdateWidgetIfVersion() {
+		Widget widget = dao.getWidget(1);
+		assertThat(widget.getVersion(), is(equalTo(0)));
+		widget.setPrice(widget.getPrice() + 1.0);
+		
+		// the first update at version 0 wins and moves the row to version 1
+		assertThat(dao.updateWidget(widget, 0), is(equalTo(1)));
+		assertThat(dao.getWidget(1).getVersion(), is(equalTo(1)));
+		
+		// a concurrent update that also read version 0 changes nothing
+		Widget stale = new Widget(1, "Stale Widget", 1.00, 1, 1);
+		assertThat(dao.updateWidget(stale, 0), is(equalTo(0)));
+		assertThat(dao.getWidget(1), is(equalTo(widget)));
+		
+		// an update without a version still increments it
+		assertThat(dao.updateWidget(widget), is(equalTo(1)));
+		assertThat(dao.getWidget(1).getVersion(), is(equalTo(2)));
+	}
+
+	@Test
+	void testUpdateWidgets() {
+		List<Widget> widgets = Arrays.asList(
+			new Widget(1, "Low Impact Widget", 13.99, 2, 3),
+			new Widget(3, "High Impact Widget", 99.99, 10, 8),
+			new Widget(99, "Missing Widget", 1.00, 1, 1));
+
+		int[] counts = dao.updateWidgets(widgets);
+		
+		assertThat(counts, is(equalTo(new int[] { 1, 1, 0 })));
+		// verify that the existing Widgets were updated and the missing one skipped;
+		// the batch executor cannot be mixed with the other DAO methods in a transaction
+		assertThat(JdbcTestUtils.countRowsInTableWhere(jdbcTemplate, "widgets", 
+				   "id = 1 AND price = 13.99 AND version = 1"), is(equalTo(1)));
+		assertThat(JdbcTestUtils.countRowsInTableWhere(jdbcTemplate, "widgets", 
+				   "id = 3 AND price = 99.99 AND version = 1"), is(equalTo(1)));
+		assertThat(JdbcTestUtils.countRowsInTableWhere(jdbcTemplate, "widgets", "id = 99"), is(equalTo(0)));
+	}
+
 	// ***** Gadget Tests *****
 	@Test
 	void testGetAllGadgets() {
@@ -155,6 +266,24 @@ public class WarehouseDaoMyBatisImplUnitTest {
 		assertThat(gadgets, is(equalTo(allGadgets)));
 	}
 
+	@Test
+	void testStreamAllGadgets() {
+		List<Gadget> gadgets = new ArrayList<>();
+		
+		dao.streamAllGadgets(gadgets::add);
+		
+		// verify that every Gadget was streamed in id order
+		assertThat(gadgets, is(equalTo(allGadgets)));
+	}
+
+	@Test
+	void testGetGadgetsAfter() {
+		List<Gadget> gadgets = dao.getGadgetsAfter(0, 2);
+		
+		// verify that the first page holds the first 2 Gadgets
+		assertThat(gadgets, is(equalTo(allGadgets.subList(0, 2))));
+	}
+
 	@Test
 	void testGetGadget() {
 		Gadget gadget = dao.getGadget(1);
@@ -201,6 +330,26 @@ public class WarehouseDaoMyBatisImplUnitTest {
 			JdbcTestUtils.countRowsInTableWhere(jdbcTemplate, "gadgets", "id = " + g.getId()))));
 	}
 
+	@Test
+	void testInsertGadgets() {
+		int gadgetCount = JdbcTestUtils.countRowsInTable(jdbcTemplate, "gadgets");
+		List<Gadget> gadgets = Arrays.asList(
+			new Gadget("Test Gadget 1", 99.99, 2),
+			new Gadget("Test Gadget 2", 89.99, 4),
+			new Gadget("Test Gadget 3", 79.99, 6));
+
+		List<Integer> ids = dao.insertGadgets(gadgets);
+		
+		// verify that a generated id was returned for each Gadget
+		assertThat(ids.size(), is(equalTo(3)));
+		
+		// verify that all Gadgets are in the database
+		assertThat(JdbcTestUtils.countRowsInTable(jdbcTemplate, "gadgets"), is(equalTo(gadgetCount + 3)));
+		assertThat(1, is(equalTo(
+			JdbcTestUtils.countRowsInTableWhere(jdbcTemplate, "gadgets", 
+					"id = " + ids.get(2) + " AND description = 'Test Gadget 3'"))));
+	}
+
 	@Test
 	void testUpdateGadget() {
 		int id = 1;
@@ -224,6 +373,129 @@ public class WarehouseDaoMyBatisImplUnitTest {
 
 	}
 
+	@Test
+	void testUpdateGadgetIfVersion() {
+		Gadget gadget = dao.getGadget(1);
+		gadget.setCylinders(gadget.getCylinders() * 2);
+		
+		assertThat(dao.updateGadget(gadget, gadget.getVersion() + 1), is(equalTo(0)));
+		assertThat(dao.updateGadget(gadget, gadget.getVersion()), is(equalTo(1)));
+		assertThat(dao.getGadget(1), is(equalTo(gadget)));
+		assertThat(dao.getGadget(1).getVersion(), is(equalTo(gadget.getVersion() + 1)));
+	}
+
+	// ***** Product Tests *****
+	@Test
+	void testGetProductsPageByType() {
+		List<Product> products = dao.getProductsPage(ProductSortOrder.TYPE, null, 10);
+		
+		// verify that all Gadgets come before all Widgets, each ordered by id
+		List<Product> expected = new ArrayList<>(allGadgets);
+		expected.addAll(allWidgets);
+		assertThat(products, is(equalTo(expected)));
+	}
+
+	@Test
+	void testGetProductsPageByTypeAfterKey() {
+		ProductKey lastGadget = ProductKey.of(allGadgets.get(2));
+		
+		List<Product> products = dao.getProductsPage(ProductSortOrder.TYPE, lastGadget, 2);
+		
+		// verify that the page continues with the first Widgets
+		assertThat(products, is(equalTo(Arrays.asList(allWidgets.get(0), allWidgets.get(1)))));
+	}
+
+	@Test
+	void testGetProductsPageByPriceAfterKey() {
+		ProductKey secondGadget = ProductKey.of(allGadgets.get(1));   // 29.99
+		
+		List<Product> products = dao.getProductsPage(ProductSortOrder.PRICE, secondGadget, 10);
+		
+		// verify that the page holds the products priced above 29.99, cheapest first
+		assertThat(products, is(equalTo(Arrays.asList(
+				allWidgets.get(1), allGadgets.get(2), allWidgets.get(2)))));
+	}
+
+	@Test
+	void testGetProductsPageByPrice_MissingPrices() {
+		jdbcTemplate.update("insert into widgets (description, gears, sprockets) values ('Unpriced Widget 1', 1, 1)");
+		jdbcTemplate.update("insert into widgets (description, gears, sprockets) values ('Unpriced Widget 2', 1, 1)");
+		
+		List<Product> first = dao.getProductsPage(ProductSortOrder.PRICE, null, 1);
+		List<Product> second = dao.getProductsPage(ProductSortOrder.PRICE, ProductKey.of(first.get(0)), 2);
+		
+		// verify that products without a price sort as 0 and are not skipped
+		assertThat(first.get(0).getDescription(), is(equalTo("Unpriced Widget 1")));
+		assertThat(second.get(0).getDescription(), is(equalTo("Unpriced Widget 2")));
+		assertThat(second.get(1), is(equalTo(allWidgets.get(0))));
+		assertThat(dao.getProductsByPrice(null, null, 0.0, null, 10).size(), is(equalTo(2)));
+	}
+
+	@Test
+	void testGetProductsByPrice() {
+		List<Product> products = dao.getProductsByPrice(null, 19.99, 49.99, null, 10);
+		
+		// verify that both bounds are inclusive, cheapest first
+		assertThat(products, is(equalTo(Arrays.asList(
+				allGadgets.get(0), allGadgets.get(1), allWidgets.get(1), allGadgets.get(2)))));
+	}
+
+	@Test
+	void testGetProductsByPriceOfTypeAfterKey() {
+		ProductKey firstWidget = ProductKey.of(allWidgets.get(0));
+		
+		List<Product> products = dao.getProductsByPrice("widget", null, 50.0, firstWidget, 10);
+		
+		assertThat(products, is(equalTo(Arrays.asList(allWidgets.get(1)))));
+	}
+
+	@Test
+	void testGetTopProductsByPrice() {
+		assertThat(dao.getTopProductsByPrice(null, true, 2), 
+				   is(equalTo(Arrays.asList(allWidgets.get(2), allGadgets.get(2)))));
+		assertThat(dao.getTopProductsByPrice("gadget", false, 2), 
+				   is(equalTo(Arrays.asList(allGadgets.get(0), allGadgets.get(1)))));
+	}
+
+	@Test
+	void testGetProductsByIds() {
+		List<Product> products = dao.getProducts(Arrays.asList(2, 99), Arrays.asList(3, 1));
+		
+		// verify that Gadgets come before Widgets, each ordered by id
+		assertThat(products, is(equalTo(Arrays.asList(
+				allGadgets.get(0), allGadgets.get(2), allWidgets.get(1)))));
+	}
+
+	@Test
+	void testGetProductsByIds_OnlyWidgets() {
+		List<Product> products = dao.getProducts(Arrays.asList(1), Collections.emptyList());
+		
+		assertThat(products, is(equalTo(Arrays.asList(allWidgets.get(0)))));
+	}
+
+	@Test
+	void testGetCatalogTotals() {
+		CatalogTotals totals = dao.getCatalogTotals();
+		
+		assertThat(totals.getWidgetCount(), is(equalTo(3L)));
+		assertThat(totals.getGadgetCount(), is(equalTo(3L)));
+		assertThat(totals.getMinPriceCents(), is(equalTo(1299L)));
+		assertThat(totals.getMaxPriceCents(), is(equalTo(8999L)));
+		assertThat(totals.getTotalPriceCents(), is(equalTo(24594L)));
+		assertThat(totals.getTotalGears(), is(equalTo(17L)));
+		assertThat(totals.getTotalSprockets(), is(equalTo(16L)));
+		assertThat(totals.getTotalCylinders(), is(equalTo(14L)));
+	}
+
+	@Test
+	void testGetCatalogTotals_EmptyTables() {
+		JdbcTestUtils.deleteFromTables(jdbcTemplate, "widgets", "gadgets");
+		
+		CatalogTotals totals = dao.getCatalogTotals();
+		
+		assertThat(totals, is(equalTo(new CatalogTotals())));
+	}
+
 	// ***** Utility Methods Used in the Tests *****
 	
 	// Load the Widget with the specified id from the database
@@ -0,0 +1,55 @@
+package com.fidelity.monitoring;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the sizing decisions of AdaptivePoolSizer.
+ * Times are in milliseconds; the wait ratio is 0.1 and the slowdown
+ * factor 2, the pool may range from 5 to 30 connections.
+ */
+class AdaptivePoolSizerTest {
+
+	private static int decide(int size, double averageWait, double averageHold,
+							  double baselineHold, double connectionsInUse) {
+		return AdaptivePoolSizer.decide(size, 5, 30, averageWait, averageHold, baselineHold,
+										connectionsInUse, 0.1, 2.0).getSize();
+	}
+
+	@Test
+	void testGrowsWhenRequestsWait() {
+		assertThat(decide(10, 5, 10, 10, 10), is(equalTo(12)));
+		assertThat(decide(5, 5, 10, 0, 5), is(equalTo(6)));
+	}
+
+	@Test
+	void testGrowsNoFurtherThanMaxSize() {
+		assertThat(decide(28, 5, 10, 10, 28), is(equalTo(30)));
+		assertThat(decide(30, 5, 10, 10, 30), is(equalTo(30)));
+	}
+
+	@Test
+	void testKeepsSizeWhenDatabaseIsSlow() {
+		assertThat(decide(10, 5, 25, 10, 10), is(equalTo(10)));
+	}
+
+	@Test
+	void testShrinksWhenMostConnectionsAreIdle() {
+		assertThat(decide(10, 0.1, 10, 10, 2), is(equalTo(9)));
+		assertThat(decide(5, 0.1, 10, 10, 0.5), is(equalTo(5)));
+	}
+
+	@Test
+	void testKeepsSizeThatFitsTheLoad() {
+		assertThat(decide(10, 0.1, 10, 10, 7), is(equalTo(10)));
+	}
+
+	@Test
+	void testReturnsToBounds() {
+		assertThat(decide(3, 0, 10, 10, 0), is(equalTo(5)));
+		assertThat(decide(40, 5, 10, 10, 40), is(equalTo(30)));
+	}
+}
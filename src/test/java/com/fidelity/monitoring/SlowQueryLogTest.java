@@ -0,0 +1,44 @@
+package com.fidelity.monitoring;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the SQL fingerprints of SlowQueryLog.
+ */
+class SlowQueryLogTest {
+
+	@Test
+	void testCollapsesWhitespace() {
+		String sql = "SELECT id, description\n\t\tfrom widgets\n\t\twhere id = ?  ";
+
+		assertThat(SlowQueryLog.fingerprint(sql), is(equalTo("SELECT id, description from widgets where id = ?")));
+	}
+
+	@Test
+	void testReplacesLiterals() {
+		String sql = "select * from widgets where description = 'Don''t' and price > 12.99 and gears = 2";
+
+		assertThat(SlowQueryLog.fingerprint(sql), 
+				   is(equalTo("select * from widgets where description = ? and price > ? and gears = ?")));
+	}
+
+	@Test
+	void testKeepsNumbersInIdentifiers() {
+		String sql = "select col1 from t2 where col1 = 3";
+
+		assertThat(SlowQueryLog.fingerprint(sql), is(equalTo("select col1 from t2 where col1 = ?")));
+	}
+
+	@Test
+	void testInListsOfAnyLengthShareAFingerprint() {
+		String one = "select id from widgets where id in ( ? ) order by id";
+		String three = "select id from widgets where id in\n\t( ? , ? , ? ) order by id";
+
+		assertThat(SlowQueryLog.fingerprint(one), is(equalTo("select id from widgets where id in (?, ...) order by id")));
+		assertThat(SlowQueryLog.fingerprint(three), is(equalTo(SlowQueryLog.fingerprint(one))));
+	}
+}
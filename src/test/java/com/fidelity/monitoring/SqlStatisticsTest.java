@@ -0,0 +1,61 @@
+package com.fidelity.monitoring;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for SqlStatistics and its histogram.
+ */
+class SqlStatisticsTest {
+	private static final long MILLI = 1_000_000;
+
+	SqlStatistics statistics = new SqlStatistics("select * from widgets");
+
+	@Test
+	void testBucketsCoverEachValue() {
+		for (long nanos : new long[] { 0, 1, 3, 4, 7, 8, 9, 1000, 123_456_789, Long.MAX_VALUE }) {
+			int bucket = SqlStatistics.bucket(nanos);
+			assertThat(nanos, is(lessThanOrEqualTo(SqlStatistics.bucketUpperBound(bucket))));
+			if (bucket > 0) {
+				assertThat(nanos, is(greaterThan(SqlStatistics.bucketUpperBound(bucket - 1))));
+			}
+		}
+	}
+
+	@Test
+	void testAggregatesExecutions() {
+		for (int i = 1; i <= 100; i++) {
+			statistics.record("getAllWidgets", i * MILLI);
+		}
+
+		assertThat(statistics.getCount(), is(equalTo(100L)));
+		assertThat(statistics.getTotalMillis(), is(closeTo(5050, 0.001)));
+		assertThat(statistics.getMaxMillis(), is(closeTo(100, 0.001)));
+		assertThat(statistics.getStatements(), contains("getAllWidgets"));
+	}
+
+	@Test
+	void testPercentilesAreWithinABucket() {
+		for (int i = 1; i <= 100; i++) {
+			statistics.record("getAllWidgets", i * MILLI);
+		}
+
+		assertThat(statistics.getP50Millis(), is(closeTo(50 * 1.125, 50 * 0.125)));
+		assertThat(statistics.getP99Millis(), is(closeTo(99 * 1.125, 99 * 0.125)));
+	}
+
+	@Test
+	void testPercentilesDoNotExceedTheMaximum() {
+		statistics.record("getWidget", 5 * MILLI);
+
+		assertThat(statistics.getP50Millis(), is(closeTo(5, 0.001)));
+		assertThat(statistics.getP99Millis(), is(closeTo(5, 0.001)));
+	}
+}
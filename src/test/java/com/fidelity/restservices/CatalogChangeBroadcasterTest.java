@@ -0,0 +1,118 @@
+package com.fidelity.restservices;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.fidelity.business.Widget;
+import com.fidelity.business.catalog.CatalogChangeFeed;
+
+/**
+ * Unit tests for the delivery of changes by CatalogChangeBroadcaster.
+ * The emitters stand in for the connections: one records the events it
+ * is sent, the other blocks in every write like a client that has
+ * stopped reading.
+ */
+class CatalogChangeBroadcasterTest {
+	private CatalogChangeFeed feed = new CatalogChangeFeed(100);
+	private CatalogChangeBroadcaster broadcaster = new CatalogChangeBroadcaster();
+	private CountDownLatch unblock = new CountDownLatch(1);
+
+	@BeforeEach
+	void setUp() {
+		ReflectionTestUtils.setField(broadcaster, "logger", LoggerFactory.getLogger(CatalogChangeBroadcaster.class));
+		ReflectionTestUtils.setField(broadcaster, "feed", feed);
+		ReflectionTestUtils.setField(broadcaster, "timeout", Duration.ofMinutes(1));
+		// a single sender, which the stalled subscriber would keep to itself
+		ReflectionTestUtils.setField(broadcaster, "senderThreads", 1);
+		ReflectionTestUtils.setField(broadcaster, "sendTimeout", Duration.ofMillis(100));
+		broadcaster.init();
+	}
+
+	@AfterEach
+	void tearDown() {
+		unblock.countDown();
+		broadcaster.shutdown();
+	}
+
+	@Test
+	void testStalledSubscriberDoesNotDelayOthers() throws Exception {
+		StalledEmitter stalled = new StalledEmitter();
+		RecordingEmitter live = new RecordingEmitter();
+		broadcaster.subscribe(stalled, "widget", null);
+		broadcaster.subscribe(live, "widget", null);
+
+		feed.widgetUpdated(new Widget(1, "Low Impact Widget", 12.99, 2, 3));
+		assertThat(stalled.sending.await(5, TimeUnit.SECONDS), is(true));
+		// the only sender is now blocked writing to the stalled subscriber
+		feed.widgetUpdated(new Widget(1, "Low Impact Widget", 13.99, 2, 3));
+		Thread.sleep(200);
+		broadcaster.checkSends();
+
+		assertThat(broadcaster.getSubscriberCount(), is(equalTo(1)));
+		String event;
+		do {
+			event = live.events.poll(5, TimeUnit.SECONDS);
+			assertThat(event, is(notNullValue()));
+		} while (!event.contains("-2\n"));
+		assertThat(event, containsString("event:update"));
+
+		// the stream is completed with an error once the write returns
+		unblock.countDown();
+		assertThat(stalled.error.poll(5, TimeUnit.SECONDS), is(instanceOf(IOException.class)));
+	}
+
+	private static String text(SseEmitter.SseEventBuilder builder) {
+		return builder.build().stream()
+					  .map(data -> data.getData().toString())
+					  .collect(Collectors.joining());
+	}
+
+	private static class RecordingEmitter extends SseEmitter {
+		final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+
+		@Override
+		public void send(SseEventBuilder builder) throws IOException {
+			events.add(text(builder));
+		}
+	}
+
+	private class StalledEmitter extends SseEmitter {
+		final CountDownLatch sending = new CountDownLatch(1);
+		final BlockingQueue<Throwable> error = new LinkedBlockingQueue<>();
+
+		@Override
+		public void send(SseEventBuilder builder) throws IOException {
+			sending.countDown();
+			try {
+				unblock.await();
+			}
+			catch (InterruptedException e) {
+				throw new IOException(e);
+			}
+		}
+
+		@Override
+		public synchronized void completeWithError(Throwable ex) {
+			error.add(ex);
+		}
+	}
+}
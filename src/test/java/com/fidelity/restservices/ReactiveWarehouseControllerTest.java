@@ -0,0 +1,175 @@
+package com.fidelity.restservices;
+
+import org.junit.jupiter.api.Test;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.context.ApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.session.SqlSessionFactory;
+
+import com.fidelity.business.Gadget;
+import com.fidelity.business.Widget;
+import com.fidelity.business.catalog.ProductCatalog;
+import com.fidelity.business.service.WarehouseBusinessService;
+import com.fidelity.restservices.dto.DatabaseRequestResultDTO;
+import com.fidelity.warehouseservice.WarehouseServiceApplication;
+
+/**
+ * These test cases assert the behavior of the reactive variant of the service.
+ * The application is started with the "reactive" profile, so the routes are 
+ * served by ReactiveWarehouseController on Netty, and the database is the 
+ * in-memory H2 database set up by ReactiveDatabaseConfig from schema.sql 
+ * and data.sql.
+ * 
+ * WebTestClient plays the role of TestRestTemplate for a reactive server.
+ * 
+ * Because the H2 database lives as long as the application context, the 
+ * context is discarded after each test case that modifies the database.
+ */
+@SpringBootTest(classes=WarehouseServiceApplication.class, 
+                webEnvironment=WebEnvironment.RANDOM_PORT)
+@ActiveProfiles({ "dev", "reactive" })
+public class ReactiveWarehouseControllerTest {
+	@Autowired
+	private WebTestClient client;
+
+	@Autowired
+	private ApplicationContext context;
+
+	@Test
+	public void testPing() {
+		client.get().uri("/warehouse/ping")
+			  .exchange()
+			  .expectStatus().isOk()
+			  .expectBody(String.class).isEqualTo("Wareshouse web service is alive and awaits your command");
+	}
+
+	@Test
+	public void testQueryForAllWidgets() {
+		List<Widget> widgets = client.get().uri("/warehouse/widgets")
+									 .accept(MediaType.APPLICATION_JSON)
+									 .exchange()
+									 .expectStatus().isOk()
+									 .expectBodyList(Widget.class)
+									 .returnResult().getResponseBody();
+		assertThat(widgets, hasSize(3));
+		assertThat(widgets.get(0), is(equalTo(new Widget(1, "Low Impact Widget", 12.99, 2, 3))));
+	}
+
+	@Test
+	public void testQueryForAllWidgets_Ndjson() {
+		List<Widget> widgets = client.get().uri("/warehouse/widgets")
+									 .accept(MediaType.APPLICATION_NDJSON)
+									 .exchange()
+									 .expectStatus().isOk()
+									 .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+									 .returnResult(Widget.class)
+									 .getResponseBody()
+									 .collectList()
+									 .block();
+		assertThat(widgets, hasSize(3));
+	}
+
+	@Test
+	public void testQueryForWidgetPages() {
+		client.get().uri("/warehouse/widgets?limit=2")
+			  .exchange()
+			  .expectStatus().isOk()
+			  .expectHeader().exists(WarehouseController.NEXT_CURSOR_HEADER)
+			  .expectBodyList(Widget.class).hasSize(2);
+
+		client.get().uri("/warehouse/widgets?after=2&limit=2")
+			  .exchange()
+			  .expectStatus().isOk()
+			  .expectHeader().doesNotExist(WarehouseController.NEXT_CURSOR_HEADER)
+			  .expectBodyList(Widget.class).hasSize(1);
+
+		client.get().uri("/warehouse/widgets?after=3")
+			  .exchange()
+			  .expectStatus().isNoContent();
+	}
+
+	@Test
+	public void testQueryForWidgetById() {
+		Widget widget = client.get().uri("/warehouse/widgets/1")
+							  .exchange()
+							  .expectStatus().isOk()
+							  .expectBody(Widget.class)
+							  .returnResult().getResponseBody();
+		assertThat(widget, is(equalTo(new Widget(1, "Low Impact Widget", 12.99, 2, 3))));
+	}
+
+	@Test
+	public void testQueryForWidgetById_NotFound() {
+		client.get().uri("/warehouse/widgets/99")
+			  .exchange()
+			  .expectStatus().isEqualTo(HttpStatus.NOT_FOUND);
+	}
+
+	@Test
+	@DirtiesContext
+	public void testInsertAndRemoveGadget() {
+		Gadget gadget = new Gadget(0, "Test Gadget", 9.99, 2);
+		DatabaseRequestResultDTO result = client.post().uri("/warehouse/gadgets")
+												.bodyValue(gadget)
+												.exchange()
+												.expectStatus().isOk()
+												.expectBody(DatabaseRequestResultDTO.class)
+												.returnResult().getResponseBody();
+		assertThat(result, is(notNullValue()));
+		assertThat(result.getRowCount(), is(equalTo(1)));
+
+		client.get().uri("/warehouse/gadgets")
+			  .exchange()
+			  .expectStatus().isOk()
+			  .expectBodyList(Gadget.class).hasSize(4);
+
+		client.delete().uri("/warehouse/gadgets/4")
+			  .exchange()
+			  .expectStatus().isOk();
+
+		client.delete().uri("/warehouse/gadgets/4")
+			  .exchange()
+			  .expectStatus().isEqualTo(HttpStatus.NOT_FOUND);
+	}
+
+	@Test
+	public void testQueryForProductPages_SortedByPrice() {
+		client.get().uri("/warehouse/products?sort=price&limit=2")
+			  .exchange()
+			  .expectStatus().isOk()
+			  .expectHeader().exists(WarehouseController.NEXT_CURSOR_HEADER)
+			  .expectBody()
+			  .jsonPath("$.length()").isEqualTo(2);
+
+		client.get().uri("/warehouse/products?sort=weight")
+			  .exchange()
+			  .expectStatus().isBadRequest();
+	}
+
+	@Test
+	public void testBlockingStackIsNotStarted() {
+		assertThat(List.of(context.getBeanNamesForType(DataSource.class)), is(empty()));
+		assertThat(List.of(context.getBeanNamesForType(SqlSessionFactory.class)), is(empty()));
+		assertThat(List.of(context.getBeanNamesForType(WarehouseBusinessService.class)), is(empty()));
+		assertThat(List.of(context.getBeanNamesForType(ProductCatalog.class)), is(empty()));
+	}
+}
@@ -1,16 +1,29 @@
 package com.fidelity.restservices;
 
 import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 import javax.sql.DataSource;
 
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
 import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.RequestEntity;
 import org.springframework.http.ResponseEntity;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -22,10 +35,16 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.emptyOrNullString;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.matchesPattern;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fidelity.business.Gadget;
 import com.fidelity.business.Widget;
+import com.fidelity.business.catalog.CatalogSummary;
+import com.fidelity.business.catalog.ProductCatalog;
+import com.fidelity.restservices.dto.BatchInsertResultDTO;
 import com.fidelity.restservices.dto.DatabaseRequestResultDTO;
 import com.fidelity.warehouseservice.WarehouseServiceApplication;
 
@@ -50,6 +69,8 @@ import com.fidelity.warehouseservice.WarehouseServiceApplication;
  * test cases themselves, @Transactional has no effect here. So we need to re-initialize 
  * the database before each test case.
  * Just another reason not to use the production database in testing :)
+ * For the same reason, the service's entity caches are cleared before each
+ * test case, because they may hold rows from the previous test's database.
  * 
  * The database scripts referenced in @Sql are in the folder src/test/resources
  * 
@@ -75,6 +96,21 @@ public class WarehouseServiceTestRestTemplateTest {
 	@Autowired
 	private JdbcTemplate jdbcTemplate;  // for executing SQL queries
 	
+	@Autowired
+	private CacheManager cacheManager;
+	
+	@Autowired
+	private ProductCatalog productCatalog;
+	
+	@Autowired
+	private CatalogChangeBroadcaster changeBroadcaster;
+	
+	@BeforeEach
+	public void clearCaches() {
+		cacheManager.getCacheNames()
+					.forEach(name -> cacheManager.getCache(name).clear());
+	}
+	
 	// **** Widget Tests ****
 	/**
 	 * This test verifies the WarehouseController can query successfully for all the
@@ -103,6 +139,53 @@ public class WarehouseServiceTestRestTemplateTest {
 				   new Widget(3, "High Impact Widget", 89.99, 10, 8))));
 	}
 
+	/**
+	 * This test verifies the WarehouseController can stream all the Widgets
+	 * in the Warehouse.
+	 */
+	@Test
+	public void testStreamAllWidgets() {
+		int widgetCount = JdbcTestUtils.countRowsInTable(jdbcTemplate, "widgets");
+		
+		String request = "/warehouse/widgets?stream=true";
+
+		ResponseEntity<Widget[]> response = restTemplate.getForEntity(request, Widget[].class);
+		
+		// verify that the service streamed all Widgets in the database
+		assertThat(response.getStatusCode(), is(equalTo(HttpStatus.OK)));
+		assertThat(response.getBody().length, is(equalTo(widgetCount)));
+		assertThat(response.getBody()[0], is(equalTo(
+				   new Widget(1, "Low Impact Widget", 12.99, 2, 3))));
+	}
+
+	/**
+	 * This test verifies a client can page through all the Widgets in the
+	 * Warehouse by following the next-page cursor.
+	 */
+	@Test
+	public void testQueryForWidgetsPageByPage() {
+		int widgetCount = JdbcTestUtils.countRowsInTable(jdbcTemplate, "widgets");
+		
+		ResponseEntity<Widget[]> firstPage = 
+				restTemplate.getForEntity("/warehouse/widgets?limit=2", Widget[].class);
+		
+		// verify the first page holds 2 Widgets and points to the next page
+		assertThat(firstPage.getStatusCode(), is(equalTo(HttpStatus.OK)));
+		assertThat(firstPage.getBody().length, is(equalTo(2)));
+		String cursor = firstPage.getHeaders().getFirst(WarehouseController.NEXT_CURSOR_HEADER);
+		
+		ResponseEntity<Widget[]> secondPage = 
+				restTemplate.getForEntity("/warehouse/widgets?limit=2&after=" + cursor, Widget[].class);
+		
+		// verify the second page holds the remaining Widgets and is the last page
+		assertThat(secondPage.getStatusCode(), is(equalTo(HttpStatus.OK)));
+		assertThat(secondPage.getBody().length, is(equalTo(widgetCount - 2)));
+		assertThat(secondPage.getBody()[0], is(equalTo(
+				   new Widget(3, "High Impact Widget", 89.99, 10, 8))));
+		assertThat(secondPage.getHeaders().containsKey(WarehouseController.NEXT_CURSOR_HEADER), 
+				   is(equalTo(false)));
+	}
+
 	/**
 	 * This test verifies the WarehouseController successfully handles the case
 	 * where there are no Widgets in the Warehouse.
@@ -161,6 +244,68 @@ public class WarehouseServiceTestRestTemplateTest {
 				   new Widget(3, "High Impact Widget", 89.99, 10, 8))));
 	}
 
+	/**
+	 * This test verifies that of two clients that read the same Widget, only
+	 * the first one to update it with If-Match succeeds.
+	 */
+	@Test
+	public void testUpdateWidgetIfMatch() throws Exception {
+		String etag = restTemplate.getForEntity("/warehouse/widgets/2", Widget.class)
+								  .getHeaders().getETag();
+		Widget widget = new Widget(2, "Medium Impact Widget", 44.99, 5, 5);
+		
+		RequestEntity<Widget> first = RequestEntity.put(new URI("/warehouse/widgets"))
+				.header(HttpHeaders.IF_MATCH, etag).contentType(MediaType.APPLICATION_JSON).body(widget);
+		ResponseEntity<DatabaseRequestResultDTO> response = 
+				restTemplate.exchange(first, DatabaseRequestResultDTO.class);
+		assertThat(response.getStatusCode(), is(equalTo(HttpStatus.OK)));
+		assertThat(response.getHeaders().getETag(), is(not(equalTo(etag))));
+		
+		RequestEntity<Widget> second = RequestEntity.put(new URI("/warehouse/widgets"))
+				.header(HttpHeaders.IF_MATCH, etag).contentType(MediaType.APPLICATION_JSON)
+				.body(new Widget(2, "Lost Update Widget", 1.99, 5, 5));
+		assertThat(restTemplate.exchange(second, String.class).getStatusCode(), 
+				   is(equalTo(HttpStatus.PRECONDITION_FAILED)));
+		
+		// verify that the first update is the one in the database
+		assertThat(JdbcTestUtils.countRowsInTableWhere(jdbcTemplate, "widgets", 
+				   "id = 2 AND price = 44.99 AND version = 1"), is(equalTo(1)));
+	}
+
+	/**
+	 * This test verifies that a subscriber to the change feed is sent an
+	 * update event when a Widget is updated.
+	 */
+	@Test
+	public void testStreamChanges_WidgetUpdate() throws Exception {
+		// RestTemplate reads a response to its end before closing it, so the 
+		// endless stream is read with java.net.http instead
+		HttpRequest subscribe = HttpRequest.newBuilder(
+					new URI(restTemplate.getRootUri() + "/warehouse/changes?type=widget"))
+				.header(HttpHeaders.ACCEPT, MediaType.TEXT_EVENT_STREAM_VALUE)
+				.build();
+		CompletableFuture<HttpResponse<Stream<String>>> stream = 
+				HttpClient.newHttpClient().sendAsync(subscribe, BodyHandlers.ofLines());
+		// the update must be made after the stream has been opened
+		for (int wait = 0; changeBroadcaster.getSubscriberCount() == 0 && wait < 100; wait++) {
+			Thread.sleep(50);
+		}
+		restTemplate.put("/warehouse/widgets", new Widget(2, "Medium Impact Widget", 44.99, 5, 5));
+		
+		try (Stream<String> lines = stream.get(10, TimeUnit.SECONDS).body()) {
+			CompletableFuture<String> event = CompletableFuture.supplyAsync(() -> 
+				lines.dropWhile(line -> !line.equals("event:update"))
+					 .filter(line -> line.startsWith("data:"))
+					 .findFirst()
+					 .get()
+					 .substring("data:".length()));
+			JsonNode change = new ObjectMapper().readTree(event.get(10, TimeUnit.SECONDS));
+			assertThat(change.get("type").asText(), is(equalTo("widget")));
+			assertThat(change.get("id").asInt(), is(equalTo(2)));
+			assertThat(change.get("product").get("price").asDouble(), is(equalTo(44.99)));
+		}
+	}
+
 	/**
 	 * This test verifies the WarehouseController handles a query for a non-existent Widget.
 	 */
@@ -217,6 +362,65 @@ public class WarehouseServiceTestRestTemplateTest {
 		
 	}
 
+	/**
+	 * This test verifies that a client polling for all Widgets gets 304 Not
+	 * Modified until a Widget is changed.
+	 */
+	@Test
+	public void testQueryForAllWidgets_ConditionalGet() throws Exception {
+		ResponseEntity<Widget[]> first = restTemplate.getForEntity("/warehouse/widgets", Widget[].class);
+		String etag = first.getHeaders().getETag();
+		assertThat(etag, is(not(emptyOrNullString())));
+		
+		RequestEntity<Void> poll = RequestEntity.get(new URI("/warehouse/widgets"))
+												.ifNoneMatch(etag)
+												.build();
+		assertThat(restTemplate.exchange(poll, Widget[].class).getStatusCode(), 
+				   is(equalTo(HttpStatus.NOT_MODIFIED)));
+		
+		// change a Widget through the service
+		Widget w = first.getBody()[0];
+		w.setPrice(w.getPrice() + 1.0);
+		restTemplate.put("/warehouse/widgets", w);
+		
+		// verify that the next poll gets the changed Widget and a new ETag
+		ResponseEntity<Widget[]> changed = restTemplate.exchange(poll, Widget[].class);
+		assertThat(changed.getStatusCode(), is(equalTo(HttpStatus.OK)));
+		assertThat(changed.getHeaders().getETag(), is(not(equalTo(etag))));
+		assertThat(changed.getBody()[0], is(equalTo(w)));
+	}
+
+	/**
+	 * This test verifies the WarehouseController can add several Widgets to the
+	 * Warehouse in one request.
+	 */
+	@Test
+	public void testAddWidgetsToWarehouse() throws Exception {
+		int widgetCount = JdbcTestUtils.countRowsInTable(jdbcTemplate, "widgets");
+		
+		List<Widget> widgets = Arrays.asList(
+				new Widget("Test widget 1", 4.52, 20, 10),
+				new Widget("Test widget 2", 5.52, 30, 20),
+				new Widget("Test widget 3", 6.52, 40, 30));
+
+		String request = "/warehouse/widgets/batch";
+		
+		ResponseEntity<BatchInsertResultDTO> response = 
+				restTemplate.postForEntity(request, widgets, BatchInsertResultDTO.class);
+		
+		// verify the response HTTP status and the generated ids
+		assertThat(response.getStatusCode(), is(equalTo(HttpStatus.OK)));
+		assertThat(response.getBody().getRowCount(), is(equalTo(3)));
+		int lastId = response.getBody().getIds().get(2);
+		
+		// verify that the rows were committed
+		assertThat(JdbcTestUtils.countRowsInTable(jdbcTemplate, "widgets"), 
+				   is(equalTo(widgetCount + 3)));
+		assertThat(1, is(equalTo(
+			JdbcTestUtils.countRowsInTableWhere(jdbcTemplate, "widgets", 
+					"id = " + lastId + " AND description = 'Test widget 3'"))));
+	}
+
 	/**
 	 * This test verifies the WarehouseController can successfully remove a Widget from
 	 * the Warehouse.
@@ -469,4 +673,330 @@ public class WarehouseServiceTestRestTemplateTest {
 				JdbcTestUtils.countRowsInTable(jdbcTemplate, "gadgets"))));
 	}
 
+	// **** Product Tests ****
+
+	/**
+	 * This test verifies a client can page through all the products in the
+	 * Warehouse ordered by price.
+	 */
+	@Test
+	public void testQueryForProductsByPrice() {
+		int productCount = JdbcTestUtils.countRowsInTable(jdbcTemplate, "widgets")
+						 + JdbcTestUtils.countRowsInTable(jdbcTemplate, "gadgets");
+		
+		ResponseEntity<String> firstPage = 
+				restTemplate.getForEntity("/warehouse/products?sort=price&limit=4", String.class);
+		
+		// verify the first page holds the 4 cheapest products
+		assertThat(firstPage.getStatusCode(), is(equalTo(HttpStatus.OK)));
+		assertThat(firstPage.getBody(), matchesPattern(
+				"^\\[\\{.*\"price\":12.99.*\"price\":19.99.*\"price\":29.99.*\"price\":42.99.*\\}\\]$"));
+		String cursor = firstPage.getHeaders().getFirst(WarehouseController.NEXT_CURSOR_HEADER);
+		
+		ResponseEntity<Gadget[]> secondPage = restTemplate.getForEntity(
+				"/warehouse/products?sort=price&limit=4&after=" + cursor, Gadget[].class);
+		
+		// verify the second page holds the remaining products, starting with Gadget 3
+		assertThat(secondPage.getStatusCode(), is(equalTo(HttpStatus.OK)));
+		assertThat(secondPage.getBody().length, is(equalTo(productCount - 4)));
+		assertThat(secondPage.getBody()[0].getDescription(), is(equalTo("Eight Cylinder Gadget")));
+	}
+
+	/**
+	 * This test verifies a client can page through the products in a price 
+	 * range, and ask for the most expensive products.
+	 */
+	@Test
+	public void testQueryForProductsInPriceRange() {
+		productCatalog.rebuild();
+		
+		ResponseEntity<Gadget[]> firstPage = restTemplate.getForEntity(
+				"/warehouse/products?sort=price&minPrice=19.99&maxPrice=49.99&limit=3", Gadget[].class);
+		
+		// verify the first page holds the 3 cheapest products in the range
+		assertThat(firstPage.getStatusCode(), is(equalTo(HttpStatus.OK)));
+		assertThat(firstPage.getBody().length, is(equalTo(3)));
+		assertThat(firstPage.getBody()[0].getDescription(), is(equalTo("Two Cylinder Gadget")));
+		String cursor = firstPage.getHeaders().getFirst(WarehouseController.NEXT_CURSOR_HEADER);
+		
+		ResponseEntity<Gadget[]> secondPage = restTemplate.getForEntity(
+				"/warehouse/products?sort=price&minPrice=19.99&maxPrice=49.99&limit=3&after=" + cursor, 
+				Gadget[].class);
+		
+		// verify the second page holds the last product in the range
+		assertThat(secondPage.getBody().length, is(equalTo(1)));
+		assertThat(secondPage.getBody()[0].getDescription(), is(equalTo("Eight Cylinder Gadget")));
+		
+		ResponseEntity<Gadget[]> top = 
+				restTemplate.getForEntity("/warehouse/products/top?by=price&k=2", Gadget[].class);
+		
+		assertThat(top.getStatusCode(), is(equalTo(HttpStatus.OK)));
+		assertThat(top.getBody()[0].getDescription(), is(equalTo("High Impact Widget")));
+		assertThat(top.getBody()[1].getDescription(), is(equalTo("Eight Cylinder Gadget")));
+	}
+
+	/**
+	 * This test verifies the WarehouseController can look up Widgets and
+	 * Gadgets by the typed ids in a request body.
+	 */
+	@Test
+	public void testLookupProducts() {
+		List<String> ids = Arrays.asList("gadget:3", "widget:1", "widget:42");
+		
+		ResponseEntity<String> response = 
+				restTemplate.postForEntity("/warehouse/products/lookup", ids, String.class);
+		
+		// verify that the products are in the order of the ids, followed by the missing ids
+		assertThat(response.getStatusCode(), is(equalTo(HttpStatus.OK)));
+		assertThat(response.getBody(), matchesPattern(
+				"^\\{\"found\":\\[\\{[^}]*\"id\":3,[^}]*\\},\\{[^}]*\"id\":1,[^}]*\\}\\]," +
+				"\"missing\":\\[\"widget:42\"\\]\\}$"));
+	}
+
+	/**
+	 * This test verifies the WarehouseController rejects a cursor that was
+	 * created for a different sort order.
+	 */
+	@Test
+	public void testQueryForProducts_CursorForOtherSortOrder() {
+		ResponseEntity<String> firstPage = 
+				restTemplate.getForEntity("/warehouse/products?limit=1", String.class);
+		String cursor = firstPage.getHeaders().getFirst(WarehouseController.NEXT_CURSOR_HEADER);
+		
+		ResponseEntity<String> response = restTemplate.getForEntity(
+				"/warehouse/products?sort=price&after=" + cursor, String.class);
+		
+		assertThat(response.getStatusCode(), is(equalTo(HttpStatus.BAD_REQUEST)));
+	}
+
+	/**
+	 * This test verifies the WarehouseController can scan the catalog 
+	 * snapshot, and that the snapshot sees a Gadget added through the API.
+	 */
+	@Test
+	public void testScanProducts() {
+		// the database was reloaded by @Sql, so reload the snapshot too
+		productCatalog.rebuild();
+		
+		ResponseEntity<String> widgets = restTemplate.getForEntity(
+				"/warehouse/products/scan?type=widget&minGears=5&maxPrice=50", String.class);
+		
+		assertThat(widgets.getStatusCode(), is(equalTo(HttpStatus.OK)));
+		assertThat(widgets.getBody(), matchesPattern(
+				"^\\{\"matchCount\":1,\"products\":\\[\\{[^}]*\"description\":\"Medium Impact Widget\"[^}]*\\}\\]\\}$"));
+		
+		restTemplate.postForEntity("/warehouse/gadgets", 
+				new Gadget("Twelve Cylinder Gadget", 99.99, 12), DatabaseRequestResultDTO.class);
+		ResponseEntity<String> gadgets = restTemplate.getForEntity(
+				"/warehouse/products/scan?minCylinders=8&limit=1", String.class);
+		
+		assertThat(gadgets.getBody(), matchesPattern("^\\{\"matchCount\":2,.*\"description\":\"Eight Cylinder Gadget\".*$"));
+	}
+
+	/**
+	 * This test verifies a description search sees a product added 
+	 * through the web service, without another reload of the catalog.
+	 */
+	@Test
+	public void testSearchProducts() {
+		productCatalog.rebuild();
+		restTemplate.postForEntity("/warehouse/widgets", 
+				new Widget("Impact Resistant Widget", 9.99, 1, 1), DatabaseRequestResultDTO.class);
+		
+		ResponseEntity<String> response = restTemplate.getForEntity(
+				"/warehouse/products/search?q=impact+widget&limit=2", String.class);
+		
+		assertThat(response.getStatusCode(), is(equalTo(HttpStatus.OK)));
+		assertThat(response.getBody(), matchesPattern(
+				"^\\{\"matchCount\":4,\"offset\":0,\"hits\":\\[\\{\"score\":[0-9.]+,\"product\":\\{[^}]*\"description\":\"Low Impact Widget\".*$"));
+		
+		ResponseEntity<String> badRequest = restTemplate.getForEntity(
+				"/warehouse/products/search?q={q}", String.class, " - ");
+		assertThat(badRequest.getStatusCode(), is(equalTo(HttpStatus.BAD_REQUEST)));
+	}
+
+	/**
+	 * This test verifies the product summary follows a write without
+	 * another reload of the catalog.
+	 */
+	@Test
+	public void testQueryForProductSummary() {
+		productCatalog.rebuild();
+		restTemplate.delete("/warehouse/widgets/1");
+		
+		ResponseEntity<CatalogSummary> response = restTemplate.getForEntity(
+				"/warehouse/products/summary", CatalogSummary.class);
+		
+		assertThat(response.getStatusCode(), is(equalTo(HttpStatus.OK)));
+		CatalogSummary summary = response.getBody();
+		assertThat(summary.getWidgetCount(), is(2L));
+		assertThat(summary.getGadgetCount(), is(3L));
+		assertThat(summary.getMinPrice(), is(19.99));
+		assertThat(summary.getMaxPrice(), is(89.99));
+		assertThat(summary.getTotalCylinders(), is(14L));
+	}
+
+	// **** Import Tests ****
+	/**
+	 * This test verifies a client can import a CSV file and follow the 
+	 * import job until it has inserted the valid rows.
+	 */
+	@Test
+	public void testImportProducts() throws Exception {
+		int widgetCount = JdbcTestUtils.countRowsInTable(jdbcTemplate, "widgets");
+		int gadgetCount = JdbcTestUtils.countRowsInTable(jdbcTemplate, "gadgets");
+		String csv = "type,description,price,gears,sprockets,cylinders\n"
+				   + "widget,Imported Widget,9.99,1,2,\n"
+				   + "gadget,Imported Gadget,19.99,,,6\n"
+				   + "gizmo,Not A Product,1.00,,,\n";
+		RequestEntity<String> upload = RequestEntity.post(new URI("/warehouse/import"))
+													.contentType(MediaType.parseMediaType("text/csv"))
+													.body(csv);
+		
+		ResponseEntity<JsonNode> accepted = restTemplate.exchange(upload, JsonNode.class);
+		
+		assertThat(accepted.getStatusCode(), is(equalTo(HttpStatus.ACCEPTED)));
+		URI status = accepted.getHeaders().getLocation();
+		JsonNode job = accepted.getBody();
+		for (int i = 0; i < 500 && !job.get("done").asBoolean(); i++) {
+			Thread.sleep(10);
+			job = restTemplate.getForObject(status, JsonNode.class);
+		}
+		
+		// verify the valid rows were inserted and the invalid one reported
+		assertThat(job.get("state").asText(), is(equalTo("COMPLETED")));
+		assertThat(job.get("rowsImported").asLong(), is(2L));
+		assertThat(job.get("rejectedRows").get(0).get("line").asLong(), is(4L));
+		assertThat(JdbcTestUtils.countRowsInTable(jdbcTemplate, "widgets"), is(widgetCount + 1));
+		assertThat(JdbcTestUtils.countRowsInTable(jdbcTemplate, "gadgets"), is(gadgetCount + 1));
+	}
+
+	/**
+	 * This test verifies a client can export the catalog as CSV, one line
+	 * per product after the header, and the Gadgets alone as NDJSON.
+	 */
+	@Test
+	public void testExportProducts() {
+		int productCount = JdbcTestUtils.countRowsInTable(jdbcTemplate, "widgets")
+						 + JdbcTestUtils.countRowsInTable(jdbcTemplate, "gadgets");
+		
+		ResponseEntity<String> csv = restTemplate.getForEntity("/warehouse/export?format=csv", String.class);
+		
+		assertThat(csv.getStatusCode(), is(equalTo(HttpStatus.OK)));
+		String[] lines = csv.getBody().split("\n");
+		assertThat(lines.length, is(productCount + 1));
+		assertThat(lines[1], is(equalTo("widget,1,Low Impact Widget,12.99,2,3,")));
+		
+		ResponseEntity<String> ndjson = 
+				restTemplate.getForEntity("/warehouse/export?format=ndjson&type=gadget", String.class);
+		
+		assertThat(ndjson.getBody(), matchesPattern("^(\\{\"type\":\"gadget\".*\\}\n){3}$"));
+	}
+
+	// **** Monitoring Tests ****
+	/**
+	 * This test verifies that a request is timed in each layer, down to
+	 * the MyBatis statement, and that the timers are published by Actuator.
+	 */
+	@Test
+	public void testLayerTimersArePublished() {
+		restTemplate.getForEntity("/warehouse/widgets/1", Widget.class);
+		
+		String[] timers = {
+			"warehouse.controller?tag=operation:queryForWidgetById",
+			"warehouse.service?tag=operation:findWidgetById&tag=productType:widget",
+			"warehouse.dao?tag=operation:getWidget&tag=outcome:success",
+			"warehouse.sql?tag=statement:getWidget&tag=command:SELECT"
+		};
+		for (String timer : timers) {
+			ResponseEntity<String> response = 
+					restTemplate.getForEntity("/actuator/metrics/" + timer, String.class);
+			assertThat(timer, response.getStatusCode(), is(equalTo(HttpStatus.OK)));
+			assertThat(response.getBody(), matchesPattern(".*\"statistic\":\"COUNT\",\"value\":[1-9].*"));
+		}
+	}
+
+	/**
+	 * This test verifies that the connections used by a request are timed
+	 * by route, and that the connectionpool endpoint shows the pool.
+	 */
+	@Test
+	public void testConnectionPoolTelemetry() {
+		restTemplate.getForEntity("/warehouse/widgets/2", Widget.class);
+		
+		ResponseEntity<String> hold = 
+				restTemplate.getForEntity("/actuator/metrics/warehouse.connection.hold?tag={tag}", String.class,
+										  "route:GET /warehouse/widgets/{id}");
+		assertThat(hold.getStatusCode(), is(equalTo(HttpStatus.OK)));
+		assertThat(hold.getBody(), matchesPattern(".*\"statistic\":\"COUNT\",\"value\":[1-9].*"));
+
+		ResponseEntity<String> pool = restTemplate.getForEntity("/actuator/connectionpool", String.class);
+		assertThat(pool.getStatusCode(), is(equalTo(HttpStatus.OK)));
+		assertThat(pool.getBody(), matchesPattern(".*\"maximumPoolSize\":[1-9].*\"adaptive\":\\{\"enabled\":false.*"));
+	}
+
+	/**
+	 * This test verifies that a connection obtained by a transaction is
+	 * attributed to its first statement, and that the connections held
+	 * for a batch or a cursor are tagged as bulk holds.
+	 */
+	@Test
+	public void testBulkConnectionHoldsAreTagged() {
+		List<Gadget> gadgets = Arrays.asList(new Gadget("Bulk gadget", 4.52, 2));
+		restTemplate.postForEntity("/warehouse/gadgets/batch", gadgets, BatchInsertResultDTO.class);
+		restTemplate.getForEntity("/warehouse/export", String.class);
+		
+		String[] statements = { "statement:insertGadget", "statement:streamAllWidgets" };
+		for (String statement : statements) {
+			ResponseEntity<String> hold = 
+					restTemplate.getForEntity("/actuator/metrics/warehouse.connection.hold?tag={statement}&tag=bulk:true",
+											  String.class, statement);
+			assertThat(statement, hold.getStatusCode(), is(equalTo(HttpStatus.OK)));
+			assertThat(hold.getBody(), matchesPattern(".*\"statistic\":\"COUNT\",\"value\":[1-9].*"));
+		}
+	}
+
+	/**
+	 * This test verifies that the slowqueries endpoint aggregates the
+	 * statements by fingerprint.
+	 */
+	@Test
+	public void testSlowQueriesArePublished() {
+		restTemplate.getForEntity("/warehouse/widgets/3", Widget.class);
+		
+		ResponseEntity<String> response = restTemplate.getForEntity("/actuator/slowqueries?top=100", String.class);
+
+		assertThat(response.getStatusCode(), is(equalTo(HttpStatus.OK)));
+		assertThat(response.getBody(), matchesPattern(
+				".*\\{\"fingerprint\":\"SELECT [^\"]* from widgets where id = \\? order by id\",\"statements\":\\[\"getWidget\"\\],\"count\":[1-9].*"));
+	}
+
+	/**
+	 * This test verifies that the slowqueries endpoint counts a batch insert
+	 * once, when the batch is flushed.
+	 */
+	@Test
+	public void testSlowQueriesCountBatchFlushes() throws Exception {
+		long insertsBefore = slowQueryCount("insert into gadgets");
+		
+		List<Gadget> gadgets = Arrays.asList(
+				new Gadget("Batch gadget 1", 4.52, 2),
+				new Gadget("Batch gadget 2", 5.52, 4),
+				new Gadget("Batch gadget 3", 6.52, 6));
+		ResponseEntity<BatchInsertResultDTO> response = 
+				restTemplate.postForEntity("/warehouse/gadgets/batch", gadgets, BatchInsertResultDTO.class);
+		assertThat(response.getStatusCode(), is(equalTo(HttpStatus.OK)));
+		
+		assertThat(slowQueryCount("insert into gadgets"), is(equalTo(insertsBefore + 1)));
+	}
+
+	private long slowQueryCount(String sqlStart) throws Exception {
+		String body = restTemplate.getForObject("/actuator/slowqueries?top=1000", String.class);
+		for (JsonNode statistics : new ObjectMapper().readTree(body).get("top")) {
+			if (statistics.get("fingerprint").asText().startsWith(sqlStart)) {
+				return statistics.get("count").asLong();
+			}
+		}
+		return 0;
+	}
 }
@@ -1,34 +1,78 @@
 package com.fidelity.restservices;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.emptyOrNullString;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasItem;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.MediaType;
+import org.springframework.mock.http.MockHttpInputMessage;
+import org.springframework.mock.http.MockHttpOutputMessage;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.fidelity.business.Gadget;
+import com.fidelity.business.Product;
 import com.fidelity.business.Widget;
+import com.fidelity.business.catalog.CatalogSummary;
+import com.fidelity.business.catalog.PriceBucket;
+import com.fidelity.business.catalog.ProductCatalog;
+import com.fidelity.business.catalog.ProductFilter;
+import com.fidelity.business.catalog.ProductScanResult;
+import com.fidelity.business.catalog.ProductSearchHit;
+import com.fidelity.business.catalog.ProductSearchResult;
 import com.fidelity.business.service.WarehouseBusinessService;
+import com.fidelity.business.transfer.ImportJob;
+import com.fidelity.business.transfer.ProductExporter;
+import com.fidelity.business.transfer.ProductImporter;
+import com.fidelity.business.transfer.TransferFormat;
+import com.fidelity.restservices.dto.DatabaseRequestResultDTO;
 
 /**
  * The WarehouseController has a dependency on the WarehouseBusinessService. 
@@ -54,6 +98,20 @@ public class WarehouseServiceWebLayerTest {
 
 	@MockBean
 	WarehouseBusinessService service;
+
+	@MockBean
+	ProductCatalog catalog;
+
+	@MockBean
+	ProductImporter importer;
+
+	@MockBean
+	ProductExporter exporter;
+
+	@MockBean
+	CatalogChangeBroadcaster broadcaster;
+	
+	ProtobufProductHttpMessageConverter protobuf = new ProtobufProductHttpMessageConverter();
 	
 	static List<Widget> widgets;
 	static List<Gadget> gadgets;
@@ -107,6 +165,376 @@ public class WarehouseServiceWebLayerTest {
 			   .andExpect(jsonPath("$.description").value("Low Impact Widget"));		
 	}
 	
+	/**
+	 * This test verifies the WarehouseController answers a request for all 
+	 * Widgets with 304 Not Modified, without querying the business service,
+	 * when the client already holds the current ETag.
+	 */
+	@Test
+	public void testQueryForAllWidgets_NotModified() throws Exception {
+		when(service.getWidgetsVersion()).thenReturn(7L);
+		when(service.findAllWidgets()).thenReturn(widgets);
+		
+		String etag = mockMvc.perform(get("/warehouse/widgets"))
+							 .andExpect(status().isOk())
+							 .andReturn().getResponse().getHeader("ETag");
+		
+		mockMvc.perform(get("/warehouse/widgets").header("If-None-Match", etag))
+			   .andExpect(status().isNotModified())
+			   .andExpect(header().string("ETag", etag))
+			   .andExpect(header().stringValues("Vary", hasItem("Accept")))
+			   .andExpect(content().string(is(emptyOrNullString())));
+		verify(service, times(1)).findAllWidgets();
+		
+		// a change to the Widgets table changes the ETag
+		when(service.getWidgetsVersion()).thenReturn(8L);
+		mockMvc.perform(get("/warehouse/widgets").header("If-None-Match", etag))
+			   .andExpect(status().isOk())
+			   .andExpect(jsonPath("$.length()").value(2));
+	}
+
+	/**
+	 * This test verifies the ETag of a single Widget is its row version in
+	 * the media type of the body, so it changes only when that Widget is
+	 * changed, and each format has its own ETag.
+	 */
+	@Test
+	public void testQueryForWidgetById_NotModified() throws Exception {
+		Widget widget = new Widget(1, "Test Widget 1", 1.99, 2, 10);
+		widget.setVersion(4);
+		when(service.findWidgetById(1)).thenReturn(widget);
+		
+		String etag = mockMvc.perform(get("/warehouse/widgets/1"))
+							 .andExpect(status().isOk())
+							 .andExpect(header().string("ETag", "\"w1-v4-json\""))
+							 .andExpect(header().stringValues("Vary", hasItem("Accept")))
+							 .andReturn().getResponse().getHeader("ETag");
+		
+		// the CBOR body of the same version has another ETag
+		mockMvc.perform(get("/warehouse/widgets/1").accept(MediaType.APPLICATION_CBOR)
+												   .header("If-None-Match", etag))
+			   .andExpect(status().isOk())
+			   .andExpect(header().string("ETag", "\"w1-v4-cbor\""));
+		
+		// a change to another Widget leaves the ETag of Widget 1 unchanged
+		when(service.getWidgetsVersion()).thenReturn(3L);
+		mockMvc.perform(get("/warehouse/widgets/1").header("If-None-Match", etag))
+			   .andExpect(status().isNotModified());
+		
+		Widget updated = new Widget(1, "Test Widget 1", 2.99, 2, 10);
+		updated.setVersion(5);
+		when(service.findWidgetById(1)).thenReturn(updated);
+		mockMvc.perform(get("/warehouse/widgets/1").header("If-None-Match", etag))
+			   .andExpect(status().isOk())
+			   .andExpect(jsonPath("$.id").value(1))
+			   .andExpect(jsonPath("$.version").doesNotExist());
+	}
+	
+	/**
+	 * This test verifies the WarehouseController looks up several Widgets
+	 * with one service call and reports the ids that were not found.
+	 */
+	@Test
+	public void testQueryForWidgetsByIds() throws Exception {
+		when(service.findWidgetsByIds(Arrays.asList(2, 9, 1))).thenReturn(widgets);
+		
+		mockMvc.perform(get("/warehouse/widgets?ids=2,9,1"))
+			   .andExpect(status().isOk())
+			   .andExpect(jsonPath("$.found.length()").value(2))
+			   .andExpect(jsonPath("$.found[0].id").value(2))
+			   .andExpect(jsonPath("$.found[1].id").value(1))
+			   .andExpect(jsonPath("$.missing").value(9));
+	}
+
+	/**
+	 * This test verifies the WarehouseController rejects a malformed typed
+	 * product id.
+	 */
+	@Test
+	public void testQueryForProductsByIds_InvalidId() throws Exception {
+		mockMvc.perform(get("/warehouse/products?ids=widget:1,sprocket:2"))
+			   .andExpect(status().isBadRequest());
+	}
+
+	/**
+	 * This test verifies that the scan endpoint binds the query parameters
+	 * to the filter and returns the catalog's result.
+	 */
+	@Test
+	public void testScanProducts() throws Exception {
+		List<Product> products = new ArrayList<>(widgets);
+		when(catalog.scan(argThat(f -> f.getMinPrice() == 1.5 && f.getMinGears() == 2 && f.getMaxCylinders() == null), 
+						  eq(10)))
+			.thenReturn(new ProductScanResult(5, products));
+		
+		mockMvc.perform(get("/warehouse/products/scan?minPrice=1.5&minGears=2&limit=10"))
+			   .andDo(print())
+			   .andExpect(status().isOk())
+			   .andExpect(jsonPath("$.matchCount").value(5))
+			   .andExpect(jsonPath("$.products.length()").value(2))
+			   .andExpect(jsonPath("$.products[0].description").value("Test Widget 1"));
+	}
+
+	@Test
+	public void testScanProducts_UnknownType() throws Exception {
+		when(catalog.scan(any(ProductFilter.class), eq(100)))
+			.thenThrow(new IllegalArgumentException("Unknown product type: gizmo"));
+		
+		mockMvc.perform(get("/warehouse/products/scan?type=gizmo"))
+			   .andExpect(status().isBadRequest());
+	}
+
+	@Test
+	public void testSearchProducts() throws Exception {
+		List<ProductSearchHit> hits = List.of(new ProductSearchHit(1.5, widgets.get(0)));
+		when(catalog.search("test widget", 10, 5)).thenReturn(new ProductSearchResult(11, 10, hits));
+		
+		mockMvc.perform(get("/warehouse/products/search?offset=10&limit=5").param("q", "test widget"))
+			   .andDo(print())
+			   .andExpect(status().isOk())
+			   .andExpect(jsonPath("$.matchCount").value(11))
+			   .andExpect(jsonPath("$.offset").value(10))
+			   .andExpect(jsonPath("$.hits[0].score").value(1.5))
+			   .andExpect(jsonPath("$.hits[0].product.description").value("Test Widget 1"));
+	}
+
+	@Test
+	public void testSearchProducts_EmptyQuery() throws Exception {
+		when(catalog.search(eq("--"), eq(0), anyInt()))
+			.thenThrow(new IllegalArgumentException("The query must contain at least one letter or digit"));
+		
+		mockMvc.perform(get("/warehouse/products/search?q=--"))
+			   .andExpect(status().isBadRequest());
+	}
+
+	@Test
+	public void testQueryForProductsInPriceRange() throws Exception {
+		when(catalog.findByPrice("widget", 1.0, 9.5, null, 3)).thenReturn(new ArrayList<>(widgets));
+		
+		mockMvc.perform(get("/warehouse/products?sort=price&type=widget&minPrice=1&maxPrice=9.5&limit=2"))
+			   .andDo(print())
+			   .andExpect(status().isOk())
+			   .andExpect(jsonPath("$.length()").value(2))
+			   .andExpect(jsonPath("$[0].description").value("Test Widget 1"));
+		verify(service, times(0)).findProductsPage(any(), any(), anyInt());
+	}
+
+	@Test
+	public void testQueryForProductsInPriceRange_SortByType() throws Exception {
+		mockMvc.perform(get("/warehouse/products?minPrice=1"))
+			   .andExpect(status().isBadRequest());
+	}
+
+	@Test
+	public void testQueryForTopProducts() throws Exception {
+		when(catalog.findTopByPrice("widget", false, 2)).thenReturn(new ArrayList<>(widgets));
+		
+		mockMvc.perform(get("/warehouse/products/top?by=price&k=2&order=asc&type=widget"))
+			   .andDo(print())
+			   .andExpect(status().isOk())
+			   .andExpect(jsonPath("$.length()").value(2))
+			   .andExpect(jsonPath("$[1].description").value("Test Widget 2"));
+	}
+
+	@Test
+	public void testQueryForTopProducts_UnknownRanking() throws Exception {
+		mockMvc.perform(get("/warehouse/products/top?by=weight"))
+			   .andExpect(status().isBadRequest());
+	}
+
+	@Test
+	public void testQueryForProductSummary() throws Exception {
+		CatalogSummary summary = new CatalogSummary();
+		summary.setWidgetCount(2);
+		summary.setMinPrice(1.5);
+		summary.setPriceHistogram(List.of(new PriceBucket(null, 10.0, 2), new PriceBucket(10.0, null, 0)));
+		when(catalog.summary()).thenReturn(summary);
+		
+		mockMvc.perform(get("/warehouse/products/summary"))
+			   .andDo(print())
+			   .andExpect(status().isOk())
+			   .andExpect(header().exists("ETag"))
+			   .andExpect(jsonPath("$.widgetCount").value(2))
+			   .andExpect(jsonPath("$.minPrice").value(1.5))
+			   .andExpect(jsonPath("$.priceHistogram[0].maxPrice").value(10.0))
+			   .andExpect(jsonPath("$.priceHistogram[1].count").value(0));
+	}
+
+	@Test
+	public void testImportProducts() throws Exception {
+		ImportJob job = new ImportJob("job-1", TransferFormat.CSV, 42, 100);
+		when(importer.submit(any(), eq(TransferFormat.CSV))).thenReturn(job);
+		
+		mockMvc.perform(post("/warehouse/import")
+							.contentType("text/csv")
+							.content("type,description,price\nwidget,Test Widget 1,1.99\n"))
+			   .andDo(print())
+			   .andExpect(status().isAccepted())
+			   .andExpect(header().string("Location", "http://localhost/warehouse/import/job-1"))
+			   .andExpect(jsonPath("$.id").value("job-1"))
+			   .andExpect(jsonPath("$.state").value("QUEUED"))
+			   .andExpect(jsonPath("$.sizeBytes").value(42));
+	}
+
+	/**
+	 * This test verifies that a gzipped import file is passed to the importer
+	 * still compressed, however far beyond warehouse.compression.max-request-size
+	 * (100MB) it inflates.
+	 */
+	@Test
+	public void testImportProducts_GzipLargerThanRequestLimit() throws Exception {
+		// 101MB of CSV, which gzips to about 100KB
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		try (GZIPOutputStream out = new GZIPOutputStream(body)) {
+			out.write("type,description,price\n".getBytes(StandardCharsets.UTF_8));
+			byte[] rows = "widget,Test Widget 1,1.99\n".repeat(40 * 1024).getBytes(StandardCharsets.UTF_8);
+			for (long size = 0; size <= 101 * 1024 * 1024; size += rows.length) {
+				out.write(rows);
+			}
+		}
+		ImportJob job = new ImportJob("job-2", TransferFormat.CSV, body.size(), 100);
+		when(importer.submit(any(), eq(TransferFormat.CSV))).thenAnswer(invocation -> {
+			byte[] received = invocation.getArgument(0, InputStream.class).readAllBytes();
+			assertThat(received, is(equalTo(body.toByteArray())));
+			return job;
+		});
+		
+		mockMvc.perform(post("/warehouse/import")
+							.contentType("text/csv")
+							.header("Content-Encoding", "gzip")
+							.content(body.toByteArray()))
+			   .andExpect(status().isAccepted())
+			   .andExpect(jsonPath("$.id").value("job-2"));
+		verify(importer).submit(any(), eq(TransferFormat.CSV));
+	}
+
+	@Test
+	public void testImportProducts_UnsupportedFormat() throws Exception {
+		mockMvc.perform(post("/warehouse/import")
+							.contentType(MediaType.APPLICATION_JSON)
+							.content("[]"))
+			   .andExpect(status().isUnsupportedMediaType());
+		verify(importer, times(0)).submit(any(), any());
+	}
+
+	@Test
+	public void testQueryForImportJob() throws Exception {
+		when(importer.getJob("job-1")).thenReturn(new ImportJob("job-1", TransferFormat.NDJSON, 42, 100));
+		
+		mockMvc.perform(get("/warehouse/import/job-1"))
+			   .andExpect(status().isOk())
+			   .andExpect(jsonPath("$.format").value("NDJSON"))
+			   .andExpect(jsonPath("$.rowsImported").value(0));
+		mockMvc.perform(get("/warehouse/import/job-2"))
+			   .andExpect(status().isNotFound());
+	}
+
+	@Test
+	public void testExportProducts() throws Exception {
+		doAnswer(invocation -> {
+			invocation.getArgument(2, OutputStream.class).write("type,id\n".getBytes());
+			return 1L;
+		}).when(exporter).export(eq(TransferFormat.CSV), eq("widget"), any());
+		
+		MvcResult result = mockMvc.perform(get("/warehouse/export?format=csv&type=widget"))
+								  .andExpect(request().asyncStarted())
+								  .andReturn();
+		
+		mockMvc.perform(asyncDispatch(result))
+			   .andExpect(status().isOk())
+			   .andExpect(header().string("Content-Type", "text/csv;charset=UTF-8"))
+			   .andExpect(header().string("Content-Disposition", "attachment; filename=\"products.csv\""))
+			   .andExpect(header().doesNotExist("Content-Encoding"))
+			   .andExpect(content().string("type,id\n"));
+	}
+
+	@Test
+	public void testExportProducts_Gzip() throws Exception {
+		MvcResult result = mockMvc.perform(get("/warehouse/export").header("Accept-Encoding", "gzip, deflate"))
+								  .andReturn();
+		mockMvc.perform(asyncDispatch(result))
+			   .andExpect(status().isOk())
+			   .andExpect(header().string("Content-Type", "application/x-ndjson;charset=UTF-8"))
+			   .andExpect(header().string("Content-Encoding", "gzip"));
+		verify(exporter).exportGzipped(eq(TransferFormat.NDJSON), eq(null), any());
+	}
+
+	@Test
+	public void testExportProducts_BadRequest() throws Exception {
+		mockMvc.perform(get("/warehouse/export?format=xml"))
+			   .andExpect(status().isBadRequest());
+		mockMvc.perform(get("/warehouse/export?type=gizmo"))
+			   .andExpect(status().isBadRequest());
+	}
+
+	/**
+	 * This test verifies the WarehouseController returns one page of Widgets
+	 * with a Link header to the next page when more Widgets are available.
+	 */
+	@Test
+	public void testQueryForWidgetsPage() throws Exception {
+		// the controller asks for one extra row to detect the next page
+		when(service.findWidgetsAfter(0, 2)).thenReturn(widgets);
+		
+		mockMvc.perform(get("/warehouse/widgets?limit=1"))
+			   .andDo(print())
+			   .andExpect(status().isOk())
+			   .andExpect(jsonPath("$.length()").value(1))
+			   .andExpect(jsonPath("$[0].description").value("Test Widget 1"))
+			   .andExpect(header().exists(WarehouseController.NEXT_CURSOR_HEADER))
+			   .andExpect(header().string("Link", containsString("rel=\"next\"")));
+	}
+
+	/**
+	 * This test verifies the WarehouseController does not send a Link header
+	 * for the last page of Widgets.
+	 */
+	@Test
+	public void testQueryForWidgetsPage_LastPage() throws Exception {
+		when(service.findWidgetsAfter(1, 3)).thenReturn(widgets.subList(1, 2));
+		
+		mockMvc.perform(get("/warehouse/widgets?after=1&limit=2"))
+			   .andDo(print())
+			   .andExpect(status().isOk())
+			   .andExpect(jsonPath("$.length()").value(1))
+			   .andExpect(header().doesNotExist("Link"));
+	}
+
+	/**
+	 * This test verifies the WarehouseController rejects a malformed page cursor.
+	 */
+	@Test
+	public void testQueryForWidgetsPage_InvalidCursor() throws Exception {
+		mockMvc.perform(get("/warehouse/widgets?after=not*a*cursor"))
+			   .andDo(print())
+			   .andExpect(status().isBadRequest());
+	}
+
+	/**
+	 * This test verifies the WarehouseController streams all the Widgets 
+	 * supplied by the service as a JSON array.
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testStreamAllWidgets() throws Exception {
+		doAnswer(invocation -> {
+			Consumer<Widget> action = invocation.getArgument(0);
+			widgets.forEach(action);
+			return null;
+		}).when(service).streamAllWidgets(any(Consumer.class));
+		
+		// the body is written asynchronously, so dispatch the async result
+		MvcResult result = mockMvc.perform(get("/warehouse/widgets?stream=true"))
+								  .andExpect(request().asyncStarted())
+								  .andReturn();
+		
+		mockMvc.perform(asyncDispatch(result))
+			   .andDo(print())
+			   .andExpect(status().isOk())
+			   .andExpect(jsonPath("$.length()").value(2))
+			   .andExpect(jsonPath("$[1].description").value("Test Widget 2"));
+	}
+
 	/**
 	 * This test verifies that the WarehouseController returns an HTTP No_Content
 	 * status when the widget list is empty.
@@ -159,6 +587,233 @@ public class WarehouseServiceWebLayerTest {
 			   .andExpect(jsonPath("$.rowCount").value(1));
 	}
 
+	/**
+	 * This test verifies the WarehouseController can add several Widgets 
+	 * to the Warehouse in one request.
+	 */
+	@Test
+	public void testAddWidgetsToWarehouse() throws Exception {
+		when(service.addWidgets(widgets)).thenReturn(Arrays.asList(7, 8));
+		
+		String jsonString = new ObjectMapper().writeValueAsString(widgets);
+		
+		mockMvc.perform(post("/warehouse/widgets/batch")
+			   .contentType(MediaType.APPLICATION_JSON)
+			   .content(jsonString))
+			   .andDo(print())
+			   .andExpect(status().isOk())
+			   .andExpect(jsonPath("$.rowCount").value(2))
+			   .andExpect(jsonPath("$.ids[1]").value(8));
+	}
+
+	// **** Content negotiation tests ****
+
+	/**
+	 * This test verifies the WarehouseController answers with CBOR or Smile
+	 * when the client asks for it.
+	 */
+	@Test
+	public void testQueryForAllWidgets_BinaryJson() throws Exception {
+		when(service.findAllWidgets()).thenReturn(widgets);
+		
+		Map<MediaType, ObjectMapper> mappers = Map.of(
+				MediaType.APPLICATION_CBOR, new ObjectMapper(new CBORFactory()),
+				MediaType.parseMediaType("application/x-jackson-smile"), new ObjectMapper(new SmileFactory()));
+		for (Map.Entry<MediaType, ObjectMapper> entry : mappers.entrySet()) {
+			MediaType mediaType = entry.getKey();
+			MvcResult result = mockMvc.perform(get("/warehouse/widgets").accept(mediaType))
+				   .andExpect(status().isOk())
+				   .andExpect(content().contentType(mediaType))
+				   .andReturn();
+			
+			Widget[] body = entry.getValue().readValue(result.getResponse().getContentAsByteArray(), Widget[].class);
+			assertThat(Arrays.asList(body), is(equalTo(widgets)));
+		}
+	}
+
+	/**
+	 * This test verifies the WarehouseController answers with a Protocol 
+	 * Buffers list of products when the client asks for it.
+	 */
+	@Test
+	public void testQueryForTopProducts_Protobuf() throws Exception {
+		List<Product> products = List.of(widgets.get(0), gadgets.get(2));
+		when(catalog.findTopByPrice(null, true, 2)).thenReturn(products);
+		
+		MvcResult result = mockMvc.perform(get("/warehouse/products/top?k=2")
+				   .accept(ProtobufProductHttpMessageConverter.APPLICATION_PROTOBUF))
+			   .andExpect(status().isOk())
+			   .andExpect(content().contentType(ProtobufProductHttpMessageConverter.APPLICATION_PROTOBUF))
+			   .andReturn();
+		
+		Object body = protobuf.read(new ParameterizedTypeReference<List<Product>>() {}.getType(), null, 
+				new MockHttpInputMessage(result.getResponse().getContentAsByteArray()));
+		assertThat(body, is(equalTo(products)));
+	}
+
+	/**
+	 * This test verifies the WarehouseController accepts a Widget sent as 
+	 * Protocol Buffers.
+	 */
+	@Test
+	public void testAddWidgetToWarehouse_Protobuf() throws Exception {
+		Widget w = new Widget(42, "Test widget", 4.52, 20, 10);
+		
+		when(service.addWidget(w)).thenReturn(1);
+		
+		MockHttpOutputMessage message = new MockHttpOutputMessage();
+		protobuf.write(w, Widget.class, ProtobufProductHttpMessageConverter.APPLICATION_PROTOBUF, message);
+		
+		MvcResult result = mockMvc.perform(post("/warehouse/widgets")
+			   .contentType(ProtobufProductHttpMessageConverter.APPLICATION_PROTOBUF)
+			   .accept(ProtobufProductHttpMessageConverter.APPLICATION_PROTOBUF)
+			   .content(message.getBodyAsBytes()))
+			   .andExpect(status().isOk())
+			   .andReturn();
+		
+		DatabaseRequestResultDTO body = (DatabaseRequestResultDTO) protobuf.read(DatabaseRequestResultDTO.class, null, 
+				new MockHttpInputMessage(result.getResponse().getContentAsByteArray()));
+		assertThat(body.getRowCount(), is(1));
+	}
+
+	/**
+	 * This test verifies that JSON stays the default, and that Protocol 
+	 * Buffers is refused for a response that has no message in the schema.
+	 */
+	@Test
+	public void testContentNegotiation_DefaultsAndUnsupported() throws Exception {
+		when(service.findAllWidgets()).thenReturn(widgets);
+		
+		mockMvc.perform(get("/warehouse/widgets").accept(MediaType.ALL))
+			   .andExpect(status().isOk())
+			   .andExpect(content().contentType(MediaType.APPLICATION_JSON));
+		mockMvc.perform(get("/warehouse/products/summary")
+				   .accept(ProtobufProductHttpMessageConverter.APPLICATION_PROTOBUF))
+			   .andExpect(status().isNotAcceptable());
+	}
+
+	// **** Compression tests ****
+
+	/**
+	 * This test verifies that a large collection response is gzipped once
+	 * and then served from the cache while the catalog is unchanged.
+	 */
+	@Test
+	public void testQueryForAllWidgets_GzipCached() throws Exception {
+		List<Widget> manyWidgets = new ArrayList<>();
+		for (int id = 1; id <= 100; id++) {
+			manyWidgets.add(new Widget(id, "Cached Test Widget " + id, 1.99, 2, 10));
+		}
+		when(service.getWidgetsVersion()).thenReturn(7L);
+		when(service.findAllWidgets()).thenReturn(manyWidgets);
+		
+		byte[][] bodies = new byte[2][];
+		for (int i = 0; i < bodies.length; i++) {
+			bodies[i] = mockMvc.perform(get("/warehouse/widgets").header("Accept-Encoding", "gzip, deflate"))
+				   .andExpect(status().isOk())
+				   .andExpect(header().string("Content-Encoding", "gzip"))
+				   .andExpect(header().exists("ETag"))
+				   .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+				   .andReturn().getResponse().getContentAsByteArray();
+		}
+		
+		verify(service, times(1)).findAllWidgets();
+		assertThat(bodies[1], is(equalTo(bodies[0])));
+		try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bodies[1]))) {
+			Widget[] widgets = new ObjectMapper().readValue(in, Widget[].class);
+			assertThat(Arrays.asList(widgets), is(equalTo(manyWidgets)));
+		}
+	}
+
+	/**
+	 * This test verifies a gzipped response from the cache has its own ETag,
+	 * and is answered with 304 Not Modified only when If-None-Match holds
+	 * that ETag.
+	 */
+	@Test
+	public void testQueryForAllWidgets_GzipCachedEtag() throws Exception {
+		List<Widget> manyWidgets = new ArrayList<>();
+		for (int id = 1; id <= 100; id++) {
+			manyWidgets.add(new Widget(id, "Cached Test Widget " + id, 1.99, 2, 10));
+		}
+		// another version than testQueryForAllWidgets_GzipCached, whose
+		// response may still be cached
+		when(service.getWidgetsVersion()).thenReturn(11L);
+		when(service.findAllWidgets()).thenReturn(manyWidgets);
+		
+		String etag = mockMvc.perform(get("/warehouse/widgets"))
+							 .andExpect(status().isOk())
+							 .andReturn().getResponse().getHeader("ETag");
+		String gzipEtag = mockMvc.perform(get("/warehouse/widgets").header("Accept-Encoding", "gzip"))
+								 .andExpect(status().isOk())
+								 .andExpect(header().string("Content-Encoding", "gzip"))
+								 .andReturn().getResponse().getHeader("ETag");
+		assertThat(gzipEtag, is(equalTo(etag.substring(0, etag.length() - 1) + "-gz\"")));
+		
+		mockMvc.perform(get("/warehouse/widgets").header("Accept-Encoding", "gzip")
+												 .header("If-None-Match", "\"1-w11-json\", " + gzipEtag))
+			   .andExpect(status().isNotModified())
+			   .andExpect(header().string("ETag", gzipEtag));
+		mockMvc.perform(get("/warehouse/widgets").header("Accept-Encoding", "gzip")
+												 .header("If-None-Match", etag))
+			   .andExpect(status().isOk())
+			   .andExpect(header().string("ETag", gzipEtag));
+		verify(service, times(2)).findAllWidgets();
+	}
+
+	/**
+	 * This test verifies the WarehouseController accepts a gzipped request body.
+	 */
+	@Test
+	public void testAddWidgetToWarehouse_Gzip() throws Exception {
+		Widget w = new Widget(42, "Test widget", 4.52, 20, 10);
+		
+		when(service.addWidget(w)).thenReturn(1);
+		
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		try (GZIPOutputStream out = new GZIPOutputStream(body)) {
+			new ObjectMapper().writeValue(out, w);
+		}
+		
+		mockMvc.perform(post("/warehouse/widgets")
+			   .contentType(MediaType.APPLICATION_JSON)
+			   .header("Content-Encoding", "gzip")
+			   .content(body.toByteArray()))
+			   .andExpect(status().isOk())
+			   .andExpect(jsonPath("$.rowCount").value(1));
+		
+		mockMvc.perform(post("/warehouse/widgets")
+			   .contentType(MediaType.APPLICATION_JSON)
+			   .header("Content-Encoding", "gzip")
+			   .content(new ObjectMapper().writeValueAsBytes(w)))
+			   .andExpect(status().isBadRequest());
+	}
+
+	/**
+	 * This test verifies that a gzipped request body that inflates beyond
+	 * warehouse.compression.max-request-size (100MB) is rejected.
+	 */
+	@Test
+	public void testAddWidgetsBatch_GzipTooLarge() throws Exception {
+		// 101MB of whitespace before an empty array, which gzips to about 100KB
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		try (GZIPOutputStream out = new GZIPOutputStream(body)) {
+			byte[] spaces = new byte[1024 * 1024];
+			Arrays.fill(spaces, (byte) ' ');
+			for (int i = 0; i < 101; i++) {
+				out.write(spaces);
+			}
+			out.write("[]".getBytes(StandardCharsets.UTF_8));
+		}
+		
+		mockMvc.perform(post("/warehouse/widgets/batch")
+			   .contentType(MediaType.APPLICATION_JSON)
+			   .header("Content-Encoding", "gzip")
+			   .content(body.toByteArray()))
+			   .andExpect(status().isPayloadTooLarge());
+		verifyNoInteractions(service);
+	}
+
 	/**
 	 * This test verifies the WarehouseController can successfully remove a Widget from
 	 * the Warehouse.
@@ -199,6 +854,52 @@ public class WarehouseServiceWebLayerTest {
 	}
 
 
+	/**
+	 * This test verifies an update with the current ETag in If-Match is made
+	 * as a compare-and-set on the row version and returns the new ETag.
+	 */
+	@Test
+	public void testUpdateWidgetInWarehouse_IfMatch() throws Exception {
+		Widget w = new Widget(42, "Test widget", 4.52, 20, 10);
+		
+		when(service.modifyWidget(w, 3)).thenReturn(1);
+		
+		mockMvc.perform(put("/warehouse/widgets")
+							.contentType(MediaType.APPLICATION_JSON)
+							.header("If-Match", "\"w42-v3-json\"")
+							.content(new ObjectMapper().writeValueAsString(w)))
+			   .andExpect(status().isOk())
+			   .andExpect(header().string("ETag", "\"w42-v4-json\""))
+			   .andExpect(jsonPath("$.rowCount").value(1));
+	}
+
+	/**
+	 * This test verifies an update is answered with 412 Precondition Failed
+	 * when the Widget has been changed since the client read it, or when
+	 * If-Match does not hold an ETag of the Widget.
+	 */
+	@Test
+	public void testUpdateWidgetInWarehouse_PreconditionFailed() throws Exception {
+		Widget w = new Widget(42, "Test widget", 4.52, 20, 10);
+		String jsonString = new ObjectMapper().writeValueAsString(w);
+		
+		when(service.modifyWidget(w, 3)).thenReturn(0);
+		
+		mockMvc.perform(put("/warehouse/widgets")
+							.contentType(MediaType.APPLICATION_JSON)
+							.header("If-Match", "\"w42-v3\"")
+							.content(jsonString))
+			   .andExpect(status().isPreconditionFailed());
+		
+		mockMvc.perform(put("/warehouse/widgets")
+							.contentType(MediaType.APPLICATION_JSON)
+							.header("If-Match", "\"w7-v3\", W/\"w42-v3\"")
+							.content(jsonString))
+			   .andExpect(status().isPreconditionFailed());
+		verify(service, times(1)).modifyWidget(any(Widget.class), anyInt());
+	}
+
+
 	// **** Gadget Tests ****
 	
 	/**
@@ -325,4 +1026,25 @@ public class WarehouseServiceWebLayerTest {
 			   .andExpect(status().isOk())
 			   .andExpect(jsonPath("$.rowCount").value(1));
 	}
+
+	/**
+	 * This test verifies the WarehouseController opens a change feed stream
+	 * for the type and Last-Event-ID of the request, and rejects an unknown type.
+	 */
+	@Test
+	public void testStreamChanges() throws Exception {
+		when(broadcaster.subscribe("gadget", "abc-7")).thenReturn(new SseEmitter());
+		when(broadcaster.subscribe(eq("sprocket"), any()))
+			.thenThrow(new IllegalArgumentException("type must be 'widget' or 'gadget', not sprocket"));
+		
+		mockMvc.perform(get("/warehouse/changes?type=gadget")
+							.header("Last-Event-ID", "abc-7")
+							.accept(MediaType.TEXT_EVENT_STREAM))
+			   .andExpect(status().isOk())
+			   .andExpect(request().asyncStarted());
+		verify(broadcaster).subscribe("gadget", "abc-7");
+		
+		mockMvc.perform(get("/warehouse/changes?type=sprocket"))
+			   .andExpect(status().isBadRequest());
+	}
 }
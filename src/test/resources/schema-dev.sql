@@ -10,7 +10,8 @@ create table widgets (
   description varchar(45), 
   price numeric(6,2), 
   gears integer, 
-  sprockets integer
+  sprockets integer,
+  version integer default 0 not null
 );
 
 -- Gadgets
@@ -18,6 +19,7 @@ create table gadgets (
   id integer  GENERATED BY DEFAULT AS IDENTITY(START WITH 1, INCREMENT BY 1) PRIMARY KEY, 
   description varchar(45), 
   price numeric(6,2), 
-  cylinders integer
+  cylinders integer,
+  version integer default 0 not null
 );
 